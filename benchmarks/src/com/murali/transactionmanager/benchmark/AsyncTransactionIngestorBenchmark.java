@@ -0,0 +1,60 @@
+package com.murali.transactionmanager.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.murali.transactionmanager.store.IngestWaitStrategy;
+import com.murali.transactionmanager.store.impl.AsyncTransactionIngestor;
+import com.murali.transactionmanager.store.impl.InMemoryTransactionRecorder;
+
+/**
+ * Latency seen by the producers of an {@link AsyncTransactionIngestor}, as
+ * sampled percentiles; an offer rejected by a full ring counts like any other
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AsyncTransactionIngestorBenchmark {
+    private AsyncTransactionIngestor ingestor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ingestor = new AsyncTransactionIngestor(
+                new InMemoryTransactionRecorder(),
+                AsyncTransactionIngestor.DEFAULT_CAPACITY, 2,
+                IngestWaitStrategy.YIELDING);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ingestor.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean offer1Thread(TransactionFixtures fixtures) {
+        return ingestor.offer(fixtures.nextTransaction());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean offer4Threads(TransactionFixtures fixtures) {
+        return ingestor.offer(fixtures.nextTransaction());
+    }
+}
@@ -0,0 +1,24 @@
+package com.murali.transactionmanager.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching the given regular expression (all of them by
+ * default) with the GC profiler, so that the allocation rate of every
+ * benchmark (gc.alloc.rate.norm, in bytes per operation) is reported next to
+ * its throughput
+ */
+public class BenchmarkRunner {
+    public static void main(String args[]) throws RunnerException {
+        String include = (args.length > 0) ? args[0]
+                : BenchmarkRunner.class.getPackage().getName() + ".*";
+
+        Options options = new OptionsBuilder().include(include)
+                .addProfiler(GCProfiler.class).build();
+        new Runner(options).run();
+    }
+}
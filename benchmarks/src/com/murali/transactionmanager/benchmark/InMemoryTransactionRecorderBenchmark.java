@@ -0,0 +1,159 @@
+package com.murali.transactionmanager.benchmark;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.murali.transactionmanager.model.ReturnCode;
+import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+import com.murali.transactionmanager.store.impl.InMemoryTransactionRecorder;
+
+/**
+ * Throughput of {@link InMemoryTransactionRecorder}: recording at increasing
+ * thread counts, reading statistics while other threads write, and mixed
+ * read/write ratios
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InMemoryTransactionRecorderBenchmark {
+    private InMemoryTransactionRecorder transactionRecorder;
+
+    @State(Scope.Thread)
+    public static class Reader {
+        private final StatisticsSnapshot snapshot = new StatisticsSnapshot();
+        private final BitSet rejections = new BitSet();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        transactionRecorder = new InMemoryTransactionRecorder();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ReturnCode record1Thread(TransactionFixtures fixtures) {
+        return transactionRecorder.record(fixtures.nextTransaction());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ReturnCode record4Threads(TransactionFixtures fixtures) {
+        return transactionRecorder.record(fixtures.nextTransaction());
+    }
+
+    @Benchmark
+    @Threads(16)
+    public ReturnCode record16Threads(TransactionFixtures fixtures) {
+        return transactionRecorder.record(fixtures.nextTransaction());
+    }
+
+    @Benchmark
+    @Threads(64)
+    public ReturnCode record64Threads(TransactionFixtures fixtures) {
+        return transactionRecorder.record(fixtures.nextTransaction());
+    }
+
+    /**
+     * Records a transaction created per call, as a request that is parsed
+     * into a {@link Transaction}; compare with {@link #recordAmount1Thread}
+     * under -prof gc
+     */
+    @Benchmark
+    @Threads(1)
+    public ReturnCode recordNewTransaction1Thread(
+            TransactionFixtures fixtures) {
+        int i = fixtures.nextIndex();
+        return transactionRecorder.record(new Transaction(
+                fixtures.getAmounts()[i], fixtures.getTimestamps()[i]));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ReturnCode recordAmount1Thread(TransactionFixtures fixtures) {
+        int i = fixtures.nextIndex();
+        return transactionRecorder.record(fixtures.getAmounts()[i],
+                fixtures.getTimestamps()[i]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int recordAllColumns(TransactionFixtures fixtures, Reader reader) {
+        return transactionRecorder.recordAll(fixtures.getAmounts(),
+                fixtures.getTimestamps(), fixtures.getAmounts().length,
+                reader.rejections);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public StatisticsSnapshot getStatistics(Reader reader) {
+        return transactionRecorder.getStatistics(reader.snapshot);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Map<String, Number> getStatisticsMap() {
+        return transactionRecorder.getStatistics();
+    }
+
+    @Benchmark
+    @Group("readsUnderWrites")
+    @GroupThreads(3)
+    public ReturnCode readsUnderWritesWriter(TransactionFixtures fixtures) {
+        return transactionRecorder.record(fixtures.nextTransaction());
+    }
+
+    @Benchmark
+    @Group("readsUnderWrites")
+    @GroupThreads(1)
+    public StatisticsSnapshot readsUnderWritesReader(Reader reader) {
+        return transactionRecorder.getStatistics(reader.snapshot);
+    }
+
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(1)
+    public ReturnCode readHeavyWriter(TransactionFixtures fixtures) {
+        return transactionRecorder.record(fixtures.nextTransaction());
+    }
+
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(7)
+    public StatisticsSnapshot readHeavyReader(Reader reader) {
+        return transactionRecorder.getStatistics(reader.snapshot);
+    }
+
+    @Benchmark
+    @Group("writeHeavy")
+    @GroupThreads(7)
+    public ReturnCode writeHeavyWriter(TransactionFixtures fixtures) {
+        return transactionRecorder.record(fixtures.nextTransaction());
+    }
+
+    @Benchmark
+    @Group("writeHeavy")
+    @GroupThreads(1)
+    public StatisticsSnapshot writeHeavyReader(Reader reader) {
+        return transactionRecorder.getStatistics(reader.snapshot);
+    }
+}
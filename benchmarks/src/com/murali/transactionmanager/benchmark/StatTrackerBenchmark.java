@@ -0,0 +1,105 @@
+package com.murali.transactionmanager.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.murali.transactionmanager.statistics.StatTracker;
+import com.murali.transactionmanager.statistics.impl.AggregateTransactionStatsTracker;
+import com.murali.transactionmanager.statistics.impl.CountStatTracker;
+import com.murali.transactionmanager.statistics.impl.MaxAmountStatTracker;
+import com.murali.transactionmanager.statistics.impl.MinAmountStatTracker;
+import com.murali.transactionmanager.statistics.impl.SumOfAmountsStatTracker;
+import com.murali.transactionmanager.statistics.model.Statistic;
+
+/**
+ * Throughput of every {@link StatTracker} implementation and of
+ * {@link AggregateTransactionStatsTracker}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatTrackerBenchmark {
+    @Param({ CountStatTracker.STAT_NAME, SumOfAmountsStatTracker.STAT_NAME,
+            MinAmountStatTracker.STAT_NAME, MaxAmountStatTracker.STAT_NAME })
+    private String statName;
+
+    private StatTracker statTracker;
+    private Statistic otherStatistic;
+    private AggregateTransactionStatsTracker aggregateTracker;
+    private AggregateTransactionStatsTracker otherAggregateTracker;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        statTracker = newStatTracker(statName);
+        StatTracker otherStatTracker = newStatTracker(statName);
+        otherStatTracker.recordAmount(1.0, System.currentTimeMillis());
+        otherStatistic = otherStatTracker.getStatistics();
+
+        long nowSeconds = System.currentTimeMillis() / 1000;
+        aggregateTracker = new AggregateTransactionStatsTracker(nowSeconds);
+        otherAggregateTracker = new AggregateTransactionStatsTracker(
+                nowSeconds);
+        otherAggregateTracker.recordAmount(1.0, System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public StatTracker recordTransaction(TransactionFixtures fixtures) {
+        statTracker.recordTransaction(fixtures.nextTransaction());
+        return statTracker;
+    }
+
+    @Benchmark
+    public StatTracker recordAmount(TransactionFixtures fixtures) {
+        statTracker.recordAmount(fixtures.nextAmount(), 0L);
+        return statTracker;
+    }
+
+    @Benchmark
+    public StatTracker mergeStatistic() {
+        statTracker.mergeStatistic(otherStatistic);
+        return statTracker;
+    }
+
+    @Benchmark
+    public AggregateTransactionStatsTracker aggregateRecordTransaction(
+            TransactionFixtures fixtures) {
+        aggregateTracker.recordTransaction(fixtures.nextTransaction());
+        return aggregateTracker;
+    }
+
+    @Benchmark
+    public AggregateTransactionStatsTracker aggregateMergeStatistic() {
+        aggregateTracker.mergeStatistic(otherAggregateTracker);
+        return aggregateTracker;
+    }
+
+    private static StatTracker newStatTracker(String statName) {
+        switch (statName) {
+        case CountStatTracker.STAT_NAME:
+            return new CountStatTracker();
+        case SumOfAmountsStatTracker.STAT_NAME:
+            return new SumOfAmountsStatTracker();
+        case MinAmountStatTracker.STAT_NAME:
+            return new MinAmountStatTracker();
+        case MaxAmountStatTracker.STAT_NAME:
+            return new MaxAmountStatTracker();
+        default:
+            throw new IllegalArgumentException("Unknown stat " + statName);
+        }
+    }
+}
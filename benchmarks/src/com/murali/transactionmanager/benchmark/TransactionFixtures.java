@@ -0,0 +1,68 @@
+package com.murali.transactionmanager.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.murali.transactionmanager.model.Transaction;
+
+/**
+ * Per-thread pool of transactions, so that creating them is not measured.
+ * Timestamps are refreshed before every iteration to stay within the
+ * recording interval of the recorder
+ */
+@State(Scope.Thread)
+public class TransactionFixtures {
+    private static final int POOL_SIZE = 1024;
+
+    private final Transaction[] transactions = new Transaction[POOL_SIZE];
+    private final double[] amounts = new double[POOL_SIZE];
+    private final long[] timestamps = new long[POOL_SIZE];
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void refresh() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < POOL_SIZE; i++) {
+            amounts[i] = random.nextDouble(-1000.0, 1000.0);
+            timestamps[i] = now - random.nextLong(5000);
+            transactions[i] = new Transaction(amounts[i], timestamps[i]);
+        }
+    }
+
+    public Transaction nextTransaction() {
+        next = (next + 1) & (POOL_SIZE - 1);
+        return transactions[next];
+    }
+
+    /**
+     * Returns the index of the next transaction in the amount and timestamp
+     * columns
+     */
+    public int nextIndex() {
+        next = (next + 1) & (POOL_SIZE - 1);
+        return next;
+    }
+
+    public double nextAmount() {
+        next = (next + 1) & (POOL_SIZE - 1);
+        return amounts[next];
+    }
+
+    public Transaction[] getTransactions() {
+        return transactions;
+    }
+
+    public double[] getAmounts() {
+        return amounts;
+    }
+
+    public long[] getTimestamps() {
+        return timestamps;
+    }
+}
@@ -0,0 +1,50 @@
+package com.murali.transactionmanager.http;
+
+import com.murali.transactionmanager.model.Transaction;
+
+/**
+ * Reusable holder of the attributes of a parsed transaction, which
+ * {@link TransactionJson} fills in place so that a request does not need a
+ * {@link Transaction} unless it has to be kept
+ */
+public final class ParsedTransaction {
+    private double amount;
+    private long timestamp;
+    private long merchantId;
+    private long accountId;
+
+    public double getAmount() {
+        return this.amount;
+    }
+
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    public long getMerchantId() {
+        return this.merchantId;
+    }
+
+    public long getAccountId() {
+        return this.accountId;
+    }
+
+    /**
+     * Returns true if the transaction has neither a merchant nor an account
+     */
+    public boolean hasNoIds() {
+        return merchantId == Transaction.NO_ID
+                && accountId == Transaction.NO_ID;
+    }
+
+    public Transaction toTransaction() {
+        return new Transaction(amount, timestamp, merchantId, accountId);
+    }
+
+    void set(double amount, long timestamp, long merchantId, long accountId) {
+        this.amount = amount;
+        this.timestamp = timestamp;
+        this.merchantId = merchantId;
+        this.accountId = accountId;
+    }
+}
@@ -0,0 +1,72 @@
+package com.murali.transactionmanager.http;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controls which threads a {@link TransactionHttpServer} handles requests on
+ */
+public enum RequestThreading {
+    /**
+     * A fixed pool of daemon threads, twice as many as there are processors.
+     * Suits short requests on few connections
+     */
+    PLATFORM_POOL {
+        @Override
+        ExecutorService newExecutor(int maxConcurrentRequests) {
+            return Executors.newFixedThreadPool(
+                    Math.min(maxConcurrentRequests,
+                            Runtime.getRuntime().availableProcessors() * 2),
+                    RequestThreading::newDaemonThread);
+        }
+    },
+
+    /**
+     * A new virtual thread per request, so that any number of connections can
+     * be served without tuning a pool. On a JVM without virtual threads, a
+     * pool of daemon threads that are stopped once idle, at most 16 per
+     * processor however many requests may run at once
+     */
+    VIRTUAL_THREADS {
+        @Override
+        ExecutorService newExecutor(int maxConcurrentRequests) {
+            try {
+                Method factory = Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                int threads = Math.min(maxConcurrentRequests,
+                        Runtime.getRuntime().availableProcessors()
+                                * FALLBACK_THREADS_PER_PROCESSOR);
+                // The queue holds no more than the requests the server lets
+                // in beyond the threads
+                ThreadPoolExecutor executor = new ThreadPoolExecutor(threads,
+                        threads, 60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(),
+                        RequestThreading::newDaemonThread);
+                executor.allowCoreThreadTimeOut(true);
+                return executor;
+            }
+        }
+    };
+
+    private static final int FALLBACK_THREADS_PER_PROCESSOR = 16;
+
+    /**
+     * Creates the executor, which the server shuts down when it is closed
+     *
+     * @param maxConcurrentRequests
+     *            number of requests the server hands to the executor at once
+     */
+    abstract ExecutorService newExecutor(int maxConcurrentRequests);
+
+    private static Thread newDaemonThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "transaction-http");
+        thread.setDaemon(true);
+        return thread;
+    }
+}
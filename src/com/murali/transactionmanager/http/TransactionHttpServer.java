@@ -0,0 +1,354 @@
+package com.murali.transactionmanager.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.Validate;
+
+import com.murali.transactionmanager.metrics.MetricsRegistry;
+import com.murali.transactionmanager.model.ReturnCode;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+import com.murali.transactionmanager.store.TransactionRecorder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the 2 Rest APIs of a {@link TransactionRecorder} on the HTTP server
+ * built into the JDK: POST /transactions records the transaction in the body
+ * and answers with the code of its {@link ReturnCode}, and GET /statistics
+ * answers with the statistics of the window.
+ *
+ * Connections are kept alive, and requests pipelined on a connection are
+ * answered in order. Requests run on the threads of a {@link RequestThreading}
+ * or of a given executor, and at most a given number of them at once, counted
+ * from when they are handed to the executor: requests waiting in its queue
+ * count too, so the queue cannot grow beyond the limit. Others are answered
+ * with 503 right away, on a thread of their own. Bodies are read into and
+ * written from buffers reused across requests, so serving a request allocates
+ * little more than the exchange itself
+ */
+public class TransactionHttpServer implements Closeable {
+    public static final String TRANSACTIONS_PATH = "/transactions";
+    public static final String STATISTICS_PATH = "/statistics";
+    public static final String METRICS_PATH = "/metrics";
+
+    /**
+     * Requests with a larger body are rejected with 413
+     */
+    public static final int MAX_BODY_BYTES = 4096;
+
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 10_000;
+
+    private static final int BACKLOG = 1024;
+    // Requests waiting to be answered with 503 before connections are closed
+    private static final int MAX_REJECTED_REQUESTS = 1024;
+
+    // Set while an exchange runs without one of the permits
+    private static final ThreadLocal<Boolean> REJECTING = new ThreadLocal<>();
+
+    private final TransactionRecorder transactionRecorder;
+    private final HttpServer httpServer;
+    private final Semaphore concurrentRequests;
+    private final Queue<RequestBuffers> freeBuffers;
+    // Only set when the server created the executor itself
+    private final ExecutorService ownExecutor;
+    private final ThreadPoolExecutor rejectingExecutor;
+
+    /**
+     * Creates a server handling requests on a
+     * {@link RequestThreading#PLATFORM_POOL}
+     */
+    public TransactionHttpServer(TransactionRecorder transactionRecorder,
+            InetSocketAddress address) throws IOException {
+        this(transactionRecorder, address, RequestThreading.PLATFORM_POOL,
+                DEFAULT_MAX_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * @param transactionRecorder
+     * @param address
+     * @param requestThreading
+     * @param maxConcurrentRequests
+     *            number of requests handled at once, beyond which requests
+     *            are answered with 503
+     */
+    public TransactionHttpServer(TransactionRecorder transactionRecorder,
+            InetSocketAddress address, RequestThreading requestThreading,
+            int maxConcurrentRequests) throws IOException {
+        this(transactionRecorder, address,
+                validThreading(requestThreading).newExecutor(
+                        validMaxConcurrentRequests(maxConcurrentRequests)),
+                true, maxConcurrentRequests);
+    }
+
+    /**
+     * Creates a server handling requests on the given executor, which is left
+     * running when the server is closed
+     */
+    public TransactionHttpServer(TransactionRecorder transactionRecorder,
+            InetSocketAddress address, Executor executor,
+            int maxConcurrentRequests) throws IOException {
+        this(transactionRecorder, address, executor, false,
+                maxConcurrentRequests);
+    }
+
+    private TransactionHttpServer(TransactionRecorder transactionRecorder,
+            InetSocketAddress address, Executor executor, boolean ownsExecutor,
+            int maxConcurrentRequests) throws IOException {
+        Validate.notNull(transactionRecorder,
+                "transactionRecorder must not be null");
+        Validate.notNull(address, "address must not be null");
+        Validate.notNull(executor, "executor must not be null");
+        validMaxConcurrentRequests(maxConcurrentRequests);
+
+        this.transactionRecorder = transactionRecorder;
+        this.concurrentRequests = new Semaphore(maxConcurrentRequests);
+        this.freeBuffers = new ConcurrentLinkedQueue<>();
+        this.ownExecutor = ownsExecutor ? (ExecutorService) executor : null;
+        this.rejectingExecutor = new ThreadPoolExecutor(1, 1, 0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_REJECTED_REQUESTS), runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "transaction-http-rejecting");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.httpServer = HttpServer.create(address, BACKLOG);
+        this.httpServer.setExecutor(limited(executor));
+        this.httpServer.createContext(TRANSACTIONS_PATH,
+                limited(this::handleTransaction));
+        this.httpServer.createContext(STATISTICS_PATH,
+                limited(this::handleStatistics));
+    }
+
+    public void start() {
+        httpServer.start();
+    }
+
+    /**
+     * Serves the metrics of the registry in the Prometheus text format at
+     * GET /metrics. Scrapes are served even beyond the concurrent requests
+     */
+    public void exposeMetrics(MetricsRegistry metricsRegistry) {
+        Validate.notNull(metricsRegistry, "metricsRegistry must not be null");
+
+        httpServer.createContext(METRICS_PATH, exchange -> {
+            try {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+
+                byte[] body = metricsRegistry.toPrometheusText()
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type",
+                        MetricsRegistry.PROMETHEUS_CONTENT_TYPE);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    /**
+     * Returns the address the server listens on, with the actual port if it
+     * was created with port 0
+     */
+    public InetSocketAddress getAddress() {
+        return httpServer.getAddress();
+    }
+
+    /**
+     * Stops accepting requests and closes the connections, without waiting for
+     * exchanges in progress
+     */
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        rejectingExecutor.shutdown();
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Wraps the executor so that an exchange takes one of the permits of the
+     * concurrent requests when it is handed to the executor, and gives it back
+     * once it has run. An exchange without a permit runs on the rejecting
+     * thread instead, where its handler answers 503. Beyond
+     * {@link #MAX_REJECTED_REQUESTS} waiting there, the executor throws and
+     * the HTTP server closes the connection
+     */
+    private Executor limited(Executor executor) {
+        return exchange -> {
+            if (!concurrentRequests.tryAcquire()) {
+                rejectingExecutor.execute(() -> {
+                    REJECTING.set(Boolean.TRUE);
+                    try {
+                        exchange.run();
+                    } finally {
+                        REJECTING.remove();
+                    }
+                });
+                return;
+            }
+
+            try {
+                executor.execute(() -> {
+                    try {
+                        exchange.run();
+                    } finally {
+                        concurrentRequests.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                concurrentRequests.release();
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Wraps the handler so that it answers 503 without a permit of the
+     * concurrent requests, and otherwise runs with a set of buffers
+     */
+    private HttpHandler limited(RequestHandler handler) {
+        return exchange -> {
+            if (REJECTING.get() != null) {
+                try {
+                    exchange.sendResponseHeaders(503, -1);
+                } finally {
+                    exchange.close();
+                }
+                return;
+            }
+
+            RequestBuffers buffers = freeBuffers.poll();
+            if (buffers == null) {
+                buffers = new RequestBuffers();
+            }
+            try {
+                handler.handle(exchange, buffers);
+            } finally {
+                exchange.close();
+                freeBuffers.offer(buffers);
+            }
+        };
+    }
+
+    private void handleTransaction(HttpExchange exchange,
+            RequestBuffers buffers) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+
+        byte[] buffer = buffers.body;
+        int length = readBody(exchange.getRequestBody(), buffer);
+        if (length > MAX_BODY_BYTES) {
+            exchange.sendResponseHeaders(413, -1);
+            return;
+        }
+
+        ParsedTransaction transaction;
+        try {
+            transaction = TransactionJson.parseTransaction(buffer, length,
+                    buffers.transaction);
+        } catch (IllegalArgumentException e) {
+            exchange.sendResponseHeaders(ReturnCode.BAD_REQUEST.getValue(),
+                    -1);
+            return;
+        }
+        // Without ids, the amount and timestamp are all the recorder needs
+        ReturnCode returnCode = transaction.hasNoIds()
+                ? transactionRecorder.record(transaction.getAmount(),
+                        transaction.getTimestamp())
+                : transactionRecorder.record(transaction.toTransaction());
+        exchange.sendResponseHeaders(returnCode.getValue(), -1);
+    }
+
+    private void handleStatistics(HttpExchange exchange,
+            RequestBuffers buffers) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+
+        StatisticsSnapshot snapshot = transactionRecorder
+                .getStatistics(buffers.snapshot);
+        byte[] buffer = buffers.body;
+        int length = TransactionJson.writeStatistics(snapshot, buffer);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Reads the body into the buffer, stopping one byte past
+     * {@link #MAX_BODY_BYTES}, and drains whatever is left so that the
+     * connection can be reused
+     *
+     * @return the number of bytes read
+     */
+    private static int readBody(InputStream body, byte[] buffer)
+            throws IOException {
+        int length = 0;
+        int read;
+        while (length < buffer.length
+                && (read = body.read(buffer, length,
+                        buffer.length - length)) > 0) {
+            length += read;
+        }
+        while (body.read(buffer, 0, buffer.length) > 0) {
+            // Oversized body, rejected by the caller
+        }
+        return length;
+    }
+
+    private static RequestThreading validThreading(
+            RequestThreading requestThreading) {
+        Validate.notNull(requestThreading,
+                "requestThreading must not be null");
+        return requestThreading;
+    }
+
+    private static int validMaxConcurrentRequests(int maxConcurrentRequests) {
+        Validate.isTrue(maxConcurrentRequests > 0,
+                "maxConcurrentRequests must be positive");
+        return maxConcurrentRequests;
+    }
+
+    private interface RequestHandler {
+        void handle(HttpExchange exchange, RequestBuffers buffers)
+                throws IOException;
+    }
+
+    /**
+     * Buffers of a request in progress. There are never more of them than
+     * requests handled at once
+     */
+    private static final class RequestBuffers {
+        final byte[] body = new byte[MAX_BODY_BYTES + 1];
+        final StatisticsSnapshot snapshot = new StatisticsSnapshot();
+        final ParsedTransaction transaction = new ParsedTransaction();
+    }
+}
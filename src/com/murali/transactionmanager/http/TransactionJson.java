@@ -0,0 +1,432 @@
+package com.murali.transactionmanager.http;
+
+import java.nio.charset.StandardCharsets;
+
+import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.statistics.impl.AggregateTransactionStatsTracker;
+import com.murali.transactionmanager.statistics.impl.CountStatTracker;
+import com.murali.transactionmanager.statistics.impl.MaxAmountStatTracker;
+import com.murali.transactionmanager.statistics.impl.MinAmountStatTracker;
+import com.murali.transactionmanager.statistics.impl.QuantileStatTracker;
+import com.murali.transactionmanager.statistics.impl.SumOfAmountsStatTracker;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+
+/**
+ * JSON codec of the two payloads of the REST APIs, working directly on the
+ * bytes of the request and response bodies: a transaction is parsed from
+ * {"amount": 12.3, "timestamp": 1478192204000} (with optional "merchantId"
+ * and "accountId"; other members are skipped), and statistics are written as
+ * {"sum": .., "avg": .., "max": .., "min": .., "count": ..}, with the
+ * quantiles when the snapshot has them.
+ *
+ * Amounts with up to 15 significant digits are converted without creating a
+ * string, exactly as {@link Double#parseDouble(String)} would; others fall
+ * back to it
+ */
+public final class TransactionJson {
+    /**
+     * Upper bound of the length of the statistics written by
+     * {@link #writeStatistics(StatisticsSnapshot, byte[])}
+     */
+    public static final int MAX_STATISTICS_BYTES = 512;
+
+    // Powers of ten that are exact doubles
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+            1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+            1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private static final byte[] NULL = ascii("null");
+
+    private TransactionJson() {
+    }
+
+    /**
+     * Parses the transaction in the first length bytes of the body
+     *
+     * @throws IllegalArgumentException
+     *             if the body is not a transaction
+     */
+    public static Transaction parseTransaction(byte[] body, int length) {
+        return parseTransaction(body, length, new ParsedTransaction())
+                .toTransaction();
+    }
+
+    /**
+     * Parses the transaction in the first length bytes of the body into the
+     * given holder, without creating a {@link Transaction}
+     *
+     * @return the given holder
+     * @throws IllegalArgumentException
+     *             if the body is not a transaction, or its timestamp is not
+     *             positive
+     */
+    public static ParsedTransaction parseTransaction(byte[] body, int length,
+            ParsedTransaction transaction) {
+        Parser parser = new Parser(body, length);
+        double amount = Double.NaN;
+        long timestamp = 0;
+        long merchantId = Transaction.NO_ID;
+        long accountId = Transaction.NO_ID;
+        boolean hasTimestamp = false;
+
+        parser.expect('{');
+        if (!parser.consume('}')) {
+            do {
+                int nameStart = parser.string();
+                int nameEnd = parser.position - 1;
+                parser.expect(':');
+                if (parser.nameIs(nameStart, nameEnd, "amount")) {
+                    amount = parser.number();
+                } else if (parser.nameIs(nameStart, nameEnd, "timestamp")) {
+                    timestamp = parser.integer();
+                    hasTimestamp = true;
+                } else if (parser.nameIs(nameStart, nameEnd, "merchantId")) {
+                    merchantId = parser.integer();
+                } else if (parser.nameIs(nameStart, nameEnd, "accountId")) {
+                    accountId = parser.integer();
+                } else {
+                    parser.skipValue();
+                }
+            } while (parser.consume(','));
+            parser.expect('}');
+        }
+        parser.end();
+
+        if (Double.isNaN(amount) || !hasTimestamp) {
+            throw new IllegalArgumentException(
+                    "amount and timestamp are required");
+        } else if (timestamp <= 0) {
+            throw new IllegalArgumentException("timestamp must be positive");
+        } else if (Double.isInfinite(amount)) {
+            throw new IllegalArgumentException("amount must be finite");
+        }
+        transaction.set(amount, timestamp, merchantId, accountId);
+        return transaction;
+    }
+
+    /**
+     * Writes the statistics into the buffer, which must hold at least
+     * {@link #MAX_STATISTICS_BYTES}
+     *
+     * @return the number of bytes written
+     */
+    public static int writeStatistics(StatisticsSnapshot snapshot,
+            byte[] buffer) {
+        boolean hasTransactions = snapshot.getCount() > 0;
+
+        int position = 0;
+        buffer[position++] = '{';
+        position = writeName(buffer, position,
+                SumOfAmountsStatTracker.STAT_NAME);
+        position = writeDouble(buffer, position, snapshot.getSum());
+        position = writeName(buffer, position,
+                AggregateTransactionStatsTracker.AVG_STAT_NAME);
+        position = writeDouble(buffer, position, snapshot.getAvg());
+        position = writeName(buffer, position, MaxAmountStatTracker.STAT_NAME);
+        position = writeDouble(buffer, position,
+                hasTransactions ? snapshot.getMax() : Double.NaN);
+        position = writeName(buffer, position, MinAmountStatTracker.STAT_NAME);
+        position = writeDouble(buffer, position,
+                hasTransactions ? snapshot.getMin() : Double.NaN);
+        position = writeName(buffer, position, CountStatTracker.STAT_NAME);
+        position = writeLong(buffer, position, snapshot.getCount());
+
+        if (!Double.isNaN(snapshot.getP50())) {
+            position = writeName(buffer, position,
+                    QuantileStatTracker.P50_STAT_NAME);
+            position = writeDouble(buffer, position, snapshot.getP50());
+            position = writeName(buffer, position,
+                    QuantileStatTracker.P95_STAT_NAME);
+            position = writeDouble(buffer, position, snapshot.getP95());
+            position = writeName(buffer, position,
+                    QuantileStatTracker.P99_STAT_NAME);
+            position = writeDouble(buffer, position, snapshot.getP99());
+            position = writeName(buffer, position,
+                    QuantileStatTracker.P999_STAT_NAME);
+            position = writeDouble(buffer, position, snapshot.getP999());
+        }
+        buffer[position++] = '}';
+        return position;
+    }
+
+    private static int writeName(byte[] buffer, int position, String name) {
+        if (buffer[position - 1] != '{') {
+            buffer[position++] = ',';
+        }
+        buffer[position++] = '"';
+        for (int i = 0; i < name.length(); i++) {
+            buffer[position++] = (byte) name.charAt(i);
+        }
+        buffer[position++] = '"';
+        buffer[position++] = ':';
+        return position;
+    }
+
+    private static int writeDouble(byte[] buffer, int position, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            System.arraycopy(NULL, 0, buffer, position, NULL.length);
+            return position + NULL.length;
+        }
+        if (value == (long) value && Math.abs(value) < 1e15) {
+            // Integral amounts are the common case and need no string
+            position = writeLong(buffer, position, (long) value);
+            buffer[position++] = '.';
+            buffer[position++] = '0';
+            return position;
+        }
+        String text = Double.toString(value);
+        for (int i = 0; i < text.length(); i++) {
+            buffer[position++] = (byte) text.charAt(i);
+        }
+        return position;
+    }
+
+    private static int writeLong(byte[] buffer, int position, long value) {
+        if (value == Long.MIN_VALUE) {
+            byte[] text = ascii(Long.toString(value));
+            System.arraycopy(text, 0, buffer, position, text.length);
+            return position + text.length;
+        }
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Cursor over the bytes of a JSON document
+     */
+    private static final class Parser {
+        private final byte[] bytes;
+        private final int length;
+        private int position;
+
+        Parser(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        void expect(char c) {
+            if (!consume(c)) {
+                throw error("expected '" + c + "'");
+            }
+        }
+
+        boolean consume(char c) {
+            skipWhitespace();
+            if (position < length && bytes[position] == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        void end() {
+            skipWhitespace();
+            if (position != length) {
+                throw error("trailing characters");
+            }
+        }
+
+        /**
+         * Reads a string and returns the position of its first character;
+         * the position is then past its closing quote
+         */
+        int string() {
+            expect('"');
+            int start = position;
+            while (position < length && bytes[position] != '"') {
+                if (bytes[position] == '\\') {
+                    position++;
+                }
+                position++;
+            }
+            if (position >= length) {
+                throw error("unterminated string");
+            }
+            position++;
+            return start;
+        }
+
+        boolean nameIs(int start, int end, String name) {
+            if (end - start != name.length()) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (bytes[start + i] != name.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long integer() {
+            skipWhitespace();
+            boolean negative = position < length && bytes[position] == '-';
+            if (negative) {
+                position++;
+            }
+
+            int start = position;
+            long value = 0;
+            while (position < length && isDigit(bytes[position])) {
+                int digit = bytes[position++] - '0';
+                if (value > (Long.MAX_VALUE - digit) / 10) {
+                    throw error("integer too large");
+                }
+                value = value * 10 + digit;
+            }
+            if (position == start) {
+                throw error("expected an integer");
+            }
+            return negative ? -value : value;
+        }
+
+        double number() {
+            skipWhitespace();
+            int start = position;
+            boolean negative = position < length && bytes[position] == '-';
+            if (negative) {
+                position++;
+            }
+
+            long mantissa = 0;
+            int significantDigits = 0;
+            int exponent = 0;
+            int digits = 0;
+            for (; position < length && isDigit(bytes[position]); position++) {
+                int digit = bytes[position] - '0';
+                digits++;
+                if (mantissa != 0 || digit != 0) {
+                    significantDigits++;
+                }
+                if (significantDigits <= MAX_EXACT_DIGITS) {
+                    mantissa = mantissa * 10 + digit;
+                }
+            }
+            if (position < length && bytes[position] == '.') {
+                position++;
+                for (; position < length
+                        && isDigit(bytes[position]); position++) {
+                    int digit = bytes[position] - '0';
+                    digits++;
+                    if (mantissa != 0 || digit != 0) {
+                        significantDigits++;
+                    }
+                    if (significantDigits <= MAX_EXACT_DIGITS) {
+                        mantissa = mantissa * 10 + digit;
+                        exponent--;
+                    }
+                }
+            }
+            if (digits == 0) {
+                throw error("expected a number");
+            }
+            if (position < length
+                    && (bytes[position] == 'e' || bytes[position] == 'E')) {
+                position++;
+                boolean negativeExponent = false;
+                if (position < length
+                        && (bytes[position] == '+' || bytes[position] == '-')) {
+                    negativeExponent = bytes[position++] == '-';
+                }
+                int exponentStart = position;
+                int explicitExponent = 0;
+                for (; position < length
+                        && isDigit(bytes[position]); position++) {
+                    explicitExponent = Math.min(explicitExponent * 10
+                            + (bytes[position] - '0'), 10_000);
+                }
+                if (position == exponentStart) {
+                    throw error("expected an exponent");
+                }
+                exponent += negativeExponent ? -explicitExponent
+                        : explicitExponent;
+            }
+
+            // Both the mantissa and the power of ten are exact doubles, so
+            // a single multiplication or division rounds correctly
+            if (significantDigits <= MAX_EXACT_DIGITS
+                    && exponent >= -22 && exponent <= 22) {
+                double value = (exponent < 0)
+                        ? mantissa / POWERS_OF_TEN[-exponent]
+                        : mantissa * POWERS_OF_TEN[exponent];
+                return negative ? -value : value;
+            }
+            return Double.parseDouble(new String(bytes, start,
+                    position - start, StandardCharsets.US_ASCII));
+        }
+
+        /**
+         * Skips a value of any type
+         */
+        void skipValue() {
+            skipWhitespace();
+            if (position >= length) {
+                throw error("expected a value");
+            }
+
+            byte first = bytes[position];
+            if (first == '"') {
+                string();
+            } else if (first == '{' || first == '[') {
+                int depth = 0;
+                do {
+                    if (position >= length) {
+                        throw error("unterminated value");
+                    }
+                    byte c = bytes[position];
+                    if (c == '"') {
+                        string();
+                        continue;
+                    } else if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (c == '}' || c == ']') {
+                        depth--;
+                    }
+                    position++;
+                } while (depth > 0);
+            } else if (first == '-' || isDigit(first)) {
+                number();
+            } else {
+                while (position < length && bytes[position] >= 'a'
+                        && bytes[position] <= 'z') {
+                    position++;
+                }
+            }
+        }
+
+        private void skipWhitespace() {
+            while (position < length && (bytes[position] == ' '
+                    || bytes[position] == '\n' || bytes[position] == '\r'
+                    || bytes[position] == '\t')) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(
+                    message + " at position " + position);
+        }
+
+        private static boolean isDigit(byte c) {
+            return c >= '0' && c <= '9';
+        }
+    }
+}
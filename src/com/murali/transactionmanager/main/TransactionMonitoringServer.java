@@ -0,0 +1,47 @@
+package com.murali.transactionmanager.main;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+
+import javax.management.JMException;
+
+import com.murali.transactionmanager.http.RequestThreading;
+import com.murali.transactionmanager.http.TransactionHttpServer;
+import com.murali.transactionmanager.metrics.MetricsRegistry;
+import com.murali.transactionmanager.store.EventTimePolicy;
+import com.murali.transactionmanager.store.RecordingWindow;
+import com.murali.transactionmanager.store.RetentionMode;
+import com.murali.transactionmanager.store.impl.InMemoryTransactionRecorder;
+
+/**
+ * Serves the 2 Rest APIs of an {@link InMemoryTransactionRecorder} on the
+ * port given as the first argument, 8080 by default, handling each request on
+ * a virtual thread and at most the number given as the second argument at once.
+ * The metrics of the recorder are served at /metrics and registered in JMX
+ */
+public class TransactionMonitoringServer {
+    private static final int DEFAULT_PORT = 8080;
+
+    public static void main(String args[]) throws IOException, JMException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0])
+                : DEFAULT_PORT;
+        int maxConcurrentRequests = (args.length > 1)
+                ? Integer.parseInt(args[1])
+                : TransactionHttpServer.DEFAULT_MAX_CONCURRENT_REQUESTS;
+
+        MetricsRegistry metricsRegistry = new MetricsRegistry("recorder");
+        metricsRegistry.registerMBean();
+        InMemoryTransactionRecorder recorder = new InMemoryTransactionRecorder(
+                Collections.singletonList(RecordingWindow.ONE_MINUTE_BY_SECOND),
+                RetentionMode.AGGREGATES_ONLY, false, EventTimePolicy.DEFAULT,
+                System::currentTimeMillis, metricsRegistry);
+
+        TransactionHttpServer server = new TransactionHttpServer(recorder,
+                new InetSocketAddress(port), RequestThreading.VIRTUAL_THREADS,
+                maxConcurrentRequests);
+        server.exposeMetrics(metricsRegistry);
+        server.start();
+        System.out.println("Listening on " + server.getAddress());
+    }
+}
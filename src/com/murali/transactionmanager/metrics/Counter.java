@@ -0,0 +1,43 @@
+package com.murali.transactionmanager.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count that only goes up. Increments are striped over the cells of a
+ * {@link LongAdder}, so concurrent writers do not contend on a single value
+ */
+public class Counter extends Metric {
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name, String help, String labelName, String labelValue) {
+        super(name, help, labelName, labelValue);
+    }
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+
+    @Override
+    String getType() {
+        return "counter";
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        writeSample(out, "", null, null, Long.toString(get()));
+    }
+
+    @Override
+    void putAttributes(Map<String, Object> attributes) {
+        attributes.put(getAttributeName(), get());
+    }
+}
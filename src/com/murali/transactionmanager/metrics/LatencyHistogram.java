@@ -0,0 +1,146 @@
+package com.murali.transactionmanager.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in nanoseconds, with log-linear buckets like an HDR
+ * histogram: each power of two is split into 8 buckets, so a duration is
+ * known within 12.5% up to more than an hour, and recording is a few shifts
+ * and an increment of a {@link LongAdder}. Exported in seconds, with a
+ * Prometheus bucket per power of two of nanoseconds from about 1 microsecond
+ */
+public class LatencyHistogram extends Metric {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 41;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2)
+            * SUB_BUCKETS;
+    private static final int MIN_EXPORTED_EXPONENT = 10;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder totalNanos = new LongAdder();
+
+    LatencyHistogram(String name, String help) {
+        super(name, help, null, null);
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a duration; a negative one is recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        buckets[indexOf(value)].increment();
+        totalNanos.add(value);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * Returns the highest duration of the bucket that holds the quantile, or
+     * 0 if nothing was recorded
+     *
+     * @param quantile
+     *            between 0 and 1
+     */
+    public long getValueAtQuantile(double quantile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return lowerBoundOf(i + 1) - 1;
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    @Override
+    String getType() {
+        return "histogram";
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        long cumulative = 0;
+        int bucket = 0;
+        for (int exponent = MIN_EXPORTED_EXPONENT;
+                exponent <= MAX_EXPONENT; exponent++) {
+            // Durations below 2^exponent
+            int end = indexOf(1L << exponent);
+            for (; bucket < end; bucket++) {
+                cumulative += buckets[bucket].sum();
+            }
+            writeSample(out, "_bucket", "le",
+                    Double.toString((1L << exponent) / NANOS_PER_SECOND),
+                    Long.toString(cumulative));
+        }
+        for (; bucket < BUCKETS; bucket++) {
+            cumulative += buckets[bucket].sum();
+        }
+        writeSample(out, "_bucket", "le", "+Inf", Long.toString(cumulative));
+        writeSample(out, "_sum", null, null,
+                Double.toString(getTotalNanos() / NANOS_PER_SECOND));
+        writeSample(out, "_count", null, null, Long.toString(cumulative));
+    }
+
+    @Override
+    void putAttributes(Map<String, Object> attributes) {
+        String name = getAttributeName();
+        attributes.put(name + ".count", getCount());
+        attributes.put(name + ".p50Nanos", getValueAtQuantile(0.5));
+        attributes.put(name + ".p99Nanos", getValueAtQuantile(0.99));
+        attributes.put(name + ".p999Nanos", getValueAtQuantile(0.999));
+    }
+
+    /**
+     * Values below 8 have a bucket each; from there, each power of two has 8
+     * buckets, told apart by the 3 bits below its highest bit
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS))
+                & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the lowest value of the bucket
+     */
+    static long lowerBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+}
@@ -0,0 +1,114 @@
+package com.murali.transactionmanager.metrics;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * A metric of a {@link MetricsRegistry}: a name shared by the metrics of a
+ * family, and at most one label that tells the metrics of a family apart
+ */
+abstract class Metric {
+    private static final Pattern NAME = Pattern
+            .compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+
+    private final String name;
+    private final String help;
+    private final String labelName;
+    private final String labelValue;
+
+    /**
+     * @param labelName
+     *            null for a metric without label
+     * @param labelValue
+     */
+    Metric(String name, String help, String labelName, String labelValue) {
+        Validate.isTrue(name != null && NAME.matcher(name).matches(),
+                "invalid metric name: " + name);
+        Validate.notNull(help, "help is null");
+        Validate.isTrue((labelName == null) == (labelValue == null),
+                "labelName and labelValue must both be given or both be null");
+
+        this.name = name;
+        this.help = help;
+        this.labelName = labelName;
+        this.labelValue = labelValue;
+    }
+
+    String getName() {
+        return this.name;
+    }
+
+    String getHelp() {
+        return this.help;
+    }
+
+    String getLabelValue() {
+        return this.labelValue;
+    }
+
+    /**
+     * Returns the name of the metric as a JMX attribute, which has its label
+     * value appended
+     */
+    String getAttributeName() {
+        return (labelValue == null) ? name : name + "." + labelValue;
+    }
+
+    /**
+     * Returns the Prometheus type of the metric
+     */
+    abstract String getType();
+
+    /**
+     * Appends the samples of the metric in the Prometheus text format
+     */
+    abstract void writeSamples(StringBuilder out);
+
+    /**
+     * Puts the values of the metric as JMX attributes
+     */
+    abstract void putAttributes(Map<String, Object> attributes);
+
+    /**
+     * Appends a sample with the label of the metric and optionally another one
+     *
+     * @param extraLabelName
+     *            null for no other label
+     */
+    void writeSample(StringBuilder out, String suffix, String extraLabelName,
+            String extraLabelValue, String value) {
+        out.append(name).append(suffix);
+        if (labelName != null || extraLabelName != null) {
+            out.append('{');
+            if (labelName != null) {
+                appendLabel(out, labelName, labelValue);
+                if (extraLabelName != null) {
+                    out.append(',');
+                }
+            }
+            if (extraLabelName != null) {
+                appendLabel(out, extraLabelName, extraLabelValue);
+            }
+            out.append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static void appendLabel(StringBuilder out, String name,
+            String value) {
+        out.append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,108 @@
+package com.murali.transactionmanager.metrics;
+
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanConstructorInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Read-only MBean with an attribute per value of the metrics of a
+ * {@link MetricsRegistry}, plus Enabled to toggle the registry
+ */
+class MetricsMBean implements DynamicMBean {
+    private static final String ENABLED_ATTRIBUTE = "Enabled";
+
+    private final MetricsRegistry registry;
+
+    MetricsMBean(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object getAttribute(String attribute)
+            throws AttributeNotFoundException {
+        if (ENABLED_ATTRIBUTE.equals(attribute)) {
+            return registry.isEnabled();
+        }
+        Object value = registry.getAttributes().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute)
+            throws AttributeNotFoundException {
+        if (!ENABLED_ATTRIBUTE.equals(attribute.getName())
+                || !(attribute.getValue() instanceof Boolean)) {
+            throw new AttributeNotFoundException(attribute.getName());
+        }
+        registry.setEnabled((Boolean) attribute.getValue());
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Object> values = registry.getAttributes();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            if (ENABLED_ATTRIBUTE.equals(attribute)) {
+                list.add(new Attribute(attribute, registry.isEnabled()));
+            } else if (values.containsKey(attribute)) {
+                list.add(new Attribute(attribute, values.get(attribute)));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        AttributeList set = new AttributeList();
+        for (Attribute attribute : attributes.asList()) {
+            try {
+                setAttribute(attribute);
+                set.add(attribute);
+            } catch (AttributeNotFoundException e) {
+                // Left out of the attributes that were set
+            }
+        }
+        return set;
+    }
+
+    /**
+     * The MBean has no operations
+     */
+    @Override
+    public Object invoke(String actionName, Object[] params,
+            String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Object> values = registry.getAttributes();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()
+                + 1];
+        attributes[0] = new MBeanAttributeInfo(ENABLED_ATTRIBUTE,
+                Boolean.class.getName(), "Whether metrics are measured", true,
+                true, false);
+        int i = 1;
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            attributes[i++] = new MBeanAttributeInfo(value.getKey(),
+                    value.getValue().getClass().getName(), value.getKey(),
+                    true, false, false);
+        }
+        return new MBeanInfo(getClass().getName(),
+                "Metrics of " + registry.getName(), attributes,
+                new MBeanConstructorInfo[0], new MBeanOperationInfo[0],
+                new MBeanNotificationInfo[0]);
+    }
+}
@@ -0,0 +1,155 @@
+package com.murali.transactionmanager.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.DoubleSupplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Named set of metrics, exported in the Prometheus text format and as the
+ * attributes of a JMX MBean.
+ *
+ * Instrumented code checks {@link #isEnabled()} before it measures anything,
+ * so a disabled registry costs the instrumented paths a single volatile read;
+ * metrics sampled from their source keep being exported either way
+ */
+public class MetricsRegistry {
+    public static final String JMX_DOMAIN = "com.murali.transactionmanager";
+    public static final String PROMETHEUS_CONTENT_TYPE = "text/plain; "
+            + "version=0.0.4";
+
+    private final String name;
+    private final List<Metric> metrics = new CopyOnWriteArrayList<>();
+    private volatile boolean enabled = true;
+
+    public MetricsRegistry(String name) {
+        Validate.notEmpty(name, "name is empty");
+        this.name = name;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Counter counter(String name, String help) {
+        return register(new Counter(name, help, null, null));
+    }
+
+    /**
+     * Registers a counter of a family told apart by the value of a label
+     */
+    public Counter counter(String name, String help, String labelName,
+            String labelValue) {
+        return register(new Counter(name, help, labelName, labelValue));
+    }
+
+    /**
+     * Registers a counter whose value is sampled from its source
+     */
+    public void counter(String name, String help, DoubleSupplier value) {
+        register(new SampledMetric(name, help, "counter", value));
+    }
+
+    /**
+     * Registers a gauge whose value is sampled from its source
+     */
+    public void gauge(String name, String help, DoubleSupplier value) {
+        register(new SampledMetric(name, help, "gauge", value));
+    }
+
+    public LatencyHistogram histogram(String name, String help) {
+        return register(new LatencyHistogram(name, help));
+    }
+
+    /**
+     * Returns the metrics in the Prometheus text format, the metrics of a
+     * family together
+     */
+    public String toPrometheusText() {
+        Map<String, List<Metric>> families = new LinkedHashMap<>();
+        for (Metric metric : metrics) {
+            families.computeIfAbsent(metric.getName(), k -> new ArrayList<>())
+                    .add(metric);
+        }
+
+        StringBuilder out = new StringBuilder();
+        for (List<Metric> family : families.values()) {
+            Metric first = family.get(0);
+            out.append("# HELP ").append(first.getName()).append(' ')
+                    .append(first.getHelp().replace("\\", "\\\\")
+                            .replace("\n", "\\n"))
+                    .append('\n');
+            out.append("# TYPE ").append(first.getName()).append(' ')
+                    .append(first.getType()).append('\n');
+            for (Metric metric : family) {
+                metric.writeSamples(out);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Returns the values of the metrics by their JMX attribute names
+     */
+    public Map<String, Object> getAttributes() {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        for (Metric metric : metrics) {
+            metric.putAttributes(attributes);
+        }
+        return attributes;
+    }
+
+    /**
+     * Registers an MBean with the metrics as attributes in the platform MBean
+     * server, named after the registry
+     *
+     * @return the name of the MBean
+     */
+    public ObjectName registerMBean() throws JMException {
+        ObjectName objectName = getObjectName();
+        ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(new MetricsMBean(this), objectName);
+        return objectName;
+    }
+
+    public void unregisterMBean() throws JMException {
+        ManagementFactory.getPlatformMBeanServer()
+                .unregisterMBean(getObjectName());
+    }
+
+    private ObjectName getObjectName() throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=Metrics,name="
+                + ObjectName.quote(name));
+    }
+
+    private synchronized <T extends Metric> T register(T metric) {
+        for (Metric registered : metrics) {
+            Validate.isTrue(!registered.getAttributeName()
+                    .equals(metric.getAttributeName()),
+                    "metric already registered: "
+                            + metric.getAttributeName());
+            Validate.isTrue(!registered.getName().equals(metric.getName())
+                    || registered.getType().equals(metric.getType()),
+                    "metric registered with another type: "
+                            + metric.getName());
+        }
+        metrics.add(metric);
+        return metric;
+    }
+}
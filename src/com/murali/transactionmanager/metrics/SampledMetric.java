@@ -0,0 +1,40 @@
+package com.murali.transactionmanager.metrics;
+
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Metric whose value is sampled from its source when it is exported, e.g. a
+ * size or a total kept by the instrumented object itself
+ */
+class SampledMetric extends Metric {
+    private final String type;
+    private final DoubleSupplier value;
+
+    SampledMetric(String name, String help, String type,
+            DoubleSupplier value) {
+        super(name, help, null, null);
+        Validate.notNull(value, "value is null");
+
+        this.type = type;
+        this.value = value;
+    }
+
+    @Override
+    String getType() {
+        return type;
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        writeSample(out, "", null, null,
+                Double.toString(value.getAsDouble()));
+    }
+
+    @Override
+    void putAttributes(Map<String, Object> attributes) {
+        attributes.put(getAttributeName(), value.getAsDouble());
+    }
+}
@@ -0,0 +1,26 @@
+package com.murali.transactionmanager.model;
+
+/**
+ * Attribute of a {@link Transaction} that statistics can be kept per value of
+ */
+public enum KeyDimension {
+    MERCHANT {
+        @Override
+        public long keyOf(Transaction transaction) {
+            return transaction.getMerchantId();
+        }
+    },
+
+    ACCOUNT {
+        @Override
+        public long keyOf(Transaction transaction) {
+            return transaction.getAccountId();
+        }
+    };
+
+    /**
+     * Returns the key of the transaction in this dimension, or
+     * {@link Transaction#NO_ID} if it has none
+     */
+    public abstract long keyOf(Transaction transaction);
+}
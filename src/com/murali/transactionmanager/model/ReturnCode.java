@@ -1,10 +1,14 @@
 package com.murali.transactionmanager.model;
 
 /**
- * Contains return code that will be returned by this service's APIs
+ * Contains return code that will be returned by this service's APIs.
+ * {@link #LATE_TRANSACTION} is a transaction within the window but later than
+ * the allowed lateness, and {@link #FUTURE_TRANSACTION} one further ahead of
+ * the clock than the allowed skew
  */
 public enum ReturnCode {
-    SUCCESS(201), OLD_TRANSACTION(204), BAD_REQUEST(400);
+    SUCCESS(201), OLD_TRANSACTION(204), LATE_TRANSACTION(204),
+    FUTURE_TRANSACTION(422), BAD_REQUEST(400);
 
     private int value;
 
@@ -6,14 +6,28 @@ import org.apache.commons.lang.Validate;
  * Contains attributes of a transaction
  */
 public class Transaction {
+    /**
+     * Id of a merchant or account that is not known
+     */
+    public static final long NO_ID = 0;
+
     private double amount;
     private long timestamp;
+    private long merchantId;
+    private long accountId;
 
     public Transaction(double amount, long timestamp) {
+        this(amount, timestamp, NO_ID, NO_ID);
+    }
+
+    public Transaction(double amount, long timestamp, long merchantId,
+            long accountId) {
         Validate.isTrue(timestamp > 0, "timestamp is null");
 
         this.amount = amount;
         this.timestamp = timestamp;
+        this.merchantId = merchantId;
+        this.accountId = accountId;
     }
 
     public long getTimestamp() {
@@ -24,8 +38,17 @@ public class Transaction {
         return this.amount;
     }
 
+    public long getMerchantId() {
+        return this.merchantId;
+    }
+
+    public long getAccountId() {
+        return this.accountId;
+    }
+
     @Override
     public String toString() {
-        return "Amount: " + amount + " timestamp: " + timestamp;
+        return "Amount: " + amount + " timestamp: " + timestamp
+                + " merchantId: " + merchantId + " accountId: " + accountId;
     }
 }
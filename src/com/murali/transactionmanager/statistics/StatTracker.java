@@ -1,5 +1,7 @@
 package com.murali.transactionmanager.statistics;
 
+import org.apache.commons.lang.Validate;
+
 import com.murali.transactionmanager.model.Transaction;
 import com.murali.transactionmanager.statistics.model.Statistic;
 
@@ -25,7 +27,19 @@ public interface StatTracker {
      * 
      * @param transaction
      */
-    void recordTransaction(Transaction transaction);
+    default void recordTransaction(Transaction transaction) {
+        Validate.notNull(transaction);
+        recordAmount(transaction.getAmount(), transaction.getTimestamp());
+    }
+
+    /**
+     * Updates statistics for a new transaction given by its raw amount and
+     * timestamp, without a {@link Transaction} object
+     * 
+     * @param amount
+     * @param timestampMillis
+     */
+    void recordAmount(double amount, long timestampMillis);
 
     /**
      * Aggregates (or folds) the stats value from the given {@link Statistic}
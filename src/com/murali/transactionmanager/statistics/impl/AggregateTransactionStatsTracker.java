@@ -1,74 +1,138 @@
 package com.murali.transactionmanager.statistics.impl;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.lang.Validate;
 
 import com.murali.transactionmanager.model.Transaction;
 import com.murali.transactionmanager.statistics.StatTracker;
-
+import com.murali.transactionmanager.statistics.model.QuantileSketch;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+
+/**
+ * Tracks the count, sum, minimum, maximum and, if asked to, the quantiles of
+ * the transactions recorded into it. A tracker is guarded by a
+ * {@link ReentrantLock} rather than its monitor, so a virtual thread waiting
+ * for it does not hold on to its carrier thread; the monitors of the inner
+ * trackers are only ever taken under that lock, and so are never contended
+ */
 public class AggregateTransactionStatsTracker {
     public static final String AVG_STAT_NAME = "avg";
 
+    // Orders the locks of two trackers that are merged
+    private static final AtomicLong LOCK_ORDER = new AtomicLong();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long lockOrder = LOCK_ORDER.getAndIncrement();
     private long timestampSeconds;
 
     private CountStatTracker countStatTracker;
     private MaxAmountStatTracker maxAmountStatTracker;
     private MinAmountStatTracker minAmountStatTracker;
     private SumOfAmountsStatTracker sumOfAmountsStatTracker;
-    private List<StatTracker> transactionListeners;
+    // Null unless quantiles are tracked
+    private QuantileStatTracker quantileStatTracker;
 
     public AggregateTransactionStatsTracker(long timestampSeconds) {
+        this(timestampSeconds, false);
+    }
+
+    /**
+     * @param timestampSeconds
+     * @param trackQuantiles
+     *            whether the quantiles are tracked; they take a
+     *            {@link QuantileSketch} and update it on every record
+     */
+    public AggregateTransactionStatsTracker(long timestampSeconds,
+            boolean trackQuantiles) {
         this.timestampSeconds = timestampSeconds;
         this.countStatTracker = new CountStatTracker();
         this.maxAmountStatTracker = new MaxAmountStatTracker();
         this.minAmountStatTracker = new MinAmountStatTracker();
         this.sumOfAmountsStatTracker = new SumOfAmountsStatTracker();
-
-        transactionListeners = new ArrayList<>();
-        transactionListeners.add(countStatTracker);
-        transactionListeners.add(maxAmountStatTracker);
-        transactionListeners.add(minAmountStatTracker);
-        transactionListeners.add(sumOfAmountsStatTracker);
-    }
-
-    private CountStatTracker getCountStatTracker() {
-        return this.countStatTracker;
-    }
-
-    private MaxAmountStatTracker getMaxAmountStatTracker() {
-        return this.maxAmountStatTracker;
+        this.quantileStatTracker = trackQuantiles ? new QuantileStatTracker()
+                : null;
     }
 
-    private MinAmountStatTracker getMinAmountStatTracker() {
-        return this.minAmountStatTracker;
+    public boolean isTrackingQuantiles() {
+        return quantileStatTracker != null;
     }
 
-    private SumOfAmountsStatTracker getSumOfAmountsStatTracker() {
-        return this.sumOfAmountsStatTracker;
+    public void recordTransaction(Transaction transaction) {
+        Validate.notNull(transaction);
+        recordAmount(transaction.getAmount(), transaction.getTimestamp());
     }
 
-    public synchronized void recordTransaction(Transaction transaction) {
-        transactionListeners.stream()
-                .forEach(listener -> listener.recordTransaction(transaction));
+    /**
+     * Records an amount without a {@link Transaction}. Each inner tracker is
+     * called through its own field rather than through a list of
+     * {@link StatTracker}s, so every call site sees a single class and the
+     * updates can be inlined
+     */
+    public void recordAmount(double amount, long timestampMillis) {
+        lock.lock();
+        try {
+            countStatTracker.recordAmount(amount, timestampMillis);
+            maxAmountStatTracker.recordAmount(amount, timestampMillis);
+            minAmountStatTracker.recordAmount(amount, timestampMillis);
+            sumOfAmountsStatTracker.recordAmount(amount, timestampMillis);
+            if (quantileStatTracker != null) {
+                quantileStatTracker.recordAmount(amount, timestampMillis);
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized void mergeStatistic(
+    /**
+     * Adds the stats of the other tracker to this one, which must track
+     * quantiles if and only if the other does. Both trackers are locked, in
+     * an order every merge agrees on, so the merge sees each transaction of
+     * the other tracker either entirely or not at all, and its sketch is
+     * merged into this one's without a copy. A tracker without transactions
+     * merges as a no-op, and sums are merged with their compensation, so the
+     * merged sum matches the sum of every amount recorded in a single tracker
+     * up to the rounding of the result
+     */
+    public void mergeStatistic(
             AggregateTransactionStatsTracker otherStatsTracker) {
         Validate.notNull(otherStatsTracker);
-
-        mergeIfNotNull(otherStatsTracker,
-                AggregateTransactionStatsTracker::getCountStatTracker);
-        mergeIfNotNull(otherStatsTracker,
-                AggregateTransactionStatsTracker::getSumOfAmountsStatTracker);
-        mergeIfNotNull(otherStatsTracker,
-                AggregateTransactionStatsTracker::getMaxAmountStatTracker);
-        mergeIfNotNull(otherStatsTracker,
-                AggregateTransactionStatsTracker::getMinAmountStatTracker);
+        Validate.isTrue(otherStatsTracker
+                .isTrackingQuantiles() == isTrackingQuantiles(),
+                "trackers must both track quantiles or neither");
+
+        ReentrantLock first = (lockOrder < otherStatsTracker.lockOrder) ? lock
+                : otherStatsTracker.lock;
+        ReentrantLock second = (first == lock) ? otherStatsTracker.lock
+                : lock;
+        first.lock();
+        second.lock();
+        try {
+            if (otherStatsTracker.countStatTracker.getStatistics()
+                    .getValue() == 0) {
+                return;
+            }
+            countStatTracker.mergeStatistic(
+                    otherStatsTracker.countStatTracker.getStatistics());
+            sumOfAmountsStatTracker.mergeSum(
+                    otherStatsTracker.sumOfAmountsStatTracker.getSum(),
+                    otherStatsTracker.sumOfAmountsStatTracker
+                            .getCompensation());
+            minAmountStatTracker.mergeStatistic(
+                    otherStatsTracker.minAmountStatTracker.getStatistics());
+            maxAmountStatTracker.mergeStatistic(
+                    otherStatsTracker.maxAmountStatTracker.getStatistics());
+            if (quantileStatTracker != null) {
+                quantileStatTracker.mergeStatistic(
+                        otherStatsTracker.quantileStatTracker.getStatistics());
+            }
+        } finally {
+            second.unlock();
+            first.unlock();
+        }
     }
 
     public long getTimestampInSeconds() {
@@ -76,50 +140,59 @@ public class AggregateTransactionStatsTracker {
     }
 
     public Map<String, Number> getStats() {
-        Map<String, Number> stats = new HashMap<>();
+        return toStats(getStats(new StatisticsSnapshot()));
+    }
 
-        stats.put(CountStatTracker.STAT_NAME,
-                (long) countStatTracker.getStatistics().getValue());
+    /**
+     * Copies the stats into the given snapshot, without allocating
+     * 
+     * @return the given snapshot
+     */
+    public StatisticsSnapshot getStats(StatisticsSnapshot snapshot) {
+        Validate.notNull(snapshot);
+
+        lock.lock();
+        try {
+            snapshot.set((long) countStatTracker.getStatistics().getValue(),
+                    sumOfAmountsStatTracker.getStatistics().getValue(),
+                    getOrDefault(minAmountStatTracker),
+                    getOrDefault(maxAmountStatTracker));
+            return (quantileStatTracker == null) ? snapshot
+                    : quantileStatTracker.getStatistics().getSketch()
+                            .getQuantiles(snapshot);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        stats.put(MaxAmountStatTracker.STAT_NAME,
-                getOrDefault(maxAmountStatTracker));
+    /**
+     * Converts a snapshot into the map of stats returned by the APIs. The
+     * quantiles are left out unless the snapshot has them
+     */
+    public static Map<String, Number> toStats(StatisticsSnapshot snapshot) {
+        Map<String, Number> stats = new HashMap<>();
+        boolean hasTransactions = snapshot.getCount() > 0;
 
+        stats.put(CountStatTracker.STAT_NAME, snapshot.getCount());
+        stats.put(MaxAmountStatTracker.STAT_NAME,
+                hasTransactions ? snapshot.getMax() : null);
         stats.put(MinAmountStatTracker.STAT_NAME,
-                getOrDefault(minAmountStatTracker));
-
-        stats.put(SumOfAmountsStatTracker.STAT_NAME, Double
-                .valueOf(sumOfAmountsStatTracker.getStatistics().getValue()));
-
-        double avg = 0.0;
-        if (countStatTracker.getStatistics().getValue() > 0) {
-            avg = Double.valueOf(sumOfAmountsStatTracker.getStatistics()
-                    .getValue()
-                    / Double.valueOf(
-                            countStatTracker.getStatistics().getValue()));
+                hasTransactions ? snapshot.getMin() : null);
+        stats.put(SumOfAmountsStatTracker.STAT_NAME, snapshot.getSum());
+        stats.put(AVG_STAT_NAME, snapshot.getAvg());
+
+        if (!Double.isNaN(snapshot.getP50())) {
+            stats.put(QuantileStatTracker.P50_STAT_NAME, snapshot.getP50());
+            stats.put(QuantileStatTracker.P95_STAT_NAME, snapshot.getP95());
+            stats.put(QuantileStatTracker.P99_STAT_NAME, snapshot.getP99());
+            stats.put(QuantileStatTracker.P999_STAT_NAME, snapshot.getP999());
         }
-        stats.put(AVG_STAT_NAME, Double.valueOf(avg));
 
         return stats;
     }
 
-    private Double getOrDefault(StatTracker tracker) {
-        return (tracker.getStatistics() == null) ? null
+    private double getOrDefault(StatTracker tracker) {
+        return (tracker.getStatistics() == null) ? Double.NaN
                 : tracker.getStatistics().getValue();
     }
-
-    private void mergeIfNotNull(
-            AggregateTransactionStatsTracker otherAggregateTransactionStatsTracker,
-            Function<AggregateTransactionStatsTracker, StatTracker> trackerSupplier) {
-        Validate.notNull(otherAggregateTransactionStatsTracker);
-        StatTracker statTracker = trackerSupplier
-                .apply(otherAggregateTransactionStatsTracker);
-        Validate.notNull(statTracker);
-
-        if (statTracker.getStatistics() != null) {
-            trackerSupplier.apply(this)
-                    .mergeStatistic(statTracker.getStatistics());
-        } else {
-            System.out.println("Failed to merge stat");
-        }
-    }
 }
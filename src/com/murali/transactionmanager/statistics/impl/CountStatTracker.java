@@ -33,8 +33,7 @@ public class CountStatTracker implements StatTracker {
     }
 
     @Override
-    public synchronized void recordTransaction(Transaction transaction) {
-        Validate.notNull(transaction);
+    public synchronized void recordAmount(double amount, long timestampMillis) {
         statistic.add(COUNTER_ONE);
     }
 
@@ -33,9 +33,8 @@ public class MinAmountStatTracker implements StatTracker {
     }
 
     @Override
-    public synchronized void recordTransaction(Transaction transaction) {
-        Validate.notNull(transaction);
-        updateValue(transaction.getAmount());
+    public synchronized void recordAmount(double amount, long timestampMillis) {
+        updateValue(amount);
     }
 
     @Override
@@ -0,0 +1,56 @@
+package com.murali.transactionmanager.statistics.impl;
+
+import org.apache.commons.lang.Validate;
+
+import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.statistics.StatTracker;
+import com.murali.transactionmanager.statistics.model.QuantileStatistic;
+import com.murali.transactionmanager.statistics.model.Statistic;
+
+/**
+ * This records {@link Transaction}s and keeps track of the quantiles (p50,
+ * p95, p99 and p999) of their amounts in a mergeable sketch
+ */
+public class QuantileStatTracker implements StatTracker {
+    private static final double COUNTER_ONE = 1.0;
+    public static final String STAT_NAME = "quantiles";
+    public static final String P50_STAT_NAME = "p50";
+    public static final String P95_STAT_NAME = "p95";
+    public static final String P99_STAT_NAME = "p99";
+    public static final String P999_STAT_NAME = "p999";
+    private QuantileStatistic statistic = new QuantileStatistic(STAT_NAME);
+
+    /**
+     * Return the name of the stat tracked by this generator
+     * 
+     * @return name
+     */
+    @Override
+    public final String getStatName() {
+        return STAT_NAME;
+    }
+
+    /**
+     * Returns the actual statistic
+     */
+    @Override
+    public QuantileStatistic getStatistics() {
+        return statistic;
+    }
+
+    @Override
+    public synchronized void recordAmount(double amount, long timestampMillis) {
+        statistic.getSketch().add(amount);
+        statistic.add(COUNTER_ONE);
+    }
+
+    @Override
+    public synchronized void mergeStatistic(Statistic statistic) {
+        Validate.notNull(statistic);
+        Validate.isTrue(STAT_NAME.equals(statistic.getUnit()));
+        Validate.isTrue(statistic instanceof QuantileStatistic);
+        this.statistic.getSketch()
+                .merge(((QuantileStatistic) statistic).getSketch());
+        this.statistic.add(statistic.getValue());
+    }
+}
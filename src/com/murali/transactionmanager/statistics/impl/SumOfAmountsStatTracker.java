@@ -4,16 +4,19 @@ import org.apache.commons.lang.Validate;
 
 import com.murali.transactionmanager.model.Transaction;
 import com.murali.transactionmanager.statistics.StatTracker;
+import com.murali.transactionmanager.statistics.model.CompensatedSum;
 import com.murali.transactionmanager.statistics.model.Statistic;
 
 /**
  * This generator listens to {@link Transaction} and generate the sum of all
- * transaction amounts
+ * transaction amounts. The sum is a {@link CompensatedSum}, so it does not
+ * drift with the number of amounts or the order of merges
  */
 public class SumOfAmountsStatTracker
         implements StatTracker {
     public static final String STAT_NAME = "sum";
     private Statistic statistic = new Statistic(STAT_NAME, 0.0);
+    private final CompensatedSum sum = new CompensatedSum();
 
     /**
      * Return the name of the stat tracked by this generator
@@ -34,15 +37,35 @@ public class SumOfAmountsStatTracker
     }
 
     @Override
-    public synchronized void recordTransaction(Transaction transaction) {
-        Validate.notNull(transaction);
-        statistic.add(transaction.getAmount());
+    public synchronized void recordAmount(double amount, long timestampMillis) {
+        add(amount);
     }
     
     @Override
     public synchronized void mergeStatistic(Statistic statistic) {
         Validate.notNull(statistic);
         Validate.isTrue(STAT_NAME.equals(statistic.getUnit()));
-        this.statistic.add(statistic.getValue());
+        add(statistic.getValue());
+    }
+
+    /**
+     * Merges another compensated sum, given by its sum and compensation
+     */
+    synchronized void mergeSum(double otherSum, double otherCompensation) {
+        sum.add(otherSum, otherCompensation);
+        statistic.setValue(sum.getValue());
+    }
+
+    synchronized double getSum() {
+        return sum.getSum();
+    }
+
+    synchronized double getCompensation() {
+        return sum.getCompensation();
+    }
+
+    private void add(double value) {
+        sum.add(value);
+        statistic.setValue(sum.getValue());
     }
 }
@@ -0,0 +1,57 @@
+package com.murali.transactionmanager.statistics.model;
+
+/**
+ * Sum of amounts compensated with Neumaier's variant of Kahan summation: the
+ * rounding error of every addition is carried along in a separate
+ * compensation, so the sum does not drift with the number of amounts or the
+ * order in which they are added. Not thread-safe
+ */
+public final class CompensatedSum {
+    private double sum;
+    private double compensation;
+
+    public void add(double value) {
+        double total = sum + value;
+        compensation += roundingError(sum, value, total);
+        sum = total;
+    }
+
+    /**
+     * Adds another compensated sum, given by its sum and compensation
+     */
+    public void add(double otherSum, double otherCompensation) {
+        add(otherSum);
+        add(otherCompensation);
+    }
+
+    public double getSum() {
+        return this.sum;
+    }
+
+    public double getCompensation() {
+        return this.compensation;
+    }
+
+    /**
+     * Returns the sum corrected by its compensation
+     */
+    public double getValue() {
+        return sum + compensation;
+    }
+
+    public void clear() {
+        sum = 0.0;
+        compensation = 0.0;
+    }
+
+    /**
+     * Returns the exact rounding error of total, the floating-point sum of sum
+     * and value, for code that keeps its sum and compensation elsewhere (e.g.
+     * in atomic cells)
+     */
+    public static double roundingError(double sum, double value,
+            double total) {
+        return (Math.abs(sum) >= Math.abs(value)) ? (sum - total) + value
+                : (value - total) + sum;
+    }
+}
@@ -0,0 +1,175 @@
+package com.murali.transactionmanager.statistics.model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Mergeable sketch of the distribution of transaction amounts, in the style of
+ * DDSketch: amounts are counted in buckets whose bounds grow geometrically, so
+ * every quantile is estimated within {@link #RELATIVE_ACCURACY} of its true
+ * value, in fixed memory and without keeping the amounts. Sketches are merged
+ * (or subtracted from each other) by adding up their bucket counts.
+ *
+ * Amounts with a magnitude below {@link #MIN_MAGNITUDE} count as zero, and
+ * the largest buckets (above about 1.4e9) take all larger amounts. The counts
+ * are atomic, so concurrent adds and merges need no lock
+ */
+public class QuantileSketch {
+    public static final double RELATIVE_ACCURACY = 0.01;
+    public static final double MIN_MAGNITUDE = 1e-3;
+
+    private static final int BUCKETS_PER_SIGN = 1400;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY)
+            / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    // Buckets are ordered by value: negative amounts from the largest
+    // magnitude down, then zero, then positive amounts
+    private static final int ZERO = BUCKETS_PER_SIGN;
+    private static final int POSITIONS = 2 * BUCKETS_PER_SIGN + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(POSITIONS);
+    private final QuantileSketch[] self = { this };
+
+    public void add(double amount) {
+        counts.incrementAndGet(positionOf(amount));
+    }
+
+    /**
+     * Adds the counts of the other sketch to this one
+     */
+    public void merge(QuantileSketch other) {
+        addCounts(other, 1);
+    }
+
+    /**
+     * Takes the counts of the other sketch, which must have been merged into
+     * this one, out of this one
+     */
+    public void subtract(QuantileSketch other) {
+        addCounts(other, -1);
+    }
+
+    public void clear() {
+        for (int position = 0; position < POSITIONS; position++) {
+            if (counts.get(position) != 0) {
+                counts.set(position, 0);
+            }
+        }
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int position = 0; position < POSITIONS; position++) {
+            count += counts.get(position);
+        }
+        return count;
+    }
+
+    /**
+     * Estimates the quantiles of this sketch, see
+     * {@link #getQuantiles(QuantileSketch[], int, StatisticsSnapshot)}
+     */
+    public StatisticsSnapshot getQuantiles(StatisticsSnapshot snapshot) {
+        return getQuantiles(self, 1, snapshot);
+    }
+
+    /**
+     * Estimates the quantiles of the union of the first sketchCount sketches,
+     * without merging them, and sets them on the snapshot. The estimates are
+     * kept within the minimum and maximum of the snapshot, if it has them.
+     *
+     * The sketches are read twice (for the total count, then for the ranks),
+     * so concurrent updates may shift the estimates by those updates
+     *
+     * @return the given snapshot
+     */
+    public static StatisticsSnapshot getQuantiles(QuantileSketch[] sketches,
+            int sketchCount, StatisticsSnapshot snapshot) {
+        Validate.notNull(sketches);
+        Validate.notNull(snapshot);
+
+        long total = 0;
+        for (int position = 0; position < POSITIONS; position++) {
+            for (int i = 0; i < sketchCount; i++) {
+                total += sketches[i].counts.get(position);
+            }
+        }
+
+        double[] fractions = StatisticsSnapshot.QUANTILE_FRACTIONS;
+        if (total <= 0) {
+            for (int quantile = 0; quantile < fractions.length; quantile++) {
+                snapshot.setQuantile(quantile, Double.NaN);
+            }
+            return snapshot;
+        }
+
+        int quantile = 0;
+        long cumulative = 0;
+        for (int position = 0; position < POSITIONS
+                && quantile < fractions.length; position++) {
+            for (int i = 0; i < sketchCount; i++) {
+                cumulative += sketches[i].counts.get(position);
+            }
+            while (quantile < fractions.length
+                    && cumulative > fractions[quantile] * (total - 1)) {
+                snapshot.setQuantile(quantile++,
+                        clamp(valueOf(position), snapshot));
+            }
+        }
+
+        // Left when the sketches shrank after being counted
+        for (; quantile < fractions.length; quantile++) {
+            snapshot.setQuantile(quantile, snapshot.getMax());
+        }
+        return snapshot;
+    }
+
+    private void addCounts(QuantileSketch other, int sign) {
+        Validate.notNull(other);
+
+        for (int position = 0; position < POSITIONS; position++) {
+            long count = other.counts.get(position);
+            if (count != 0) {
+                counts.addAndGet(position, sign * count);
+            }
+        }
+    }
+
+    private static int positionOf(double amount) {
+        double magnitude = Math.abs(amount);
+        if (!(magnitude >= MIN_MAGNITUDE)) {
+            return ZERO;
+        }
+
+        // Bucket k holds magnitudes in (MIN * GAMMA^(k-1), MIN * GAMMA^k]
+        int bucket = (int) Math.min(BUCKETS_PER_SIGN - 1,
+                Math.ceil(Math.log(magnitude / MIN_MAGNITUDE) / LOG_GAMMA));
+        return (amount > 0) ? ZERO + 1 + bucket : ZERO - 1 - bucket;
+    }
+
+    /**
+     * Returns the value with the smallest relative error to all values of the
+     * bucket at the given position
+     */
+    private static double valueOf(int position) {
+        if (position == ZERO) {
+            return 0.0;
+        }
+        int bucket = (position > ZERO) ? position - ZERO - 1
+                : ZERO - 1 - position;
+        double magnitude = MIN_MAGNITUDE * Math.pow(GAMMA, bucket) * 2
+                / (GAMMA + 1);
+        return (position > ZERO) ? magnitude : -magnitude;
+    }
+
+    private static double clamp(double value, StatisticsSnapshot snapshot) {
+        if (value < snapshot.getMin()) {
+            return snapshot.getMin();
+        } else if (value > snapshot.getMax()) {
+            return snapshot.getMax();
+        }
+        return value;
+    }
+}
@@ -0,0 +1,18 @@
+package com.murali.transactionmanager.statistics.model;
+
+/**
+ * Statistic about the distribution of transaction amounts. The value is the
+ * number of amounts, and the distribution itself is kept in a
+ * {@link QuantileSketch}
+ */
+public class QuantileStatistic extends Statistic {
+    private final QuantileSketch sketch = new QuantileSketch();
+
+    public QuantileStatistic(String unit) {
+        super(unit, 0.0);
+    }
+
+    public QuantileSketch getSketch() {
+        return this.sketch;
+    }
+}
@@ -1,25 +1,24 @@
 package com.murali.transactionmanager.statistics.model;
 
-import java.util.concurrent.locks.StampedLock;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
 
 /**
- * Base class for all statistic captured by the monitor
+ * Base class for all statistic captured by the monitor. The value is kept as
+ * the raw bits of a double and updated with CAS, so neither reads nor updates
+ * take a lock or allocate
  */
 public class Statistic {
     private final String unit;
-    private double value;
-
-    private StampedLock valueUpdateLock = new StampedLock();
+    private final AtomicLong valueBits;
 
     public Statistic(String unit, double value) {
         Validate.isTrue(StringUtils.isNotBlank(unit));
-        Validate.notNull(value);
 
         this.unit = unit;
-        this.value = value;
+        this.valueBits = new AtomicLong(Double.doubleToRawLongBits(value));
     }
 
     public final String getUnit() {
@@ -27,51 +26,25 @@ public class Statistic {
     }
 
     public final double getValue() {
-        long tryOptimisticRead = valueUpdateLock.tryOptimisticRead();
-
-        if (!valueUpdateLock.validate(tryOptimisticRead)) {
-            tryOptimisticRead = valueUpdateLock.readLock();
-            try {
-                return this.getValue();
-            } finally {
-                valueUpdateLock.unlock(tryOptimisticRead);
-            }
-        } else {
-
-            return this.value;
-        }
+        return Double.longBitsToDouble(valueBits.get());
     }
 
     public void setValue(double value) {
-        long writeLock = valueUpdateLock.writeLock();
-
-        try {
-            this.value = value;
-        } finally {
-            valueUpdateLock.unlock(writeLock);
-        }
+        valueBits.set(Double.doubleToRawLongBits(value));
     }
 
     public void add(double value) {
-        long writeLock = valueUpdateLock.writeLock();
-
-        try {
-            this.value += value;
-        } finally {
-            valueUpdateLock.unlock(writeLock);
-        }
+        long current;
+        do {
+            current = valueBits.get();
+        } while (!valueBits.compareAndSet(current, Double.doubleToRawLongBits(
+                Double.longBitsToDouble(current) + value)));
     }
 
     public void add(Statistic statistic) {
         Validate.notNull(statistic);
-        if (statistic.getUnit().equals(statistic.getUnit())) {
-            long writeLock = valueUpdateLock.writeLock();
-
-            try {
-                this.value += value;
-            } finally {
-                valueUpdateLock.unlock(writeLock);
-            }
+        if (this.getUnit().equals(statistic.getUnit())) {
+            add(statistic.getValue());
         } else {
             throw new IllegalArgumentException(
                     "Cannot add Statistic with unit " + statistic.getUnit()
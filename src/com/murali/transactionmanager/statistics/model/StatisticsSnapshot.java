@@ -0,0 +1,93 @@
+package com.murali.transactionmanager.statistics.model;
+
+import java.util.Arrays;
+
+/**
+ * Mutable holder of the count, sum, minimum, maximum and average of the
+ * amounts of a set of transactions. Callers allocate a snapshot once and pass
+ * it to every read, so reading statistics creates no garbage.
+ *
+ * Minimum and maximum are NaN when no transaction was recorded, and the
+ * quantiles (p50, p95, p99 and p999, see {@link QuantileSketch}) are NaN
+ * unless the source of the snapshot tracks them
+ */
+public class StatisticsSnapshot {
+    /**
+     * Fractions of the quantiles held by a snapshot, in ascending order
+     */
+    static final double[] QUANTILE_FRACTIONS = { 0.5, 0.95, 0.99, 0.999 };
+
+    private long count;
+    private double sum;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private final double[] quantiles = { Double.NaN, Double.NaN, Double.NaN,
+            Double.NaN };
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public double getSum() {
+        return this.sum;
+    }
+
+    public double getMin() {
+        return this.min;
+    }
+
+    public double getMax() {
+        return this.max;
+    }
+
+    public double getAvg() {
+        return (count > 0) ? sum / count : 0.0;
+    }
+
+    public double getP50() {
+        return this.quantiles[0];
+    }
+
+    public double getP95() {
+        return this.quantiles[1];
+    }
+
+    public double getP99() {
+        return this.quantiles[2];
+    }
+
+    public double getP999() {
+        return this.quantiles[3];
+    }
+
+    /**
+     * Overwrites this snapshot and clears its quantiles. Minimum and maximum
+     * are ignored if the count is zero
+     */
+    public StatisticsSnapshot set(long count, double sum, double min,
+            double max) {
+        this.count = count;
+        this.sum = sum;
+        this.min = (count > 0) ? min : Double.NaN;
+        this.max = (count > 0) ? max : Double.NaN;
+        Arrays.fill(quantiles, Double.NaN);
+        return this;
+    }
+
+    /**
+     * Sets the quantile of {@link #QUANTILE_FRACTIONS} at the given index
+     */
+    void setQuantile(int index, double value) {
+        this.quantiles[index] = value;
+    }
+
+    public StatisticsSnapshot clear() {
+        return set(0, 0.0, Double.NaN, Double.NaN);
+    }
+
+    @Override
+    public String toString() {
+        return "count: " + count + " sum: " + sum + " min: " + min + " max: "
+                + max + " avg: " + getAvg();
+    }
+}
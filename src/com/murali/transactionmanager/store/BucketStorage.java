@@ -0,0 +1,17 @@
+package com.murali.transactionmanager.store;
+
+/**
+ * Controls where a recorder keeps the buckets of its per-key windows
+ */
+public enum BucketStorage {
+    /**
+     * Buckets are kept in primitive arrays on the Java heap
+     */
+    HEAP,
+
+    /**
+     * Buckets are packed into direct (off-heap) memory, so the heap and the
+     * work of the garbage collector do not grow with the number of keys
+     */
+    OFF_HEAP
+}
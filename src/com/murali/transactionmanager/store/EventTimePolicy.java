@@ -0,0 +1,111 @@
+package com.murali.transactionmanager.store;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.Validate;
+
+import com.murali.transactionmanager.model.ReturnCode;
+
+/**
+ * Which transaction timestamps a {@link TransactionRecorder} accepts,
+ * relative to its clock. A timestamp may be ahead of the clock by at most the
+ * maximum skew, since the clocks of the sources drift; such a transaction is
+ * recorded in the current bucket, so that it cannot take the slot of a bucket
+ * still in the window. A timestamp may be behind the clock by at most the
+ * allowed lateness (and never by more than the window), and is then recorded
+ * in the bucket of its own interval, however out of order it arrives.
+ *
+ * The {@link #DEFAULT} policy limits neither, as recorders did before they
+ * had a policy: a limit on the skew rejects the transactions of sources whose
+ * clocks run ahead, so it is opt-in
+ */
+public class EventTimePolicy {
+    public static final long UNLIMITED_FUTURE_SKEW = Long.MAX_VALUE;
+    public static final long UNLIMITED_LATENESS = Long.MAX_VALUE;
+
+    public static final EventTimePolicy DEFAULT = new EventTimePolicy(
+            UNLIMITED_FUTURE_SKEW, UNLIMITED_LATENESS);
+
+    private final long maxFutureSkewMillis;
+    private final long allowedLatenessMillis;
+
+    /**
+     * @param maxFutureSkewMillis
+     *            {@link #UNLIMITED_FUTURE_SKEW} to accept every transaction
+     *            ahead of the clock
+     * @param allowedLatenessMillis
+     *            {@link #UNLIMITED_LATENESS} to accept every transaction
+     *            within the window
+     */
+    public EventTimePolicy(long maxFutureSkewMillis,
+            long allowedLatenessMillis) {
+        Validate.isTrue(maxFutureSkewMillis >= 0,
+                "maxFutureSkewMillis must not be negative");
+        Validate.isTrue(allowedLatenessMillis >= 0,
+                "allowedLatenessMillis must not be negative");
+
+        this.maxFutureSkewMillis = maxFutureSkewMillis;
+        this.allowedLatenessMillis = allowedLatenessMillis;
+    }
+
+    public static EventTimePolicy of(long maxFutureSkew, long allowedLateness,
+            TimeUnit unit) {
+        return new EventTimePolicy(unit.toMillis(maxFutureSkew),
+                unit.toMillis(allowedLateness));
+    }
+
+    public long getMaxFutureSkewMillis() {
+        return this.maxFutureSkewMillis;
+    }
+
+    public long getAllowedLatenessMillis() {
+        return this.allowedLatenessMillis;
+    }
+
+    /**
+     * Returns how late a transaction may be for a window of the given length
+     */
+    public long getMaxLagMillis(long windowLengthMillis) {
+        return Math.min(allowedLatenessMillis, windowLengthMillis);
+    }
+
+    /**
+     * Returns why a transaction is rejected, given how far its timestamp is
+     * behind the clock (negative if it is ahead), or {@link ReturnCode#SUCCESS}
+     * if it is accepted. Recorders check the lag against
+     * {@link #getMaxLagMillis(long)} and the maximum skew themselves, and only
+     * call this for transactions that fail the check
+     */
+    public ReturnCode check(long lagMillis, long windowLengthMillis) {
+        if (lagMillis < -maxFutureSkewMillis) {
+            return ReturnCode.FUTURE_TRANSACTION;
+        } else if (lagMillis > windowLengthMillis) {
+            return ReturnCode.OLD_TRANSACTION;
+        } else if (lagMillis > allowedLatenessMillis) {
+            return ReturnCode.LATE_TRANSACTION;
+        }
+        return ReturnCode.SUCCESS;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof EventTimePolicy)) {
+            return false;
+        }
+        EventTimePolicy otherPolicy = (EventTimePolicy) other;
+        return maxFutureSkewMillis == otherPolicy.maxFutureSkewMillis
+                && allowedLatenessMillis == otherPolicy.allowedLatenessMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(maxFutureSkewMillis) * 31
+                + Long.hashCode(allowedLatenessMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "Max future skew: " + maxFutureSkewMillis
+                + "ms allowed lateness: " + allowedLatenessMillis + "ms";
+    }
+}
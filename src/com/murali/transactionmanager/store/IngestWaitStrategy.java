@@ -0,0 +1,49 @@
+package com.murali.transactionmanager.store;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Controls how the threads of an asynchronous ingestor wait: consumers for
+ * transactions to be published, and blocked producers for room in the ring.
+ * Waiting harder gives lower latency for more CPU
+ */
+public enum IngestWaitStrategy {
+    /**
+     * Spins on the ring; the lowest latency, but keeps a core busy per
+     * waiting thread
+     */
+    BUSY_SPIN {
+        @Override
+        public void idle() {
+        }
+    },
+
+    /**
+     * Gives the processor up to other threads between checks
+     */
+    YIELDING {
+        @Override
+        public void idle() {
+            Thread.yield();
+        }
+    },
+
+    /**
+     * Parks for a short while between checks; the least CPU, but adds up to
+     * tens of microseconds of latency
+     */
+    SLEEPING {
+        @Override
+        public void idle() {
+            LockSupport.parkNanos(SLEEP_NANOS);
+        }
+    };
+
+    private static final long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    /**
+     * Waits once, between two checks of the ring
+     */
+    public abstract void idle();
+}
@@ -0,0 +1,26 @@
+package com.murali.transactionmanager.store;
+
+/**
+ * Controls when a {@link TransactionJournal} considers an appended record
+ * written, trading the latency of recording for the transactions that can be
+ * lost in a crash
+ */
+public enum JournalDurability {
+    /**
+     * Records are handed to the operating system but never forced to storage,
+     * so they survive a crash of the process but not of the machine
+     */
+    NONE,
+
+    /**
+     * Records are forced to storage in groups in the background; appends do
+     * not wait for it, so a crash may lose the last group
+     */
+    ASYNC,
+
+    /**
+     * Appends wait until their group has been forced to storage. Concurrent
+     * appends share a single fsync
+     */
+    SYNC
+}
@@ -0,0 +1,68 @@
+package com.murali.transactionmanager.store;
+
+import java.util.Map;
+
+import com.murali.transactionmanager.model.KeyDimension;
+import com.murali.transactionmanager.model.ReturnCode;
+import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+
+/**
+ * Provides operations to record {@link Transaction}s and return statistics
+ * about them per key, e.g. per merchant or per account
+ */
+public interface KeyedTransactionRecorder {
+    /**
+     * Returns the attribute of the transactions that statistics are kept per
+     * value of
+     */
+    KeyDimension getKeyDimension();
+
+    /**
+     * Records the transaction under its key. A transaction without a key, or
+     * whose amount is not finite, is a {@link ReturnCode#BAD_REQUEST}
+     * 
+     * @param transaction
+     * @return ReturnCode
+     */
+    ReturnCode record(Transaction transaction);
+
+    /**
+     * Records a transaction given by its key in the dimension of the
+     * recorder, its amount and its timestamp. This wraps them in a
+     * {@link Transaction}; recorders that can record them without one
+     * override it
+     * 
+     * @param key
+     * @param amount
+     * @param timestampMillis
+     * @return ReturnCode; {@link ReturnCode#BAD_REQUEST} if the key is
+     *         {@link Transaction#NO_ID}, the amount is not finite or the
+     *         timestamp is not positive
+     */
+    default ReturnCode record(long key, double amount, long timestampMillis) {
+        if (key == Transaction.NO_ID || timestampMillis <= 0) {
+            return ReturnCode.BAD_REQUEST;
+        }
+        boolean byMerchant = getKeyDimension() == KeyDimension.MERCHANT;
+        return record(new Transaction(amount, timestampMillis,
+                byMerchant ? key : Transaction.NO_ID,
+                byMerchant ? Transaction.NO_ID : key));
+    }
+
+    /**
+     * Returns statistics about the transactions of the key recorded within a
+     * time window
+     */
+    Map<String, Number> getStatistics(long key);
+
+    /**
+     * Copies statistics about the transactions of the key recorded within a
+     * time window into the given snapshot, without allocating
+     * 
+     * @param key
+     * @param snapshot
+     * @return the given snapshot
+     */
+    StatisticsSnapshot getStatistics(long key, StatisticsSnapshot snapshot);
+}
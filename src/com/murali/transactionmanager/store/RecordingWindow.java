@@ -0,0 +1,72 @@
+package com.murali.transactionmanager.store;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Length of the sliding time window a {@link TransactionRecorder} reports
+ * statistics for, and the width of the buckets the window is divided into.
+ * The bucket width is the resolution of the window: transactions leave the
+ * window one bucket at a time
+ */
+public class RecordingWindow {
+    public static final RecordingWindow ONE_MINUTE_BY_SECOND = of(60, 1,
+            TimeUnit.SECONDS);
+
+    private final long lengthMillis;
+    private final long bucketWidthMillis;
+
+    public RecordingWindow(long lengthMillis, long bucketWidthMillis) {
+        Validate.isTrue(bucketWidthMillis > 0,
+                "bucketWidthMillis must be positive");
+        Validate.isTrue(lengthMillis >= bucketWidthMillis
+                && lengthMillis % bucketWidthMillis == 0,
+                "lengthMillis must be a multiple of bucketWidthMillis");
+        Validate.isTrue(lengthMillis / bucketWidthMillis <= Integer.MAX_VALUE,
+                "too many buckets");
+
+        this.lengthMillis = lengthMillis;
+        this.bucketWidthMillis = bucketWidthMillis;
+    }
+
+    public static RecordingWindow of(long length, long bucketWidth,
+            TimeUnit unit) {
+        return new RecordingWindow(unit.toMillis(length),
+                unit.toMillis(bucketWidth));
+    }
+
+    public long getLengthMillis() {
+        return this.lengthMillis;
+    }
+
+    public long getBucketWidthMillis() {
+        return this.bucketWidthMillis;
+    }
+
+    public int getBuckets() {
+        return (int) (lengthMillis / bucketWidthMillis);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof RecordingWindow)) {
+            return false;
+        }
+        RecordingWindow otherWindow = (RecordingWindow) other;
+        return lengthMillis == otherWindow.lengthMillis
+                && bucketWidthMillis == otherWindow.bucketWidthMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(lengthMillis) * 31
+                + Long.hashCode(bucketWidthMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "Length: " + lengthMillis + "ms bucket width: "
+                + bucketWidthMillis + "ms";
+    }
+}
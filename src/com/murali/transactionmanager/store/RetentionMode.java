@@ -0,0 +1,21 @@
+package com.murali.transactionmanager.store;
+
+import com.murali.transactionmanager.model.Transaction;
+
+/**
+ * Controls which raw {@link Transaction}s a {@link TransactionRecorder} keeps
+ * next to the aggregated statistics
+ */
+public enum RetentionMode {
+    /**
+     * Only the aggregated statistics are kept; raw transactions are dropped as
+     * soon as they have been recorded
+     */
+    AGGREGATES_ONLY,
+
+    /**
+     * Raw transactions are kept for as long as they are inside the recording
+     * window (e.g. for auditing or recomputing statistics) and expire with it
+     */
+    WINDOWED_RAW
+}
@@ -0,0 +1,25 @@
+package com.murali.transactionmanager.store;
+
+import com.murali.transactionmanager.model.Transaction;
+
+/**
+ * Controls which shard of a sharded recorder a {@link Transaction} goes to
+ */
+public enum ShardRouting {
+    /**
+     * By the id of the recording thread, so that each thread keeps feeding the
+     * same shard
+     */
+    BY_THREAD,
+
+    /**
+     * By a hash of the merchant id, so that all transactions of a merchant go
+     * to the same shard
+     */
+    BY_MERCHANT,
+
+    /**
+     * By a hash of the account id
+     */
+    BY_ACCOUNT
+}
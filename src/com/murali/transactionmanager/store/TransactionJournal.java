@@ -0,0 +1,35 @@
+package com.murali.transactionmanager.store;
+
+import java.io.Closeable;
+
+import com.murali.transactionmanager.model.Transaction;
+
+/**
+ * Append-only log of the {@link Transaction}s a {@link TransactionRecorder}
+ * has accepted, from which the recorder can be rebuilt after a restart
+ */
+public interface TransactionJournal extends Closeable {
+    /**
+     * Appends a record without waiting for it to be written
+     *
+     * @return the sequence number of the record, to pass to
+     *         {@link #awaitDurable(long)}
+     */
+    long append(double amount, long timestamp, long merchantId,
+            long accountId);
+
+    /**
+     * Waits until every record up to the given sequence number is as durable
+     * as the {@link JournalDurability} of the journal promises
+     */
+    void awaitDurable(long sequence);
+
+    /**
+     * Appends the transaction and waits until it is durable
+     */
+    default void append(Transaction transaction) {
+        awaitDurable(append(transaction.getAmount(),
+                transaction.getTimestamp(), transaction.getMerchantId(),
+                transaction.getAccountId()));
+    }
+}
@@ -1,9 +1,13 @@
 package com.murali.transactionmanager.store;
 
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import com.murali.transactionmanager.model.ReturnCode;
 import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
 
 /**
  * Provides operations to record {@link Transaction}s and return statistics
@@ -14,12 +18,113 @@ public interface TransactionRecorder {
      * Records the transaction
      * 
      * @param transaction
-     * @return ReturnCode
+     * @return ReturnCode; {@link ReturnCode#BAD_REQUEST} if the amount is not
+     *         finite, since it would stay in the sums of the window
      */
     ReturnCode record(Transaction transaction);
 
+    /**
+     * Records a transaction given by its amount and timestamp. This wraps
+     * them in a {@link Transaction}; recorders that can record them without
+     * one override it
+     * 
+     * @param amount
+     * @param timestampMillis
+     * @return ReturnCode; {@link ReturnCode#BAD_REQUEST} if the amount is not
+     *         finite or the timestamp is not positive, which a
+     *         {@link Transaction} cannot hold
+     */
+    default ReturnCode record(double amount, long timestampMillis) {
+        if (timestampMillis <= 0 || !Double.isFinite(amount)) {
+            return ReturnCode.BAD_REQUEST;
+        }
+        return record(new Transaction(amount, timestampMillis));
+    }
+
+    /**
+     * Returns the ReturnCode a transaction would get if it were recorded now,
+     * without recording it. A transaction that passes may still be rejected
+     * when it is recorded, once it has become too old, but not for being
+     * ahead of the clock. This only rejects an amount that is not finite and
+     * a timestamp that is not positive; recorders that check timestamps
+     * against a clock override it
+     * 
+     * @param amount
+     * @param timestampMillis
+     * @return ReturnCode; {@link ReturnCode#SUCCESS} if the transaction would
+     *         be accepted
+     */
+    default ReturnCode check(double amount, long timestampMillis) {
+        return (timestampMillis <= 0 || !Double.isFinite(amount))
+                ? ReturnCode.BAD_REQUEST
+                : ReturnCode.SUCCESS;
+    }
+
+    /**
+     * Records a batch of transactions
+     * 
+     * @param transactions
+     * @return the ReturnCode of each transaction, in iteration order
+     */
+    List<ReturnCode> recordAll(Collection<Transaction> transactions);
+
+    /**
+     * Records a batch of transactions
+     * 
+     * @param transactions
+     * @return the ReturnCode of each transaction, at the same index
+     */
+    ReturnCode[] recordAll(Transaction[] transactions);
+
+    /**
+     * Records a batch of transactions given as parallel columns of amounts
+     * and timestamps, without {@link Transaction} objects
+     * 
+     * @param amounts
+     * @param timestamps
+     * @param length
+     *            number of transactions, starting at index 0 of both columns
+     * @param rejections
+     *            set to the indexes of the transactions that were not
+     *            recorded, including those with an amount that is not finite
+     *            or a timestamp that is not positive; all other bits up to
+     *            length are cleared. A bit does not tell why: the columns are
+     *            meant for batches that only need to know what was recorded,
+     *            and {@link #check(double, long)} returns the ReturnCode of a
+     *            rejected transaction if it is needed
+     * @return the number of transactions recorded
+     */
+    int recordAll(double[] amounts, long[] timestamps, int length,
+            BitSet rejections);
+
     /**
      * Returns statistics about all transactions recorded within a time window
      */
     Map<String, Number> getStatistics();
+
+    /**
+     * Copies statistics about all transactions recorded within a time window
+     * into the given snapshot, without allocating
+     * 
+     * @param snapshot
+     * @return the given snapshot
+     */
+    StatisticsSnapshot getStatistics(StatisticsSnapshot snapshot);
+
+    /**
+     * Returns statistics about all transactions recorded within the given
+     * window, which must be one of the windows the recorder was created with
+     */
+    Map<String, Number> getStatistics(RecordingWindow window);
+
+    /**
+     * Copies statistics about all transactions recorded within the given
+     * window into the given snapshot, without allocating
+     * 
+     * @param window
+     * @param snapshot
+     * @return the given snapshot
+     */
+    StatisticsSnapshot getStatistics(RecordingWindow window,
+            StatisticsSnapshot snapshot);
 }
@@ -0,0 +1,200 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang.Validate;
+
+import com.murali.transactionmanager.model.ReturnCode;
+import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.store.IngestWaitStrategy;
+import com.murali.transactionmanager.store.TransactionRecorder;
+
+/**
+ * Asynchronous front-end of a {@link TransactionRecorder}: producers only
+ * publish transactions into a preallocated {@link IngestRing}, and consumer
+ * threads record them in batches with
+ * {@link TransactionRecorder#recordAll(Transaction[])}, so the bucket work
+ * and its contention move off the producers' threads.
+ *
+ * Each consumer has its own ring, and a producer publishes into the ring
+ * picked by its thread id. When that ring is full, {@link #offer(Transaction)}
+ * rejects the transaction, while {@link #publish(Transaction)} and
+ * {@link #submit(Transaction)} wait for room with the
+ * {@link IngestWaitStrategy}
+ */
+public class AsyncTransactionIngestor implements Closeable {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final int BATCH_SIZE = 1024;
+
+    private final TransactionRecorder recorder;
+    private final IngestWaitStrategy waitStrategy;
+    private final IngestRing[] rings;
+    private final Thread[] consumers;
+
+    // Producers between their check of closed and the end of their offer
+    private final LongAdder producersInFlight = new LongAdder();
+    private volatile boolean closed;
+
+    public AsyncTransactionIngestor(TransactionRecorder recorder) {
+        this(recorder, DEFAULT_CAPACITY, 1, IngestWaitStrategy.YIELDING);
+    }
+
+    /**
+     * @param recorder
+     * @param capacity
+     *            number of transactions each ring holds, a power of two
+     * @param consumers
+     *            number of consumer threads, each with its own ring
+     * @param waitStrategy
+     */
+    public AsyncTransactionIngestor(TransactionRecorder recorder, int capacity,
+            int consumers, IngestWaitStrategy waitStrategy) {
+        Validate.notNull(recorder, "recorder is null");
+        Validate.isTrue(consumers > 0, "consumers must be positive");
+        Validate.notNull(waitStrategy, "waitStrategy is null");
+
+        this.recorder = recorder;
+        this.waitStrategy = waitStrategy;
+        this.rings = new IngestRing[consumers];
+        this.consumers = new Thread[consumers];
+        for (int i = 0; i < consumers; i++) {
+            IngestRing ring = new IngestRing(capacity);
+            rings[i] = ring;
+            this.consumers[i] = new Thread(() -> consume(ring),
+                    "transaction-ingestor-" + i);
+            this.consumers[i].setDaemon(true);
+            this.consumers[i].start();
+        }
+    }
+
+    /**
+     * Publishes the transaction without waiting
+     *
+     * @return false if the transaction was rejected because the ring is full
+     */
+    public boolean offer(Transaction transaction) {
+        Validate.notNull(transaction, "Transaction is null");
+
+        producersInFlight.increment();
+        try {
+            checkOpen();
+            return ringOfCurrentThread().offer(transaction,
+                    null) != IngestRing.FULL;
+        } finally {
+            producersInFlight.decrement();
+        }
+    }
+
+    /**
+     * Publishes the transaction, waiting while the ring is full
+     */
+    public void publish(Transaction transaction) {
+        Validate.notNull(transaction, "Transaction is null");
+
+        publish(transaction, null);
+    }
+
+    /**
+     * Publishes the transaction, waiting while the ring is full
+     *
+     * @return completed with the return code of the transaction once it has
+     *         been recorded
+     */
+    public CompletableFuture<ReturnCode> submit(Transaction transaction) {
+        Validate.notNull(transaction, "Transaction is null");
+
+        CompletableFuture<ReturnCode> future = new CompletableFuture<>();
+        publish(transaction, future);
+        return future;
+    }
+
+    /**
+     * Stops accepting transactions and waits until the consumers have
+     * recorded all the published ones
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        boolean interrupted = false;
+        for (Thread consumer : consumers) {
+            while (consumer.isAlive()) {
+                try {
+                    consumer.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void publish(Transaction transaction,
+            CompletableFuture<ReturnCode> future) {
+        IngestRing ring = ringOfCurrentThread();
+        while (true) {
+            producersInFlight.increment();
+            try {
+                checkOpen();
+                if (ring.offer(transaction, future) != IngestRing.FULL) {
+                    return;
+                }
+            } finally {
+                producersInFlight.decrement();
+            }
+            waitStrategy.idle();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void consume(IngestRing ring) {
+        Transaction[] batch = new Transaction[BATCH_SIZE];
+        CompletableFuture<?>[] batchFutures = new CompletableFuture<?>[BATCH_SIZE];
+
+        // Runs until closed and every transaction published before the close
+        // is recorded
+        while (!closed || producersInFlight.sum() != 0 || !ring.isEmpty()) {
+            int length = ring.drainTo(batch, batchFutures);
+            if (length == 0) {
+                waitStrategy.idle();
+                continue;
+            }
+
+            Transaction[] transactions = (length == BATCH_SIZE) ? batch
+                    : Arrays.copyOf(batch, length);
+            try {
+                ReturnCode[] returnCodes = recorder.recordAll(transactions);
+                for (int i = 0; i < length; i++) {
+                    if (batchFutures[i] != null) {
+                        ((CompletableFuture<ReturnCode>) batchFutures[i])
+                                .complete(returnCodes[i]);
+                    }
+                }
+            } catch (RuntimeException e) {
+                for (int i = 0; i < length; i++) {
+                    if (batchFutures[i] != null) {
+                        batchFutures[i].completeExceptionally(e);
+                    }
+                }
+            }
+            Arrays.fill(batch, 0, length, null);
+            Arrays.fill(batchFutures, 0, length, null);
+        }
+    }
+
+    private IngestRing ringOfCurrentThread() {
+        return rings[(int) (Thread.currentThread().getId() % rings.length)];
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("ingestor is closed");
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Coarse wall clock for the recording path, in milliseconds since the epoch.
+ * A background thread reads the system clock once per resolution and
+ * publishes it in a volatile field, so reading the time is a plain memory load
+ * however many threads record. The time it returns may be up to one
+ * resolution behind, and never goes backwards
+ */
+public class CachedClock implements LongSupplier, Closeable {
+    public static final long DEFAULT_RESOLUTION_MILLIS = 1;
+
+    private final ScheduledExecutorService ticker;
+
+    private volatile long currentTimeMillis;
+
+    public CachedClock() {
+        this(DEFAULT_RESOLUTION_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param resolution
+     *            how often the time is read from the system clock
+     * @param unit
+     */
+    public CachedClock(long resolution, TimeUnit unit) {
+        Validate.isTrue(resolution > 0, "resolution must be positive");
+        Validate.notNull(unit, "unit is null");
+
+        this.currentTimeMillis = System.currentTimeMillis();
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cached-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, resolution, resolution, unit);
+    }
+
+    @Override
+    public long getAsLong() {
+        return currentTimeMillis;
+    }
+
+    /**
+     * Stops ticking; the time stays at the last tick
+     */
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        // The system clock may be stepped back, but windows only move forward
+        if (now > currentTimeMillis) {
+            currentTimeMillis = now;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Releases the memory of direct and mapped byte buffers now rather than when
+ * they are garbage collected, which may be long after they are dropped, or
+ * never for a long-lived buffer
+ */
+final class DirectBuffers {
+    private DirectBuffers() {
+    }
+
+    /**
+     * Frees the memory of the direct buffer, or unmaps the mapped one. The
+     * buffer and every view of it must never be touched again. Java has no
+     * public API for it, so it is left to the garbage collector where neither
+     * the Java 9+ nor the Java 8 cleaner is reachable
+     */
+    static void release(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+                        ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                // Java 8
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+                return;
+            }
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the garbage collector
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.murali.transactionmanager.store.impl;
+
+/**
+ * Monotonic deque of per-interval maximums, used to answer the maximum of a
+ * sliding window in O(1). Entries are ordered by interval (oldest at the head)
+ * with strictly decreasing values, so the head is always the maximum of the
+ * window; a value that is older and not greater than a newer one can never
+ * become the maximum and is dropped. The minimum is tracked by offering
+ * negated values.
+ *
+ * The deque is preallocated and not thread-safe; callers guard it with their
+ * own lock
+ */
+class ExtremeValueDeque {
+    private final long[] intervals;
+    private final double[] values;
+    private int head;
+    private int size;
+
+    ExtremeValueDeque(int capacity) {
+        this.intervals = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    /**
+     * Returns the maximum of all entries, or negative infinity if there are
+     * none
+     */
+    double peek() {
+        return (size == 0) ? Double.NEGATIVE_INFINITY : values[head];
+    }
+
+    /**
+     * Offers a value observed during the given interval. Intervals are usually
+     * offered in order, which is amortized O(1); a late value for an older
+     * interval is placed at its position as well, found by binary search
+     */
+    void offer(long interval, double value) {
+        int position = positionOf(interval);
+        // The first entry of the same or a later interval is the largest of
+        // them; if it is at least as large, this value is irrelevant
+        if (position < size && values[index(position)] >= value) {
+            return;
+        }
+
+        // A smaller value already recorded for the same interval is replaced
+        int end = position;
+        if (end < size && intervals[index(end)] == interval) {
+            end++;
+        }
+
+        // Older entries that are not greater than this value are dropped
+        int start = position;
+        while (start > 0 && values[index(start - 1)] <= value) {
+            start--;
+        }
+
+        replace(start, end, interval, value);
+    }
+
+    /**
+     * Drops all entries of intervals up to and including the given interval
+     */
+    void expire(long throughInterval) {
+        while (size > 0 && intervals[head] <= throughInterval) {
+            head = index(1);
+            size--;
+        }
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Returns the position of the first entry of the given or a later
+     * interval, or size if there is none
+     */
+    private int positionOf(long interval) {
+        if (size == 0 || intervals[index(size - 1)] < interval) {
+            return size;
+        }
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (intervals[index(middle)] < interval) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void replace(int start, int end, long interval, double value) {
+        // Entries [start, end) are replaced by a single one
+        shift(end, 1 - (end - start));
+        size += 1 - (end - start);
+        intervals[index(start)] = interval;
+        values[index(start)] = value;
+    }
+
+    /**
+     * Moves the entries from the given position to the tail by offset places
+     */
+    private void shift(int from, int offset) {
+        if (offset > 0) {
+            for (int i = size - 1; i >= from; i--) {
+                move(i, i + offset);
+            }
+        } else if (offset < 0) {
+            for (int i = from; i < size; i++) {
+                move(i, i + offset);
+            }
+        }
+    }
+
+    private void move(int from, int to) {
+        intervals[index(to)] = intervals[index(from)];
+        values[index(to)] = values[index(from)];
+    }
+
+    private int index(int position) {
+        return (head + position) % intervals.length;
+    }
+}
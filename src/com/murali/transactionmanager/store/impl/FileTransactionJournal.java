@@ -0,0 +1,375 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import org.apache.commons.lang.Validate;
+
+import com.murali.transactionmanager.store.JournalDurability;
+import com.murali.transactionmanager.store.RecordingWindow;
+import com.murali.transactionmanager.store.TransactionJournal;
+
+/**
+ * {@link TransactionJournal} in segment files of fixed-width binary records:
+ * amount, timestamp, merchant id and account id, 32 bytes each.
+ *
+ * Appends only copy the record into a buffer; a single writer thread swaps
+ * that buffer for an empty one and writes the whole group through a
+ * {@link FileChannel}, with one fsync per group unless the durability is
+ * {@link JournalDurability#NONE}. So the more concurrent appends, the more
+ * records share an fsync. Appends block while the buffer is full.
+ *
+ * Every journal opened on a directory starts a new segment, and the writer
+ * rolls over to a new one once a segment has reached its size. When a segment
+ * is started, the segments whose newest timestamp is older than the retention
+ * are deleted: none of their transactions would be recorded by a replay.
+ * Segments left by earlier journals are read once to find their newest
+ * timestamp. A record torn by a crash can only be at the end of a segment,
+ * and is skipped by {@link JournalReplayer}
+ */
+public class FileTransactionJournal implements TransactionJournal {
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+    // The window of a recorder that is not given one
+    public static final long DEFAULT_RETENTION_MILLIS = RecordingWindow
+            .ONE_MINUTE_BY_SECOND.getLengthMillis();
+
+    static final int RECORD_BYTES = 32;
+
+    private static final String SEGMENT_GLOB = "journal-*.log";
+    private static final String SEGMENT_FORMAT = "journal-%020d.log";
+    private static final int BUFFER_RECORDS = 4096;
+    private static final int TIMESTAMP_OFFSET = 8;
+
+    private final Path directory;
+    private final JournalDurability durability;
+    private final long segmentBytes;
+    private final long retentionMillis;
+    private final LongSupplier clock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final Condition written = lock.newCondition();
+    private ByteBuffer pending = ByteBuffer
+            .allocate(BUFFER_RECORDS * RECORD_BYTES);
+    private ByteBuffer writing = ByteBuffer
+            .allocate(BUFFER_RECORDS * RECORD_BYTES);
+    private long appendedRecords;
+    private long writtenRecords;
+    // Newest timestamp appended to the pending buffer
+    private long pendingNewestTimestamp = Long.MIN_VALUE;
+    private IOException failure;
+    private boolean closed;
+
+    // Only used by the writer thread once it has started
+    private FileChannel segment;
+    private Path segmentPath;
+    private long segmentIndex;
+    private long segmentNewestTimestamp = Long.MIN_VALUE;
+    // Newest timestamp of every segment before the current one
+    private final Map<Path, Long> newestTimestamps = new HashMap<>();
+
+    private final Thread writer;
+
+    public FileTransactionJournal(Path directory) throws IOException {
+        this(directory, JournalDurability.SYNC, DEFAULT_SEGMENT_BYTES,
+                DEFAULT_RETENTION_MILLIS);
+    }
+
+    public FileTransactionJournal(Path directory, JournalDurability durability,
+            long segmentBytes, long retentionMillis) throws IOException {
+        this(directory, durability, segmentBytes, retentionMillis,
+                System::currentTimeMillis);
+    }
+
+    /**
+     * @param directory
+     *            directory of the segment files, created if needed
+     * @param durability
+     * @param segmentBytes
+     *            size after which the writer rolls over to a new segment
+     * @param retentionMillis
+     *            how long a segment is kept after its newest timestamp: the
+     *            length of the longest window of the recorders rebuilt from
+     *            the journal
+     * @param clock
+     *            current time in milliseconds since the epoch
+     */
+    public FileTransactionJournal(Path directory, JournalDurability durability,
+            long segmentBytes, long retentionMillis, LongSupplier clock)
+            throws IOException {
+        Validate.notNull(directory, "directory is null");
+        Validate.notNull(durability, "durability is null");
+        Validate.isTrue(segmentBytes >= RECORD_BYTES,
+                "segmentBytes must hold a record");
+        Validate.isTrue(retentionMillis > 0,
+                "retentionMillis must be positive");
+        Validate.notNull(clock, "clock is null");
+
+        this.directory = Files.createDirectories(directory);
+        this.durability = durability;
+        this.segmentBytes = segmentBytes;
+        this.retentionMillis = retentionMillis;
+        this.clock = clock;
+
+        List<Path> segments = segments(directory);
+        this.segmentIndex = segments.isEmpty() ? 0
+                : indexOf(segments.get(segments.size() - 1));
+        startSegment();
+
+        this.writer = new Thread(this::writeGroups, "transaction-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public JournalDurability getDurability() {
+        return this.durability;
+    }
+
+    /**
+     * @throws UncheckedIOException
+     *             if the journal could not be written
+     * @throws IllegalStateException
+     *             if the journal is closed
+     */
+    @Override
+    public long append(double amount, long timestamp, long merchantId,
+            long accountId) {
+        lock.lock();
+        try {
+            while (!pending.hasRemaining() && failure == null && !closed) {
+                written.awaitUninterruptibly();
+            }
+            checkWritable();
+            if (closed) {
+                throw new IllegalStateException("journal is closed");
+            }
+
+            pending.putDouble(amount).putLong(timestamp).putLong(merchantId)
+                    .putLong(accountId);
+            pendingNewestTimestamp = Math.max(pendingNewestTimestamp,
+                    timestamp);
+            appended.signal();
+            return ++appendedRecords;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @throws UncheckedIOException
+     *             if the journal could not be written
+     */
+    @Override
+    public void awaitDurable(long sequence) {
+        lock.lock();
+        try {
+            while (durability == JournalDurability.SYNC
+                    && writtenRecords < sequence && failure == null) {
+                written.awaitUninterruptibly();
+            }
+            checkWritable();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes and forces the records appended so far, then closes the journal
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            segment.force(true);
+        } finally {
+            segment.close();
+        }
+    }
+
+    /**
+     * Returns the segment files of the directory, oldest first
+     */
+    static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_GLOB)) {
+            for (Path segment : stream) {
+                segments.add(segment);
+            }
+        }
+        // The indexes are zero-padded, so names sort in index order
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private void writeGroups() {
+        while (true) {
+            long groupEnd;
+            long groupNewestTimestamp;
+            lock.lock();
+            try {
+                while (pending.position() == 0 && !closed) {
+                    appended.awaitUninterruptibly();
+                }
+                if (pending.position() == 0) {
+                    return;
+                }
+
+                ByteBuffer group = pending;
+                pending = writing;
+                writing = group;
+                groupEnd = appendedRecords;
+                groupNewestTimestamp = pendingNewestTimestamp;
+                pendingNewestTimestamp = Long.MIN_VALUE;
+                // Appends blocked on a full buffer can go on
+                written.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                writing.flip();
+                while (writing.hasRemaining()) {
+                    segment.write(writing);
+                }
+                writing.clear();
+                if (durability != JournalDurability.NONE) {
+                    segment.force(false);
+                }
+                segmentNewestTimestamp = Math.max(segmentNewestTimestamp,
+                        groupNewestTimestamp);
+                if (segment.position() >= segmentBytes) {
+                    segment.close();
+                    newestTimestamps.put(segmentPath, segmentNewestTimestamp);
+                    startSegment();
+                }
+            } catch (IOException e) {
+                lock.lock();
+                try {
+                    failure = e;
+                    written.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            lock.lock();
+            try {
+                writtenRecords = groupEnd;
+                written.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void startSegment() throws IOException {
+        segmentIndex++;
+        segmentPath = directory
+                .resolve(String.format(SEGMENT_FORMAT, segmentIndex));
+        segment = FileChannel.open(segmentPath, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        segmentNewestTimestamp = Long.MIN_VALUE;
+
+        // An empty segment has no timestamp to keep it
+        long now = clock.getAsLong();
+        for (Path oldSegment : segments(directory)) {
+            if (oldSegment.equals(segmentPath)) {
+                continue;
+            }
+            Long newestTimestamp = newestTimestamps.get(oldSegment);
+            if (newestTimestamp == null) {
+                newestTimestamp = newestTimestampOf(oldSegment);
+            }
+            if (newestTimestamp == Long.MIN_VALUE
+                    || now - newestTimestamp > retentionMillis) {
+                Files.deleteIfExists(oldSegment);
+                newestTimestamps.remove(oldSegment);
+            } else {
+                newestTimestamps.put(oldSegment, newestTimestamp);
+            }
+        }
+    }
+
+    /**
+     * Reads the newest timestamp of a segment left by an earlier journal;
+     * {@link Long#MIN_VALUE} if it has no complete record
+     */
+    private static long newestTimestampOf(Path segment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_RECORDS * RECORD_BYTES);
+        long newestTimestamp = Long.MIN_VALUE;
+        try (FileChannel channel = FileChannel.open(segment,
+                StandardOpenOption.READ)) {
+            boolean endOfSegment = false;
+            while (!endOfSegment) {
+                endOfSegment = channel.read(buffer) < 0;
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_BYTES) {
+                    newestTimestamp = Math.max(newestTimestamp,
+                            buffer.getLong(buffer.position()
+                                    + TIMESTAMP_OFFSET));
+                    buffer.position(buffer.position() + RECORD_BYTES);
+                }
+                // Whatever is left at the end of the segment is torn
+                buffer.compact();
+            }
+        }
+        return newestTimestamp;
+    }
+
+    private void checkWritable() {
+        if (failure != null) {
+            throw new UncheckedIOException("journal could not be written",
+                    failure);
+        }
+    }
+
+    private static long indexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring("journal-".length(),
+                name.length() - ".log".length()));
+    }
+}
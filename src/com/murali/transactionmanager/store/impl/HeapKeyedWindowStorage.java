@@ -0,0 +1,106 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.util.Arrays;
+
+/**
+ * {@link KeyedWindowStorage} in primitive arrays, one per field
+ */
+class HeapKeyedWindowStorage implements KeyedWindowStorage {
+    private final long[] keys;
+    private final long[] latestIntervals;
+    private final int[] rows;
+
+    private final long[] intervals;
+    private final long[] counts;
+    private final double[] sums;
+    private final double[] mins;
+    private final double[] maxs;
+
+    HeapKeyedWindowStorage(int entries, int buckets, long freeInterval) {
+        keys = new long[entries];
+        latestIntervals = new long[entries];
+        Arrays.fill(latestIntervals, freeInterval);
+        rows = new int[entries];
+
+        intervals = new long[buckets];
+        counts = new long[buckets];
+        sums = new double[buckets];
+        mins = new double[buckets];
+        maxs = new double[buckets];
+    }
+
+    @Override
+    public int getEntries() {
+        return keys.length;
+    }
+
+    @Override
+    public long getKey(int entry) {
+        return keys[entry];
+    }
+
+    @Override
+    public long getLatestInterval(int entry) {
+        return latestIntervals[entry];
+    }
+
+    @Override
+    public int getRow(int entry) {
+        return rows[entry];
+    }
+
+    @Override
+    public void setEntry(int entry, long key, long latestInterval, int row) {
+        keys[entry] = key;
+        latestIntervals[entry] = latestInterval;
+        rows[entry] = row;
+    }
+
+    @Override
+    public void setLatestInterval(int entry, long latestInterval) {
+        latestIntervals[entry] = latestInterval;
+    }
+
+    @Override
+    public long getInterval(int bucket) {
+        return intervals[bucket];
+    }
+
+    @Override
+    public long getCount(int bucket) {
+        return counts[bucket];
+    }
+
+    @Override
+    public double getSum(int bucket) {
+        return sums[bucket];
+    }
+
+    @Override
+    public double getMin(int bucket) {
+        return mins[bucket];
+    }
+
+    @Override
+    public double getMax(int bucket) {
+        return maxs[bucket];
+    }
+
+    @Override
+    public void setBucket(int bucket, long interval, long count, double sum,
+            double min, double max) {
+        intervals[bucket] = interval;
+        counts[bucket] = count;
+        sums[bucket] = sum;
+        mins[bucket] = min;
+        maxs[bucket] = max;
+    }
+
+    @Override
+    public void add(int bucket, double amount) {
+        counts[bucket]++;
+        sums[bucket] += amount;
+        mins[bucket] = Math.min(mins[bucket], amount);
+        maxs[bucket] = Math.max(maxs[bucket], amount);
+    }
+}
@@ -0,0 +1,181 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.apache.commons.lang.Validate;
+
+import com.murali.transactionmanager.model.KeyDimension;
+import com.murali.transactionmanager.model.ReturnCode;
+import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.statistics.impl.AggregateTransactionStatsTracker;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+import com.murali.transactionmanager.store.BucketStorage;
+import com.murali.transactionmanager.store.EventTimePolicy;
+import com.murali.transactionmanager.store.KeyedTransactionRecorder;
+import com.murali.transactionmanager.store.RecordingWindow;
+
+/**
+ * In-memory per-key transaction records, backed by a {@link KeyedWindowMap}.
+ * Each key costs about 40 bytes per bucket of its window while it is active,
+ * so the default window is 60 seconds in 5 second buckets. With
+ * {@link BucketStorage#OFF_HEAP} those bytes are taken from direct memory
+ * rather than the heap, and given back when the recorder is closed
+ */
+public class InMemoryKeyedTransactionRecorder
+        implements KeyedTransactionRecorder, Closeable {
+    public static final RecordingWindow DEFAULT_KEYED_WINDOW = RecordingWindow
+            .of(60, 5, TimeUnit.SECONDS);
+
+    private final KeyDimension keyDimension;
+    private final RecordingWindow recordingWindow;
+    private final long recordingIntervalInMillis;
+    private final long bucketWidthInMillis;
+    private final EventTimePolicy eventTimePolicy;
+    private final long maxLagMillis;
+    private final long maxFutureSkewMillis;
+    private final KeyedWindowMap keyedWindows;
+    private final LongSupplier clock;
+
+    public InMemoryKeyedTransactionRecorder(KeyDimension keyDimension) {
+        this(keyDimension, DEFAULT_KEYED_WINDOW);
+    }
+
+    public InMemoryKeyedTransactionRecorder(KeyDimension keyDimension,
+            RecordingWindow recordingWindow) {
+        this(keyDimension, recordingWindow, BucketStorage.HEAP);
+    }
+
+    public InMemoryKeyedTransactionRecorder(KeyDimension keyDimension,
+            RecordingWindow recordingWindow, BucketStorage bucketStorage) {
+        this(keyDimension, recordingWindow, bucketStorage,
+                System::currentTimeMillis);
+    }
+
+    /**
+     * @param keyDimension
+     * @param recordingWindow
+     * @param bucketStorage
+     * @param clock
+     *            current time in milliseconds since the epoch, e.g. a
+     *            {@link CachedClock}
+     */
+    public InMemoryKeyedTransactionRecorder(KeyDimension keyDimension,
+            RecordingWindow recordingWindow, BucketStorage bucketStorage,
+            LongSupplier clock) {
+        this(keyDimension, recordingWindow, bucketStorage,
+                EventTimePolicy.DEFAULT, clock);
+    }
+
+    /**
+     * @param keyDimension
+     * @param recordingWindow
+     * @param bucketStorage
+     * @param eventTimePolicy
+     *            how far ahead of the clock and behind it timestamps may be
+     * @param clock
+     */
+    public InMemoryKeyedTransactionRecorder(KeyDimension keyDimension,
+            RecordingWindow recordingWindow, BucketStorage bucketStorage,
+            EventTimePolicy eventTimePolicy, LongSupplier clock) {
+        Validate.notNull(keyDimension, "keyDimension is null");
+        Validate.notNull(recordingWindow, "recordingWindow is null");
+        Validate.notNull(bucketStorage, "bucketStorage is null");
+        Validate.notNull(eventTimePolicy, "eventTimePolicy is null");
+        Validate.notNull(clock, "clock is null");
+
+        this.keyDimension = keyDimension;
+        this.recordingWindow = recordingWindow;
+        this.recordingIntervalInMillis = recordingWindow.getLengthMillis();
+        this.bucketWidthInMillis = recordingWindow.getBucketWidthMillis();
+        this.eventTimePolicy = eventTimePolicy;
+        this.maxLagMillis = eventTimePolicy
+                .getMaxLagMillis(recordingIntervalInMillis);
+        this.maxFutureSkewMillis = eventTimePolicy.getMaxFutureSkewMillis();
+        this.keyedWindows = new KeyedWindowMap(recordingWindow.getBuckets(),
+                bucketStorage);
+        this.clock = clock;
+    }
+
+    @Override
+    public KeyDimension getKeyDimension() {
+        return this.keyDimension;
+    }
+
+    public RecordingWindow getRecordingWindow() {
+        return this.recordingWindow;
+    }
+
+    /**
+     * Returns the number of keys held, including keys whose window has
+     * expired but that have not been evicted yet
+     */
+    public long getKeyCount() {
+        return keyedWindows.getKeyCount();
+    }
+
+    @Override
+    public ReturnCode record(Transaction transaction) {
+        Validate.notNull(transaction, "Transaction is null");
+
+        return record(keyDimension.keyOf(transaction), transaction.getAmount(),
+                transaction.getTimestamp());
+    }
+
+    /**
+     * Records a transaction given by its key, amount and timestamp, without a
+     * {@link Transaction}
+     */
+    @Override
+    public ReturnCode record(long key, double amount, long timestampMillis) {
+        if (key == Transaction.NO_ID || timestampMillis <= 0
+                || !Double.isFinite(amount)) {
+            return ReturnCode.BAD_REQUEST;
+        }
+
+        long currentTime = clock.getAsLong();
+        long timeElapsedSinceTransactionInMillis = currentTime
+                - timestampMillis;
+        if (timeElapsedSinceTransactionInMillis > maxLagMillis
+                || timeElapsedSinceTransactionInMillis < -maxFutureSkewMillis) {
+            return eventTimePolicy.check(timeElapsedSinceTransactionInMillis,
+                    recordingIntervalInMillis);
+        }
+
+        // A transaction from a clock that is ahead is recorded now
+        long currentInterval = currentTime / bucketWidthInMillis;
+        if (!keyedWindows.record(key,
+                Math.min(timestampMillis / bucketWidthInMillis,
+                        currentInterval),
+                currentInterval, amount)) {
+            return ReturnCode.OLD_TRANSACTION;
+        }
+        return ReturnCode.SUCCESS;
+    }
+
+    @Override
+    public Map<String, Number> getStatistics(long key) {
+        return AggregateTransactionStatsTracker
+                .toStats(getStatistics(key, new StatisticsSnapshot()));
+    }
+
+    @Override
+    public StatisticsSnapshot getStatistics(long key,
+            StatisticsSnapshot snapshot) {
+        Validate.notNull(snapshot, "snapshot is null");
+
+        return keyedWindows.getStatistics(key,
+                clock.getAsLong() / bucketWidthInMillis, snapshot);
+    }
+
+    /**
+     * Releases the buckets of every key. The recorder cannot be used
+     * afterwards
+     */
+    @Override
+    public void close() {
+        keyedWindows.close();
+    }
+}
@@ -1,42 +1,184 @@
 package com.murali.transactionmanager.store.impl;
 
-import java.time.Clock;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.StampedLock;
-import java.util.function.Supplier;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
 import org.apache.commons.lang.Validate;
 
+import com.murali.transactionmanager.metrics.MetricsRegistry;
 import com.murali.transactionmanager.model.ReturnCode;
 import com.murali.transactionmanager.model.Transaction;
 import com.murali.transactionmanager.statistics.impl.AggregateTransactionStatsTracker;
+import com.murali.transactionmanager.statistics.model.QuantileSketch;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+import com.murali.transactionmanager.store.EventTimePolicy;
+import com.murali.transactionmanager.store.RecordingWindow;
+import com.murali.transactionmanager.store.RetentionMode;
 import com.murali.transactionmanager.store.TransactionRecorder;
 
 /**
  * In-memory transaction records that provide the backend implementation for the
- * 2 Rest APIs
+ * 2 Rest APIs. Statistics cover a sliding {@link RecordingWindow}, 60 seconds
+ * in 1 second buckets unless configured otherwise. Longer windows can be added
+ * and are rolled up from the shortest one, so each transaction is recorded
+ * once for all of them. Quantiles of the amounts are tracked on request.
+ * The statistics can be checkpointed to a file and restored after a restart.
+ * Which timestamps are accepted is set by an {@link EventTimePolicy}. Given a
+ * {@link MetricsRegistry}, the recorder registers its metrics in it
  */
 public class InMemoryTransactionRecorder implements TransactionRecorder {
-    private static final int MILLISEC_IN_A_SECOND = 1000;
-    private final static long RECORDING_INTERVAL_IN_SECS = 60;
-    public final static long RECORDING_INTERVAL_IN_MILLIS = RECORDING_INTERVAL_IN_SECS
-            * MILLISEC_IN_A_SECOND;
+    public final static long RECORDING_INTERVAL_IN_MILLIS = RecordingWindow
+            .ONE_MINUTE_BY_SECOND.getLengthMillis();
 
-    private final List<Transaction> transactions = new ArrayList<>();
-    private final StampedLock transactionLocks = new StampedLock();
-    Map<Long, AggregateTransactionStatsTracker> aggregateTransactionStatsBySecondOffset = new HashMap<>();
-
-    protected Supplier<Long> currentTimeSuppiler;
+    private final List<RecordingWindow> recordingWindows;
+    private final long recordingIntervalInMillis;
+    private final long bucketWidthInMillis;
+    private final EventTimePolicy eventTimePolicy;
+    private final long maxLagMillis;
+    private final long maxFutureSkewMillis;
+    private final RetentionMode retentionMode;
+    private final RawTransactionWindow rawTransactionWindow;
+    private final TransactionStatsHierarchy transactionStats;
+    private final LongSupplier clock;
+    // Null if the recorder is not instrumented
+    private final RecorderMetrics metrics;
 
     public InMemoryTransactionRecorder() {
-        currentTimeSuppiler = () -> Clock.systemUTC().millis();
+        this(RetentionMode.AGGREGATES_ONLY);
+    }
+
+    public InMemoryTransactionRecorder(RetentionMode retentionMode) {
+        this(RecordingWindow.ONE_MINUTE_BY_SECOND, retentionMode);
+    }
+
+    public InMemoryTransactionRecorder(RecordingWindow recordingWindow) {
+        this(recordingWindow, RetentionMode.AGGREGATES_ONLY);
+    }
+
+    public InMemoryTransactionRecorder(RecordingWindow recordingWindow,
+            RetentionMode retentionMode) {
+        this(recordingWindow, retentionMode, System::currentTimeMillis);
+    }
+
+    /**
+     * @param recordingWindow
+     * @param retentionMode
+     * @param clock
+     *            current time in milliseconds since the epoch, e.g. a
+     *            {@link CachedClock}
+     */
+    public InMemoryTransactionRecorder(RecordingWindow recordingWindow,
+            RetentionMode retentionMode, LongSupplier clock) {
+        this(Collections.singletonList(recordingWindow), retentionMode, false,
+                clock);
+    }
+
+    /**
+     * @param recordingWindows
+     *            the windows to report statistics for, ordered from the
+     *            shortest to the longest; each bucket width must be a multiple
+     *            of the previous one. Raw transactions are retained for the
+     *            shortest window only
+     * @param retentionMode
+     */
+    public InMemoryTransactionRecorder(List<RecordingWindow> recordingWindows,
+            RetentionMode retentionMode) {
+        this(recordingWindows, retentionMode, false);
+    }
+
+    /**
+     * @param recordingWindows
+     * @param retentionMode
+     * @param trackQuantiles
+     *            whether the statistics include the p50, p95, p99 and p999
+     *            amounts. Each bucket of every window then keeps a
+     *            {@link QuantileSketch} of about 22 KB, so this suits windows
+     *            of up to a few hundred buckets
+     */
+    public InMemoryTransactionRecorder(List<RecordingWindow> recordingWindows,
+            RetentionMode retentionMode, boolean trackQuantiles) {
+        this(recordingWindows, retentionMode, trackQuantiles,
+                System::currentTimeMillis);
+    }
+
+    /**
+     * @param recordingWindows
+     * @param retentionMode
+     * @param trackQuantiles
+     * @param clock
+     *            current time in milliseconds since the epoch, e.g. a
+     *            {@link CachedClock}
+     */
+    public InMemoryTransactionRecorder(List<RecordingWindow> recordingWindows,
+            RetentionMode retentionMode, boolean trackQuantiles,
+            LongSupplier clock) {
+        this(recordingWindows, retentionMode, trackQuantiles,
+                EventTimePolicy.DEFAULT, clock);
     }
 
-    protected void setCurrentTimeSupplier(Supplier<Long> timeSupplier) {
-        this.currentTimeSuppiler = timeSupplier;
+    /**
+     * @param recordingWindows
+     * @param retentionMode
+     * @param trackQuantiles
+     * @param eventTimePolicy
+     *            how far ahead of the clock and behind it timestamps may be
+     * @param clock
+     */
+    public InMemoryTransactionRecorder(List<RecordingWindow> recordingWindows,
+            RetentionMode retentionMode, boolean trackQuantiles,
+            EventTimePolicy eventTimePolicy, LongSupplier clock) {
+        this(recordingWindows, retentionMode, trackQuantiles, eventTimePolicy,
+                clock, null);
+    }
+
+    /**
+     * @param recordingWindows
+     * @param retentionMode
+     * @param trackQuantiles
+     * @param eventTimePolicy
+     * @param clock
+     * @param metricsRegistry
+     *            where the metrics of the recorder are registered, or null to
+     *            not instrument it
+     */
+    public InMemoryTransactionRecorder(List<RecordingWindow> recordingWindows,
+            RetentionMode retentionMode, boolean trackQuantiles,
+            EventTimePolicy eventTimePolicy, LongSupplier clock,
+            MetricsRegistry metricsRegistry) {
+        Validate.notEmpty(recordingWindows, "recordingWindows is empty");
+        Validate.notNull(retentionMode, "retentionMode is null");
+        Validate.notNull(eventTimePolicy, "eventTimePolicy is null");
+        Validate.notNull(clock, "clock is null");
+
+        this.recordingWindows = Collections
+                .unmodifiableList(new ArrayList<>(recordingWindows));
+        this.transactionStats = new TransactionStatsHierarchy(
+                this.recordingWindows, trackQuantiles);
+
+        RecordingWindow shortestWindow = this.recordingWindows.get(0);
+        this.recordingIntervalInMillis = this.recordingWindows
+                .get(this.recordingWindows.size() - 1).getLengthMillis();
+        this.bucketWidthInMillis = shortestWindow.getBucketWidthMillis();
+        this.eventTimePolicy = eventTimePolicy;
+        this.maxLagMillis = eventTimePolicy
+                .getMaxLagMillis(recordingIntervalInMillis);
+        this.maxFutureSkewMillis = eventTimePolicy.getMaxFutureSkewMillis();
+        this.retentionMode = retentionMode;
+        this.rawTransactionWindow = (retentionMode == RetentionMode.WINDOWED_RAW)
+                ? new RawTransactionWindow(shortestWindow.getBuckets()) : null;
+        this.clock = clock;
+        this.metrics = (metricsRegistry == null) ? null
+                : new RecorderMetrics(metricsRegistry, transactionStats,
+                        rawTransactionWindow);
     }
 
     /**
@@ -47,86 +189,467 @@ public class InMemoryTransactionRecorder implements TransactionRecorder {
      */
     @Override
     public ReturnCode record(Transaction transaction) {
+        if (metrics == null || !metrics.isEnabled()) {
+            return recordTransaction(transaction);
+        }
+
+        long start = System.nanoTime();
+        ReturnCode returnCode = recordTransaction(transaction);
+        metrics.recorded(returnCode, System.nanoTime() - start);
+        return returnCode;
+    }
+
+    /**
+     * Registers a transaction given by its amount and timestamp. No
+     * {@link Transaction} is created unless raw transactions are retained
+     */
+    @Override
+    public ReturnCode record(double amount, long timestampMillis) {
+        if (metrics == null || !metrics.isEnabled()) {
+            return recordAmount(amount, timestampMillis, null);
+        }
+
+        long start = System.nanoTime();
+        ReturnCode returnCode = recordAmount(amount, timestampMillis, null);
+        metrics.recorded(returnCode, System.nanoTime() - start);
+        return returnCode;
+    }
+
+    /**
+     * Checks the timestamp against the clock and the {@link EventTimePolicy}
+     */
+    @Override
+    public ReturnCode check(double amount, long timestampMillis) {
+        if (timestampMillis <= 0 || !Double.isFinite(amount)) {
+            return ReturnCode.BAD_REQUEST;
+        }
+
+        long timeElapsedSinceTransactionInMillis = clock.getAsLong()
+                - timestampMillis;
+        if (timeElapsedSinceTransactionInMillis > maxLagMillis
+                || timeElapsedSinceTransactionInMillis < -maxFutureSkewMillis) {
+            return eventTimePolicy.check(timeElapsedSinceTransactionInMillis,
+                    recordingIntervalInMillis);
+        }
+        return ReturnCode.SUCCESS;
+    }
+
+    private ReturnCode recordTransaction(Transaction transaction) {
         Validate.notNull(transaction, "Transaction is null");
 
-        long timeElapsedSinceTransactionInMillis = currentTimeSuppiler.get()
-                - transaction.getTimestamp();
+        return recordAmount(transaction.getAmount(), transaction.getTimestamp(),
+                transaction);
+    }
 
-        if (timeElapsedSinceTransactionInMillis > RECORDING_INTERVAL_IN_MILLIS) {
+    /**
+     * @param transaction
+     *            the transaction of the amount and timestamp, or null to
+     *            create one only if the raw window retains it
+     */
+    private ReturnCode recordAmount(double amount, long timestampMillis,
+            Transaction transaction) {
+        // A NaN or infinite amount would make the sums of every window NaN
+        // for as long as they are not empty
+        if (timestampMillis <= 0 || !Double.isFinite(amount)) {
+            return ReturnCode.BAD_REQUEST;
+        }
+
+        long currentTime = clock.getAsLong();
+        long timeElapsedSinceTransactionInMillis = currentTime
+                - timestampMillis;
+
+        if (timeElapsedSinceTransactionInMillis > maxLagMillis
+                || timeElapsedSinceTransactionInMillis < -maxFutureSkewMillis) {
+            return eventTimePolicy.check(timeElapsedSinceTransactionInMillis,
+                    recordingIntervalInMillis);
+        }
+
+        // Generate statistics for the bucket within the window, when this
+        // transaction occurred. The ring holds one bucket per bucket width
+        // and uses (mod number of buckets) to find it; a bucket that still
+        // holds an interval before the current window is reset for the new
+        // one. A transaction from a clock that is ahead is recorded now
+        long transactionInterval = Math.min(timestampMillis, currentTime)
+                / bucketWidthInMillis;
+        int level = transactionStats.record(transactionInterval, 1, amount,
+                amount, amount);
+        if (level == TransactionStatsHierarchy.NOT_RECORDED) {
+            // The bucket has already been claimed by an interval a full
+            // window after this transaction
             return ReturnCode.OLD_TRANSACTION;
         }
 
-        addTransaction(transaction);
+        if (rawTransactionWindow != null && level == 0) {
+            rawTransactionWindow.add(transactionInterval,
+                    (transaction != null) ? transaction
+                            : new Transaction(amount, timestampMillis));
+        }
         return ReturnCode.SUCCESS;
     }
 
+    /**
+     * Registers a batch of transactions. A null transaction, or one whose
+     * amount is not finite, is a {@link ReturnCode#BAD_REQUEST}
+     */
+    @Override
+    public List<ReturnCode> recordAll(Collection<Transaction> transactions) {
+        Validate.notNull(transactions, "transactions is null");
+
+        return Arrays.asList(recordAll(
+                transactions.toArray(new Transaction[transactions.size()])));
+    }
+
+    /**
+     * Registers a batch of transactions. A null transaction, or one whose
+     * amount is not finite, is a {@link ReturnCode#BAD_REQUEST}
+     */
+    @Override
+    public ReturnCode[] recordAll(Transaction[] transactions) {
+        if (metrics == null || !metrics.isEnabled()) {
+            return recordTransactions(transactions);
+        }
+
+        long start = System.nanoTime();
+        ReturnCode[] returnCodes = recordTransactions(transactions);
+        metrics.recordedBatch(System.nanoTime() - start);
+        for (ReturnCode returnCode : returnCodes) {
+            metrics.count(returnCode);
+        }
+        return returnCodes;
+    }
+
+    private ReturnCode[] recordTransactions(Transaction[] transactions) {
+        Validate.notNull(transactions, "transactions is null");
+
+        long currentTime = clock.getAsLong();
+        ReturnCode[] returnCodes = new ReturnCode[transactions.length];
+        Transaction[] validTransactions = new Transaction[transactions.length];
+        double[] amounts = new double[transactions.length];
+        long[] timestamps = new long[transactions.length];
+        int[] positions = new int[transactions.length];
+        int length = 0;
+
+        for (int i = 0; i < transactions.length; i++) {
+            if (transactions[i] == null
+                    || !Double.isFinite(transactions[i].getAmount())) {
+                returnCodes[i] = ReturnCode.BAD_REQUEST;
+                continue;
+            }
+
+            long timeElapsedSinceTransactionInMillis = currentTime
+                    - transactions[i].getTimestamp();
+            if (timeElapsedSinceTransactionInMillis > maxLagMillis
+                    || timeElapsedSinceTransactionInMillis
+                            < -maxFutureSkewMillis) {
+                returnCodes[i] = eventTimePolicy.check(
+                        timeElapsedSinceTransactionInMillis,
+                        recordingIntervalInMillis);
+            } else {
+                validTransactions[length] = transactions[i];
+                amounts[length] = transactions[i].getAmount();
+                timestamps[length] = transactions[i].getTimestamp();
+                positions[length] = i;
+                length++;
+            }
+        }
+
+        BitSet rejections = new BitSet(length);
+        recordBatch(currentTime, amounts, timestamps, length, rejections,
+                validTransactions);
+
+        for (int i = 0; i < length; i++) {
+            returnCodes[positions[i]] = rejections.get(i)
+                    ? ReturnCode.OLD_TRANSACTION
+                    : ReturnCode.SUCCESS;
+        }
+        return returnCodes;
+    }
+
+    /**
+     * Registers a batch of transactions given as columns. Transactions with an
+     * amount that is not finite, a timestamp that is not positive, or one
+     * that the {@link EventTimePolicy} does not accept, are rejected
+     */
+    @Override
+    public int recordAll(double[] amounts, long[] timestamps, int length,
+            BitSet rejections) {
+        Validate.notNull(amounts, "amounts is null");
+        Validate.notNull(timestamps, "timestamps is null");
+        Validate.notNull(rejections, "rejections is null");
+        Validate.isTrue(length >= 0 && length <= amounts.length
+                && length <= timestamps.length, "invalid length");
+
+        long currentTime = clock.getAsLong();
+        if (metrics == null || !metrics.isEnabled()) {
+            return recordBatch(currentTime, amounts, timestamps, length,
+                    rejections, null);
+        }
+
+        long start = System.nanoTime();
+        int recorded = recordBatch(currentTime, amounts, timestamps, length,
+                rejections, null);
+        metrics.recordedBatch(System.nanoTime() - start);
+        metrics.countRecorded(recorded);
+        for (int i = rejections.nextSetBit(0); i >= 0 && i < length;
+                i = rejections.nextSetBit(i + 1)) {
+            metrics.count(rejectionOf(currentTime, amounts[i],
+                    timestamps[i]));
+        }
+        return recorded;
+    }
+
     /**
      * Returns statistics about all transactions recorded within a time window
      */
     @Override
     public Map<String, Number> getStatistics() {
+        return AggregateTransactionStatsTracker
+                .toStats(getStatistics(new StatisticsSnapshot()));
+    }
+
+    @Override
+    public StatisticsSnapshot getStatistics(StatisticsSnapshot snapshot) {
+        return getStatistics(recordingWindows.get(0), snapshot);
+    }
+
+    @Override
+    public Map<String, Number> getStatistics(RecordingWindow window) {
+        return AggregateTransactionStatsTracker
+                .toStats(getStatistics(window, new StatisticsSnapshot()));
+    }
+
+    @Override
+    public StatisticsSnapshot getStatistics(RecordingWindow window,
+            StatisticsSnapshot snapshot) {
+        Validate.notNull(snapshot, "snapshot is null");
+        int level = recordingWindows.indexOf(window);
+        // The message is only built when the check fails, since this is on
+        // the allocation-free read path
+        Validate.isTrue(level >= 0, "window is not recorded: ", window);
+
+        return transactionStats.getStatistics(level,
+                clock.getAsLong() / bucketWidthInMillis, snapshot);
+    }
+
+    /**
+     * Checkpoints the statistics of every window to the file now and then
+     * every period, until the returned checkpointer is closed. Raw
+     * transactions are not checkpointed, and neither are quantiles
+     *
+     * @throws IOException
+     *             if the file cannot be mapped
+     */
+    public StatsCheckpointer startCheckpoints(Path file, long period,
+            TimeUnit unit) throws IOException {
+        StatsCheckpointer checkpointer = new StatsCheckpointer(
+                transactionStats, recordingWindows, file);
+        checkpointer.checkpoint();
+        checkpointer.start(period, unit);
+        return checkpointer;
+    }
 
-        AggregateTransactionStatsTracker aggregateTrackerForCurrentRecordingInterval = new AggregateTransactionStatsTracker(
-                currentTimeSuppiler.get() / MILLISEC_IN_A_SECOND);
-
-        aggregateTransactionStatsBySecondOffset.entrySet().forEach(entry -> {
-            aggregateTrackerForCurrentRecordingInterval
-                    .mergeStatistic(entry.getValue());
-        });
-        return aggregateTrackerForCurrentRecordingInterval.getStats();
-    }
-
-    private synchronized void addTransaction(Transaction transaction) {
-        long writeLock = transactionLocks.writeLock();
-
-        // Records transactions
-        transactions.add(transaction);
-
-        // Generate statistics for the second within the last 60, when this
-        // transaction occurred
-        // 'aggregateTransactionStatsBySecondOffset' map uses (mod 60) hash
-        // function to record stats of all transactions that happened
-        // during a particular second within the last 60 seconds.
-
-        long newTransactionTimeInSeconds = (transaction.getTimestamp()
-                / MILLISEC_IN_A_SECOND);
-        long newTransactionTimeStampOffsetSeconds = newTransactionTimeInSeconds
-                % RECORDING_INTERVAL_IN_SECS;
-        try {
-            AggregateTransactionStatsTracker existingTransactionStatsTracker = aggregateTransactionStatsBySecondOffset
-                    .get(newTransactionTimeInSeconds);
-
-            if (existingTransactionStatsTracker == null) {
-                // This is the first transaction for this seconds. Create a new
-                // stats instance
-                existingTransactionStatsTracker = new AggregateTransactionStatsTracker(
-                        newTransactionTimeInSeconds);
-                existingTransactionStatsTracker.recordTransaction(transaction);
-                aggregateTransactionStatsBySecondOffset.put(
-                        newTransactionTimeInSeconds,
-                        existingTransactionStatsTracker);
-            } else if (existingTransactionStatsTracker
-                    .getTimestampInSeconds() == newTransactionTimeInSeconds) {
-                // Transactions have already been recorded at the same time (in
-                // second). So, update the stats based on this new transaction
-                existingTransactionStatsTracker.recordTransaction(transaction);
-            } else if (existingTransactionStatsTracker
-                    .getTimestampInSeconds() < newTransactionTimeInSeconds) {
-                // The current stats tracker has been recording stats for a
-                // time (in seconds) before the current 60 seconds windows.
-                // So, replace it with a new tracker for this new
-                // transactionTime
-
-                aggregateTransactionStatsBySecondOffset
-                        .remove(newTransactionTimeStampOffsetSeconds);
-                AggregateTransactionStatsTracker newStatistics = new AggregateTransactionStatsTracker(
-                        newTransactionTimeInSeconds);
-                newStatistics.recordTransaction(transaction);
-                aggregateTransactionStatsBySecondOffset.put(
-                        newTransactionTimeStampOffsetSeconds, newStatistics);
+    /**
+     * Restores the statistics checkpointed to the file by a recorder with the
+     * same windows, e.g. before a restart. Buckets that have left their
+     * windows since are dropped (or rolled up into a longer window). Meant to
+     * be called before any transaction is recorded
+     *
+     * @return the number of buckets restored; 0 if there is no valid
+     *         checkpoint of the same windows in the file
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public int restoreCheckpoint(Path file) throws IOException {
+        return StatsCheckpointer.restore(file, transactionStats,
+                recordingWindows,
+                clock.getAsLong() / bucketWidthInMillis);
+    }
+
+    /**
+     * Starts sweeping the windows every period, until the returned sweeper is
+     * closed, so that buckets are retired as soon as they leave the window
+     * rather than by the next write to their slot or read
+     */
+    public WindowSweeper startSweeper(long period, TimeUnit unit) {
+        WindowSweeper sweeper = new WindowSweeper(clock, bucketWidthInMillis,
+                this::sweep);
+        sweeper.start(period, unit);
+        return sweeper;
+    }
+
+    /**
+     * Groups the batch by bucket and records each group with a single update
+     * of its bucket. Transactions are grouped by sorting keys that pack the
+     * bucket interval (relative to the oldest interval of the window) into the
+     * upper and the index into the lower 32 bits; the sort is skipped when the
+     * batch is already in order
+     */
+    private int recordBatch(long currentTime, double[] amounts,
+            long[] timestamps, int length, BitSet rejections,
+            Transaction[] transactions) {
+        rejections.clear(0, length);
+
+        long oldestInterval = (currentTime - recordingIntervalInMillis)
+                / bucketWidthInMillis;
+        long[] keys = new long[length];
+        int keyCount = 0;
+        boolean inOrder = true;
+        int recorded = 0;
+
+        for (int i = 0; i < length; i++) {
+            long timeElapsedSinceTransactionInMillis = currentTime
+                    - timestamps[i];
+
+            if (timestamps[i] <= 0 || !Double.isFinite(amounts[i])
+                    || timeElapsedSinceTransactionInMillis > maxLagMillis
+                    || timeElapsedSinceTransactionInMillis
+                            < -maxFutureSkewMillis) {
+                rejections.set(i);
+            } else {
+                // Transactions from clocks that are ahead are recorded now,
+                // so the offset always fits into a key
+                long intervalOffset = Math.min(timestamps[i], currentTime)
+                        / bucketWidthInMillis - oldestInterval;
+                long key = (intervalOffset << 32) | i;
+                inOrder &= (keyCount == 0 || keys[keyCount - 1] < key);
+                keys[keyCount++] = key;
             }
-        } finally {
-            transactionLocks.unlock(writeLock);
         }
+
+        if (!inOrder) {
+            Arrays.sort(keys, 0, keyCount);
+        }
+
+        int groupStart = 0;
+        while (groupStart < keyCount) {
+            long intervalOffset = keys[groupStart] >>> 32;
+            int groupEnd = groupStart + 1;
+            while (groupEnd < keyCount
+                    && (keys[groupEnd] >>> 32) == intervalOffset) {
+                groupEnd++;
+            }
+
+            recorded += recordGroup(oldestInterval + intervalOffset, amounts,
+                    timestamps, transactions, keys, groupStart, groupEnd,
+                    rejections);
+            groupStart = groupEnd;
+        }
+        return recorded;
+    }
+
+    /**
+     * Returns why a transaction of a column batch was rejected
+     */
+    private ReturnCode rejectionOf(long currentTime, double amount,
+            long timestamp) {
+        long timeElapsedSinceTransactionInMillis = currentTime - timestamp;
+        if (timestamp <= 0 || !Double.isFinite(amount)) {
+            return ReturnCode.BAD_REQUEST;
+        } else if (timeElapsedSinceTransactionInMillis > maxLagMillis
+                || timeElapsedSinceTransactionInMillis < -maxFutureSkewMillis) {
+            return eventTimePolicy.check(timeElapsedSinceTransactionInMillis,
+                    recordingIntervalInMillis);
+        }
+        // Its bucket had already been claimed by a newer interval
+        return ReturnCode.OLD_TRANSACTION;
+    }
+
+    private void sweep(long nowInterval) {
+        transactionStats.advanceTo(nowInterval);
+        if (rawTransactionWindow != null) {
+            rawTransactionWindow.expire(nowInterval);
+        }
+    }
+
+    /**
+     * Records the group of transactions of the same interval
+     * 
+     * @return the number of transactions recorded
+     */
+    private int recordGroup(long interval, double[] amounts,
+            long[] timestamps, Transaction[] transactions, long[] keys,
+            int groupStart, int groupEnd, BitSet rejections) {
+        if (transactionStats.isTrackingQuantiles()) {
+            // The sketches need every amount, so the transactions are recorded
+            // one by one
+            int recorded = 0;
+            for (int k = groupStart; k < groupEnd; k++) {
+                int i = (int) keys[k];
+                int level = transactionStats.record(interval, 1, amounts[i],
+                        amounts[i], amounts[i]);
+                if (level == TransactionStatsHierarchy.NOT_RECORDED) {
+                    rejections.set(i);
+                    continue;
+                }
+                if (rawTransactionWindow != null && level == 0) {
+                    rawTransactionWindow.add(interval,
+                            transactionAt(i, amounts, timestamps, transactions));
+                }
+                recorded++;
+            }
+            return recorded;
+        }
+
+        double sum = 0.0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int k = groupStart; k < groupEnd; k++) {
+            double amount = amounts[(int) keys[k]];
+            sum += amount;
+            min = Math.min(min, amount);
+            max = Math.max(max, amount);
+        }
+
+        int level = transactionStats.record(interval, groupEnd - groupStart,
+                sum, min, max);
+        if (level == TransactionStatsHierarchy.NOT_RECORDED) {
+            for (int k = groupStart; k < groupEnd; k++) {
+                rejections.set((int) keys[k]);
+            }
+            return 0;
+        }
+
+        if (rawTransactionWindow != null && level == 0) {
+            for (int k = groupStart; k < groupEnd; k++) {
+                int i = (int) keys[k];
+                rawTransactionWindow.add(interval,
+                        transactionAt(i, amounts, timestamps, transactions));
+            }
+        }
+        return groupEnd - groupStart;
+    }
+
+    private static Transaction transactionAt(int i, double[] amounts,
+            long[] timestamps, Transaction[] transactions) {
+        return (transactions != null) ? transactions[i]
+                : new Transaction(amounts[i], timestamps[i]);
+    }
+
+    /**
+     * Returns the shortest window, which {@link #getStatistics()} reports on
+     */
+    public RecordingWindow getRecordingWindow() {
+        return this.recordingWindows.get(0);
+    }
+
+    public List<RecordingWindow> getRecordingWindows() {
+        return this.recordingWindows;
+    }
+
+    public RetentionMode getRetentionMode() {
+        return this.retentionMode;
+    }
+
+    /**
+     * Returns the raw transactions recorded within the time window. Always
+     * empty unless the recorder retains {@link RetentionMode#WINDOWED_RAW}
+     * transactions
+     */
+    public List<Transaction> getRetainedTransactions() {
+        if (rawTransactionWindow == null) {
+            return Collections.emptyList();
+        }
+        return rawTransactionWindow.getTransactions(
+                clock.getAsLong() / bucketWidthInMillis);
     }
 }
@@ -0,0 +1,124 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.lang.Validate;
+
+import com.murali.transactionmanager.model.ReturnCode;
+import com.murali.transactionmanager.model.Transaction;
+
+/**
+ * Preallocated multi-producer, single-consumer ring of transactions, in the
+ * style of the LMAX Disruptor. A producer claims the next sequence with a CAS
+ * on {@link #claimed}, fills the slot (sequence % capacity) and publishes it
+ * by storing the sequence in {@link #published}; the consumer takes the run of
+ * published slots after {@link #consumed} as a batch, and frees them by
+ * moving {@link #consumed} past them. A producer never overtakes the consumer
+ * by more than the capacity, so claiming fails while the ring is full
+ */
+class IngestRing {
+    static final long FULL = -1;
+
+    private final int mask;
+    private final Transaction[] transactions;
+    private final CompletableFuture<?>[] futures;
+    private final AtomicLongArray published;
+
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final AtomicLong consumed = new AtomicLong(-1);
+
+    /**
+     * @param capacity
+     *            number of slots, a power of two
+     */
+    IngestRing(int capacity) {
+        Validate.isTrue(capacity > 0 && Integer.bitCount(capacity) == 1,
+                "capacity must be a power of two");
+
+        this.mask = capacity - 1;
+        this.transactions = new Transaction[capacity];
+        this.futures = new CompletableFuture<?>[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int slot = 0; slot < capacity; slot++) {
+            published.set(slot, -1);
+        }
+    }
+
+    int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Claims, fills and publishes the next slot
+     *
+     * @param future
+     *            completed with the return code of the transaction once it
+     *            has been recorded, or null
+     * @return the sequence of the slot, or {@link #FULL} if the ring is full
+     */
+    long offer(Transaction transaction,
+            CompletableFuture<ReturnCode> future) {
+        long sequence;
+        do {
+            sequence = claimed.get() + 1;
+            if (sequence - mask - 1 > consumed.get()) {
+                return FULL;
+            }
+        } while (!claimed.compareAndSet(sequence - 1, sequence));
+
+        int slot = (int) sequence & mask;
+        transactions[slot] = transaction;
+        futures[slot] = future;
+        // Release store: the slot is visible before it is published
+        published.lazySet(slot, sequence);
+        return sequence;
+    }
+
+    /**
+     * Moves the published transactions after the consumed ones into the batch,
+     * up to its length, with their futures. Only called by the consumer
+     *
+     * @return the number of transactions moved
+     */
+    int drainTo(Transaction[] batch, CompletableFuture<?>[] batchFutures) {
+        long next = consumed.get() + 1;
+        int length = 0;
+        while (length < batch.length
+                && published.get((int) (next + length) & mask) == next
+                        + length) {
+            int slot = (int) (next + length) & mask;
+            batch[length] = transactions[slot];
+            batchFutures[length] = futures[slot];
+            transactions[slot] = null;
+            futures[slot] = null;
+            length++;
+        }
+        if (length > 0) {
+            consumed.set(next + length - 1);
+        }
+        return length;
+    }
+
+    /**
+     * Returns the sequence of the latest claimed slot
+     */
+    long getClaimed() {
+        return claimed.get();
+    }
+
+    /**
+     * Returns the sequence of the latest slot taken by the consumer
+     */
+    long getConsumed() {
+        return consumed.get();
+    }
+
+    /**
+     * Returns true if every claimed slot has been consumed
+     */
+    boolean isEmpty() {
+        return consumed.get() == claimed.get();
+    }
+}
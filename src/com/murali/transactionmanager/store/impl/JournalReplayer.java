@@ -0,0 +1,114 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+import org.apache.commons.lang.Validate;
+
+import com.murali.transactionmanager.model.ReturnCode;
+import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.store.KeyedTransactionRecorder;
+import com.murali.transactionmanager.store.TransactionRecorder;
+
+/**
+ * Rebuilds recorders from the segments written by a
+ * {@link FileTransactionJournal}, e.g. after a restart. Segments are read
+ * oldest first in large sequential reads, and the records are recorded as
+ * fast as the recorder takes them, so transactions older than its windows are
+ * simply rejected. A torn record at the end of a segment is skipped
+ */
+public final class JournalReplayer {
+    private static final int BATCH_RECORDS = 8192;
+
+    /**
+     * Records a batch of records read from a segment
+     */
+    private interface BatchRecorder {
+        /**
+         * @return the number of transactions recorded
+         */
+        long record(ByteBuffer records, int length);
+    }
+
+    private JournalReplayer() {
+    }
+
+    /**
+     * Records every journaled transaction in the recorder, in batches of
+     * columns
+     *
+     * @return the number of transactions recorded
+     */
+    public static long replay(Path directory, TransactionRecorder recorder)
+            throws IOException {
+        Validate.notNull(recorder, "recorder is null");
+
+        double[] amounts = new double[BATCH_RECORDS];
+        long[] timestamps = new long[BATCH_RECORDS];
+        BitSet rejections = new BitSet(BATCH_RECORDS);
+        return replay(directory, (records, length) -> {
+            for (int i = 0; i < length; i++) {
+                amounts[i] = records.getDouble();
+                timestamps[i] = records.getLong();
+                // A TransactionRecorder does not need the ids
+                records.position(records.position() + 16);
+            }
+            return recorder.recordAll(amounts, timestamps, length, rejections);
+        });
+    }
+
+    /**
+     * Records every journaled transaction in the keyed recorder
+     *
+     * @return the number of transactions recorded
+     */
+    public static long replay(Path directory,
+            KeyedTransactionRecorder recorder) throws IOException {
+        Validate.notNull(recorder, "recorder is null");
+
+        return replay(directory, (records, length) -> {
+            long recorded = 0;
+            for (int i = 0; i < length; i++) {
+                Transaction transaction = new Transaction(records.getDouble(),
+                        records.getLong(), records.getLong(),
+                        records.getLong());
+                if (recorder.record(transaction) == ReturnCode.SUCCESS) {
+                    recorded++;
+                }
+            }
+            return recorded;
+        });
+    }
+
+    private static long replay(Path directory, BatchRecorder batchRecorder)
+            throws IOException {
+        Validate.notNull(directory, "directory is null");
+
+        ByteBuffer buffer = ByteBuffer
+                .allocate(BATCH_RECORDS * FileTransactionJournal.RECORD_BYTES);
+        long recorded = 0;
+        for (Path segment : FileTransactionJournal.segments(directory)) {
+            try (FileChannel channel = FileChannel.open(segment,
+                    StandardOpenOption.READ)) {
+                buffer.clear();
+                boolean endOfSegment = false;
+                while (!endOfSegment) {
+                    endOfSegment = channel.read(buffer) < 0;
+                    buffer.flip();
+                    int length = buffer.remaining()
+                            / FileTransactionJournal.RECORD_BYTES;
+                    if (length > 0) {
+                        recorded += batchRecorder.record(buffer, length);
+                    }
+                    // Whatever is left at the end of the segment is torn
+                    buffer.compact();
+                }
+            }
+        }
+        return recorded;
+    }
+}
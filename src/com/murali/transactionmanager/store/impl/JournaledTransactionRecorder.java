@@ -0,0 +1,219 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.Validate;
+
+import com.murali.transactionmanager.model.ReturnCode;
+import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+import com.murali.transactionmanager.store.RecordingWindow;
+import com.murali.transactionmanager.store.TransactionJournal;
+import com.murali.transactionmanager.store.TransactionRecorder;
+
+/**
+ * {@link TransactionRecorder} that appends every transaction another recorder
+ * accepts to a {@link TransactionJournal}, and records it once the journal
+ * has made it durable. So the recorder never holds a transaction the journal
+ * could lose. A batch waits for the journal only once, after its last
+ * transaction is appended. The recorder can be rebuilt from the journal with
+ * {@link JournalReplayer}.
+ *
+ * If the journal fails to make a transaction durable, the exception of the
+ * journal (e.g. an {@link java.io.UncheckedIOException}) is thrown and
+ * neither the transaction nor the rest of its batch is recorded. They may
+ * still be in the journal, and recorded when it is replayed.
+ *
+ * Transactions that fail {@link TransactionRecorder#check(double, long)} are
+ * neither journaled nor recorded. One that passes but is rejected when it is
+ * recorded has become too old meanwhile, so it stays journaled: it is only
+ * older when it is replayed, and rejected again
+ */
+public class JournaledTransactionRecorder implements TransactionRecorder {
+    private final TransactionRecorder recorder;
+    private final TransactionJournal journal;
+
+    public JournaledTransactionRecorder(TransactionRecorder recorder,
+            TransactionJournal journal) {
+        Validate.notNull(recorder, "recorder is null");
+        Validate.notNull(journal, "journal is null");
+
+        this.recorder = recorder;
+        this.journal = journal;
+    }
+
+    @Override
+    public ReturnCode record(Transaction transaction) {
+        Validate.notNull(transaction, "Transaction is null");
+
+        ReturnCode returnCode = recorder.check(transaction.getAmount(),
+                transaction.getTimestamp());
+        if (returnCode != ReturnCode.SUCCESS) {
+            return returnCode;
+        }
+        journal.awaitDurable(append(transaction));
+        return recorder.record(transaction);
+    }
+
+    @Override
+    public ReturnCode record(double amount, long timestampMillis) {
+        ReturnCode returnCode = recorder.check(amount, timestampMillis);
+        if (returnCode != ReturnCode.SUCCESS) {
+            return returnCode;
+        }
+        journal.awaitDurable(journal.append(amount, timestampMillis,
+                Transaction.NO_ID, Transaction.NO_ID));
+        return recorder.record(amount, timestampMillis);
+    }
+
+    @Override
+    public ReturnCode check(double amount, long timestampMillis) {
+        return recorder.check(amount, timestampMillis);
+    }
+
+    /**
+     * Registers a batch of transactions. A null transaction is a
+     * {@link ReturnCode#BAD_REQUEST}
+     */
+    @Override
+    public List<ReturnCode> recordAll(Collection<Transaction> transactions) {
+        Validate.notNull(transactions, "transactions is null");
+
+        return Arrays.asList(recordAll(
+                transactions.toArray(new Transaction[transactions.size()])));
+    }
+
+    /**
+     * Registers a batch of transactions. A null transaction is a
+     * {@link ReturnCode#BAD_REQUEST}
+     */
+    @Override
+    public ReturnCode[] recordAll(Transaction[] transactions) {
+        Validate.notNull(transactions, "transactions is null");
+
+        ReturnCode[] returnCodes = new ReturnCode[transactions.length];
+        Transaction[] journaled = new Transaction[transactions.length];
+        int[] positions = new int[transactions.length];
+        int length = 0;
+        long sequence = 0;
+        for (int i = 0; i < transactions.length; i++) {
+            Transaction transaction = transactions[i];
+            returnCodes[i] = (transaction == null) ? ReturnCode.BAD_REQUEST
+                    : recorder.check(transaction.getAmount(),
+                            transaction.getTimestamp());
+            if (returnCodes[i] == ReturnCode.SUCCESS) {
+                sequence = append(transaction);
+                journaled[length] = transaction;
+                positions[length] = i;
+                length++;
+            }
+        }
+
+        journal.awaitDurable(sequence);
+
+        // Only the journaled transactions are recorded: one ahead of the
+        // clock at its check could be accepted by now
+        ReturnCode[] recorded = recorder.recordAll((length == journaled.length)
+                ? journaled : Arrays.copyOf(journaled, length));
+        for (int i = 0; i < length; i++) {
+            returnCodes[positions[i]] = recorded[i];
+        }
+        return returnCodes;
+    }
+
+    /**
+     * Registers a batch of transactions given as columns. The columns are
+     * recorded as they are unless some transaction fails its check, in which
+     * case the others are copied into new columns
+     */
+    @Override
+    public int recordAll(double[] amounts, long[] timestamps, int length,
+            BitSet rejections) {
+        Validate.notNull(amounts, "amounts is null");
+        Validate.notNull(timestamps, "timestamps is null");
+        Validate.notNull(rejections, "rejections is null");
+        Validate.isTrue(length >= 0 && length <= amounts.length
+                && length <= timestamps.length, "invalid length");
+
+        rejections.clear(0, length);
+        int journaled = 0;
+        long sequence = 0;
+        for (int i = 0; i < length; i++) {
+            if (recorder.check(amounts[i],
+                    timestamps[i]) == ReturnCode.SUCCESS) {
+                sequence = journal.append(amounts[i], timestamps[i],
+                        Transaction.NO_ID, Transaction.NO_ID);
+                journaled++;
+            } else {
+                rejections.set(i);
+            }
+        }
+
+        journal.awaitDurable(sequence);
+
+        if (journaled == length) {
+            return recorder.recordAll(amounts, timestamps, length,
+                    rejections);
+        }
+        return recordJournaled(amounts, timestamps, length, journaled,
+                rejections);
+    }
+
+    @Override
+    public Map<String, Number> getStatistics() {
+        return recorder.getStatistics();
+    }
+
+    @Override
+    public StatisticsSnapshot getStatistics(StatisticsSnapshot snapshot) {
+        return recorder.getStatistics(snapshot);
+    }
+
+    @Override
+    public Map<String, Number> getStatistics(RecordingWindow window) {
+        return recorder.getStatistics(window);
+    }
+
+    @Override
+    public StatisticsSnapshot getStatistics(RecordingWindow window,
+            StatisticsSnapshot snapshot) {
+        return recorder.getStatistics(window, snapshot);
+    }
+
+    /**
+     * Records the transactions whose rejection bit is clear, and sets the
+     * bits of those the recorder rejects
+     */
+    private int recordJournaled(double[] amounts, long[] timestamps,
+            int length, int journaled, BitSet rejections) {
+        double[] journaledAmounts = new double[journaled];
+        long[] journaledTimestamps = new long[journaled];
+        for (int i = rejections.nextClearBit(0), j = 0; i < length;
+                i = rejections.nextClearBit(i + 1), j++) {
+            journaledAmounts[j] = amounts[i];
+            journaledTimestamps[j] = timestamps[i];
+        }
+
+        BitSet journaledRejections = new BitSet(journaled);
+        int recorded = recorder.recordAll(journaledAmounts,
+                journaledTimestamps, journaled, journaledRejections);
+        // Both walks visit the journaled transactions in the same order
+        for (int i = rejections.nextClearBit(0), j = 0; i < length;
+                i = rejections.nextClearBit(i + 1), j++) {
+            if (journaledRejections.get(j)) {
+                rejections.set(i);
+            }
+        }
+        return recorded;
+    }
+
+    private long append(Transaction transaction) {
+        return journal.append(transaction.getAmount(),
+                transaction.getTimestamp(), transaction.getMerchantId(),
+                transaction.getAccountId());
+    }
+}
@@ -0,0 +1,365 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.util.concurrent.locks.StampedLock;
+
+import org.apache.commons.lang.Validate;
+
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+import com.murali.transactionmanager.store.BucketStorage;
+
+/**
+ * Sliding windows of statistics for a large number of long keys, e.g.
+ * merchant or account ids. Each key has a small ring of per-interval buckets
+ * (a row), like {@link TransactionStatsRing} but without striping, so a row
+ * costs 40 bytes per bucket.
+ *
+ * Keys are spread over segments, each guarded by its own lock. A segment is
+ * an open-addressing (linear probing) hash table of primitive keys pointing
+ * into a dense pool of rows, so neither lookups nor updates box or allocate.
+ * A key whose latest interval has left the window is evicted lazily: its
+ * entry and row are handed to the next key that probes past it, and dropped
+ * when the segment is rehashed. Memory therefore follows the keys that were
+ * active within the window.
+ *
+ * Segments keep their tables and rows in a {@link KeyedWindowStorage}, on
+ * the heap or off it depending on the {@link BucketStorage}. The storage a
+ * rehash replaces is released at once, and so is every storage when the map
+ * is closed
+ */
+class KeyedWindowMap {
+    static final int DEFAULT_SEGMENTS = 64;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final double MAX_LOAD = 0.75;
+    private static final long FREE = Long.MIN_VALUE;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final int slots;
+    private final BucketStorage bucketStorage;
+
+    KeyedWindowMap(int slots) {
+        this(slots, BucketStorage.HEAP, DEFAULT_SEGMENTS);
+    }
+
+    KeyedWindowMap(int slots, BucketStorage bucketStorage) {
+        this(slots, bucketStorage, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * @param slots
+     *            number of buckets in the window of each key
+     * @param bucketStorage
+     *            where the segments keep their buckets
+     * @param segments
+     *            number of segments, a power of two
+     */
+    KeyedWindowMap(int slots, BucketStorage bucketStorage, int segments) {
+        Validate.isTrue(slots > 0, "slots must be positive");
+        Validate.notNull(bucketStorage, "bucketStorage is null");
+        Validate.isTrue(segments > 0 && Integer.bitCount(segments) == 1,
+                "segments must be a power of two");
+
+        this.slots = slots;
+        this.bucketStorage = bucketStorage;
+        this.segments = new Segment[segments];
+        for (int i = 0; i < segments; i++) {
+            this.segments[i] = new Segment();
+        }
+        this.segmentShift = 64 - Integer.numberOfTrailingZeros(segments);
+    }
+
+    /**
+     * Records the amount in the bucket of the given interval of the key
+     *
+     * @return false if the interval has already left the window of the key
+     */
+    boolean record(long key, long epochInterval, long nowInterval,
+            double amount) {
+        if (epochInterval <= nowInterval - slots) {
+            return false;
+        }
+
+        long hash = hash(key);
+        return segmentOf(hash).record(key, hash, epochInterval, nowInterval,
+                amount);
+    }
+
+    /**
+     * Copies statistics about the transactions of the key recorded in the
+     * intervals after (nowInterval - slots) into the snapshot, without
+     * allocating
+     *
+     * @return the given snapshot
+     */
+    StatisticsSnapshot getStatistics(long key, long nowInterval,
+            StatisticsSnapshot snapshot) {
+        long hash = hash(key);
+        return segmentOf(hash).getStatistics(key, hash, nowInterval, snapshot);
+    }
+
+    /**
+     * Returns the number of keys held, including expired keys that have not
+     * been evicted yet
+     */
+    long getKeyCount() {
+        long keyCount = 0;
+        for (Segment segment : segments) {
+            keyCount += segment.getSize();
+        }
+        return keyCount;
+    }
+
+    /**
+     * Releases the storage of every segment. The map cannot be used
+     * afterwards
+     */
+    void close() {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+    }
+
+    private Segment segmentOf(long hash) {
+        return segments[(segmentShift == 64) ? 0
+                : (int) (hash >>> segmentShift)];
+    }
+
+    /**
+     * Spreads the bits of the key (the finalizer of MurmurHash3), so that
+     * sequential ids do not cluster
+     */
+    private static long hash(long key) {
+        long hash = key;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private final class Segment {
+        private final StampedLock lock = new StampedLock();
+        // Null once the map is closed
+        private KeyedWindowStorage storage;
+        private int size;
+
+        Segment() {
+            allocate(INITIAL_CAPACITY);
+        }
+
+        int getSize() {
+            long readLock = lock.readLock();
+            try {
+                checkOpen();
+                return size;
+            } finally {
+                lock.unlockRead(readLock);
+            }
+        }
+
+        boolean record(long key, long hash, long epochInterval,
+                long nowInterval, double amount) {
+            long writeLock = lock.writeLock();
+
+            try {
+                checkOpen();
+                int entry = findOrInsert(key, hash, nowInterval);
+                int bucket = storage.getRow(entry) * slots
+                        + (int) Math.floorMod(epochInterval, (long) slots);
+
+                long heldInterval = storage.getInterval(bucket);
+                if (heldInterval != epochInterval) {
+                    if (heldInterval > epochInterval) {
+                        // Reused by an interval a full window later
+                        return false;
+                    }
+                    resetBucket(bucket, epochInterval);
+                }
+
+                storage.add(bucket, amount);
+                if (epochInterval > storage.getLatestInterval(entry)) {
+                    storage.setLatestInterval(entry, epochInterval);
+                }
+                return true;
+            } finally {
+                lock.unlockWrite(writeLock);
+            }
+        }
+
+        StatisticsSnapshot getStatistics(long key, long hash,
+                long nowInterval, StatisticsSnapshot snapshot) {
+            long count = 0;
+            double sum = 0.0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+
+            long readLock = lock.readLock();
+            try {
+                checkOpen();
+                int entry = find(key, hash);
+                if (entry >= 0) {
+                    int firstBucket = storage.getRow(entry) * slots;
+                    for (int bucket = firstBucket; bucket < firstBucket
+                            + slots; bucket++) {
+                        if (storage.getInterval(bucket) > nowInterval
+                                - slots) {
+                            count += storage.getCount(bucket);
+                            sum += storage.getSum(bucket);
+                            min = Math.min(min, storage.getMin(bucket));
+                            max = Math.max(max, storage.getMax(bucket));
+                        }
+                    }
+                }
+            } finally {
+                lock.unlockRead(readLock);
+            }
+            return snapshot.set(count, sum, min, max);
+        }
+
+        void close() {
+            long writeLock = lock.writeLock();
+            try {
+                if (storage != null) {
+                    storage.release();
+                    storage = null;
+                }
+            } finally {
+                lock.unlockWrite(writeLock);
+            }
+        }
+
+        /**
+         * Fails rather than touch released storage, whose memory may have
+         * been reused
+         */
+        private void checkOpen() {
+            if (storage == null) {
+                throw new IllegalStateException("map is closed");
+            }
+        }
+
+        private int find(long key, long hash) {
+            int mask = storage.getEntries() - 1;
+            for (int entry = (int) hash & mask; storage
+                    .getLatestInterval(entry) != FREE; entry = (entry + 1)
+                            & mask) {
+                if (storage.getKey(entry) == key) {
+                    return entry;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Finds the entry of the key, or gives it the first expired entry on
+         * its probe sequence, or a free one
+         */
+        private int findOrInsert(long key, long hash, long nowInterval) {
+            long expiredThrough = nowInterval - slots;
+            int mask = storage.getEntries() - 1;
+            int expiredEntry = -1;
+
+            int entry = (int) hash & mask;
+            for (long latestInterval; (latestInterval = storage
+                    .getLatestInterval(entry)) != FREE; entry = (entry + 1)
+                            & mask) {
+                if (storage.getKey(entry) == key) {
+                    return entry;
+                } else if (expiredEntry < 0
+                        && latestInterval <= expiredThrough) {
+                    expiredEntry = entry;
+                }
+            }
+
+            if (expiredEntry >= 0) {
+                // The expired entry stays on the probe sequences that pass
+                // it, so it can simply change its key
+                claim(expiredEntry, key, expiredThrough,
+                        storage.getRow(expiredEntry));
+                return expiredEntry;
+            }
+
+            if (size + 1 > storage.getEntries() * MAX_LOAD) {
+                rehash(nowInterval);
+                return findOrInsert(key, hash, nowInterval);
+            }
+            claim(entry, key, expiredThrough, size++);
+            return entry;
+        }
+
+        private void claim(int entry, long key, long latestInterval,
+                int row) {
+            storage.setEntry(entry, key, latestInterval, row);
+            for (int bucket = row * slots; bucket < (row + 1)
+                    * slots; bucket++) {
+                resetBucket(bucket, FREE);
+            }
+        }
+
+        private void resetBucket(int bucket, long epochInterval) {
+            storage.setBucket(bucket, epochInterval, 0, 0.0,
+                    Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY);
+        }
+
+        /**
+         * Drops the expired entries and resizes the table so that the live
+         * ones take at most half of it
+         */
+        private void rehash(long nowInterval) {
+            long expiredThrough = nowInterval - slots;
+            KeyedWindowStorage oldStorage = storage;
+            int oldEntries = oldStorage.getEntries();
+
+            int live = 0;
+            for (int entry = 0; entry < oldEntries; entry++) {
+                if (oldStorage.getLatestInterval(entry) > expiredThrough) {
+                    live++;
+                }
+            }
+            int capacity = INITIAL_CAPACITY;
+            while (capacity * MAX_LOAD < 2 * (live + 1)) {
+                capacity <<= 1;
+            }
+
+            allocate(capacity);
+            int mask = capacity - 1;
+            for (int oldEntry = 0; oldEntry < oldEntries; oldEntry++) {
+                long latestInterval = oldStorage.getLatestInterval(oldEntry);
+                if (latestInterval == FREE
+                        || latestInterval <= expiredThrough) {
+                    continue;
+                }
+
+                long key = oldStorage.getKey(oldEntry);
+                int entry = (int) hash(key) & mask;
+                while (storage.getLatestInterval(entry) != FREE) {
+                    entry = (entry + 1) & mask;
+                }
+                storage.setEntry(entry, key, latestInterval, size);
+
+                int from = oldStorage.getRow(oldEntry) * slots;
+                int to = size * slots;
+                for (int i = 0; i < slots; i++) {
+                    storage.setBucket(to + i,
+                            oldStorage.getInterval(from + i),
+                            oldStorage.getCount(from + i),
+                            oldStorage.getSum(from + i),
+                            oldStorage.getMin(from + i),
+                            oldStorage.getMax(from + i));
+                }
+                size++;
+            }
+            // Only ever used under the write lock held here
+            oldStorage.release();
+        }
+
+        private void allocate(int capacity) {
+            int poolRows = (int) (capacity * MAX_LOAD);
+            storage = KeyedWindowStorage.allocate(bucketStorage, capacity,
+                    poolRows * slots, FREE);
+            size = 0;
+        }
+    }
+}
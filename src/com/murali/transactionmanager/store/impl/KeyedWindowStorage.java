@@ -0,0 +1,61 @@
+package com.murali.transactionmanager.store.impl;
+
+import com.murali.transactionmanager.store.BucketStorage;
+
+/**
+ * Storage of one {@link KeyedWindowMap} segment: a hash table whose entries
+ * hold a key, its latest interval and its row, and a pool of rows of buckets
+ * that each hold an interval, a count, a sum, a minimum and a maximum.
+ *
+ * Implementations are not thread safe; the segment lock guards them
+ */
+interface KeyedWindowStorage {
+
+    static KeyedWindowStorage allocate(BucketStorage bucketStorage,
+            int entries, int buckets, long freeInterval) {
+        switch (bucketStorage) {
+        case OFF_HEAP:
+            return new OffHeapKeyedWindowStorage(entries, buckets,
+                    freeInterval);
+        default:
+            return new HeapKeyedWindowStorage(entries, buckets, freeInterval);
+        }
+    }
+
+    int getEntries();
+
+    long getKey(int entry);
+
+    long getLatestInterval(int entry);
+
+    int getRow(int entry);
+
+    void setEntry(int entry, long key, long latestInterval, int row);
+
+    void setLatestInterval(int entry, long latestInterval);
+
+    long getInterval(int bucket);
+
+    long getCount(int bucket);
+
+    double getSum(int bucket);
+
+    double getMin(int bucket);
+
+    double getMax(int bucket);
+
+    void setBucket(int bucket, long interval, long count, double sum,
+            double min, double max);
+
+    /**
+     * Adds the amount to the count, sum, minimum and maximum of the bucket
+     */
+    void add(int bucket, double amount);
+
+    /**
+     * Releases the memory of the storage now, if it is not left to the
+     * garbage collector. The storage is never used again
+     */
+    default void release() {
+    }
+}
@@ -0,0 +1,35 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Clock that only moves when it is told to, in milliseconds since the epoch.
+ * Meant for tests and for replaying transactions against their own time
+ */
+public class ManualClock implements LongSupplier {
+    private volatile long currentTimeMillis;
+
+    public ManualClock(long currentTimeMillis) {
+        this.currentTimeMillis = currentTimeMillis;
+    }
+
+    @Override
+    public long getAsLong() {
+        return currentTimeMillis;
+    }
+
+    public void set(long currentTimeMillis) {
+        this.currentTimeMillis = currentTimeMillis;
+    }
+
+    /**
+     * Moves the clock by the given duration, which may be negative
+     *
+     * @return the new time
+     */
+    public synchronized long advance(long duration, TimeUnit unit) {
+        currentTimeMillis += unit.toMillis(duration);
+        return currentTimeMillis;
+    }
+}
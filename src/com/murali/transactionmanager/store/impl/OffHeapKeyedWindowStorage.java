@@ -0,0 +1,138 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * {@link KeyedWindowStorage} in direct byte buffers, with a fixed layout per
+ * entry (key, latest interval, row: 24 bytes) and per bucket (interval,
+ * count, sum, minimum, maximum: 40 bytes). Only the two buffer objects live
+ * on the heap, whatever the number of keys. Their memory is released as soon
+ * as the segment is rehashed or the map closed, rather than when they are
+ * collected, so a growing map does not hold several generations of it.
+ *
+ * Fields are read and written with absolute gets and puts in the native byte
+ * order. They need no atomic access, since the segment lock already orders
+ * every access
+ */
+class OffHeapKeyedWindowStorage implements KeyedWindowStorage {
+    static final int ENTRY_BYTES = 24;
+    static final int BUCKET_BYTES = 40;
+
+    private static final int KEY = 0;
+    private static final int LATEST_INTERVAL = 8;
+    private static final int ROW = 16;
+
+    private static final int INTERVAL = 0;
+    private static final int COUNT = 8;
+    private static final int SUM = 16;
+    private static final int MIN = 24;
+    private static final int MAX = 32;
+
+    private final int entries;
+    private final ByteBuffer table;
+    private final ByteBuffer pool;
+
+    OffHeapKeyedWindowStorage(int entries, int buckets, long freeInterval) {
+        Validate.isTrue((long) entries * ENTRY_BYTES <= Integer.MAX_VALUE
+                && (long) buckets * BUCKET_BYTES <= Integer.MAX_VALUE,
+                "too many keys for one segment");
+
+        this.entries = entries;
+        this.table = ByteBuffer.allocateDirect(entries * ENTRY_BYTES)
+                .order(ByteOrder.nativeOrder());
+        this.pool = ByteBuffer.allocateDirect(buckets * BUCKET_BYTES)
+                .order(ByteOrder.nativeOrder());
+        for (int entry = 0; entry < entries; entry++) {
+            table.putLong(entry * ENTRY_BYTES + LATEST_INTERVAL, freeInterval);
+        }
+    }
+
+    @Override
+    public int getEntries() {
+        return entries;
+    }
+
+    @Override
+    public long getKey(int entry) {
+        return table.getLong(entry * ENTRY_BYTES + KEY);
+    }
+
+    @Override
+    public long getLatestInterval(int entry) {
+        return table.getLong(entry * ENTRY_BYTES + LATEST_INTERVAL);
+    }
+
+    @Override
+    public int getRow(int entry) {
+        return table.getInt(entry * ENTRY_BYTES + ROW);
+    }
+
+    @Override
+    public void setEntry(int entry, long key, long latestInterval, int row) {
+        int offset = entry * ENTRY_BYTES;
+        table.putLong(offset + KEY, key);
+        table.putLong(offset + LATEST_INTERVAL, latestInterval);
+        table.putInt(offset + ROW, row);
+    }
+
+    @Override
+    public void setLatestInterval(int entry, long latestInterval) {
+        table.putLong(entry * ENTRY_BYTES + LATEST_INTERVAL, latestInterval);
+    }
+
+    @Override
+    public long getInterval(int bucket) {
+        return pool.getLong(bucket * BUCKET_BYTES + INTERVAL);
+    }
+
+    @Override
+    public long getCount(int bucket) {
+        return pool.getLong(bucket * BUCKET_BYTES + COUNT);
+    }
+
+    @Override
+    public double getSum(int bucket) {
+        return pool.getDouble(bucket * BUCKET_BYTES + SUM);
+    }
+
+    @Override
+    public double getMin(int bucket) {
+        return pool.getDouble(bucket * BUCKET_BYTES + MIN);
+    }
+
+    @Override
+    public double getMax(int bucket) {
+        return pool.getDouble(bucket * BUCKET_BYTES + MAX);
+    }
+
+    @Override
+    public void setBucket(int bucket, long interval, long count, double sum,
+            double min, double max) {
+        int offset = bucket * BUCKET_BYTES;
+        pool.putLong(offset + INTERVAL, interval);
+        pool.putLong(offset + COUNT, count);
+        pool.putDouble(offset + SUM, sum);
+        pool.putDouble(offset + MIN, min);
+        pool.putDouble(offset + MAX, max);
+    }
+
+    @Override
+    public void add(int bucket, double amount) {
+        int offset = bucket * BUCKET_BYTES;
+        pool.putLong(offset + COUNT, pool.getLong(offset + COUNT) + 1);
+        pool.putDouble(offset + SUM, pool.getDouble(offset + SUM) + amount);
+        pool.putDouble(offset + MIN,
+                Math.min(pool.getDouble(offset + MIN), amount));
+        pool.putDouble(offset + MAX,
+                Math.max(pool.getDouble(offset + MAX), amount));
+    }
+
+    @Override
+    public void release() {
+        DirectBuffers.release(table);
+        DirectBuffers.release(pool);
+    }
+}
@@ -0,0 +1,120 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+import org.apache.commons.lang.Validate;
+
+import com.murali.transactionmanager.model.Transaction;
+
+/**
+ * Self-expiring store of the raw {@link Transaction}s of the recording window.
+ * Like {@link TransactionStatsRing}, it keeps one slot per interval indexed
+ * by (epochInterval mod number of slots); a slot is emptied as soon as a newer
+ * interval claims it, so memory stays proportional to the transactions of the
+ * window
+ */
+class RawTransactionWindow {
+    private final Slot[] slots;
+
+    RawTransactionWindow(int slots) {
+        Validate.isTrue(slots > 0, "slots must be positive");
+
+        this.slots = new Slot[slots];
+        for (int i = 0; i < slots; i++) {
+            this.slots[i] = new Slot();
+        }
+    }
+
+    /**
+     * Adds the transaction to the slot of the given interval
+     *
+     * @return false if the slot has already been reused by a newer interval
+     */
+    boolean add(long epochInterval, Transaction transaction) {
+        Slot slot = slots[(int) Math.floorMod(epochInterval,
+                (long) slots.length)];
+        long writeLock = slot.lock.writeLock();
+
+        try {
+            if (slot.epochInterval > epochInterval) {
+                return false;
+            } else if (slot.epochInterval < epochInterval) {
+                // The slot still holds transactions of an interval before the
+                // current window
+                slot.transactions.clear();
+                slot.epochInterval = epochInterval;
+            }
+            slot.transactions.add(transaction);
+            return true;
+        } finally {
+            slot.lock.unlock(writeLock);
+        }
+    }
+
+    /**
+     * Empties the slots of the intervals up to (nowInterval - slots), which
+     * have left the window
+     */
+    void expire(long nowInterval) {
+        long oldestInterval = nowInterval - slots.length;
+
+        for (Slot slot : slots) {
+            long writeLock = slot.lock.writeLock();
+            try {
+                if (slot.epochInterval <= oldestInterval
+                        && !slot.transactions.isEmpty()) {
+                    slot.transactions.clear();
+                }
+            } finally {
+                slot.lock.unlock(writeLock);
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the transactions recorded in the intervals
+     * (nowInterval - slots, nowInterval]
+     */
+    List<Transaction> getTransactions(long nowInterval) {
+        long oldestInterval = nowInterval - slots.length;
+        List<Transaction> transactions = new ArrayList<>();
+
+        for (Slot slot : slots) {
+            long readLock = slot.lock.readLock();
+            try {
+                if (slot.epochInterval > oldestInterval
+                        && slot.epochInterval <= nowInterval) {
+                    transactions.addAll(slot.transactions);
+                }
+            } finally {
+                slot.lock.unlock(readLock);
+            }
+        }
+        return transactions;
+    }
+
+    /**
+     * Returns the number of transactions held, including those of intervals
+     * that have left the window but have not been expired yet
+     */
+    int size() {
+        int size = 0;
+        for (Slot slot : slots) {
+            long readLock = slot.lock.readLock();
+            try {
+                size += slot.transactions.size();
+            } finally {
+                slot.lock.unlock(readLock);
+            }
+        }
+        return size;
+    }
+
+    private static class Slot {
+        private final StampedLock lock = new StampedLock();
+        private final List<Transaction> transactions = new ArrayList<>();
+        private long epochInterval = -1;
+    }
+}
@@ -0,0 +1,99 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.util.Locale;
+
+import com.murali.transactionmanager.metrics.Counter;
+import com.murali.transactionmanager.metrics.LatencyHistogram;
+import com.murali.transactionmanager.metrics.MetricsRegistry;
+import com.murali.transactionmanager.model.ReturnCode;
+
+/**
+ * Metrics of an {@link InMemoryTransactionRecorder}: how long records and
+ * batches take and how many transactions are recorded or rejected (by
+ * {@link ReturnCode}), measured while the registry is enabled; and, sampled
+ * when exported, the buckets that hold transactions, the raw transactions
+ * retained and the time writers have waited for the window locks
+ */
+class RecorderMetrics {
+    static final String PREFIX = "transaction_recorder_";
+
+    private final MetricsRegistry registry;
+    private final LatencyHistogram recordLatency;
+    private final LatencyHistogram batchLatency;
+    private final Counter recorded;
+    // By ordinal of the ReturnCode; null for SUCCESS
+    private final Counter[] rejected;
+
+    /**
+     * @param registry
+     * @param transactionStats
+     * @param rawTransactionWindow
+     *            null if raw transactions are not retained
+     */
+    RecorderMetrics(MetricsRegistry registry,
+            TransactionStatsHierarchy transactionStats,
+            RawTransactionWindow rawTransactionWindow) {
+        this.registry = registry;
+        this.recordLatency = registry.histogram(
+                PREFIX + "record_latency_seconds",
+                "Time taken to record a transaction");
+        this.batchLatency = registry.histogram(
+                PREFIX + "batch_latency_seconds",
+                "Time taken to record a batch of transactions");
+        this.recorded = registry.counter(PREFIX + "recorded_total",
+                "Transactions recorded");
+        this.rejected = new Counter[ReturnCode.values().length];
+        for (ReturnCode returnCode : ReturnCode.values()) {
+            if (returnCode != ReturnCode.SUCCESS) {
+                rejected[returnCode.ordinal()] = registry.counter(
+                        PREFIX + "rejected_total",
+                        "Transactions not recorded, by reason", "reason",
+                        returnCode.name().toLowerCase(Locale.ROOT));
+            }
+        }
+
+        registry.gauge(PREFIX + "live_buckets",
+                "Buckets holding transactions, over every window",
+                () -> countLiveBuckets(transactionStats));
+        registry.gauge(PREFIX + "retained_transactions",
+                "Raw transactions retained",
+                () -> (rawTransactionWindow == null) ? 0
+                        : rawTransactionWindow.size());
+        registry.counter(PREFIX + "window_lock_wait_seconds_total",
+                "Time writers have waited for the window locks",
+                () -> transactionStats.getWindowLockWaitNanos() / 1e9);
+    }
+
+    boolean isEnabled() {
+        return registry.isEnabled();
+    }
+
+    void recorded(ReturnCode returnCode, long nanos) {
+        recordLatency.record(nanos);
+        count(returnCode);
+    }
+
+    void recordedBatch(long nanos) {
+        batchLatency.record(nanos);
+    }
+
+    void count(ReturnCode returnCode) {
+        if (returnCode == ReturnCode.SUCCESS) {
+            recorded.increment();
+        } else {
+            rejected[returnCode.ordinal()].increment();
+        }
+    }
+
+    void countRecorded(int transactions) {
+        recorded.add(transactions);
+    }
+
+    private static double countLiveBuckets(
+            TransactionStatsHierarchy transactionStats) {
+        long[] buckets = new long[1];
+        transactionStats.forEachBucket((level, epochInterval, count, sum, min,
+                max) -> buckets[0]++);
+        return buckets[0];
+    }
+}
@@ -0,0 +1,462 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.apache.commons.lang.Validate;
+
+import com.murali.transactionmanager.model.ReturnCode;
+import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.statistics.impl.AggregateTransactionStatsTracker;
+import com.murali.transactionmanager.statistics.model.CompensatedSum;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+import com.murali.transactionmanager.store.EventTimePolicy;
+import com.murali.transactionmanager.store.IngestWaitStrategy;
+import com.murali.transactionmanager.store.RecordingWindow;
+import com.murali.transactionmanager.store.ShardRouting;
+import com.murali.transactionmanager.store.TransactionRecorder;
+
+/**
+ * Transaction records split over independent shards, each owned by a single
+ * writer thread (started by {@link #start()}): recording threads only check
+ * the timestamp against the window and publish the transaction into the
+ * {@link IngestRing} of its shard (picked by {@link ShardRouting}), and the
+ * writer of the shard applies them to its {@link SingleWriterStatsRing}, with
+ * no lock shared with any other shard. So the throughput grows with the
+ * number of shards.
+ *
+ * Statistics merge the snapshots of all shards like
+ * {@link AggregateTransactionStatsTracker#mergeStatistic}: counts are added,
+ * sums are added with compensation, and empty shards are skipped. Sums are
+ * compensated within each shard as well. Readers
+ * never block the writers. A recorded transaction is seen by readers once its
+ * writer has applied it (see {@link #flush()}); one that has left the window
+ * by then is dropped (see {@link #getDroppedTransactions()})
+ */
+public class ShardedTransactionRecorder
+        implements TransactionRecorder, Closeable {
+    public static final int DEFAULT_SHARD_CAPACITY = 1 << 14;
+
+    private static final int BATCH_SIZE = 1024;
+
+    private final RecordingWindow recordingWindow;
+    private final long recordingIntervalInMillis;
+    private final long bucketWidthInMillis;
+    private final ShardRouting shardRouting;
+    private final IngestWaitStrategy waitStrategy;
+    private final EventTimePolicy eventTimePolicy;
+    private final long maxLagMillis;
+    private final long maxFutureSkewMillis;
+    private final Shard[] shards;
+    private final LongSupplier clock;
+
+    // Producers between their check of closed and the end of their offer
+    private final LongAdder producersInFlight = new LongAdder();
+    private volatile boolean closed;
+
+    public ShardedTransactionRecorder(int shards) {
+        this(RecordingWindow.ONE_MINUTE_BY_SECOND, shards,
+                ShardRouting.BY_THREAD, IngestWaitStrategy.SLEEPING);
+    }
+
+    /**
+     * @param recordingWindow
+     * @param shards
+     *            number of shards, each with its own writer thread
+     * @param shardRouting
+     * @param waitStrategy
+     *            how writers wait for transactions, and recording threads
+     *            for room in a full shard
+     */
+    public ShardedTransactionRecorder(RecordingWindow recordingWindow,
+            int shards, ShardRouting shardRouting,
+            IngestWaitStrategy waitStrategy) {
+        this(recordingWindow, shards, shardRouting, waitStrategy,
+                System::currentTimeMillis);
+    }
+
+    /**
+     * @param recordingWindow
+     * @param shards
+     * @param shardRouting
+     * @param waitStrategy
+     * @param clock
+     *            current time in milliseconds since the epoch, e.g. a
+     *            {@link CachedClock}
+     */
+    public ShardedTransactionRecorder(RecordingWindow recordingWindow,
+            int shards, ShardRouting shardRouting,
+            IngestWaitStrategy waitStrategy, LongSupplier clock) {
+        this(recordingWindow, shards, shardRouting, waitStrategy,
+                EventTimePolicy.DEFAULT, clock);
+    }
+
+    /**
+     * @param recordingWindow
+     * @param shards
+     * @param shardRouting
+     * @param waitStrategy
+     * @param eventTimePolicy
+     *            how far ahead of the clock and behind it timestamps may be
+     * @param clock
+     */
+    public ShardedTransactionRecorder(RecordingWindow recordingWindow,
+            int shards, ShardRouting shardRouting,
+            IngestWaitStrategy waitStrategy, EventTimePolicy eventTimePolicy,
+            LongSupplier clock) {
+        Validate.notNull(recordingWindow, "recordingWindow is null");
+        Validate.isTrue(shards > 0, "shards must be positive");
+        Validate.notNull(shardRouting, "shardRouting is null");
+        Validate.notNull(waitStrategy, "waitStrategy is null");
+        Validate.notNull(eventTimePolicy, "eventTimePolicy is null");
+        Validate.notNull(clock, "clock is null");
+
+        this.recordingWindow = recordingWindow;
+        this.recordingIntervalInMillis = recordingWindow.getLengthMillis();
+        this.bucketWidthInMillis = recordingWindow.getBucketWidthMillis();
+        this.shardRouting = shardRouting;
+        this.waitStrategy = waitStrategy;
+        this.eventTimePolicy = eventTimePolicy;
+        this.maxLagMillis = eventTimePolicy
+                .getMaxLagMillis(recordingIntervalInMillis);
+        this.maxFutureSkewMillis = eventTimePolicy.getMaxFutureSkewMillis();
+        this.clock = clock;
+
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(recordingWindow.getBuckets(),
+                    "transaction-shard-" + i);
+        }
+    }
+
+    /**
+     * Starts the writer threads. Transactions recorded before are held in
+     * their shards until then, and {@link #flush()} waits for them
+     */
+    public void start() {
+        for (Shard shard : shards) {
+            shard.writer.start();
+        }
+    }
+
+    public RecordingWindow getRecordingWindow() {
+        return this.recordingWindow;
+    }
+
+    /**
+     * Publishes the transaction to its shard, waiting while the shard is full
+     *
+     * @throws IllegalStateException
+     *             if the recorder is closed
+     */
+    @Override
+    public ReturnCode record(Transaction transaction) {
+        Validate.notNull(transaction, "Transaction is null");
+        if (!Double.isFinite(transaction.getAmount())) {
+            return ReturnCode.BAD_REQUEST;
+        }
+
+        long timeElapsedSinceTransactionInMillis = clock.getAsLong()
+                - transaction.getTimestamp();
+        if (timeElapsedSinceTransactionInMillis > maxLagMillis
+                || timeElapsedSinceTransactionInMillis < -maxFutureSkewMillis) {
+            return eventTimePolicy.check(timeElapsedSinceTransactionInMillis,
+                    recordingIntervalInMillis);
+        }
+
+        IngestRing ring = shardOf(transaction).ring;
+        while (true) {
+            producersInFlight.increment();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("recorder is closed");
+                }
+                if (ring.offer(transaction, null) != IngestRing.FULL) {
+                    return ReturnCode.SUCCESS;
+                }
+            } finally {
+                producersInFlight.decrement();
+            }
+            waitStrategy.idle();
+        }
+    }
+
+    /**
+     * Checks the timestamp against the clock and the {@link EventTimePolicy}
+     */
+    @Override
+    public ReturnCode check(double amount, long timestampMillis) {
+        if (timestampMillis <= 0 || !Double.isFinite(amount)) {
+            return ReturnCode.BAD_REQUEST;
+        }
+
+        long timeElapsedSinceTransactionInMillis = clock.getAsLong()
+                - timestampMillis;
+        if (timeElapsedSinceTransactionInMillis > maxLagMillis
+                || timeElapsedSinceTransactionInMillis < -maxFutureSkewMillis) {
+            return eventTimePolicy.check(timeElapsedSinceTransactionInMillis,
+                    recordingIntervalInMillis);
+        }
+        return ReturnCode.SUCCESS;
+    }
+
+    /**
+     * Registers a batch of transactions. A null transaction is a
+     * {@link ReturnCode#BAD_REQUEST}
+     */
+    @Override
+    public List<ReturnCode> recordAll(Collection<Transaction> transactions) {
+        Validate.notNull(transactions, "transactions is null");
+
+        List<ReturnCode> returnCodes = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            returnCodes.add((transaction == null) ? ReturnCode.BAD_REQUEST
+                    : record(transaction));
+        }
+        return returnCodes;
+    }
+
+    /**
+     * Registers a batch of transactions. A null transaction is a
+     * {@link ReturnCode#BAD_REQUEST}
+     */
+    @Override
+    public ReturnCode[] recordAll(Transaction[] transactions) {
+        Validate.notNull(transactions, "transactions is null");
+
+        ReturnCode[] returnCodes = new ReturnCode[transactions.length];
+        for (int i = 0; i < transactions.length; i++) {
+            returnCodes[i] = (transactions[i] == null) ? ReturnCode.BAD_REQUEST
+                    : record(transactions[i]);
+        }
+        return returnCodes;
+    }
+
+    /**
+     * Registers a batch of transactions given as columns. Transactions with an
+     * amount that is not finite or a timestamp that is not positive only get
+     * their rejection bit, as in
+     * {@link TransactionRecorder#recordAll(double[], long[], int, BitSet)}
+     * ({@link #record(double, long)} returns BAD_REQUEST for them, since a
+     * {@link Transaction} cannot hold them). Since the ingest rings
+     * hold {@link Transaction}s, every valid row is still wrapped in one;
+     * unlike {@link InMemoryTransactionRecorder}, this recorder has no
+     * allocation-free column path
+     */
+    @Override
+    public int recordAll(double[] amounts, long[] timestamps, int length,
+            BitSet rejections) {
+        Validate.notNull(amounts, "amounts is null");
+        Validate.notNull(timestamps, "timestamps is null");
+        Validate.notNull(rejections, "rejections is null");
+        Validate.isTrue(length >= 0 && length <= amounts.length
+                && length <= timestamps.length, "invalid length");
+
+        rejections.clear(0, length);
+        int recorded = 0;
+        for (int i = 0; i < length; i++) {
+            if (timestamps[i] <= 0 || record(new Transaction(amounts[i],
+                    timestamps[i])) != ReturnCode.SUCCESS) {
+                rejections.set(i);
+            } else {
+                recorded++;
+            }
+        }
+        return recorded;
+    }
+
+    @Override
+    public Map<String, Number> getStatistics() {
+        return AggregateTransactionStatsTracker
+                .toStats(getStatistics(new StatisticsSnapshot()));
+    }
+
+    @Override
+    public StatisticsSnapshot getStatistics(StatisticsSnapshot snapshot) {
+        return getStatistics(recordingWindow, snapshot);
+    }
+
+    @Override
+    public Map<String, Number> getStatistics(RecordingWindow window) {
+        return AggregateTransactionStatsTracker
+                .toStats(getStatistics(window, new StatisticsSnapshot()));
+    }
+
+    @Override
+    public StatisticsSnapshot getStatistics(RecordingWindow window,
+            StatisticsSnapshot snapshot) {
+        Validate.notNull(snapshot, "snapshot is null");
+        Validate.isTrue(recordingWindow.equals(window),
+                "window is not recorded: ", window);
+
+        long nowInterval = clock.getAsLong() / bucketWidthInMillis;
+        long count = 0;
+        double sum = 0.0;
+        double sumCompensation = 0.0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (Shard shard : shards) {
+            shard.stats.getStatistics(nowInterval, snapshot);
+            if (snapshot.getCount() == 0) {
+                continue;
+            }
+
+            count += snapshot.getCount();
+            double shardSum = snapshot.getSum();
+            double total = sum + shardSum;
+            sumCompensation += CompensatedSum.roundingError(sum, shardSum,
+                    total);
+            sum = total;
+            min = Math.min(min, snapshot.getMin());
+            max = Math.max(max, snapshot.getMax());
+        }
+        return snapshot.set(count, sum + sumCompensation, min, max);
+    }
+
+    /**
+     * Waits until the writers have applied every transaction recorded before
+     */
+    public void flush() {
+        for (Shard shard : shards) {
+            long claimed = shard.ring.getClaimed();
+            while (shard.appliedThrough < claimed) {
+                waitStrategy.idle();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of recorded transactions that had left the window
+     * by the time their writer applied them
+     */
+    public long getDroppedTransactions() {
+        long dropped = 0;
+        for (Shard shard : shards) {
+            dropped += shard.dropped;
+        }
+        return dropped;
+    }
+
+    /**
+     * Stops accepting transactions and waits until the writers have applied
+     * all recorded ones
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        boolean interrupted = false;
+        for (Shard shard : shards) {
+            while (shard.writer.isAlive()) {
+                try {
+                    shard.writer.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Shard shardOf(Transaction transaction) {
+        long id;
+        switch (shardRouting) {
+        case BY_MERCHANT:
+            id = transaction.getMerchantId();
+            break;
+        case BY_ACCOUNT:
+            id = transaction.getAccountId();
+            break;
+        default:
+            id = Thread.currentThread().getId();
+        }
+        // Fibonacci hashing spreads sequential ids over the shards
+        return shards[(int) Math.floorMod((id * 0x9E3779B97F4A7C15L) >>> 32,
+                (long) shards.length)];
+    }
+
+    private final class Shard {
+        private final IngestRing ring = new IngestRing(DEFAULT_SHARD_CAPACITY);
+        private final SingleWriterStatsRing stats;
+        private final Thread writer;
+
+        // Only written by the writer
+        private volatile long appliedThrough = -1;
+        private volatile long dropped;
+
+        Shard(int slots, String name) {
+            this.stats = new SingleWriterStatsRing(slots);
+            this.writer = new Thread(this::write, name);
+            writer.setDaemon(true);
+        }
+
+        private void write() {
+            Transaction[] batch = new Transaction[BATCH_SIZE];
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[BATCH_SIZE];
+
+            // Runs until closed and every transaction published before the
+            // close is applied
+            while (!closed || producersInFlight.sum() != 0
+                    || !ring.isEmpty()) {
+                int length = ring.drainTo(batch, futures);
+                if (length == 0) {
+                    waitStrategy.idle();
+                    continue;
+                }
+
+                apply(batch, length);
+                Arrays.fill(batch, 0, length, null);
+                appliedThrough = ring.getConsumed();
+            }
+        }
+
+        /**
+         * Applies runs of transactions of the same interval with a single
+         * update of their bucket
+         */
+        private void apply(Transaction[] batch, int length) {
+            long nowInterval = clock.getAsLong() / bucketWidthInMillis;
+            int start = 0;
+            while (start < length) {
+                // Transactions from clocks that are ahead are recorded now
+                long interval = intervalOf(batch[start], nowInterval);
+                double sum = 0.0;
+                double sumCompensation = 0.0;
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                int end = start;
+                for (; end < length && intervalOf(batch[end],
+                        nowInterval) == interval; end++) {
+                    double amount = batch[end].getAmount();
+                    double total = sum + amount;
+                    sumCompensation += CompensatedSum.roundingError(sum,
+                            amount, total);
+                    sum = total;
+                    min = Math.min(min, amount);
+                    max = Math.max(max, amount);
+                }
+
+                if (!stats.record(interval, nowInterval, end - start, sum,
+                        sumCompensation, min, max)) {
+                    dropped += end - start;
+                }
+                start = end;
+            }
+        }
+
+        private long intervalOf(Transaction transaction, long nowInterval) {
+            return Math.min(transaction.getTimestamp() / bucketWidthInMillis,
+                    nowInterval);
+        }
+    }
+}
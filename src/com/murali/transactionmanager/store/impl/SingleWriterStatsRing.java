@@ -0,0 +1,140 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.util.concurrent.locks.StampedLock;
+
+import org.apache.commons.lang.Validate;
+
+import com.murali.transactionmanager.statistics.model.CompensatedSum;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+
+/**
+ * Ring of per-interval buckets written by a single thread, in plain arrays.
+ * Each bucket is versioned by a {@link StampedLock}: the writer takes its
+ * write lock around every update, which never waits since there is only one
+ * writer and readers never lock, and readers copy the bucket under an
+ * optimistic read and copy it again if the writer got in the way. So the
+ * count, sum, minimum and maximum read from a bucket always belong together,
+ * and the writer never waits for a reader. Sums are compensated like a
+ * {@link CompensatedSum}, both in each bucket and across the buckets read
+ */
+class SingleWriterStatsRing {
+    private static final long FREE = Long.MIN_VALUE;
+
+    private final int slots;
+    private final StampedLock[] versions;
+    private final long[] intervals;
+    private final long[] counts;
+    private final double[] sums;
+    private final double[] compensations;
+    private final double[] mins;
+    private final double[] maxs;
+
+    SingleWriterStatsRing(int slots) {
+        Validate.isTrue(slots > 0, "slots must be positive");
+
+        this.slots = slots;
+        this.versions = new StampedLock[slots];
+        this.intervals = new long[slots];
+        this.counts = new long[slots];
+        this.sums = new double[slots];
+        this.compensations = new double[slots];
+        this.mins = new double[slots];
+        this.maxs = new double[slots];
+        for (int slot = 0; slot < slots; slot++) {
+            versions[slot] = new StampedLock();
+            intervals[slot] = FREE;
+        }
+    }
+
+    /**
+     * Records a group of amounts of the same interval, given by their count,
+     * compensated sum, minimum and maximum. Only called by the writer
+     *
+     * @return false if the interval has already left the window, or its slot
+     *         has been reused by a newer interval
+     */
+    boolean record(long epochInterval, long nowInterval, long count,
+            double sum, double sumCompensation, double min, double max) {
+        if (epochInterval <= nowInterval - slots) {
+            return false;
+        }
+
+        int slot = (int) Math.floorMod(epochInterval, (long) slots);
+        long heldInterval = intervals[slot];
+        if (heldInterval > epochInterval) {
+            return false;
+        }
+
+        StampedLock version = versions[slot];
+        long writeLock = version.writeLock();
+        try {
+            if (heldInterval != epochInterval) {
+                intervals[slot] = epochInterval;
+                counts[slot] = count;
+                sums[slot] = sum;
+                compensations[slot] = sumCompensation;
+                mins[slot] = min;
+                maxs[slot] = max;
+            } else {
+                double total = sums[slot] + sum;
+                counts[slot] += count;
+                compensations[slot] += CompensatedSum.roundingError(
+                        sums[slot], sum, total) + sumCompensation;
+                sums[slot] = total;
+                mins[slot] = Math.min(mins[slot], min);
+                maxs[slot] = Math.max(maxs[slot], max);
+            }
+        } finally {
+            version.unlockWrite(writeLock);
+        }
+        return true;
+    }
+
+    /**
+     * Copies statistics about the transactions recorded in the intervals after
+     * (nowInterval - slots) into the snapshot, without allocating or blocking
+     * the writer. Each bucket is read consistently, but the writer may update
+     * other buckets meanwhile
+     *
+     * @return the given snapshot
+     */
+    StatisticsSnapshot getStatistics(long nowInterval,
+            StatisticsSnapshot snapshot) {
+        long count = 0;
+        double sum = 0.0;
+        double compensation = 0.0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        for (int slot = 0; slot < slots; slot++) {
+            StampedLock version = versions[slot];
+            long bucketInterval;
+            long bucketCount;
+            double bucketSum;
+            double bucketCompensation;
+            double bucketMin;
+            double bucketMax;
+            long stamp;
+            do {
+                stamp = version.tryOptimisticRead();
+                bucketInterval = intervals[slot];
+                bucketCount = counts[slot];
+                bucketSum = sums[slot];
+                bucketCompensation = compensations[slot];
+                bucketMin = mins[slot];
+                bucketMax = maxs[slot];
+            } while (!version.validate(stamp));
+
+            if (bucketInterval > nowInterval - slots && bucketCount > 0) {
+                double total = sum + bucketSum;
+                count += bucketCount;
+                compensation += CompensatedSum.roundingError(sum, bucketSum,
+                        total) + bucketCompensation;
+                sum = total;
+                min = Math.min(min, bucketMin);
+                max = Math.max(max, bucketMax);
+            }
+        }
+        return snapshot.set(count, sum + compensation, min, max);
+    }
+}
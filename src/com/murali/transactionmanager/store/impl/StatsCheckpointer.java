@@ -0,0 +1,342 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.apache.commons.lang.Validate;
+
+import com.murali.transactionmanager.store.RecordingWindow;
+
+/**
+ * Checkpoints the buckets of an {@link InMemoryTransactionRecorder} to a
+ * memory-mapped file, periodically and once more when closed, so that a
+ * restarted recorder can restore its statistics from the file instead of
+ * starting with empty windows (see
+ * {@link InMemoryTransactionRecorder#restoreCheckpoint(Path)}).
+ *
+ * The file holds two slots, which checkpoints alternate between so that the
+ * slot being written never holds the last complete checkpoint. A slot holds a
+ * header (magic, version, CRC32 of the rest of the slot, sequence number of
+ * the checkpoint, number of buckets, then the length and bucket width of
+ * every window) followed by one fixed-width record per bucket holding
+ * transactions: level, interval, count, sum, minimum and maximum. A
+ * checkpoint is only as recent as its last period; one torn by a crash fails
+ * its CRC, and the previous checkpoint in the other slot is restored instead.
+ * A periodic checkpoint that fails does not stop the later ones; its failure
+ * is kept for {@link #getLastFailure()}
+ */
+public class StatsCheckpointer implements Closeable {
+    private static final int MAGIC = 0x54534350;
+    private static final int VERSION = 2;
+    private static final int SLOTS = 2;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CRC_OFFSET = 8;
+    private static final int SEQUENCE_OFFSET = 12;
+    private static final int BUCKETS_OFFSET = 20;
+    private static final int WINDOWS_OFFSET = 24;
+    private static final int HEADER_BYTES = 28;
+    private static final int WINDOW_BYTES = 16;
+    private static final int BUCKET_BYTES = 44;
+
+    private final TransactionStatsHierarchy transactionStats;
+    private final List<RecordingWindow> recordingWindows;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final ByteBuffer[] slots = new ByteBuffer[SLOTS];
+    private final int bucketsOffset;
+    private final ScheduledExecutorService scheduler;
+
+    private ByteBuffer slot;
+    private long sequence;
+    private int bucketCount;
+    private boolean closed;
+    // Failure of the last periodic checkpoint, null if it succeeded
+    private volatile RuntimeException lastFailure;
+
+    StatsCheckpointer(TransactionStatsHierarchy transactionStats,
+            List<RecordingWindow> recordingWindows, Path file)
+            throws IOException {
+        Validate.notNull(file, "file is null");
+        Validate.isTrue(!transactionStats.isTrackingQuantiles(),
+                "quantiles cannot be checkpointed");
+
+        this.transactionStats = transactionStats;
+        this.recordingWindows = recordingWindows;
+        this.bucketsOffset = bucketsOffset(recordingWindows);
+
+        int slotBytes = slotBytes(recordingWindows);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                (long) SLOTS * slotBytes);
+        for (int i = 0; i < SLOTS; i++) {
+            slots[i] = slotOf(buffer, i, slotBytes);
+            // Continues after the checkpoints already in the file, so that
+            // the first one does not overwrite the newest of them
+            if (isValid(slots[i], i, recordingWindows)) {
+                sequence = Math.max(sequence,
+                        slots[i].getLong(SEQUENCE_OFFSET));
+            }
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "stats-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Checkpoints every period, starting after the first one
+     */
+    void start(long period, TimeUnit unit) {
+        Validate.isTrue(period > 0, "period must be positive");
+        Validate.notNull(unit, "unit is null");
+
+        scheduler.scheduleAtFixedRate(this::checkpointPeriodically, period,
+                period, unit);
+    }
+
+    /**
+     * Writes the current buckets to the slot that does not hold the last
+     * checkpoint and forces them to storage
+     *
+     * @throws IllegalStateException
+     *             if the checkpointer is closed
+     */
+    public synchronized void checkpoint() {
+        if (closed) {
+            throw new IllegalStateException("checkpointer is closed");
+        }
+
+        long next = sequence + 1;
+        slot = slots[slotIndexOf(next)];
+        // Written again if a rollup moved a bucket between levels meanwhile
+        do {
+            slot.position(bucketsOffset);
+            bucketCount = 0;
+        } while (!transactionStats.forEachBucket(this::put));
+
+        slot.putInt(MAGIC_OFFSET, MAGIC);
+        slot.putInt(VERSION_OFFSET, VERSION);
+        slot.putLong(SEQUENCE_OFFSET, next);
+        slot.putInt(BUCKETS_OFFSET, bucketCount);
+        slot.putInt(WINDOWS_OFFSET, recordingWindows.size());
+        int offset = HEADER_BYTES;
+        for (RecordingWindow window : recordingWindows) {
+            slot.putLong(offset, window.getLengthMillis());
+            slot.putLong(offset + 8, window.getBucketWidthMillis());
+            offset += WINDOW_BYTES;
+        }
+        slot.putInt(CRC_OFFSET, crcOf(slot, slot.position()));
+        buffer.force();
+        sequence = next;
+    }
+
+    /**
+     * Returns why the last periodic checkpoint failed, or null if it
+     * succeeded or none has run yet
+     */
+    public RuntimeException getLastFailure() {
+        return this.lastFailure;
+    }
+
+    /**
+     * Stops the periodic checkpoints, writes a last one and unmaps the file
+     */
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                checkpoint();
+            } finally {
+                closed = true;
+                channel.close();
+                // Never touched again: checkpoint() fails once closed
+                DirectBuffers.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Restores the buckets of the newest valid checkpoint in the file into
+     * the levels, dropping those that are older than the longest window at
+     * nowInterval
+     *
+     * @return the number of buckets restored; 0 if the file does not exist,
+     *         both of its slots are torn or it was written for other windows
+     */
+    static int restore(Path file, TransactionStatsHierarchy transactionStats,
+            List<RecordingWindow> recordingWindows, long nowInterval)
+            throws IOException {
+        Validate.notNull(file, "file is null");
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        int slotBytes = slotBytes(recordingWindows);
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            // Read rather than mapped, as a mapping outlives the channel
+            buffer = ByteBuffer.allocate(
+                    (int) Math.min(channel.size(), (long) SLOTS * slotBytes));
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Reads until full or at the end of the file
+            }
+            buffer.flip();
+        }
+
+        ByteBuffer newest = null;
+        for (int i = 0; i < SLOTS; i++) {
+            if (buffer.limit() < (i + 1) * slotBytes) {
+                break;
+            }
+            ByteBuffer slot = slotOf(buffer, i, slotBytes);
+            if (isValid(slot, i, recordingWindows) && (newest == null
+                    || slot.getLong(SEQUENCE_OFFSET) > newest
+                            .getLong(SEQUENCE_OFFSET))) {
+                newest = slot;
+            }
+        }
+        if (newest == null) {
+            return 0;
+        }
+
+        // Buckets that have left their window are rolled up or dropped as
+        // they are restored, as if the recorder had kept running
+        transactionStats.advanceTo(nowInterval);
+        int bucketCount = newest.getInt(BUCKETS_OFFSET);
+        int offset = bucketsOffset(recordingWindows);
+        int restored = 0;
+        for (int i = 0; i < bucketCount; i++, offset += BUCKET_BYTES) {
+            int level = transactionStats.restore(newest.getInt(offset),
+                    newest.getLong(offset + 4), newest.getLong(offset + 12),
+                    newest.getDouble(offset + 20),
+                    newest.getDouble(offset + 28),
+                    newest.getDouble(offset + 36));
+            if (level != TransactionStatsHierarchy.NOT_RECORDED) {
+                restored++;
+            }
+        }
+        return restored;
+    }
+
+    private void checkpointPeriodically() {
+        try {
+            checkpoint();
+            lastFailure = null;
+        } catch (RuntimeException e) {
+            // Thrown out of the task, it would cancel every later checkpoint
+            lastFailure = e;
+        }
+    }
+
+    private void put(int level, long epochInterval, long count, double sum,
+            double min, double max) {
+        slot.putInt(level);
+        slot.putLong(epochInterval);
+        slot.putLong(count);
+        slot.putDouble(sum);
+        slot.putDouble(min);
+        slot.putDouble(max);
+        bucketCount++;
+    }
+
+    private static int bucketsOffset(List<RecordingWindow> recordingWindows) {
+        return HEADER_BYTES + recordingWindows.size() * WINDOW_BYTES;
+    }
+
+    private static int slotBytes(List<RecordingWindow> recordingWindows) {
+        // Every level holds at most one bucket per slot of its window
+        long maxBuckets = 0;
+        for (RecordingWindow window : recordingWindows) {
+            maxBuckets += window.getBuckets();
+        }
+        long slotBytes = bucketsOffset(recordingWindows)
+                + maxBuckets * BUCKET_BYTES;
+        Validate.isTrue(slotBytes <= Integer.MAX_VALUE / SLOTS,
+                "windows hold too many buckets to checkpoint");
+        return (int) slotBytes;
+    }
+
+    /**
+     * Returns the slot holding the checkpoint with the sequence number, so
+     * that consecutive checkpoints alternate between the slots
+     */
+    private static int slotIndexOf(long sequence) {
+        return (int) (sequence % SLOTS);
+    }
+
+    private static ByteBuffer slotOf(ByteBuffer buffer, int index,
+            int slotBytes) {
+        ByteBuffer slot = buffer.duplicate();
+        slot.position(index * slotBytes).limit((index + 1) * slotBytes);
+        return slot.slice();
+    }
+
+    /**
+     * Returns the CRC32 of the slot after its CRC, up to the end of its
+     * bucket records, so that a sequence number or header torn from its
+     * buckets fails it too
+     */
+    private static int crcOf(ByteBuffer slot, int end) {
+        ByteBuffer covered = slot.duplicate();
+        covered.position(SEQUENCE_OFFSET).limit(end);
+        CRC32 crc = new CRC32();
+        crc.update(covered);
+        return (int) crc.getValue();
+    }
+
+    private static boolean isValid(ByteBuffer slot, int index,
+            List<RecordingWindow> recordingWindows) {
+        int bucketsOffset = bucketsOffset(recordingWindows);
+        if (slot.limit() < bucketsOffset
+                || slot.getInt(MAGIC_OFFSET) != MAGIC
+                || slot.getInt(VERSION_OFFSET) != VERSION
+                || slot.getLong(SEQUENCE_OFFSET) <= 0
+                || slotIndexOf(slot.getLong(SEQUENCE_OFFSET)) != index
+                || slot.getInt(WINDOWS_OFFSET) != recordingWindows.size()) {
+            return false;
+        }
+
+        int offset = HEADER_BYTES;
+        for (RecordingWindow window : recordingWindows) {
+            if (slot.getLong(offset) != window.getLengthMillis() || slot
+                    .getLong(offset + 8) != window.getBucketWidthMillis()) {
+                return false;
+            }
+            offset += WINDOW_BYTES;
+        }
+
+        int bucketCount = slot.getInt(BUCKETS_OFFSET);
+        if (bucketCount < 0 || bucketsOffset
+                + (long) bucketCount * BUCKET_BYTES > slot.limit()) {
+            return false;
+        }
+        return slot.getInt(CRC_OFFSET) == crcOf(slot,
+                bucketsOffset + bucketCount * BUCKET_BYTES);
+    }
+}
@@ -0,0 +1,489 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.murali.transactionmanager.statistics.model.CompensatedSum;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+
+/**
+ * Count, sum, minimum and maximum of amounts, spread over a fixed number of
+ * cells in the spirit of {@link java.util.concurrent.atomic.DoubleAdder} and
+ * {@link java.util.concurrent.atomic.DoubleAccumulator}: every thread updates
+ * the cell its probe points to, and moves to another cell when it sees
+ * contention, so concurrent writers rarely touch the same cache line. Readers
+ * fold all cells on demand.
+ *
+ * Each cell also counts the writes that have started and finished in it (see
+ * {@link #beginWrite()}). They work as a sequence lock that any number of
+ * writers can hold at once: {@link #read(StatisticsSnapshot)} copies a cell
+ * again if a write started before the copy ended or was still in flight when
+ * it began, so the count, sum, minimum and maximum it folds always cover the
+ * same writes. They also let a {@link TransactionStatsBucket} wait for writes
+ * in flight without a shared counter.
+ *
+ * Writers never wait for readers, so a steady stream of writes to a cell
+ * could make a reader copy it again forever. After a few failed copies, the
+ * reader bars the cell: writers that have not started yet move to another
+ * cell, as they do on contention, and the reader only waits for the writes
+ * in flight.
+ *
+ * Sums are compensated like a {@link CompensatedSum}, one level deeper: once
+ * a writer's CAS on the sum of a cell succeeds, the exact rounding error of
+ * that addition is added to the compensation of the cell, and the rounding
+ * error of that to its residue. So amounts that are added and taken out
+ * again (see {@link #add(int, long, double, double)}) leave no drift
+ */
+class StripedStatsCells {
+    static final int DEFAULT_CELLS = defaultCells();
+
+    // Total number of cells the buckets of one ring may use (512 KB)
+    private static final int BUCKET_CELL_BUDGET = 4096;
+
+    // Cells are 128 bytes apart so that two cells never share a cache line
+    private static final int CELL_STRIDE = 16;
+    private static final int STARTED = 0;
+    private static final int COUNT = 1;
+    private static final int SUM = 2;
+    private static final int MIN = 3;
+    private static final int MAX = 4;
+    private static final int FINISHED = 5;
+    private static final int COMPENSATION = 6;
+    private static final int RESIDUE = 7;
+    // Number of readers that have barred new writes from the cell
+    private static final int BARRIER = 8;
+
+    // Copies of a cell a reader tries before it bars the cell
+    private static final int OPTIMISTIC_READS = 8;
+
+    private static final long ZERO_BITS = Double.doubleToRawLongBits(0.0);
+    private static final long POSITIVE_INFINITY_BITS = Double
+            .doubleToRawLongBits(Double.POSITIVE_INFINITY);
+    private static final long NEGATIVE_INFINITY_BITS = Double
+            .doubleToRawLongBits(Double.NEGATIVE_INFINITY);
+
+    private static final ThreadLocal<int[]> PROBE = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            // Spread consecutive thread ids over the cells; never zero so
+            // that the xorshift in rehash() keeps moving
+            return new int[] {
+                    (int) (Thread.currentThread().getId() * 0x9E3779B9L) | 1 };
+        }
+    };
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    StripedStatsCells() {
+        this(DEFAULT_CELLS);
+    }
+
+    /**
+     * @param cells
+     *            number of cells, a power of two
+     */
+    StripedStatsCells(int cells) {
+        this.cells = new AtomicLongArray(cells * CELL_STRIDE);
+        this.mask = cells - 1;
+        reset();
+    }
+
+    /**
+     * Picks the calling thread's cell and registers a writer in it. Must be
+     * followed by {@link #endWrite(int)} with the returned cell
+     */
+    int beginWrite() {
+        int probeCell = (PROBE.get()[0] & mask) * CELL_STRIDE;
+        int cell = enter(probeCell);
+        if (cell != probeCell) {
+            rehash();
+        }
+        return cell;
+    }
+
+    /**
+     * Registers a writer in the given cell, or in the next one that no reader
+     * has barred
+     *
+     * @return the cell the writer is registered in
+     */
+    private int enter(int cell) {
+        int firstCell = cell;
+        while (true) {
+            // The barrier is checked again once the write is announced, so
+            // that a reader barring the cell meanwhile either sees this
+            // writer or this writer sees the barrier
+            if (cells.get(cell + BARRIER) == 0) {
+                cells.incrementAndGet(cell + STARTED);
+                if (cells.get(cell + BARRIER) == 0) {
+                    return cell;
+                }
+                // Left untouched, as if by an empty write
+                cells.incrementAndGet(cell + FINISHED);
+            }
+            cell = (cell + CELL_STRIDE) & (cells.length() - 1);
+            if (cell == firstCell) {
+                // Every cell is barred; a reader only bars a cell briefly
+                Thread.yield();
+            }
+        }
+    }
+
+    void endWrite(int cell) {
+        cells.incrementAndGet(cell + FINISHED);
+    }
+
+    /**
+     * Returns true if no writer is inside any cell
+     */
+    boolean isQuiescent() {
+        for (int cell = 0; cell < cells.length(); cell += CELL_STRIDE) {
+            // Finished first: a write that starts and finishes in between
+            // must not hide one still in flight
+            long finished = cells.get(cell + FINISHED);
+            if (cells.get(cell + STARTED) != finished) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the amount to the given cell
+     */
+    void accumulate(int cell, double amount) {
+        accumulate(cell, 1, amount, amount, amount);
+    }
+
+    /**
+     * Adds a group of amounts, given by their count, sum, minimum and
+     * maximum, to the given cell in one update
+     */
+    void accumulate(int cell, long count, double sum, double min,
+            double max) {
+        cells.addAndGet(cell + COUNT, count);
+
+        addToSum(cell, sum);
+
+        boolean contended = false;
+        long minBits = Double.doubleToRawLongBits(min);
+        long current = cells.get(cell + MIN);
+        while (min < Double.longBitsToDouble(current)
+                && !cells.compareAndSet(cell + MIN, current, minBits)) {
+            contended = true;
+            current = cells.get(cell + MIN);
+        }
+
+        long maxBits = Double.doubleToRawLongBits(max);
+        current = cells.get(cell + MAX);
+        while (max > Double.longBitsToDouble(current)
+                && !cells.compareAndSet(cell + MAX, current, maxBits)) {
+            contended = true;
+            current = cells.get(cell + MAX);
+        }
+
+        if (contended) {
+            rehash();
+        }
+    }
+
+    /**
+     * Adds a count and sum to the given cell, e.g. ones that have been
+     * aggregated elsewhere (they may be negative to take them out again)
+     */
+    void add(int cell, long count, double sum) {
+        add(cell, count, sum, 0.0);
+    }
+
+    /**
+     * Adds a count and a sum given with its rounding error, e.g. the
+     * {@link #getSum()} and {@link #getSumError()} of other cells, in one
+     * write
+     */
+    void add(int cell, long count, double sum, double sumError) {
+        cell = enter(cell);
+        try {
+            cells.addAndGet(cell + COUNT, count);
+            addToSum(cell, sum);
+            if (sumError != 0.0) {
+                addToSum(cell, sumError);
+            }
+        } finally {
+            cells.incrementAndGet(cell + FINISHED);
+        }
+    }
+
+    /**
+     * Adds the value to the sum of the cell, its rounding error to the
+     * compensation of the cell, and the rounding error of that to the residue
+     * of the cell
+     */
+    private void addToSum(int cell, double value) {
+        double error = addAndGetError(cell + SUM, value);
+        // NaN once the sum is no longer finite, which it then stays anyway
+        if (error != 0.0 && !Double.isNaN(error)) {
+            double residue = addAndGetError(cell + COMPENSATION, error);
+            if (residue != 0.0) {
+                addAndGetError(cell + RESIDUE, residue);
+            }
+        }
+    }
+
+    /**
+     * Adds the value to the double at the given index, moving to another cell
+     * if another writer got in the way
+     *
+     * @return the exact rounding error of the addition
+     */
+    private double addAndGetError(int index, double value) {
+        long current = cells.get(index);
+        double old = Double.longBitsToDouble(current);
+        double total = old + value;
+        if (!cells.compareAndSet(index, current,
+                Double.doubleToRawLongBits(total))) {
+            do {
+                current = cells.get(index);
+                old = Double.longBitsToDouble(current);
+                total = old + value;
+            } while (!cells.compareAndSet(index, current,
+                    Double.doubleToRawLongBits(total)));
+            rehash();
+        }
+        return CompensatedSum.roundingError(old, value, total);
+    }
+
+    /**
+     * Clears what rounding has left in the sums once the count is back to
+     * zero, i.e. every amount added has been taken out again. Nothing is
+     * cleared unless no write was in flight and none started while the cells
+     * were read, and a cell that a write changes meanwhile keeps its sum, so
+     * no concurrent write is lost
+     *
+     * @return true if the count was zero and the sums have been cleared
+     */
+    boolean clearSumIfEmpty() {
+        long[] started = new long[cells.length() / CELL_STRIDE];
+        long count = 0;
+        for (int cell = 0; cell < cells.length(); cell += CELL_STRIDE) {
+            long finished = cells.get(cell + FINISHED);
+            count += cells.get(cell + COUNT);
+            started[cell / CELL_STRIDE] = cells.get(cell + STARTED);
+            if (started[cell / CELL_STRIDE] != finished) {
+                return false;
+            }
+        }
+        if (count != 0) {
+            return false;
+        }
+
+        for (int cell = 0; cell < cells.length(); cell += CELL_STRIDE) {
+            long sumBits = cells.get(cell + SUM);
+            long compensationBits = cells.get(cell + COMPENSATION);
+            long residueBits = cells.get(cell + RESIDUE);
+            if (cells.get(cell + STARTED) != started[cell / CELL_STRIDE]) {
+                // A write started since the count was read
+                return false;
+            }
+            // A write updates the sum before its errors: one that got there
+            // first makes the CAS fail, and one that comes later adds to zero
+            if (cells.compareAndSet(cell + SUM, sumBits, ZERO_BITS)
+                    && cells.compareAndSet(cell + COMPENSATION,
+                            compensationBits, ZERO_BITS)) {
+                cells.compareAndSet(cell + RESIDUE, residueBits, ZERO_BITS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the count, sum, minimum and maximum of all cells into the
+     * snapshot, without allocating. Each cell is copied between writes, so
+     * the four values cover exactly the same writes; a cell still written to
+     * after {@link #OPTIMISTIC_READS} copies is barred until it is copied
+     *
+     * @return the given snapshot
+     */
+    StatisticsSnapshot read(StatisticsSnapshot snapshot) {
+        long count = 0;
+        double sum = 0.0;
+        double compensation = 0.0;
+        double residue = 0.0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        for (int cell = 0; cell < cells.length(); cell += CELL_STRIDE) {
+            long cellCount;
+            long sumBits;
+            long compensationBits;
+            long residueBits;
+            long minBits;
+            long maxBits;
+            int reads = 0;
+            long finished = cells.get(cell + FINISHED);
+            try {
+                while (true) {
+                    cellCount = cells.get(cell + COUNT);
+                    sumBits = cells.get(cell + SUM);
+                    compensationBits = cells.get(cell + COMPENSATION);
+                    residueBits = cells.get(cell + RESIDUE);
+                    minBits = cells.get(cell + MIN);
+                    maxBits = cells.get(cell + MAX);
+
+                    // No write was in flight when the copy began, and none
+                    // has started since
+                    long started = cells.get(cell + STARTED);
+                    if (started == finished) {
+                        break;
+                    }
+                    if (++reads == OPTIMISTIC_READS) {
+                        // Only the writes in flight are waited for from now
+                        cells.incrementAndGet(cell + BARRIER);
+                    }
+                    Thread.yield();
+                    finished = cells.get(cell + FINISHED);
+                }
+            } finally {
+                if (reads >= OPTIMISTIC_READS) {
+                    cells.decrementAndGet(cell + BARRIER);
+                }
+            }
+
+            count += cellCount;
+            double cellSum = Double.longBitsToDouble(sumBits);
+            double total = sum + cellSum;
+            double error = CompensatedSum.roundingError(sum, cellSum, total);
+            sum = total;
+            double cellCompensation = Double
+                    .longBitsToDouble(compensationBits);
+            total = compensation + error;
+            residue += CompensatedSum.roundingError(compensation, error,
+                    total);
+            compensation = total;
+            total = compensation + cellCompensation;
+            residue += CompensatedSum.roundingError(compensation,
+                    cellCompensation, total)
+                    + Double.longBitsToDouble(residueBits);
+            compensation = total;
+            min = Math.min(min, Double.longBitsToDouble(minBits));
+            max = Math.max(max, Double.longBitsToDouble(maxBits));
+        }
+        return snapshot.set(count, sum + (compensation + residue), min, max);
+    }
+
+    long getCount() {
+        long count = 0;
+        for (int cell = 0; cell < cells.length(); cell += CELL_STRIDE) {
+            count += cells.get(cell + COUNT);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the compensated sum of all cells, rounded to a double
+     */
+    double getSum() {
+        return foldSum(false);
+    }
+
+    /**
+     * Returns the rounding error of {@link #getSum()}: the two together hold
+     * the compensated sum to twice the precision of a double, as long as no
+     * write is in flight
+     */
+    double getSumError() {
+        return foldSum(true);
+    }
+
+    private double foldSum(boolean error) {
+        double sum = 0.0;
+        double compensation = 0.0;
+        double residue = 0.0;
+        for (int cell = 0; cell < cells.length(); cell += CELL_STRIDE) {
+            double cellSum = Double.longBitsToDouble(cells.get(cell + SUM));
+            double total = sum + cellSum;
+            double cellError = CompensatedSum.roundingError(sum, cellSum,
+                    total);
+            sum = total;
+            double cellCompensation = Double
+                    .longBitsToDouble(cells.get(cell + COMPENSATION));
+            total = compensation + cellError;
+            residue += CompensatedSum.roundingError(compensation, cellError,
+                    total);
+            compensation = total;
+            total = compensation + cellCompensation;
+            residue += CompensatedSum.roundingError(compensation,
+                    cellCompensation, total)
+                    + Double.longBitsToDouble(cells.get(cell + RESIDUE));
+            compensation = total;
+        }
+
+        compensation += residue;
+        double value = sum + compensation;
+        return error ? CompensatedSum.roundingError(sum, compensation, value)
+                : value;
+    }
+
+    double getMin() {
+        double min = Double.POSITIVE_INFINITY;
+        for (int cell = 0; cell < cells.length(); cell += CELL_STRIDE) {
+            min = Math.min(min, Double.longBitsToDouble(cells.get(cell + MIN)));
+        }
+        return min;
+    }
+
+    double getMax() {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int cell = 0; cell < cells.length(); cell += CELL_STRIDE) {
+            max = Math.max(max, Double.longBitsToDouble(cells.get(cell + MAX)));
+        }
+        return max;
+    }
+
+    /**
+     * Resets the values of all cells; must not race with writers, but
+     * concurrent reads copy a cell either before or after its reset
+     */
+    void reset() {
+        for (int cell = 0; cell < cells.length(); cell += CELL_STRIDE) {
+            cells.incrementAndGet(cell + STARTED);
+            cells.set(cell + COUNT, 0);
+            cells.set(cell + SUM, ZERO_BITS);
+            cells.set(cell + COMPENSATION, ZERO_BITS);
+            cells.set(cell + RESIDUE, ZERO_BITS);
+            cells.set(cell + MIN, POSITIVE_INFINITY_BITS);
+            cells.set(cell + MAX, NEGATIVE_INFINITY_BITS);
+            cells.incrementAndGet(cell + FINISHED);
+        }
+    }
+
+    private static void rehash() {
+        int[] probe = PROBE.get();
+        int h = probe[0];
+        h ^= h << 13;
+        h ^= h >>> 17;
+        h ^= h << 5;
+        probe[0] = h;
+    }
+
+    /**
+     * Returns the number of cells each of the given number of buckets gets:
+     * {@link #DEFAULT_CELLS}, reduced to a power of two that keeps all buckets
+     * within the cell budget, but at least one
+     */
+    static int cellsPerBucket(int buckets) {
+        int cells = DEFAULT_CELLS;
+        while (cells > 1 && (long) cells * buckets > BUCKET_CELL_BUDGET) {
+            cells >>= 1;
+        }
+        return cells;
+    }
+
+    private static int defaultCells() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int cells = 1;
+        while (cells < processors && cells < 64) {
+            cells <<= 1;
+        }
+        return cells;
+    }
+}
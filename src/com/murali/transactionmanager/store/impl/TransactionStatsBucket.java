@@ -0,0 +1,157 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.murali.transactionmanager.statistics.model.QuantileSketch;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+
+/**
+ * Statistics of all transactions recorded during one interval. Buckets are
+ * preallocated by {@link TransactionStatsRing} and reused: a bucket is claimed
+ * for an interval with a CAS on its epoch stamp, and when that interval leaves
+ * the window it is retired (its values are reset in place) so that a newer
+ * interval can claim it.
+ *
+ * The values are kept in {@link StripedStatsCells}, so concurrent writers to
+ * the same interval do not contend with each other. If quantiles are tracked,
+ * the bucket also has a {@link QuantileSketch} of its amounts
+ */
+class TransactionStatsBucket {
+    static final long EMPTY = -1;
+    static final long RESETTING = -2;
+    static final int NOT_WRITING = -1;
+
+    private final AtomicLong epochInterval = new AtomicLong(EMPTY);
+    private final StripedStatsCells stats;
+    private final QuantileSketch sketch;
+
+    TransactionStatsBucket() {
+        this(StripedStatsCells.DEFAULT_CELLS, false);
+    }
+
+    /**
+     * @param cells
+     *            number of cells the values are striped over, a power of two
+     * @param trackQuantiles
+     *            whether the bucket has a sketch
+     */
+    TransactionStatsBucket(int cells, boolean trackQuantiles) {
+        this.stats = new StripedStatsCells(cells);
+        this.sketch = trackQuantiles ? new QuantileSketch() : null;
+    }
+
+    /**
+     * Returns the interval this bucket is recording, {@link #EMPTY} if it is
+     * free or {@link #RESETTING} while it is being retired
+     */
+    long getEpochInterval() {
+        return epochInterval.get();
+    }
+
+    /**
+     * Claims an {@link #EMPTY} bucket for the given interval
+     *
+     * @return false if the bucket is not free
+     */
+    boolean claim(long interval) {
+        return epochInterval.compareAndSet(EMPTY, interval);
+    }
+
+    /**
+     * Starts a write to the given interval. Must be followed by
+     * {@link #endWrite(int)} whenever it returns a cell
+     *
+     * @return the cell to write to, or {@link #NOT_WRITING} if the bucket is
+     *         not recording that interval
+     */
+    int beginWrite(long interval) {
+        // Announce the write before re-checking the stamp, so that a
+        // concurrent retirement either sees this writer or this writer sees
+        // the retirement
+        int cell = stats.beginWrite();
+        if (epochInterval.get() == interval) {
+            return cell;
+        }
+        stats.endWrite(cell);
+        return NOT_WRITING;
+    }
+
+    void accumulate(int cell, long count, double sum, double min,
+            double max) {
+        stats.accumulate(cell, count, sum, min, max);
+    }
+
+    void endWrite(int cell) {
+        stats.endWrite(cell);
+    }
+
+    /**
+     * Starts retiring the given interval: no new write can begin, and once this
+     * returns true all writes in flight have completed so the values are
+     * final. Must be followed by {@link #endRetire()} whenever it returns true
+     *
+     * @return false if the bucket is not recording that interval
+     */
+    boolean beginRetire(long interval) {
+        if (!epochInterval.compareAndSet(interval, RESETTING)) {
+            return false;
+        }
+        while (!stats.isQuiescent()) {
+            Thread.yield();
+        }
+        return true;
+    }
+
+    /**
+     * Resets the values and frees the bucket for a newer interval
+     */
+    void endRetire() {
+        stats.reset();
+        if (sketch != null) {
+            sketch.clear();
+        }
+        epochInterval.set(EMPTY);
+    }
+
+    /**
+     * Returns the sketch of the amounts, or null if quantiles are not tracked.
+     * Like the other values, it may only be updated between
+     * {@link #beginWrite(long)} and {@link #endWrite(int)}
+     */
+    QuantileSketch getSketch() {
+        return this.sketch;
+    }
+
+    /**
+     * Copies the count, sum, minimum and maximum into the snapshot, all
+     * covering the same writes (see {@link StripedStatsCells#read})
+     *
+     * @return the given snapshot
+     */
+    StatisticsSnapshot read(StatisticsSnapshot snapshot) {
+        return stats.read(snapshot);
+    }
+
+    long getCount() {
+        return stats.getCount();
+    }
+
+    double getSum() {
+        return stats.getSum();
+    }
+
+    /**
+     * Returns the rounding error of {@link #getSum()}
+     */
+    double getSumError() {
+        return stats.getSumError();
+    }
+
+    double getMin() {
+        return stats.getMin();
+    }
+
+    double getMax() {
+        return stats.getMax();
+    }
+}
@@ -0,0 +1,284 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.util.List;
+
+import org.apache.commons.lang.Validate;
+
+import com.murali.transactionmanager.statistics.model.QuantileSketch;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+import com.murali.transactionmanager.store.RecordingWindow;
+
+/**
+ * Statistics of several nested {@link RecordingWindow}s, e.g. 1, 5 and 15
+ * minutes, kept from a single record. Each window has its own
+ * {@link TransactionStatsRing} (a level), but a transaction is recorded only
+ * in the finest level; when a bucket leaves a level it is rolled up into the
+ * bucket of the next, coarser level that covers it. So every transaction is
+ * held by exactly one level, and the statistics of a window are the
+ * statistics of its level and all finer ones: reads are O(number of levels).
+ *
+ * The oldest edge of a window moves one of its own buckets at a time, so the
+ * coarser a level, the coarser the resolution of its window. Quantiles, if
+ * tracked, are estimated from the window sketches of the same levels
+ */
+class TransactionStatsHierarchy {
+    static final int NOT_RECORDED = -1;
+
+    /**
+     * Receives the values of a bucket of a level
+     */
+    interface LevelBucketConsumer {
+        void accept(int level, long epochInterval, long count, double sum,
+                double min, double max);
+    }
+
+    private final TransactionStatsRing[] levels;
+    private final QuantileSketch[] windowSketches;
+
+    /**
+     * Number of buckets of the previous level that make up one bucket of each
+     * level
+     */
+    private final long[] rollupFactors;
+
+    /**
+     * Number of buckets of the finest level that make up one bucket of each
+     * level
+     */
+    private final long[] finestBucketsPerBucket;
+
+    TransactionStatsHierarchy(List<RecordingWindow> windows) {
+        this(windows, false);
+    }
+
+    /**
+     * @param windows
+     *            the windows, ordered from the shortest to the longest; each
+     *            bucket width must be a multiple of the previous one
+     * @param trackQuantiles
+     *            whether quantiles are tracked
+     */
+    TransactionStatsHierarchy(List<RecordingWindow> windows,
+            boolean trackQuantiles) {
+        Validate.notEmpty(windows, "windows is empty");
+
+        int levelCount = windows.size();
+        this.levels = new TransactionStatsRing[levelCount];
+        this.rollupFactors = new long[levelCount];
+        this.finestBucketsPerBucket = new long[levelCount];
+
+        long finestBucketWidth = windows.get(0).getBucketWidthMillis();
+        for (int level = 0; level < levelCount; level++) {
+            RecordingWindow window = windows.get(level);
+            Validate.notNull(window, "window is null");
+
+            if (level > 0) {
+                RecordingWindow finerWindow = windows.get(level - 1);
+                Validate.isTrue(
+                        window.getLengthMillis() > finerWindow
+                                .getLengthMillis(),
+                        "windows must be ordered from the shortest");
+                Validate.isTrue(window.getBucketWidthMillis()
+                        % finerWindow.getBucketWidthMillis() == 0,
+                        "bucket widths must be multiples of finer ones");
+                rollupFactors[level] = window.getBucketWidthMillis()
+                        / finerWindow.getBucketWidthMillis();
+            } else {
+                rollupFactors[level] = 1;
+            }
+            finestBucketsPerBucket[level] = window.getBucketWidthMillis()
+                    / finestBucketWidth;
+        }
+
+        // Built from the coarsest level, which every finer one rolls up into
+        for (int level = levelCount - 1; level >= 0; level--) {
+            levels[level] = new TransactionStatsRing(
+                    windows.get(level).getBuckets(),
+                    (level == levelCount - 1) ? null : rollupInto(level + 1),
+                    trackQuantiles);
+        }
+
+        this.windowSketches = trackQuantiles
+                ? new QuantileSketch[levelCount] : null;
+        for (int level = 0; trackQuantiles && level < levelCount; level++) {
+            windowSketches[level] = levels[level].getWindowSketch();
+        }
+    }
+
+    boolean isTrackingQuantiles() {
+        return windowSketches != null;
+    }
+
+    int getLevels() {
+        return levels.length;
+    }
+
+    /**
+     * Records a group of amounts of the same bucket of the finest level, given
+     * by their count, sum, minimum and maximum. If that bucket has already
+     * left the finest window, the amounts go to the finest level whose window
+     * still covers them. If quantiles are tracked, only a single amount can be
+     * recorded this way
+     *
+     * @return the level the amounts were recorded in, or {@link #NOT_RECORDED}
+     *         if they are older than the longest window
+     */
+    int record(long epochInterval, long count, double sum, double min,
+            double max) {
+        Validate.isTrue(windowSketches == null || count == 1,
+                "groups need a sketch when quantiles are tracked");
+        return recordFrom(0, epochInterval, count, sum, min, max, null);
+    }
+
+    /**
+     * Copies statistics about the transactions recorded within the window of
+     * the given level into the snapshot, without allocating
+     *
+     * @param nowInterval
+     *            the current bucket of the finest level
+     * @return the given snapshot
+     */
+    StatisticsSnapshot getStatistics(int level, long nowInterval,
+            StatisticsSnapshot snapshot) {
+        while (true) {
+            // A bucket being rolled up between two of the levels read here
+            // could be seen by both or neither, so the levels are read again
+            // if any rollup was in flight or started in the meantime
+            long rollupsStarted = rollupsStarted(level);
+            if (rollupsFinished(level) != rollupsStarted) {
+                Thread.yield();
+                continue;
+            }
+
+            long count = 0;
+            double sum = 0.0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i <= level; i++) {
+                levels[i].getStatistics(Math.floorDiv(nowInterval,
+                        finestBucketsPerBucket[i]), snapshot);
+                if (snapshot.getCount() > 0) {
+                    count += snapshot.getCount();
+                    sum += snapshot.getSum();
+                    min = Math.min(min, snapshot.getMin());
+                    max = Math.max(max, snapshot.getMax());
+                }
+            }
+
+            snapshot.set(count, sum, min, max);
+            if (windowSketches != null) {
+                QuantileSketch.getQuantiles(windowSketches, level + 1,
+                        snapshot);
+            }
+
+            if (rollupsStarted(level) == rollupsStarted) {
+                return snapshot;
+            }
+        }
+    }
+
+    /**
+     * Passes the values of every bucket that holds transactions to the
+     * consumer, from the finest level to the coarsest
+     *
+     * @return false if a bucket was rolled up between two levels meanwhile,
+     *         so that the consumer may have seen it twice or not at all
+     */
+    boolean forEachBucket(LevelBucketConsumer consumer) {
+        int coarsest = levels.length - 1;
+        long rollupsStarted = rollupsStarted(coarsest);
+        if (rollupsFinished(coarsest) != rollupsStarted) {
+            return false;
+        }
+
+        for (int level = 0; level < levels.length; level++) {
+            int bucketLevel = level;
+            levels[level].forEachBucket((epochInterval, count, sum, min, max,
+                    sketch) -> consumer.accept(bucketLevel, epochInterval,
+                            count, sum, min, max));
+        }
+        return rollupsStarted(coarsest) == rollupsStarted;
+    }
+
+    /**
+     * Moves the window of every level to the given interval, retiring (and
+     * rolling up) the buckets that have left it
+     *
+     * @param nowInterval
+     *            the current bucket of the finest level
+     */
+    void advanceTo(long nowInterval) {
+        for (int level = 0; level < levels.length; level++) {
+            levels[level].advanceTo(
+                    Math.floorDiv(nowInterval, finestBucketsPerBucket[level]));
+        }
+    }
+
+    /**
+     * Records the values of a bucket of the given level, e.g. one read by
+     * {@link #forEachBucket(LevelBucketConsumer)}. If that bucket has already
+     * left the window of its level, the values go to the next level whose
+     * window still covers them. Not supported when quantiles are tracked
+     *
+     * @return the level the values were recorded in, or
+     *         {@link #NOT_RECORDED} if they are older than the longest window
+     */
+    int restore(int level, long epochInterval, long count, double sum,
+            double min, double max) {
+        Validate.isTrue(windowSketches == null,
+                "buckets cannot be restored when quantiles are tracked");
+        Validate.isTrue(level >= 0 && level < levels.length,
+                "invalid level " + level);
+        return recordFrom(level, epochInterval, count, sum, min, max, null);
+    }
+
+    private TransactionStatsRing.BucketConsumer rollupInto(int level) {
+        return (epochInterval, count, sum, min, max, sketch) -> recordFrom(
+                level, Math.floorDiv(epochInterval, rollupFactors[level]),
+                count, sum, min, max, sketch);
+    }
+
+    private int recordFrom(int level, long epochInterval, long count,
+            double sum, double min, double max, QuantileSketch sketch) {
+        while (!levels[level].record(epochInterval, count, sum, min, max,
+                sketch)) {
+            if (++level == levels.length) {
+                return NOT_RECORDED;
+            }
+            epochInterval = Math.floorDiv(epochInterval, rollupFactors[level]);
+        }
+        return level;
+    }
+
+    /**
+     * Returns how long writers have waited for the window locks of the levels
+     * in total
+     */
+    long getWindowLockWaitNanos() {
+        long nanos = 0;
+        for (TransactionStatsRing level : levels) {
+            nanos += level.getWindowLockWaitNanos();
+        }
+        return nanos;
+    }
+
+    /**
+     * Rollups between the levels up to the given one; rollups out of it do
+     * not move transactions within its window
+     */
+    private long rollupsStarted(int level) {
+        long rollups = 0;
+        for (int i = 0; i < level; i++) {
+            rollups += levels[i].getRollupsStarted();
+        }
+        return rollups;
+    }
+
+    private long rollupsFinished(int level) {
+        long rollups = 0;
+        for (int i = 0; i < level; i++) {
+            rollups += levels[i].getRollupsFinished();
+        }
+        return rollups;
+    }
+}
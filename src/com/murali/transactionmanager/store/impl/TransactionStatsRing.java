@@ -0,0 +1,450 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+import org.apache.commons.lang.Validate;
+
+import com.murali.transactionmanager.statistics.model.QuantileSketch;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+
+/**
+ * Fixed-size ring of preallocated per-interval {@link TransactionStatsBucket}s.
+ * The bucket of an interval is found at slot (epochInterval % number of
+ * slots), so recording is O(1), allocation-free and the heap used by the ring
+ * does not grow with the number of transactions.
+ *
+ * Reads are O(1) as well: the count and sum of the whole window are kept as
+ * running totals (added to on every record and subtracted from when a bucket
+ * is retired; the sums are compensated, and whatever rounding leaves once the
+ * window is empty again is cleared, so the sum does not drift), and the
+ * minimum and maximum of the intervals that have passed are kept in
+ * {@link ExtremeValueDeque}s. The window is advanced (older
+ * buckets retired and past intervals sealed into the deques) under
+ * {@link #windowLock}, at most once per interval.
+ *
+ * Both the buckets and the window totals keep their values in
+ * {@link StripedStatsCells}, so concurrent writers do not contend on a single
+ * counter; readers fold the cells.
+ *
+ * A ring may roll its retired buckets up into a coarser window (see
+ * {@link TransactionStatsHierarchy}) through a {@link BucketConsumer}. If it
+ * tracks quantiles, every bucket has a {@link QuantileSketch}, and so has the
+ * window: like the totals, the window sketch is added to on every record and
+ * the bucket sketch is subtracted from it when the bucket is retired
+ */
+class TransactionStatsRing {
+    /**
+     * Receives the values of a bucket that holds transactions, e.g. of every
+     * retired bucket before it is taken out of the window totals
+     */
+    interface BucketConsumer {
+        /**
+         * @param sketch
+         *            the sketch of the bucket, or null if quantiles are not
+         *            tracked
+         */
+        void accept(long epochInterval, long count, double sum, double min,
+                double max, QuantileSketch sketch);
+    }
+
+    private final TransactionStatsBucket[] buckets;
+    private final BucketConsumer rollupConsumer;
+    private final AtomicLong rollupsStarted = new AtomicLong();
+    private final AtomicLong rollupsFinished = new AtomicLong();
+
+    private final StripedStatsCells windowTotals = new StripedStatsCells();
+    private final QuantileSketch windowSketch;
+
+    private final StampedLock windowLock = new StampedLock();
+    private final LongAdder windowLockWaitNanos = new LongAdder();
+    private final ExtremeValueDeque maxDeque;
+    private final ExtremeValueDeque negatedMinDeque;
+
+    /**
+     * Every interval before this one has been sealed into the deques, and every
+     * interval up to (advancedInterval - slots) has been retired
+     */
+    private volatile long advancedInterval;
+
+    /**
+     * The latest interval any bucket has been claimed for
+     */
+    private volatile long latestInterval;
+
+    TransactionStatsRing(int slots) {
+        this(slots, null, false);
+    }
+
+    /**
+     * @param slots
+     *            number of buckets
+     * @param rollupConsumer
+     *            receives retired buckets, or null if they are dropped
+     * @param trackQuantiles
+     *            whether the buckets and the window have sketches; each one
+     *            takes {@link QuantileSketch} memory
+     */
+    TransactionStatsRing(int slots, BucketConsumer rollupConsumer,
+            boolean trackQuantiles) {
+        Validate.isTrue(slots > 0, "slots must be positive");
+
+        // Many buckets share the cell budget, so a fine-grained window does
+        // not multiply the memory of the ring by the number of processors
+        int cellsPerBucket = StripedStatsCells.cellsPerBucket(slots);
+        this.buckets = new TransactionStatsBucket[slots];
+        for (int i = 0; i < slots; i++) {
+            buckets[i] = new TransactionStatsBucket(cellsPerBucket,
+                    trackQuantiles);
+        }
+        this.maxDeque = new ExtremeValueDeque(slots + 1);
+        this.negatedMinDeque = new ExtremeValueDeque(slots + 1);
+        this.rollupConsumer = rollupConsumer;
+        this.windowSketch = trackQuantiles ? new QuantileSketch() : null;
+    }
+
+    int getSlots() {
+        return buckets.length;
+    }
+
+    /**
+     * Returns the number of buckets that have started to roll up. A rollup
+     * is in flight while this differs from {@link #getRollupsFinished()}
+     */
+    long getRollupsStarted() {
+        return rollupsStarted.get();
+    }
+
+    long getRollupsFinished() {
+        return rollupsFinished.get();
+    }
+
+    /**
+     * Returns how long writers have waited for {@link #windowLock} in total
+     */
+    long getWindowLockWaitNanos() {
+        return windowLockWaitNanos.sum();
+    }
+
+    /**
+     * Returns the sketch of the amounts within the window, or null if
+     * quantiles are not tracked
+     */
+    QuantileSketch getWindowSketch() {
+        return this.windowSketch;
+    }
+
+    /**
+     * Records the amount in the bucket of the given interval
+     *
+     * @return false if the interval has already left the window or its slot has
+     *         been reused by a newer interval
+     */
+    boolean record(long epochInterval, double amount) {
+        return record(epochInterval, 1, amount, amount, amount, null);
+    }
+
+    /**
+     * Records a group of amounts of the same interval, given by their count,
+     * sum, minimum and maximum, with a single update of its bucket. If
+     * quantiles are tracked, only a single amount can be recorded this way
+     *
+     * @return false if the interval has already left the window or its slot has
+     *         been reused by a newer interval
+     */
+    boolean record(long epochInterval, long count, double sum, double min,
+            double max) {
+        Validate.isTrue(windowSketch == null || count == 1,
+                "groups need a sketch when quantiles are tracked");
+        return record(epochInterval, count, sum, min, max, null);
+    }
+
+    /**
+     * Records a group of amounts of the same interval, given by their count,
+     * sum, minimum, maximum and sketch, with a single update of its bucket
+     *
+     * @param sketch
+     *            sketch of the amounts, or null if it is a single amount (the
+     *            minimum) or quantiles are not tracked
+     * @return false if the interval has already left the window or its slot has
+     *         been reused by a newer interval
+     */
+    boolean record(long epochInterval, long count, double sum, double min,
+            double max, QuantileSketch sketch) {
+        TransactionStatsBucket bucket = bucketOf(epochInterval);
+
+        while (true) {
+            long stamp = bucket.getEpochInterval();
+
+            if (stamp == epochInterval) {
+                int cell = bucket.beginWrite(epochInterval);
+                if (cell != TransactionStatsBucket.NOT_WRITING) {
+                    try {
+                        bucket.accumulate(cell, count, sum, min, max);
+                        windowTotals.add(cell, count, sum);
+                        if (windowSketch != null) {
+                            addToSketches(bucket.getSketch(), min, sketch);
+                        }
+                    } finally {
+                        bucket.endWrite(cell);
+                    }
+                    break;
+                }
+            } else if (stamp == TransactionStatsBucket.RESETTING) {
+                Thread.yield();
+            } else if (stamp > epochInterval || !claim(bucket, epochInterval)) {
+                return false;
+            }
+        }
+
+        // The deques may already have sealed this interval without these
+        // amounts
+        if (epochInterval < advancedInterval) {
+            offerLateExtremes(epochInterval, min, max);
+        }
+        return true;
+    }
+
+    /**
+     * Copies statistics about the transactions recorded in the intervals after
+     * (nowInterval - slots) into the snapshot, without allocating
+     *
+     * @return the given snapshot
+     */
+    StatisticsSnapshot getStatistics(long nowInterval,
+            StatisticsSnapshot snapshot) {
+        if (nowInterval > advancedInterval) {
+            advance(nowInterval);
+        }
+
+        // The count and sum must agree with each other
+        windowTotals.read(snapshot);
+        long count = snapshot.getCount();
+        double sum = snapshot.getSum();
+        double max;
+        double min;
+
+        long stamp = windowLock.tryOptimisticRead();
+        max = maxDeque.peek();
+        min = -negatedMinDeque.peek();
+        if (!windowLock.validate(stamp)) {
+            stamp = windowLock.readLock();
+            try {
+                max = maxDeque.peek();
+                min = -negatedMinDeque.peek();
+            } finally {
+                windowLock.unlock(stamp);
+            }
+        }
+
+        // Intervals that have not been sealed yet; usually only the current one
+        long liveInterval = advancedInterval;
+        long lastLiveInterval = Math.min(latestInterval,
+                liveInterval + buckets.length - 1);
+        for (; liveInterval <= lastLiveInterval; liveInterval++) {
+            TransactionStatsBucket bucket = bucketOf(liveInterval);
+            if (bucket.getEpochInterval() == liveInterval
+                    && bucket.getCount() > 0) {
+                max = Math.max(max, bucket.getMax());
+                min = Math.min(min, bucket.getMin());
+            }
+        }
+
+        return snapshot.set(count, sum, min, max);
+    }
+
+    /**
+     * Retires every interval up to (nowInterval - slots), as a read at
+     * nowInterval would
+     */
+    void advanceTo(long nowInterval) {
+        if (nowInterval > advancedInterval) {
+            advance(nowInterval);
+        }
+    }
+
+    /**
+     * Passes the values of every bucket that holds transactions to the
+     * consumer. A bucket retired while it is being read is skipped; the count,
+     * sum, minimum and maximum of the others are consistent with each other,
+     * but may miss writes that are still in flight
+     */
+    void forEachBucket(BucketConsumer consumer) {
+        StatisticsSnapshot bucketSnapshot = new StatisticsSnapshot();
+        for (TransactionStatsBucket bucket : buckets) {
+            long stamp = bucket.getEpochInterval();
+            if (stamp < 0) {
+                // EMPTY or RESETTING
+                continue;
+            }
+
+            bucket.read(bucketSnapshot);
+            if (bucketSnapshot.getCount() > 0
+                    && bucket.getEpochInterval() == stamp) {
+                consumer.accept(stamp, bucketSnapshot.getCount(),
+                        bucketSnapshot.getSum(), bucketSnapshot.getMin(),
+                        bucketSnapshot.getMax(), bucket.getSketch());
+            }
+        }
+    }
+
+    /**
+     * Claims the bucket for the given interval, retiring the older interval it
+     * still holds
+     *
+     * @return false if the interval has already left the window
+     */
+    private boolean claim(TransactionStatsBucket bucket, long epochInterval) {
+        long writeLock = lockWindow();
+
+        try {
+            if (epochInterval <= advancedInterval - buckets.length) {
+                return false;
+            }
+
+            long stamp = bucket.getEpochInterval();
+            if (stamp >= epochInterval) {
+                // Claimed concurrently; the caller retries
+                return true;
+            } else if (stamp != TransactionStatsBucket.EMPTY) {
+                // The slot is still held by an interval at least a full window
+                // older than this one. It and every older interval have left
+                // the window of this one, and the deques are ordered by
+                // interval, so they are expired from the head
+                retire(bucket, stamp);
+                maxDeque.expire(stamp);
+                negatedMinDeque.expire(stamp);
+            }
+
+            bucket.claim(epochInterval);
+            if (epochInterval > latestInterval) {
+                latestInterval = epochInterval;
+            }
+            return true;
+        } finally {
+            windowLock.unlock(writeLock);
+        }
+    }
+
+    /**
+     * Seals every interval before nowInterval into the deques and retires every
+     * interval that has left the window
+     */
+    private void advance(long nowInterval) {
+        long writeLock = lockWindow();
+
+        try {
+            long fromInterval = advancedInterval;
+            if (nowInterval <= fromInterval) {
+                return;
+            }
+            // Published before the buckets are read, so that a concurrent
+            // write to an interval being sealed either is seen here or sees
+            // that it has to offer its amount to the deques itself
+            advancedInterval = nowInterval;
+
+            int slots = buckets.length;
+            long oldestInterval = nowInterval - slots + 1;
+            for (long interval = Math.max(fromInterval, oldestInterval);
+                    interval < nowInterval; interval++) {
+                TransactionStatsBucket bucket = bucketOf(interval);
+                if (bucket.getEpochInterval() == interval
+                        && bucket.getCount() > 0) {
+                    maxDeque.offer(interval, bucket.getMax());
+                    negatedMinDeque.offer(interval, -bucket.getMin());
+                }
+            }
+
+            long retiredThroughInterval = nowInterval - slots;
+            long retirements = Math.min(nowInterval - fromInterval, slots);
+            for (long i = 0; i < retirements; i++) {
+                TransactionStatsBucket bucket = bucketOf(
+                        retiredThroughInterval - i);
+                long stamp = bucket.getEpochInterval();
+                if (stamp != TransactionStatsBucket.EMPTY
+                        && stamp <= retiredThroughInterval) {
+                    retire(bucket, stamp);
+                }
+            }
+            maxDeque.expire(retiredThroughInterval);
+            negatedMinDeque.expire(retiredThroughInterval);
+        } finally {
+            windowLock.unlock(writeLock);
+        }
+    }
+
+    /**
+     * Rolls the bucket's values up, removes them from the window totals and
+     * frees the bucket. Must be called while holding the write lock
+     */
+    private void retire(TransactionStatsBucket bucket, long epochInterval) {
+        if (bucket.beginRetire(epochInterval)) {
+            long count = bucket.getCount();
+            double sum = bucket.getSum();
+            double sumError = bucket.getSumError();
+
+            boolean rollingUp = rollupConsumer != null && count > 0;
+            if (rollingUp) {
+                rollupsStarted.incrementAndGet();
+                rollupConsumer.accept(epochInterval, count, sum,
+                        bucket.getMin(), bucket.getMax(), bucket.getSketch());
+            }
+            windowTotals.add(0, -count, -sum, -sumError);
+            if (count > 0 && windowTotals.getCount() == 0) {
+                windowTotals.clearSumIfEmpty();
+            }
+            if (windowSketch != null) {
+                windowSketch.subtract(bucket.getSketch());
+            }
+            bucket.endRetire();
+            if (rollingUp) {
+                rollupsFinished.incrementAndGet();
+            }
+        }
+    }
+
+    private void addToSketches(QuantileSketch bucketSketch, double amount,
+            QuantileSketch sketch) {
+        if (sketch == null) {
+            bucketSketch.add(amount);
+            windowSketch.add(amount);
+        } else {
+            bucketSketch.merge(sketch);
+            windowSketch.merge(sketch);
+        }
+    }
+
+    private void offerLateExtremes(long epochInterval, double min, double max) {
+        long writeLock = lockWindow();
+
+        try {
+            if (epochInterval > advancedInterval - buckets.length && bucketOf(
+                    epochInterval).getEpochInterval() == epochInterval) {
+                maxDeque.offer(epochInterval, max);
+                negatedMinDeque.offer(epochInterval, -min);
+            }
+        } finally {
+            windowLock.unlock(writeLock);
+        }
+    }
+
+    /**
+     * Takes the write lock of the window, timing the wait only when the lock
+     * is held by another thread
+     */
+    private long lockWindow() {
+        long writeLock = windowLock.tryWriteLock();
+        if (writeLock == 0) {
+            long start = System.nanoTime();
+            writeLock = windowLock.writeLock();
+            windowLockWaitNanos.add(System.nanoTime() - start);
+        }
+        return writeLock;
+    }
+
+    private TransactionStatsBucket bucketOf(long epochInterval) {
+        return buckets[(int) Math.floorMod(epochInterval,
+                (long) buckets.length)];
+    }
+}
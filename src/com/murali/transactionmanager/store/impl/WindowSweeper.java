@@ -0,0 +1,90 @@
+package com.murali.transactionmanager.store.impl;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Advances the watermark of a recorder's windows in the background: once per
+ * interval of the clock it retires (and rolls up) every bucket that has left
+ * the window, and drops the raw transactions that have. Without a sweeper
+ * this happens when the first transaction of a new interval claims the slot
+ * of an expired one, or when the statistics are read; with it, writers find
+ * the slots of new intervals already free, and expired data does not linger
+ * through quiet periods
+ */
+public class WindowSweeper implements Closeable {
+    private final LongSupplier clock;
+    private final long bucketWidthMillis;
+    private final LongConsumer sweepTarget;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile long sweptInterval = Long.MIN_VALUE;
+
+    /**
+     * @param clock
+     * @param bucketWidthMillis
+     *            width of the intervals to sweep at
+     * @param sweepTarget
+     *            receives the current interval whenever it changes
+     */
+    WindowSweeper(LongSupplier clock, long bucketWidthMillis,
+            LongConsumer sweepTarget) {
+        this.clock = clock;
+        this.bucketWidthMillis = bucketWidthMillis;
+        this.sweepTarget = sweepTarget;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "window-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sweeps every period, starting now. A period of a fraction of the bucket
+     * width keeps the sweeps close to the start of each interval
+     */
+    void start(long period, TimeUnit unit) {
+        Validate.isTrue(period > 0, "period must be positive");
+        Validate.notNull(unit, "unit is null");
+
+        scheduler.scheduleAtFixedRate(this::sweep, 0, period, unit);
+    }
+
+    /**
+     * Sweeps the window up to the current interval, unless it has already
+     * been swept up to it
+     */
+    public synchronized void sweep() {
+        long nowInterval = clock.getAsLong() / bucketWidthMillis;
+        if (nowInterval > sweptInterval) {
+            sweepTarget.accept(nowInterval);
+            sweptInterval = nowInterval;
+        }
+    }
+
+    /**
+     * Returns the interval the window has last been swept up to
+     */
+    public long getSweptInterval() {
+        return this.sweptInterval;
+    }
+
+    /**
+     * Stops the sweeps; the windows go back to expiring on writes and reads
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package com.murali.transactionmanager.tcp;
+
+import static com.murali.transactionmanager.tcp.BatchProtocol.ACK_HEADER_BYTES;
+import static com.murali.transactionmanager.tcp.BatchProtocol.AMOUNT_TIMESTAMP_KEY;
+import static com.murali.transactionmanager.tcp.BatchProtocol.FRAME_HEADER_BYTES;
+import static com.murali.transactionmanager.tcp.BatchProtocol.LENGTH_BYTES;
+import static com.murali.transactionmanager.tcp.BatchProtocol.MAX_ACK_BYTES;
+import static com.murali.transactionmanager.tcp.BatchProtocol.MAX_FRAME_BYTES;
+import static com.murali.transactionmanager.tcp.BatchProtocol.MAX_RECORDS;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.BitSet;
+import java.util.Iterator;
+
+import org.apache.commons.lang.Validate;
+
+import com.murali.transactionmanager.model.ReturnCode;
+import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.store.KeyedTransactionRecorder;
+import com.murali.transactionmanager.store.TransactionRecorder;
+
+/**
+ * Ingests batches of transactions sent in the {@link BatchProtocol} over TCP.
+ * A single selector thread serves every connection: the records of a frame
+ * are decoded from a direct buffer into the columns of
+ * {@link TransactionRecorder#recordAll(double[], long[], int, BitSet)}, so no
+ * {@link Transaction} is created, and the frame is acknowledged with the
+ * records that were not recorded.
+ *
+ * Keys are only used when the server is given a
+ * {@link KeyedTransactionRecorder}, which records the transactions of keyed
+ * frames that the recorder accepted under the key in its dimension, with
+ * {@link KeyedTransactionRecorder#record(long, double, long)}. A record it
+ * rejects is acknowledged as not recorded, although the recorder has it.
+ *
+ * A frame that a recorder fails on with an exception is acknowledged with
+ * {@link BatchProtocol#STATUS_FAILED}, after which the connection is closed;
+ * the other connections are still served.
+ *
+ * A connection holds about 400 KB of buffers. It is not read from while its
+ * acknowledgements are not written, so a client that does not read them is
+ * slowed down rather than buffered for.
+ *
+ * The recorders are called on the selector thread, so a recorder that blocks
+ * (e.g. one that waits for its journal to be durable) stalls every
+ * connection, not only the one whose frame it records. Such a recorder should
+ * be given its own server, or be fronted by one that hands the batches off to
+ * another thread
+ */
+public class BatchIngestServer implements Closeable {
+    private static final int BACKLOG = 1024;
+    private static final int OUTPUT_BYTES = 64 * 1024;
+
+    private final TransactionRecorder transactionRecorder;
+    private final KeyedTransactionRecorder keyedTransactionRecorder;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final InetSocketAddress address;
+    private final Thread selectorThread;
+    private volatile boolean closed;
+
+    public BatchIngestServer(TransactionRecorder transactionRecorder,
+            InetSocketAddress address) throws IOException {
+        this(transactionRecorder, null, address);
+    }
+
+    /**
+     * @param transactionRecorder
+     * @param keyedTransactionRecorder
+     *            null to ignore the keys of the records
+     * @param address
+     */
+    public BatchIngestServer(TransactionRecorder transactionRecorder,
+            KeyedTransactionRecorder keyedTransactionRecorder,
+            InetSocketAddress address) throws IOException {
+        Validate.notNull(transactionRecorder,
+                "transactionRecorder must not be null");
+        Validate.notNull(address, "address must not be null");
+
+        this.transactionRecorder = transactionRecorder;
+        this.keyedTransactionRecorder = keyedTransactionRecorder;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            this.serverChannel.bind(address, BACKLOG);
+            this.serverChannel.configureBlocking(false);
+            this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            this.address = (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        this.selectorThread = new Thread(this::run, "batch-ingest");
+        this.selectorThread.setDaemon(true);
+    }
+
+    public void start() {
+        selectorThread.start();
+    }
+
+    /**
+     * Returns the address the server listens on, with the actual port if it
+     * was created with port 0
+     */
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Stops the selector thread and closes every connection
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        if (selectorThread.isAlive()) {
+            try {
+                selectorThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            closeQuietly(key.channel());
+        }
+        closeQuietly(serverChannel);
+        closeQuietly(selector);
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                return;
+            }
+
+            Iterator<SelectionKey> selectedKeys = selector.selectedKeys()
+                    .iterator();
+            while (selectedKeys.hasNext()) {
+                SelectionKey key = selectedKeys.next();
+                selectedKeys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                Connection connection = (Connection) key.attachment();
+                try {
+                    if (key.isWritable()) {
+                        connection.processFrames();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        connection.read();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // Only this connection is lost; the selector thread
+                    // goes on serving the others
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    private void accept() {
+        SocketChannel channel = null;
+        try {
+            channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(selector,
+                    SelectionKey.OP_READ);
+            key.attach(new Connection(channel, key));
+        } catch (IOException e) {
+            closeQuietly(channel);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing left to do with it
+        }
+    }
+
+    /**
+     * State of a connection, only used by the selector thread. The input
+     * buffer can hold the largest frame, and is kept in write mode between
+     * reads, as is the output buffer
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer input = ByteBuffer
+                .allocateDirect(LENGTH_BYTES + MAX_FRAME_BYTES);
+        private final ByteBuffer output = ByteBuffer
+                .allocateDirect(OUTPUT_BYTES);
+        private final double[] amounts = new double[MAX_RECORDS];
+        private final long[] timestamps = new long[MAX_RECORDS];
+        private final long[] keys = new long[MAX_RECORDS];
+        private final BitSet rejections = new BitSet(MAX_RECORDS);
+        // Set after a bad or failed frame, once no more frames are processed
+        private boolean closing;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void read() throws IOException {
+            if (channel.read(input) < 0) {
+                close();
+                return;
+            }
+            processFrames();
+        }
+
+        /**
+         * Records the complete frames in the input buffer, as long as there
+         * is room for their acknowledgements, and writes what it can of the
+         * acknowledgements. Frames left because the output was full are
+         * processed as soon as writing frees room for their acknowledgements:
+         * the client may have sent them all and be waiting for those
+         * acknowledgements, so no more bytes may arrive to process them on
+         */
+        void processFrames() throws IOException {
+            do {
+                processBufferedFrames();
+                flush();
+            } while (!closing && output.remaining() >= MAX_ACK_BYTES
+                    && hasCompleteFrame());
+        }
+
+        void close() {
+            key.cancel();
+            closeQuietly(channel);
+        }
+
+        private void processBufferedFrames() {
+            input.flip();
+            while (!closing && output.remaining() >= MAX_ACK_BYTES
+                    && input.remaining() >= LENGTH_BYTES) {
+                int frameBytes = input.getInt(input.position());
+                if (frameBytes < FRAME_HEADER_BYTES
+                        || frameBytes > MAX_FRAME_BYTES) {
+                    failFrame(BatchProtocol.STATUS_BAD_FRAME);
+                    break;
+                }
+                if (input.remaining() < LENGTH_BYTES + frameBytes) {
+                    break;
+                }
+
+                int frameStart = input.position() + LENGTH_BYTES;
+                byte layout = input.get(frameStart);
+                int records = input.getInt(frameStart + Byte.BYTES);
+                int recordBytes = BatchProtocol.recordBytes(layout);
+                if (recordBytes < 0 || records < 0 || records > MAX_RECORDS
+                        || frameBytes != FRAME_HEADER_BYTES
+                                + records * recordBytes) {
+                    failFrame(BatchProtocol.STATUS_BAD_FRAME);
+                    break;
+                }
+
+                decode(frameStart + FRAME_HEADER_BYTES, layout, recordBytes,
+                        records);
+                input.position(frameStart + frameBytes);
+                record(layout, records);
+            }
+            input.compact();
+        }
+
+        /**
+         * Returns true if the input buffer holds a complete frame, or the
+         * length of a bad one, which processing would reject
+         */
+        private boolean hasCompleteFrame() {
+            if (input.position() < LENGTH_BYTES) {
+                return false;
+            }
+            int frameBytes = input.getInt(0);
+            return frameBytes < FRAME_HEADER_BYTES
+                    || frameBytes > MAX_FRAME_BYTES
+                    || input.position() >= LENGTH_BYTES + frameBytes;
+        }
+
+        private void decode(int position, byte layout, int recordBytes,
+                int records) {
+            for (int i = 0; i < records; i++, position += recordBytes) {
+                amounts[i] = input.getDouble(position);
+                timestamps[i] = input.getLong(position + Double.BYTES);
+                if (layout == AMOUNT_TIMESTAMP_KEY) {
+                    keys[i] = input
+                            .getLong(position + Double.BYTES + Long.BYTES);
+                }
+            }
+        }
+
+        private void record(byte layout, int records) {
+            int recorded;
+            try {
+                recorded = transactionRecorder.recordAll(amounts, timestamps,
+                        records, rejections);
+                if (layout == AMOUNT_TIMESTAMP_KEY
+                        && keyedTransactionRecorder != null) {
+                    recorded -= recordKeyed(records);
+                }
+            } catch (RuntimeException e) {
+                // Some of the records may have been recorded, so the frame
+                // cannot be acknowledged record by record
+                failFrame(BatchProtocol.STATUS_FAILED);
+                return;
+            }
+
+            output.putInt(ACK_HEADER_BYTES
+                    + BatchProtocol.bitmapBytes(records));
+            output.put(BatchProtocol.STATUS_OK);
+            output.putInt(recorded);
+            for (int i = 0; i < records; i += Byte.SIZE) {
+                int bits = 0;
+                for (int j = 0; j < Byte.SIZE && i + j < records; j++) {
+                    if (rejections.get(i + j)) {
+                        bits |= 1 << j;
+                    }
+                }
+                output.put((byte) bits);
+            }
+        }
+
+        /**
+         * Records the transactions the recorder accepted under their keys,
+         * and sets the rejection bits of those the keyed recorder rejects
+         *
+         * @return the number of transactions the keyed recorder rejected
+         */
+        private int recordKeyed(int records) {
+            int rejected = 0;
+            for (int i = rejections.nextClearBit(0); i < records;
+                    i = rejections.nextClearBit(i + 1)) {
+                if (keyedTransactionRecorder.record(keys[i], amounts[i],
+                        timestamps[i]) != ReturnCode.SUCCESS) {
+                    rejections.set(i);
+                    rejected++;
+                }
+            }
+            return rejected;
+        }
+
+        /**
+         * Acknowledges the frame with the status and no records, and closes
+         * the connection once the acknowledgement is written
+         */
+        private void failFrame(byte status) {
+            output.putInt(ACK_HEADER_BYTES);
+            output.put(status);
+            output.putInt(0);
+            closing = true;
+        }
+
+        /**
+         * Writes what the channel takes of the output, then waits for the
+         * channel to take the rest, if any, before reading more frames
+         */
+        private void flush() throws IOException {
+            output.flip();
+            channel.write(output);
+            output.compact();
+
+            boolean pending = output.position() > 0;
+            if (closing && !pending) {
+                close();
+                return;
+            }
+            boolean readable = !closing
+                    && output.remaining() >= MAX_ACK_BYTES;
+            key.interestOps((pending ? SelectionKey.OP_WRITE : 0)
+                    | (readable ? SelectionKey.OP_READ : 0));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.murali.transactionmanager.tcp;
+
+import java.nio.ByteBuffer;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Binary protocol of a {@link BatchIngestServer}. All values are big-endian.
+ *
+ * A client sends frames, each a batch of fixed-width records:
+ *
+ * <pre>
+ * int   length of the rest of the frame
+ * byte  layout, {@link #AMOUNT_TIMESTAMP} or {@link #AMOUNT_TIMESTAMP_KEY}
+ * int   number of records, at most {@link #MAX_RECORDS}
+ * records, each a double amount and a long timestamp in milliseconds since
+ *       the epoch, followed by a long key with the second layout
+ * </pre>
+ *
+ * and the server answers every frame, in order, with an acknowledgement:
+ *
+ * <pre>
+ * int   length of the rest of the acknowledgement
+ * byte  {@link #STATUS_OK}, {@link #STATUS_BAD_FRAME} or
+ *       {@link #STATUS_FAILED}
+ * int   number of records recorded
+ * bytes bitmap of the records that were not recorded, one bit per record in
+ *       the order of the frame, least significant bit first
+ * </pre>
+ *
+ * A bad frame, or one the server failed to record, is acknowledged with no
+ * records and no bitmap, after which the server closes the connection. Some
+ * records of a frame that failed may have been recorded
+ */
+public final class BatchProtocol {
+    public static final byte AMOUNT_TIMESTAMP = 0;
+    public static final byte AMOUNT_TIMESTAMP_KEY = 1;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_BAD_FRAME = 1;
+    public static final byte STATUS_FAILED = 2;
+
+    public static final int MAX_RECORDS = 8192;
+
+    static final int LENGTH_BYTES = Integer.BYTES;
+    static final int FRAME_HEADER_BYTES = Byte.BYTES + Integer.BYTES;
+    static final int ACK_HEADER_BYTES = Byte.BYTES + Integer.BYTES;
+    static final int MAX_FRAME_BYTES = FRAME_HEADER_BYTES
+            + MAX_RECORDS * recordBytes(AMOUNT_TIMESTAMP_KEY);
+    static final int MAX_ACK_BYTES = LENGTH_BYTES + ACK_HEADER_BYTES
+            + bitmapBytes(MAX_RECORDS);
+
+    private BatchProtocol() {
+    }
+
+    /**
+     * Writes a frame of the given records into the buffer
+     *
+     * @param keys
+     *            null for the {@link #AMOUNT_TIMESTAMP} layout
+     */
+    public static void writeFrame(ByteBuffer buffer, double[] amounts,
+            long[] timestamps, long[] keys, int length) {
+        Validate.isTrue(length >= 0 && length <= MAX_RECORDS
+                && length <= amounts.length && length <= timestamps.length
+                && (keys == null || length <= keys.length), "invalid length");
+
+        byte layout = (keys == null) ? AMOUNT_TIMESTAMP : AMOUNT_TIMESTAMP_KEY;
+        buffer.putInt(FRAME_HEADER_BYTES + length * recordBytes(layout));
+        buffer.put(layout);
+        buffer.putInt(length);
+        for (int i = 0; i < length; i++) {
+            buffer.putDouble(amounts[i]);
+            buffer.putLong(timestamps[i]);
+            if (keys != null) {
+                buffer.putLong(keys[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the size of a record of the layout, or -1 for an unknown layout
+     */
+    static int recordBytes(byte layout) {
+        switch (layout) {
+        case AMOUNT_TIMESTAMP:
+            return Double.BYTES + Long.BYTES;
+        case AMOUNT_TIMESTAMP_KEY:
+            return Double.BYTES + Long.BYTES + Long.BYTES;
+        default:
+            return -1;
+        }
+    }
+
+    static int bitmapBytes(int records) {
+        return (records + 7) / 8;
+    }
+}
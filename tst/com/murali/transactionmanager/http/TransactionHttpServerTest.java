@@ -0,0 +1,266 @@
+package com.murali.transactionmanager.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.murali.transactionmanager.model.ReturnCode;
+import com.murali.transactionmanager.store.RecordingWindow;
+import com.murali.transactionmanager.store.RetentionMode;
+import com.murali.transactionmanager.store.TransactionRecorder;
+import com.murali.transactionmanager.store.impl.InMemoryTransactionRecorder;
+
+/**
+ * Unit tests for {@link TransactionHttpServer}
+ */
+public class TransactionHttpServerTest {
+    private static final long NOW = 1_478_192_204_000L;
+
+    private TransactionHttpServer server;
+
+    @Before
+    public void setup() throws IOException {
+        server = new TransactionHttpServer(newRecorder(),
+                new InetSocketAddress("localhost", 0));
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testPostTransactionsAndGetStatistics() throws IOException {
+        assertEquals(201, post("{\"amount\": 10.3, \"timestamp\": " + NOW
+                + "}"));
+        assertEquals(201, post("{\"amount\": 9.7, \"timestamp\": " + NOW
+                + "}"));
+        assertEquals(204, post("{\"amount\": 1.0, \"timestamp\": "
+                + (NOW - 61_000) + "}"));
+
+        HttpURLConnection connection = open(
+                TransactionHttpServer.STATISTICS_PATH);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("application/json",
+                connection.getHeaderField("Content-Type"));
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                connection.getInputStream(), StandardCharsets.UTF_8))) {
+            assertEquals("{\"sum\":20.0,\"avg\":10.0,\"max\":10.3,"
+                    + "\"min\":9.7,\"count\":2}", reader.readLine());
+        }
+    }
+
+    @Test
+    public void testBadRequests() throws IOException {
+        assertEquals(400, post("{\"amount\": 10.3}"));
+        assertEquals(400, post("not json"));
+        assertEquals(400, post("{\"amount\": 1.0, \"timestamp\": -5}"));
+        assertEquals(413, post("{\"amount\": 1.0, \"pad\": \""
+                + new String(new char[TransactionHttpServer.MAX_BODY_BYTES])
+                        .replace('\0', ' ')
+                + "\", \"timestamp\": " + NOW + "}"));
+
+        HttpURLConnection connection = open(
+                TransactionHttpServer.TRANSACTIONS_PATH);
+        assertEquals(405, connection.getResponseCode());
+    }
+
+    @Test
+    public void testVirtualThreads() throws IOException {
+        server.close();
+        server = new TransactionHttpServer(newRecorder(),
+                new InetSocketAddress("localhost", 0),
+                RequestThreading.VIRTUAL_THREADS, 100);
+        server.start();
+
+        assertEquals(201, post("{\"amount\": 1.5, \"timestamp\": " + NOW
+                + "}"));
+        assertEquals(200,
+                open(TransactionHttpServer.STATISTICS_PATH).getResponseCode());
+    }
+
+    @Test
+    public void testRequestsBeyondLimitAreRejected() throws Exception {
+        verifyRequestsBeyondLimitAreRejected(RequestThreading.VIRTUAL_THREADS);
+    }
+
+    @Test
+    public void testRequestsBeyondLimitOfPoolAreRejected() throws Exception {
+        verifyRequestsBeyondLimitAreRejected(RequestThreading.PLATFORM_POOL);
+    }
+
+    @Test(timeout = 10_000)
+    public void testRequestsQueuedInExecutorCountAgainstLimit()
+            throws Exception {
+        CountDownLatch recording = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TransactionRecorder recorder = blockingRecorder(recording, release);
+
+        // One thread, so the second request waits in the queue
+        ExecutorService requestExecutor = Executors.newSingleThreadExecutor();
+        CountDownLatch executed = new CountDownLatch(2);
+        server.close();
+        server = new TransactionHttpServer(recorder,
+                new InetSocketAddress("localhost", 0), exchange -> {
+                    executed.countDown();
+                    requestExecutor.execute(exchange);
+                }, 2);
+        server.start();
+
+        String body = "{\"amount\": 1.5, \"timestamp\": " + NOW + "}";
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> blocked = executorService.submit(() -> post(body));
+            assertTrue(recording.await(5, TimeUnit.SECONDS));
+            Future<Integer> queued = executorService.submit(() -> post(body));
+            assertTrue(executed.await(5, TimeUnit.SECONDS));
+
+            assertEquals(503, post(body));
+            release.countDown();
+            assertEquals(201, (int) blocked.get(5, TimeUnit.SECONDS));
+            assertEquals(201, (int) queued.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executorService.shutdownNow();
+            requestExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPipelinedRequestsOnOneConnection() throws IOException {
+        String body = "{\"amount\": 5, \"timestamp\": " + NOW + "}";
+        String post = "POST /transactions HTTP/1.1\r\nHost: localhost\r\n"
+                + "Content-Type: application/json\r\nContent-Length: "
+                + body.length() + "\r\n\r\n" + body;
+        String get = "GET /statistics HTTP/1.1\r\nHost: localhost\r\n\r\n";
+
+        try (Socket socket = new Socket("localhost",
+                server.getAddress().getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write((post + post + get).getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            InputStream in = socket.getInputStream();
+            assertTrue(readHeaders(in).startsWith("HTTP/1.1 201"));
+            assertTrue(readHeaders(in).startsWith("HTTP/1.1 201"));
+            String headers = readHeaders(in);
+            assertTrue(headers.startsWith("HTTP/1.1 200"));
+            assertTrue(readBody(in, headers).contains("\"count\":2"));
+        }
+    }
+
+    private void verifyRequestsBeyondLimitAreRejected(
+            RequestThreading requestThreading) throws Exception {
+        CountDownLatch recording = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TransactionRecorder recorder = blockingRecorder(recording, release);
+
+        server.close();
+        server = new TransactionHttpServer(recorder,
+                new InetSocketAddress("localhost", 0), requestThreading, 1);
+        server.start();
+
+        String body = "{\"amount\": 1.5, \"timestamp\": " + NOW + "}";
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> blocked = executorService.submit(() -> post(body));
+            assertTrue(recording.await(5, TimeUnit.SECONDS));
+
+            assertEquals(503, post(body));
+            release.countDown();
+            assertEquals(201, (int) blocked.get(5, TimeUnit.SECONDS));
+            assertEquals(201, post(body));
+        } finally {
+            release.countDown();
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns a recorder that blocks every recording until released
+     */
+    private static TransactionRecorder blockingRecorder(
+            CountDownLatch recording, CountDownLatch release) {
+        TransactionRecorder recorder = mock(TransactionRecorder.class);
+        when(recorder.record(anyDouble(), anyLong()))
+                .thenAnswer(invocation -> {
+                    recording.countDown();
+                    release.await();
+                    return ReturnCode.SUCCESS;
+                });
+        return recorder;
+    }
+
+    private static TransactionRecorder newRecorder() {
+        return new InMemoryTransactionRecorder(
+                RecordingWindow.ONE_MINUTE_BY_SECOND,
+                RetentionMode.AGGREGATES_ONLY, () -> NOW);
+    }
+
+    private int post(String body) throws IOException {
+        HttpURLConnection connection = open(
+                TransactionHttpServer.TRANSACTIONS_PATH);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return connection.getResponseCode();
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        return (HttpURLConnection) new URL("http://localhost:"
+                + server.getAddress().getPort() + path).openConnection();
+    }
+
+    private static String readHeaders(InputStream in) throws IOException {
+        StringBuilder headers = new StringBuilder();
+        while (!headers.toString().endsWith("\r\n\r\n")) {
+            int c = in.read();
+            if (c < 0) {
+                throw new IOException("connection closed: " + headers);
+            }
+            headers.append((char) c);
+        }
+        return headers.toString();
+    }
+
+    private static String readBody(InputStream in, String headers)
+            throws IOException {
+        String lengthHeader = "content-length: ";
+        int start = headers.toLowerCase().indexOf(lengthHeader)
+                + lengthHeader.length();
+        int length = Integer.parseInt(
+                headers.substring(start, headers.indexOf("\r\n", start)));
+        byte[] body = new byte[length];
+        for (int read = 0; read < length;) {
+            read += in.read(body, read, length - read);
+        }
+        return new String(body, StandardCharsets.US_ASCII);
+    }
+}
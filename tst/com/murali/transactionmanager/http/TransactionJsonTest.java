@@ -0,0 +1,137 @@
+package com.murali.transactionmanager.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+import com.murali.transactionmanager.store.RecordingWindow;
+import com.murali.transactionmanager.store.RetentionMode;
+import com.murali.transactionmanager.store.impl.InMemoryTransactionRecorder;
+
+/**
+ * Unit tests for {@link TransactionJson}
+ */
+public class TransactionJsonTest {
+    private static final long NOW = 1_478_192_204_000L;
+
+    @Test
+    public void testParseTransaction() {
+        Transaction transaction = parse(
+                "{\"amount\": 12.3, \"timestamp\": 1478192204000}");
+        assertEquals(12.3, transaction.getAmount(), 0.0);
+        assertEquals(NOW, transaction.getTimestamp());
+        assertEquals(Transaction.NO_ID, transaction.getMerchantId());
+    }
+
+    @Test
+    public void testParseTransactionWithIdsAndUnknownMembers() {
+        Transaction transaction = parse("{ \"note\": {\"a\": [1, \"}\"]},"
+                + "\"timestamp\":1478192204000, \"merchantId\": 7,"
+                + "\"flag\": true, \"accountId\": 9, \"amount\": -1.5e2 }");
+        assertEquals(-150.0, transaction.getAmount(), 0.0);
+        assertEquals(7, transaction.getMerchantId());
+        assertEquals(9, transaction.getAccountId());
+    }
+
+    @Test
+    public void testParseIntoReusedHolder() {
+        ParsedTransaction holder = new ParsedTransaction();
+        byte[] body = ("{\"amount\": 4.5, \"timestamp\": " + NOW
+                + ", \"accountId\": 3}").getBytes(StandardCharsets.UTF_8);
+        assertSame(holder,
+                TransactionJson.parseTransaction(body, body.length, holder));
+        assertEquals(4.5, holder.getAmount(), 0.0);
+        assertEquals(3, holder.getAccountId());
+        assertFalse(holder.hasNoIds());
+
+        body = ("{\"amount\": 2.0, \"timestamp\": " + NOW + "}")
+                .getBytes(StandardCharsets.UTF_8);
+        TransactionJson.parseTransaction(body, body.length, holder);
+        assertEquals(2.0, holder.getAmount(), 0.0);
+        assertEquals(NOW, holder.getTimestamp());
+        assertTrue(holder.hasNoIds());
+    }
+
+    @Test
+    public void testParsedAmountsMatchDoubleParsing() {
+        String[] amounts = { "0", "0.1", "0.30000000000000004", "123456.789",
+                "1e-7", "9007199254740993", "0.000123456789012345678",
+                "1.7976931348623157e308", "4.9e-324", "1E22", "2.5E+3" };
+        for (String amount : amounts) {
+            Transaction transaction = parse("{\"amount\":" + amount
+                    + ",\"timestamp\":" + NOW + "}");
+            assertEquals(amount, Double.parseDouble(amount),
+                    transaction.getAmount(), 0.0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingAmount() {
+        parse("{\"timestamp\": 1478192204000}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingTimestamp() {
+        parse("{\"amount\": 1.0}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTimestampNotPositive() {
+        parse("{\"amount\": 1.0, \"timestamp\": 0}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAmountNotFinite() {
+        parse("{\"amount\": 1e400, \"timestamp\": 1478192204000}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedBody() {
+        parse("{\"amount\": 1.0, \"timestamp\": 1478192204000");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTrailingCharacters() {
+        parse("{\"amount\": 1.0, \"timestamp\": 1478192204000} x");
+    }
+
+    @Test
+    public void testWriteEmptyStatistics() {
+        assertEquals(
+                "{\"sum\":0.0,\"avg\":0.0,\"max\":null,\"min\":null,"
+                        + "\"count\":0}",
+                write(new StatisticsSnapshot()));
+    }
+
+    @Test
+    public void testWriteStatistics() {
+        InMemoryTransactionRecorder recorder = new InMemoryTransactionRecorder(
+                RecordingWindow.ONE_MINUTE_BY_SECOND,
+                RetentionMode.AGGREGATES_ONLY, () -> NOW);
+        recorder.record(new Transaction(10.3, NOW));
+        recorder.record(new Transaction(9.7, NOW));
+
+        assertEquals(
+                "{\"sum\":20.0,\"avg\":10.0,\"max\":10.3,\"min\":9.7,"
+                        + "\"count\":2}",
+                write(recorder.getStatistics(new StatisticsSnapshot())));
+    }
+
+    private static Transaction parse(String json) {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        return TransactionJson.parseTransaction(body, body.length);
+    }
+
+    private static String write(StatisticsSnapshot snapshot) {
+        byte[] buffer = new byte[TransactionJson.MAX_STATISTICS_BYTES];
+        int length = TransactionJson.writeStatistics(snapshot, buffer);
+        return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,116 @@
+package com.murali.transactionmanager.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link MetricsRegistry}
+ */
+public class MetricsRegistryTest {
+
+    @Test
+    public void testPrometheusText() {
+        MetricsRegistry registry = new MetricsRegistry("test");
+        registry.counter("requests_total", "Requests", "code", "201").add(3);
+        registry.gauge("queue_size", "Queued items", () -> 7);
+        registry.counter("requests_total", "Requests", "code", "400")
+                .increment();
+
+        assertEquals("# HELP requests_total Requests\n"
+                + "# TYPE requests_total counter\n"
+                + "requests_total{code=\"201\"} 3\n"
+                + "requests_total{code=\"400\"} 1\n"
+                + "# HELP queue_size Queued items\n"
+                + "# TYPE queue_size gauge\n"
+                + "queue_size 7.0\n", registry.toPrometheusText());
+    }
+
+    @Test
+    public void testHistogram() {
+        MetricsRegistry registry = new MetricsRegistry("test");
+        LatencyHistogram histogram = registry.histogram("latency_seconds",
+                "Latency");
+        for (long nanos = 1; nanos <= 1000; nanos++) {
+            histogram.record(nanos * 1000);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500_000L, histogram.getTotalNanos());
+        long p50 = histogram.getValueAtQuantile(0.5);
+        assertTrue(p50 >= 500_000 && p50 < 500_000 * 1.125);
+        long p999 = histogram.getValueAtQuantile(0.999);
+        assertTrue(p999 >= 999_000 && p999 < 999_000 * 1.125);
+
+        String text = registry.toPrometheusText();
+        assertTrue(text.contains("# TYPE latency_seconds histogram\n"));
+        // 1 to 1000 microseconds: all below 2^20 ns, 524 below 2^19 ns
+        assertTrue(text
+                .contains("latency_seconds_bucket{le=\"5.24288E-4\"} 524\n"));
+        assertTrue(text.contains(
+                "latency_seconds_bucket{le=\"0.001048576\"} 1000\n"));
+        assertTrue(text.contains("latency_seconds_bucket{le=\"+Inf\"} 1000\n"));
+        assertTrue(text.contains("latency_seconds_sum 0.5005\n"));
+        assertTrue(text.contains("latency_seconds_count 1000\n"));
+    }
+
+    @Test
+    public void testHistogramBucketsCoverEveryValue() {
+        long previousBound = -1;
+        for (int index = 0; index < 320; index++) {
+            long bound = LatencyHistogram.lowerBoundOf(index);
+            assertTrue(bound > previousBound);
+            assertEquals(index, LatencyHistogram.indexOf(bound));
+            if (index > 0) {
+                assertEquals(index - 1, LatencyHistogram.indexOf(bound - 1));
+            }
+            previousBound = bound;
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateMetric() {
+        MetricsRegistry registry = new MetricsRegistry("test");
+        registry.counter("requests_total", "Requests");
+        registry.counter("requests_total", "Requests");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidName() {
+        new MetricsRegistry("test").counter("requests-total", "Requests");
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry("mbean-test");
+        registry.counter("requests_total", "Requests", "code", "201").add(2);
+        ObjectName objectName = registry.registerMBean();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(2L,
+                    server.getAttribute(objectName, "requests_total.201"));
+
+            server.setAttribute(objectName, new Attribute("Enabled", false));
+            assertEquals(false, registry.isEnabled());
+
+            try {
+                server.invoke(objectName, "reset", new Object[0],
+                        new String[0]);
+                fail("the MBean has no operations");
+            } catch (ReflectionException e) {
+                assertTrue(e.getCause() instanceof NoSuchMethodException);
+            }
+        } finally {
+            registry.unregisterMBean();
+        }
+    }
+}
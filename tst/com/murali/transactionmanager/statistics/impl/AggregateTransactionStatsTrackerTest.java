@@ -1,7 +1,9 @@
 package com.murali.transactionmanager.statistics.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.time.Clock;
@@ -14,6 +16,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
 
 /**
  * Unit tests for {@link AggregateTransactionStatsTracker}
@@ -42,6 +45,100 @@ public class AggregateTransactionStatsTrackerTest {
         invokeAndVerifyAmount(1000);
     }
 
+    @Test
+    public void testVerifySnapshotAfterRecordingRawAmounts() {
+        AggregateTransactionStatsTracker aggregateTransactionStatsTracker = new AggregateTransactionStatsTracker(
+                Clock.systemUTC().millis());
+        aggregateTransactionStatsTracker.recordAmount(2.5,
+                System.currentTimeMillis());
+        aggregateTransactionStatsTracker.recordAmount(-1.5,
+                System.currentTimeMillis());
+
+        StatisticsSnapshot snapshot = aggregateTransactionStatsTracker
+                .getStats(new StatisticsSnapshot());
+        assertEquals(2, snapshot.getCount());
+        assertEquals(1.0, snapshot.getSum(), 0.0);
+        assertEquals(-1.5, snapshot.getMin(), 0.0);
+        assertEquals(2.5, snapshot.getMax(), 0.0);
+        assertEquals(0.5, snapshot.getAvg(), 0.0);
+    }
+
+    @Test
+    public void testMergedSumIsCompensated() {
+        AggregateTransactionStatsTracker merged = new AggregateTransactionStatsTracker(
+                Clock.systemUTC().millis());
+        for (int i = 0; i < 100; i++) {
+            AggregateTransactionStatsTracker other = new AggregateTransactionStatsTracker(
+                    Clock.systemUTC().millis());
+            for (int j = 0; j < 10; j++) {
+                other.recordAmount(0.1, System.currentTimeMillis());
+            }
+            merged.mergeStatistic(other);
+        }
+
+        StatisticsSnapshot snapshot = merged.getStats(new StatisticsSnapshot());
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(100.0, snapshot.getSum(), 0.0);
+        assertEquals(0.1, snapshot.getMin(), 0.0);
+        assertEquals(0.1, snapshot.getMax(), 0.0);
+    }
+
+    @Test
+    public void testMergingEmptyTrackerIsNoop() {
+        AggregateTransactionStatsTracker merged = new AggregateTransactionStatsTracker(
+                Clock.systemUTC().millis());
+        merged.recordAmount(2.5, System.currentTimeMillis());
+        merged.mergeStatistic(new AggregateTransactionStatsTracker(
+                Clock.systemUTC().millis()));
+
+        StatisticsSnapshot snapshot = merged.getStats(new StatisticsSnapshot());
+        assertEquals(1, snapshot.getCount());
+        assertEquals(2.5, snapshot.getSum(), 0.0);
+        assertEquals(2.5, snapshot.getMin(), 0.0);
+        assertEquals(2.5, snapshot.getMax(), 0.0);
+    }
+
+    @Test
+    public void testQuantilesAreOptIn() {
+        AggregateTransactionStatsTracker tracker = new AggregateTransactionStatsTracker(
+                Clock.systemUTC().millis());
+        tracker.recordAmount(2.5, System.currentTimeMillis());
+
+        assertFalse(tracker.isTrackingQuantiles());
+        assertTrue(Double.isNaN(
+                tracker.getStats(new StatisticsSnapshot()).getP50()));
+        assertFalse(tracker.getStats()
+                .containsKey(QuantileStatTracker.P50_STAT_NAME));
+    }
+
+    @Test
+    public void testMergeQuantiles() {
+        AggregateTransactionStatsTracker merged = new AggregateTransactionStatsTracker(
+                Clock.systemUTC().millis(), true);
+        for (int i = 0; i < 10; i++) {
+            AggregateTransactionStatsTracker other = new AggregateTransactionStatsTracker(
+                    Clock.systemUTC().millis(), true);
+            for (int j = 1; j <= 100; j++) {
+                other.recordAmount(j, System.currentTimeMillis());
+            }
+            merged.mergeStatistic(other);
+            // Merged both ways, with the locks taken in the same order
+            other.mergeStatistic(merged);
+        }
+
+        StatisticsSnapshot snapshot = merged.getStats(new StatisticsSnapshot());
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(50.0, snapshot.getP50(), 1.0);
+        assertEquals(99.0, snapshot.getP99(), 1.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeWithoutQuantilesIntoTrackerWithQuantiles() {
+        new AggregateTransactionStatsTracker(Clock.systemUTC().millis(), true)
+                .mergeStatistic(new AggregateTransactionStatsTracker(
+                        Clock.systemUTC().millis()));
+    }
+
     private void invokeAndVerifyAmount(int numberOfRecordings) {
         long timestamp = Clock.systemUTC().millis();
 
@@ -0,0 +1,73 @@
+package com.murali.transactionmanager.statistics.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.statistics.model.QuantileStatistic;
+import com.murali.transactionmanager.statistics.model.Statistic;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+
+/**
+ * Test suite for {@link QuantileStatTracker}
+ */
+public class QuantileStatTrackerTest {
+    private QuantileStatTracker statTracker;
+    private ExecutorService executorService;
+
+    @Before
+    public void setup() {
+        statTracker = new QuantileStatTracker();
+        executorService = Executors.newFixedThreadPool(30);
+    }
+
+    @Test
+    public void testQuantilesAfter1000Transactions()
+            throws InterruptedException {
+        for (int i = 0; i < 1000; i++) {
+            double amount = i + 1;
+            executorService.submit(() -> statTracker.recordTransaction(
+                    new Transaction(amount, System.currentTimeMillis())));
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(2, TimeUnit.SECONDS);
+
+        QuantileStatistic actualStatistic = statTracker.getStatistics();
+        assertEquals(QuantileStatTracker.STAT_NAME, actualStatistic.getUnit());
+        assertEquals(1000, actualStatistic.getValue(), 0.0);
+
+        StatisticsSnapshot snapshot = actualStatistic.getSketch()
+                .getQuantiles(new StatisticsSnapshot());
+        assertEquals(500, snapshot.getP50(), 5.0);
+        assertEquals(950, snapshot.getP95(), 9.5);
+        assertEquals(990, snapshot.getP99(), 9.9);
+        assertEquals(999, snapshot.getP999(), 9.99);
+    }
+
+    @Test
+    public void testVerifyMergeStatistics() {
+        QuantileStatTracker otherStatTracker = new QuantileStatTracker();
+        for (int i = 1; i <= 100; i++) {
+            statTracker.recordAmount(i, 0);
+            otherStatTracker.recordAmount(-i, 0);
+        }
+        statTracker.mergeStatistic(otherStatTracker.getStatistics());
+
+        QuantileStatistic actualStatistic = statTracker.getStatistics();
+        assertEquals(200, actualStatistic.getValue(), 0.0);
+        assertEquals(-1.0, actualStatistic.getSketch()
+                .getQuantiles(new StatisticsSnapshot()).getP50(), 0.01);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testVerifyMergeStatisticsWithoutSketch() {
+        statTracker.mergeStatistic(
+                new Statistic(QuantileStatTracker.STAT_NAME, 1));
+    }
+}
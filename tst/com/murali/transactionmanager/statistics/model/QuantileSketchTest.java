@@ -0,0 +1,93 @@
+package com.murali.transactionmanager.statistics.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link QuantileSketch}
+ */
+public class QuantileSketchTest {
+
+    @Test
+    public void testQuantilesOfEmptySketch() {
+        StatisticsSnapshot snapshot = new QuantileSketch()
+                .getQuantiles(new StatisticsSnapshot());
+
+        assertEquals(Double.NaN, snapshot.getP50(), 0.0);
+        assertEquals(Double.NaN, snapshot.getP999(), 0.0);
+    }
+
+    @Test
+    public void testQuantilesAreWithinRelativeAccuracy() {
+        Random random = new Random(42);
+        double[] amounts = new double[10_000];
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = Math.exp(random.nextGaussian() * 3);
+            sketch.add(amounts[i]);
+        }
+        Arrays.sort(amounts);
+
+        StatisticsSnapshot snapshot = sketch.getQuantiles(
+                new StatisticsSnapshot().set(amounts.length, 0.0, amounts[0],
+                        amounts[amounts.length - 1]));
+        verifyQuantile(amounts, 0.5, snapshot.getP50());
+        verifyQuantile(amounts, 0.95, snapshot.getP95());
+        verifyQuantile(amounts, 0.99, snapshot.getP99());
+        verifyQuantile(amounts, 0.999, snapshot.getP999());
+        assertEquals(amounts.length, sketch.getCount());
+    }
+
+    @Test
+    public void testQuantilesOfNegativeAndZeroAmounts() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = -50; i < 50; i++) {
+            sketch.add(i);
+        }
+
+        StatisticsSnapshot snapshot = sketch
+                .getQuantiles(new StatisticsSnapshot());
+        assertEquals(-1.0, snapshot.getP50(), 0.01);
+        assertEquals(44.0, snapshot.getP95(), 44.0 * 0.01);
+    }
+
+    @Test
+    public void testUnionMergeAndSubtract() {
+        QuantileSketch low = new QuantileSketch();
+        QuantileSketch high = new QuantileSketch();
+        for (int i = 1; i <= 100; i++) {
+            low.add(i);
+            high.add(100 + i);
+        }
+
+        StatisticsSnapshot union = QuantileSketch.getQuantiles(
+                new QuantileSketch[] { low, high }, 2,
+                new StatisticsSnapshot());
+
+        QuantileSketch merged = new QuantileSketch();
+        merged.merge(low);
+        merged.merge(high);
+        StatisticsSnapshot snapshot = merged
+                .getQuantiles(new StatisticsSnapshot());
+        assertEquals(100.0, snapshot.getP50(), 1.0);
+        assertEquals(union.getP50(), snapshot.getP50(), 0.0);
+        assertEquals(union.getP99(), snapshot.getP99(), 0.0);
+
+        merged.subtract(low);
+        assertEquals(100, merged.getCount());
+        assertEquals(150.0,
+                merged.getQuantiles(new StatisticsSnapshot()).getP50(), 1.5);
+    }
+
+    private void verifyQuantile(double[] sortedAmounts, double fraction,
+            double estimate) {
+        double expected = sortedAmounts[(int) (fraction
+                * (sortedAmounts.length - 1))];
+        assertEquals(expected, estimate,
+                expected * QuantileSketch.RELATIVE_ACCURACY);
+    }
+}
@@ -0,0 +1,50 @@
+package com.murali.transactionmanager.store;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.murali.transactionmanager.model.ReturnCode;
+
+/**
+ * Unit tests for {@link EventTimePolicy}
+ */
+public class EventTimePolicyTest {
+    private static final long WINDOW_MILLIS = 60_000;
+
+    @Test
+    public void testCheck() {
+        EventTimePolicy policy = EventTimePolicy.of(2, 10, TimeUnit.SECONDS);
+
+        assertEquals(10_000, policy.getMaxLagMillis(WINDOW_MILLIS));
+        assertEquals(ReturnCode.SUCCESS, policy.check(-2_000, WINDOW_MILLIS));
+        assertEquals(ReturnCode.FUTURE_TRANSACTION,
+                policy.check(-2_001, WINDOW_MILLIS));
+        assertEquals(ReturnCode.SUCCESS, policy.check(10_000, WINDOW_MILLIS));
+        assertEquals(ReturnCode.LATE_TRANSACTION,
+                policy.check(10_001, WINDOW_MILLIS));
+        assertEquals(ReturnCode.OLD_TRANSACTION,
+                policy.check(60_001, WINDOW_MILLIS));
+    }
+
+    @Test
+    public void testUnlimitedLatenessIsBoundedByWindow() {
+        assertEquals(WINDOW_MILLIS,
+                EventTimePolicy.DEFAULT.getMaxLagMillis(WINDOW_MILLIS));
+        assertEquals(ReturnCode.OLD_TRANSACTION,
+                EventTimePolicy.DEFAULT.check(60_001, WINDOW_MILLIS));
+    }
+
+    @Test
+    public void testDefaultSkewIsUnlimited() {
+        assertEquals(ReturnCode.SUCCESS,
+                EventTimePolicy.DEFAULT.check(-86_400_000, WINDOW_MILLIS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWhenSkewIsNegative() {
+        new EventTimePolicy(-1, 0);
+    }
+}
@@ -0,0 +1,32 @@
+package com.murali.transactionmanager.store;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link RecordingWindow}
+ */
+public class RecordingWindowTest {
+
+    @Test
+    public void testBuckets() {
+        assertEquals(60, RecordingWindow.ONE_MINUTE_BY_SECOND.getBuckets());
+        assertEquals(36_000, new RecordingWindow(TimeUnit.HOURS.toMillis(1),
+                100).getBuckets());
+        assertEquals(RecordingWindow.ONE_MINUTE_BY_SECOND,
+                RecordingWindow.of(60_000, 1_000, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWhenLengthIsNotAMultipleOfBucketWidth() {
+        new RecordingWindow(1_000, 300);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWhenBucketWidthIsZero() {
+        new RecordingWindow(1_000, 0);
+    }
+}
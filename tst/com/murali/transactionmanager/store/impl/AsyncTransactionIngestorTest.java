@@ -0,0 +1,128 @@
+package com.murali.transactionmanager.store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.murali.transactionmanager.model.ReturnCode;
+import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+import com.murali.transactionmanager.store.IngestWaitStrategy;
+import com.murali.transactionmanager.store.RecordingWindow;
+import com.murali.transactionmanager.store.RetentionMode;
+
+/**
+ * Unit tests for {@link AsyncTransactionIngestor}
+ */
+public class AsyncTransactionIngestorTest {
+    private static final long NOW = 1_500_000_000_000L;
+
+    private InMemoryTransactionRecorder recorder;
+    private ExecutorService executorService;
+
+    @Before
+    public void setup() {
+        recorder = new InMemoryTransactionRecorder(
+                RecordingWindow.ONE_MINUTE_BY_SECOND,
+                RetentionMode.AGGREGATES_ONLY, () -> NOW);
+        executorService = Executors.newFixedThreadPool(30);
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        AsyncTransactionIngestor ingestor = new AsyncTransactionIngestor(
+                recorder, 256, 2, IngestWaitStrategy.YIELDING);
+        List<Future<CompletableFuture<ReturnCode>>> submissions = new ArrayList<>();
+        for (int i = 1; i <= 10_000; i++) {
+            Transaction transaction = new Transaction(i % 10, NOW - i);
+            if (i % 2 == 0) {
+                submissions.add(executorService
+                        .submit(() -> ingestor.submit(transaction)));
+            } else {
+                executorService.submit(() -> ingestor.publish(transaction));
+            }
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+        ingestor.close();
+
+        for (Future<CompletableFuture<ReturnCode>> submission : submissions) {
+            assertEquals(ReturnCode.SUCCESS,
+                    submission.get().get(1, TimeUnit.SECONDS));
+        }
+        StatisticsSnapshot snapshot = recorder
+                .getStatistics(new StatisticsSnapshot());
+        assertEquals(10_000, snapshot.getCount());
+        assertEquals(45_000.0, snapshot.getSum(), 0.0);
+    }
+
+    @Test
+    public void testOfferIsRejectedWhenRingIsFull() throws Exception {
+        CountDownLatch recording = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        InMemoryTransactionRecorder blockingRecorder = new InMemoryTransactionRecorder(
+                RecordingWindow.ONE_MINUTE_BY_SECOND,
+                RetentionMode.AGGREGATES_ONLY, () -> NOW) {
+            @Override
+            public ReturnCode[] recordAll(Transaction[] transactions) {
+                recording.countDown();
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.recordAll(transactions);
+            }
+        };
+
+        AsyncTransactionIngestor ingestor = new AsyncTransactionIngestor(
+                blockingRecorder, 4, 1, IngestWaitStrategy.SLEEPING);
+        // The consumer blocks on its first batch, so the ring fills up
+        CompletableFuture<ReturnCode> first = ingestor
+                .submit(new Transaction(1.0, NOW));
+        assertTrue(recording.await(5, TimeUnit.SECONDS));
+        int offered = 0;
+        while (offered < 100 && ingestor.offer(new Transaction(1.0, NOW))) {
+            offered++;
+        }
+        assertTrue(offered >= 3 && offered < 100);
+        assertFalse(ingestor.offer(new Transaction(1.0, NOW)));
+
+        blocked.countDown();
+        ingestor.close();
+        assertEquals(ReturnCode.SUCCESS, first.get(1, TimeUnit.SECONDS));
+        assertEquals(1 + offered, blockingRecorder
+                .getStatistics(new StatisticsSnapshot()).getCount());
+    }
+
+    @Test
+    public void testOldTransactionIsReported() throws Exception {
+        AsyncTransactionIngestor ingestor = new AsyncTransactionIngestor(
+                recorder);
+        CompletableFuture<ReturnCode> future = ingestor
+                .submit(new Transaction(1.0, NOW - 100_000));
+        assertEquals(ReturnCode.OLD_TRANSACTION,
+                future.get(1, TimeUnit.SECONDS));
+        ingestor.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPublishAfterClose() {
+        AsyncTransactionIngestor ingestor = new AsyncTransactionIngestor(
+                recorder);
+        ingestor.close();
+        ingestor.publish(new Transaction(1.0, NOW));
+    }
+}
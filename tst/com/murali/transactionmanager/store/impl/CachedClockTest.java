@@ -0,0 +1,36 @@
+package com.murali.transactionmanager.store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link CachedClock}
+ */
+public class CachedClockTest {
+
+    @Test
+    public void testClockTicks() throws InterruptedException {
+        try (CachedClock clock = new CachedClock(5, TimeUnit.MILLISECONDS)) {
+            long start = clock.getAsLong();
+            assertTrue(Math.abs(System.currentTimeMillis() - start) < 1000);
+
+            Thread.sleep(50);
+            assertTrue(clock.getAsLong() > start);
+        }
+    }
+
+    @Test
+    public void testClockStopsWhenClosed() throws InterruptedException {
+        CachedClock clock = new CachedClock(5, TimeUnit.MILLISECONDS);
+        clock.close();
+        Thread.sleep(10);
+
+        long stopped = clock.getAsLong();
+        Thread.sleep(50);
+        assertEquals(stopped, clock.getAsLong());
+    }
+}
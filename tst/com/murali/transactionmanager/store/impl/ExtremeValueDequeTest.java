@@ -0,0 +1,92 @@
+package com.murali.transactionmanager.store.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ExtremeValueDeque}
+ */
+public class ExtremeValueDequeTest {
+    private ExtremeValueDeque deque;
+
+    @Before
+    public void setup() {
+        deque = new ExtremeValueDeque(10);
+    }
+
+    @Test
+    public void testPeekWhenEmpty() {
+        assertEquals(Double.NEGATIVE_INFINITY, deque.peek(), 0.0);
+    }
+
+    @Test
+    public void testMaximumSlidesWithWindow() {
+        deque.offer(1, 5);
+        deque.offer(2, 3);
+        deque.offer(3, 4);
+        assertEquals(5, deque.peek(), 0.0);
+
+        deque.expire(1);
+        assertEquals(4, deque.peek(), 0.0);
+
+        deque.expire(3);
+        assertEquals(Double.NEGATIVE_INFINITY, deque.peek(), 0.0);
+    }
+
+    @Test
+    public void testLateValueForOlderInterval() {
+        deque.offer(1, 1);
+        deque.offer(2, 2);
+        deque.offer(3, 3);
+
+        // Becomes the maximum until interval 2 expires
+        deque.offer(2, 10);
+        assertEquals(10, deque.peek(), 0.0);
+
+        deque.expire(2);
+        assertEquals(3, deque.peek(), 0.0);
+    }
+
+    @Test
+    public void testLateValueDominatedByNewerInterval() {
+        deque.offer(1, 1);
+        deque.offer(3, 8);
+        deque.offer(2, 5);
+        assertEquals(8, deque.peek(), 0.0);
+
+        deque.expire(2);
+        assertEquals(8, deque.peek(), 0.0);
+    }
+
+    @Test
+    public void testLateValuesAtEveryPosition() {
+        deque.offer(2, 9);
+        deque.offer(4, 7);
+        deque.offer(6, 5);
+        deque.offer(8, 3);
+
+        // Dominated by the entry of interval 6
+        deque.offer(5, 4);
+        deque.expire(4);
+        assertEquals(5, deque.peek(), 0.0);
+
+        // Replaces the smaller entry of interval 8
+        deque.offer(8, 4);
+        // Drops the entry of interval 6
+        deque.offer(7, 6);
+        assertEquals(6, deque.peek(), 0.0);
+        deque.expire(7);
+        assertEquals(4, deque.peek(), 0.0);
+    }
+
+    @Test
+    public void testWrapsAroundCapacity() {
+        for (int interval = 0; interval < 100; interval++) {
+            deque.offer(interval, 100 - interval);
+            deque.expire(interval - 5);
+            assertEquals(100 - Math.max(0, interval - 4), deque.peek(), 0.0);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.murali.transactionmanager.store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.murali.transactionmanager.model.KeyDimension;
+import com.murali.transactionmanager.model.ReturnCode;
+import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+import com.murali.transactionmanager.store.BucketStorage;
+import com.murali.transactionmanager.store.EventTimePolicy;
+import com.murali.transactionmanager.store.JournalDurability;
+import com.murali.transactionmanager.store.RecordingWindow;
+import com.murali.transactionmanager.store.RetentionMode;
+import com.murali.transactionmanager.store.TransactionJournal;
+
+/**
+ * Unit tests for {@link FileTransactionJournal} and {@link JournalReplayer}
+ */
+public class FileTransactionJournalTest {
+    private static final long NOW = 1_500_000_000_000L;
+    private static final EventTimePolicy ONE_SECOND_SKEW = new EventTimePolicy(
+            1_000, EventTimePolicy.UNLIMITED_LATENESS);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = temporaryFolder.newFolder("journal").toPath();
+    }
+
+    @Test
+    public void testConcurrentRecordsAreReplayed() throws Exception {
+        InMemoryTransactionRecorder recorder = newRecorder();
+        ExecutorService executorService = Executors.newFixedThreadPool(30);
+        try (FileTransactionJournal journal = new FileTransactionJournal(
+                directory)) {
+            JournaledTransactionRecorder journaledRecorder = new JournaledTransactionRecorder(
+                    recorder, journal);
+            for (int i = 1; i <= 1000; i++) {
+                Transaction transaction = new Transaction(i, NOW - i);
+                executorService.submit(
+                        () -> journaledRecorder.record(transaction));
+            }
+            // Rejected transactions are not journaled
+            journaledRecorder.record(new Transaction(1.0, NOW - 100_000));
+            executorService.shutdown();
+            assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        InMemoryTransactionRecorder restarted = newRecorder();
+        assertEquals(1000, JournalReplayer.replay(directory, restarted));
+
+        StatisticsSnapshot snapshot = restarted
+                .getStatistics(new StatisticsSnapshot());
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500_500.0, snapshot.getSum(), 0.0);
+        assertEquals(1.0, snapshot.getMin(), 0.0);
+        assertEquals(1000.0, snapshot.getMax(), 0.0);
+    }
+
+    @Test
+    public void testFutureTransactionIsNotJournaled() throws IOException {
+        ManualClock clock = new ManualClock(NOW);
+        try (FileTransactionJournal journal = new FileTransactionJournal(
+                directory)) {
+            JournaledTransactionRecorder journaledRecorder = new JournaledTransactionRecorder(
+                    newRecorder(clock, ONE_SECOND_SKEW), journal);
+            assertEquals(ReturnCode.FUTURE_TRANSACTION, journaledRecorder
+                    .record(new Transaction(1.0, NOW + 10_000)));
+            assertEquals(ReturnCode.FUTURE_TRANSACTION,
+                    journaledRecorder.record(2.0, NOW + 10_000));
+            BitSet rejections = new BitSet();
+            assertEquals(1, journaledRecorder.recordAll(
+                    new double[] { 3.0, 4.0 },
+                    new long[] { NOW + 10_000, NOW }, 2, rejections));
+            assertEquals(BitSet.valueOf(new long[] { 0b01 }), rejections);
+        }
+
+        // Replayed once the transactions are no longer ahead of the clock
+        clock.set(NOW + 10_000);
+        InMemoryTransactionRecorder restarted = newRecorder(clock,
+                ONE_SECOND_SKEW);
+        assertEquals(1, JournalReplayer.replay(directory, restarted));
+        assertEquals(4.0, restarted.getStatistics(new StatisticsSnapshot())
+                .getSum(), 0.0);
+    }
+
+    @Test
+    public void testSegmentsOutsideRetentionAreDeleted() throws IOException {
+        ManualClock clock = new ManualClock(NOW);
+        try (FileTransactionJournal journal = new FileTransactionJournal(
+                directory, JournalDurability.SYNC,
+                10 * FileTransactionJournal.RECORD_BYTES, 60_000, clock)) {
+            // Five segments of transactions that have left the window, then
+            // five of transactions within it
+            for (int i = 0; i < 100; i++) {
+                journal.append(new Transaction(1.0,
+                        (i < 50) ? NOW - 120_000 : NOW));
+            }
+        }
+
+        List<Path> segments = FileTransactionJournal.segments(directory);
+        // The five recent segments and the empty one started after the last
+        // roll
+        assertEquals(6, segments.size());
+        assertEquals(50, JournalReplayer.replay(directory, newRecorder()));
+
+        // A journal opened once they have all left the window deletes them
+        clock.set(NOW + 120_000);
+        new FileTransactionJournal(directory, JournalDurability.SYNC,
+                10 * FileTransactionJournal.RECORD_BYTES, 60_000, clock)
+                        .close();
+        assertEquals(1, FileTransactionJournal.segments(directory).size());
+    }
+
+    @Test
+    public void testTornRecordIsSkipped() throws IOException {
+        try (FileTransactionJournal journal = new FileTransactionJournal(
+                directory, JournalDurability.ASYNC,
+                FileTransactionJournal.DEFAULT_SEGMENT_BYTES,
+                FileTransactionJournal.DEFAULT_RETENTION_MILLIS)) {
+            for (int i = 0; i < 3; i++) {
+                journal.append(new Transaction(1.0, NOW, 7, 9));
+            }
+        }
+        Path segment = FileTransactionJournal.segments(directory).get(0);
+        try (FileChannel channel = FileChannel.open(segment,
+                StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5 }));
+        }
+
+        InMemoryKeyedTransactionRecorder keyedRecorder = new InMemoryKeyedTransactionRecorder(
+                KeyDimension.MERCHANT,
+                InMemoryKeyedTransactionRecorder.DEFAULT_KEYED_WINDOW,
+                BucketStorage.HEAP, () -> NOW);
+        assertEquals(3, JournalReplayer.replay(directory, keyedRecorder));
+        assertEquals(3, keyedRecorder
+                .getStatistics(7, new StatisticsSnapshot()).getCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAppendAfterClose() throws IOException {
+        FileTransactionJournal journal = new FileTransactionJournal(directory);
+        journal.close();
+        journal.append(new Transaction(1.0, NOW));
+    }
+
+    @Test
+    public void testRecordCodesAreKept() throws IOException {
+        try (FileTransactionJournal journal = new FileTransactionJournal(
+                directory)) {
+            JournaledTransactionRecorder journaledRecorder = new JournaledTransactionRecorder(
+                    newRecorder(), journal);
+            ReturnCode[] returnCodes = journaledRecorder
+                    .recordAll(new Transaction[] { new Transaction(1.0, NOW),
+                            null, new Transaction(2.0, NOW - 100_000) });
+            assertEquals(ReturnCode.SUCCESS, returnCodes[0]);
+            assertEquals(ReturnCode.BAD_REQUEST, returnCodes[1]);
+            assertEquals(ReturnCode.OLD_TRANSACTION, returnCodes[2]);
+        }
+        assertEquals(1, JournalReplayer.replay(directory, newRecorder()));
+    }
+
+    @Test
+    public void testNothingIsRecordedWhenTheJournalFails() {
+        InMemoryTransactionRecorder recorder = newRecorder();
+        JournaledTransactionRecorder journaledRecorder = new JournaledTransactionRecorder(
+                recorder, new FailingJournal());
+
+        assertFails(() -> journaledRecorder.record(new Transaction(1.0, NOW)));
+        assertFails(() -> journaledRecorder.record(1.0, NOW));
+        assertFails(() -> journaledRecorder
+                .recordAll(new Transaction[] { new Transaction(1.0, NOW) }));
+        assertFails(() -> journaledRecorder.recordAll(new double[] { 1.0 },
+                new long[] { NOW }, 1, new BitSet()));
+        assertEquals(0, recorder.getStatistics(new StatisticsSnapshot())
+                .getCount());
+    }
+
+    private static void assertFails(Runnable record) {
+        try {
+            record.run();
+            fail("the failure of the journal was not thrown");
+        } catch (UncheckedIOException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Journal whose fsync always fails
+     */
+    private static class FailingJournal implements TransactionJournal {
+        private long sequence;
+
+        @Override
+        public long append(double amount, long timestamp, long merchantId,
+                long accountId) {
+            return ++sequence;
+        }
+
+        @Override
+        public void awaitDurable(long sequence) {
+            throw new UncheckedIOException("journal could not be written",
+                    new IOException("fsync failed"));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static InMemoryTransactionRecorder newRecorder() {
+        return newRecorder(() -> NOW);
+    }
+
+    private static InMemoryTransactionRecorder newRecorder(
+            LongSupplier clock) {
+        return new InMemoryTransactionRecorder(
+                RecordingWindow.ONE_MINUTE_BY_SECOND,
+                RetentionMode.AGGREGATES_ONLY, clock);
+    }
+
+    private static InMemoryTransactionRecorder newRecorder(
+            LongSupplier clock, EventTimePolicy eventTimePolicy) {
+        return new InMemoryTransactionRecorder(
+                Collections.singletonList(RecordingWindow.ONE_MINUTE_BY_SECOND),
+                RetentionMode.AGGREGATES_ONLY, false, eventTimePolicy, clock);
+    }
+}
@@ -0,0 +1,73 @@
+package com.murali.transactionmanager.store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.murali.transactionmanager.model.KeyDimension;
+import com.murali.transactionmanager.model.ReturnCode;
+import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.statistics.impl.CountStatTracker;
+import com.murali.transactionmanager.statistics.impl.MaxAmountStatTracker;
+import com.murali.transactionmanager.statistics.impl.SumOfAmountsStatTracker;
+import com.murali.transactionmanager.store.BucketStorage;
+
+/**
+ * Unit tests for {@link InMemoryKeyedTransactionRecorder}
+ */
+public class InMemoryKeyedTransactionRecorderTest {
+    private static final long TIMESTAMP_IN_MILLIS = 1_500_000_000_000L;
+    private static final long MERCHANT_ID = 17;
+    private static final long ACCOUNT_ID = 23;
+
+    private InMemoryKeyedTransactionRecorder transactionRecorder;
+
+    @Before
+    public void setup() {
+        transactionRecorder = new InMemoryKeyedTransactionRecorder(
+                KeyDimension.MERCHANT,
+                InMemoryKeyedTransactionRecorder.DEFAULT_KEYED_WINDOW,
+                BucketStorage.HEAP, () -> TIMESTAMP_IN_MILLIS);
+    }
+
+    @Test
+    public void testStatisticsPerKey() {
+        assertEquals(ReturnCode.SUCCESS, transactionRecorder.record(
+                new Transaction(5.0, TIMESTAMP_IN_MILLIS, MERCHANT_ID,
+                        ACCOUNT_ID)));
+        assertEquals(ReturnCode.SUCCESS, transactionRecorder.record(
+                new Transaction(7.0, TIMESTAMP_IN_MILLIS - 1_000, MERCHANT_ID,
+                        ACCOUNT_ID + 1)));
+        assertEquals(ReturnCode.SUCCESS, transactionRecorder.record(
+                new Transaction(1.0, TIMESTAMP_IN_MILLIS, MERCHANT_ID + 1,
+                        ACCOUNT_ID)));
+
+        Map<String, Number> stats = transactionRecorder
+                .getStatistics(MERCHANT_ID);
+        assertEquals(2L, stats.get(CountStatTracker.STAT_NAME));
+        assertEquals(12.0, stats.get(SumOfAmountsStatTracker.STAT_NAME));
+        assertEquals(7.0, stats.get(MaxAmountStatTracker.STAT_NAME));
+
+        stats = transactionRecorder.getStatistics(ACCOUNT_ID);
+        assertEquals(0L, stats.get(CountStatTracker.STAT_NAME));
+        assertNull(stats.get(MaxAmountStatTracker.STAT_NAME));
+    }
+
+    @Test
+    public void testWhenTransactionHasNoKey() {
+        assertEquals(ReturnCode.BAD_REQUEST, transactionRecorder
+                .record(new Transaction(5.0, TIMESTAMP_IN_MILLIS)));
+    }
+
+    @Test
+    public void testWhenTransactionIsBeyondRecordingInterval() {
+        assertEquals(ReturnCode.OLD_TRANSACTION,
+                transactionRecorder.record(new Transaction(5.0,
+                        TIMESTAMP_IN_MILLIS - 60_001, MERCHANT_ID,
+                        ACCOUNT_ID)));
+    }
+}
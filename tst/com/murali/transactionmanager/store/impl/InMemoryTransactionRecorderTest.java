@@ -3,29 +3,42 @@ package com.murali.transactionmanager.store.impl;
 import static com.murali.transactionmanager.test.TestData.VALID_TEST_TRANSACTION;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.function.Supplier;
+import java.util.function.LongSupplier;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import com.murali.transactionmanager.metrics.MetricsRegistry;
 import com.murali.transactionmanager.model.ReturnCode;
 import com.murali.transactionmanager.model.Transaction;
 import com.murali.transactionmanager.statistics.impl.AggregateTransactionStatsTracker;
 import com.murali.transactionmanager.statistics.impl.CountStatTracker;
 import com.murali.transactionmanager.statistics.impl.MaxAmountStatTracker;
 import com.murali.transactionmanager.statistics.impl.MinAmountStatTracker;
+import com.murali.transactionmanager.statistics.impl.QuantileStatTracker;
 import com.murali.transactionmanager.statistics.impl.SumOfAmountsStatTracker;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+import com.murali.transactionmanager.store.EventTimePolicy;
+import com.murali.transactionmanager.store.RecordingWindow;
+import com.murali.transactionmanager.store.RetentionMode;
 
 /**
  * Unit tests for {@link InMemoryTransactionRecorder}
@@ -33,9 +46,11 @@ import com.murali.transactionmanager.statistics.impl.SumOfAmountsStatTracker;
 public class InMemoryTransactionRecorderTest {
 
     private static final double ACCEPTABLE_DELTA_IN_DOUBLE_COMPARISON = 0.01;
+    private static final EventTimePolicy ONE_SECOND_SKEW = new EventTimePolicy(
+            1_000, EventTimePolicy.UNLIMITED_LATENESS);
 
     @Mock
-    private Supplier<Long> mockCurrentTimeSupplier;
+    private LongSupplier mockClock;
 
     private InMemoryTransactionRecorder transactionRecorder;
     private ExecutorService executorService;
@@ -43,45 +58,44 @@ public class InMemoryTransactionRecorderTest {
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        transactionRecorder = new InMemoryTransactionRecorder();
-        transactionRecorder.setCurrentTimeSupplier(mockCurrentTimeSupplier);
+        transactionRecorder = newRecorder(mockClock);
         executorService = Executors.newFixedThreadPool(30);
     }
 
     @Test
     public void testWhenTransactionIsWithinRecordingInterval() {
-        when(mockCurrentTimeSupplier.get()).thenReturn(VALID_TEST_TRANSACTION
+        when(mockClock.getAsLong()).thenReturn(VALID_TEST_TRANSACTION
                 .getTimestamp()
                 + InMemoryTransactionRecorder.RECORDING_INTERVAL_IN_MILLIS / 2);
         assertEquals(ReturnCode.SUCCESS,
                 transactionRecorder.record(VALID_TEST_TRANSACTION));
-        verify(mockCurrentTimeSupplier, times(1)).get();
+        verify(mockClock, times(1)).getAsLong();
     }
 
     @Test
     public void testWhenTransactionIsRightAtTheRecordingInterval() {
-        when(mockCurrentTimeSupplier.get())
+        when(mockClock.getAsLong())
                 .thenReturn(VALID_TEST_TRANSACTION.getTimestamp());
         assertEquals(ReturnCode.SUCCESS,
                 transactionRecorder.record(VALID_TEST_TRANSACTION));
-        verify(mockCurrentTimeSupplier, times(1)).get();
+        verify(mockClock, times(1)).getAsLong();
     }
 
     @Test
     public void testWhenTransactionIsBeyondRecordingInterval() {
-        when(mockCurrentTimeSupplier.get()).thenReturn(VALID_TEST_TRANSACTION
+        when(mockClock.getAsLong()).thenReturn(VALID_TEST_TRANSACTION
                 .getTimestamp()
                 + InMemoryTransactionRecorder.RECORDING_INTERVAL_IN_MILLIS * 2);
         assertEquals(ReturnCode.OLD_TRANSACTION,
                 transactionRecorder.record(VALID_TEST_TRANSACTION));
-        verify(mockCurrentTimeSupplier, times(1)).get();
+        verify(mockClock, times(1)).getAsLong();
     }
 
     @Test
     public void testMultipleTransactionRecordingWithNegativeValues()
             throws InterruptedException {
         long timestampInMillis = System.currentTimeMillis();
-        transactionRecorder.setCurrentTimeSupplier(System::currentTimeMillis);
+        transactionRecorder = newRecorder(System::currentTimeMillis);
 
         transactionRecorder.record(new Transaction(-10.8, timestampInMillis));
         transactionRecorder.record(new Transaction(1.2, timestampInMillis));
@@ -108,7 +122,7 @@ public class InMemoryTransactionRecorderTest {
     public void testMultipleTransactionRecordingWithSameTimestamp()
             throws InterruptedException {
         long timestampInMillis = System.currentTimeMillis();
-        transactionRecorder.setCurrentTimeSupplier(System::currentTimeMillis);
+        transactionRecorder = newRecorder(System::currentTimeMillis);
 
         recordTransaction(100, timestampInMillis, 0);
 
@@ -119,7 +133,9 @@ public class InMemoryTransactionRecorderTest {
     public void testMultipleTransactionRecordingAcrossSeconds()
             throws InterruptedException {
         long timestampInMillis = System.currentTimeMillis();
-        transactionRecorder.setCurrentTimeSupplier(System::currentTimeMillis);
+        // Freeze the clock so that no second falls out of the window while
+        // the transactions are being recorded
+        transactionRecorder = newRecorder(() -> timestampInMillis);
 
         recordTransaction(100, timestampInMillis, 1000);
 
@@ -127,12 +143,381 @@ public class InMemoryTransactionRecorderTest {
         verifyStats(60, expectedSum, expectedSum / 60.0, 60, 1);
     }
 
+    @Test
+    public void testStatsExcludeSecondsOutsideRecordingInterval() {
+        long timestampInMillis = System.currentTimeMillis();
+        ManualClock clock = new ManualClock(timestampInMillis);
+        transactionRecorder = newRecorder(clock);
+
+        transactionRecorder.record(new Transaction(5.0, timestampInMillis));
+        clock.advance(InMemoryTransactionRecorder.RECORDING_INTERVAL_IN_MILLIS,
+                TimeUnit.MILLISECONDS);
+        transactionRecorder.record(new Transaction(1.0, clock.getAsLong()));
+
+        verifyStats(transactionRecorder.getStatistics(), 1);
+    }
+
+    @Test
+    public void testWhenBucketWasReusedByANewerSecond() {
+        long timestampInMillis = System.currentTimeMillis();
+        transactionRecorder = newRecorder(() -> timestampInMillis);
+
+        assertEquals(ReturnCode.SUCCESS, transactionRecorder
+                .record(new Transaction(1.0, timestampInMillis)));
+        assertEquals(ReturnCode.OLD_TRANSACTION,
+                transactionRecorder.record(new Transaction(1.0,
+                        timestampInMillis - InMemoryTransactionRecorder.RECORDING_INTERVAL_IN_MILLIS)));
+
+        verifyStats(transactionRecorder.getStatistics(), 1);
+    }
+
+    @Test
+    public void testFutureTransactions() {
+        long timestampInMillis = 1_500_000_000_000L;
+        transactionRecorder = new InMemoryTransactionRecorder(
+                Collections.singletonList(RecordingWindow.ONE_MINUTE_BY_SECOND),
+                RetentionMode.AGGREGATES_ONLY, false, ONE_SECOND_SKEW,
+                () -> timestampInMillis);
+
+        assertEquals(ReturnCode.SUCCESS, transactionRecorder.record(
+                new Transaction(1.0, timestampInMillis - 59_000)));
+        // Within the skew: recorded now rather than in the slot of the
+        // oldest second, which is still in the window
+        assertEquals(ReturnCode.SUCCESS, transactionRecorder
+                .record(new Transaction(2.0, timestampInMillis + 1_000)));
+        assertEquals(ReturnCode.FUTURE_TRANSACTION, transactionRecorder
+                .record(new Transaction(3.0, timestampInMillis + 1_001)));
+
+        verifyStats(transactionRecorder.getStatistics(), 2);
+    }
+
+    @Test
+    public void testDefaultPolicyAcceptsEveryFutureTransaction() {
+        long timestampInMillis = 1_500_000_000_000L;
+        transactionRecorder = newRecorder(() -> timestampInMillis);
+
+        assertEquals(ReturnCode.SUCCESS, transactionRecorder.record(
+                new Transaction(1.0, timestampInMillis - 59_000)));
+        // Recorded now rather than in the slot of the oldest second
+        assertEquals(ReturnCode.SUCCESS, transactionRecorder.record(
+                new Transaction(2.0, timestampInMillis + 86_400_000)));
+
+        verifyStats(transactionRecorder.getStatistics(), 2);
+    }
+
+    @Test
+    public void testLateTransactions() {
+        long timestampInMillis = 1_500_000_000_000L;
+        transactionRecorder = new InMemoryTransactionRecorder(
+                Collections.singletonList(RecordingWindow.ONE_MINUTE_BY_SECOND),
+                RetentionMode.AGGREGATES_ONLY, false,
+                EventTimePolicy.of(0, 10, TimeUnit.SECONDS),
+                () -> timestampInMillis);
+
+        ReturnCode[] returnCodes = transactionRecorder.recordAll(
+                new Transaction[] { new Transaction(2.0, timestampInMillis),
+                        new Transaction(1.0, timestampInMillis - 10_000),
+                        new Transaction(3.0, timestampInMillis - 10_001),
+                        new Transaction(4.0, timestampInMillis - 60_001),
+                        new Transaction(5.0, timestampInMillis + 1) });
+
+        assertEquals(Arrays.asList(ReturnCode.SUCCESS, ReturnCode.SUCCESS,
+                ReturnCode.LATE_TRANSACTION, ReturnCode.OLD_TRANSACTION,
+                ReturnCode.FUTURE_TRANSACTION), Arrays.asList(returnCodes));
+        verifyStats(transactionRecorder.getStatistics(), 2);
+    }
+
+    @Test
+    public void testAggregatesOnlyRetainsNoTransactions() {
+        transactionRecorder = newRecorder(System::currentTimeMillis);
+        transactionRecorder.record(VALID_TEST_TRANSACTION);
+
+        assertEquals(RetentionMode.AGGREGATES_ONLY,
+                transactionRecorder.getRetentionMode());
+        assertTrue(transactionRecorder.getRetainedTransactions().isEmpty());
+    }
+
+    @Test
+    public void testWindowedRawRetainsOnlyTransactionsWithinInterval() {
+        long timestampInMillis = System.currentTimeMillis();
+        ManualClock clock = new ManualClock(timestampInMillis);
+        transactionRecorder = new InMemoryTransactionRecorder(
+                RecordingWindow.ONE_MINUTE_BY_SECOND,
+                RetentionMode.WINDOWED_RAW, clock);
+
+        Transaction oldTransaction = new Transaction(5.0, timestampInMillis);
+        transactionRecorder.record(oldTransaction);
+        assertEquals(Collections.singletonList(oldTransaction),
+                transactionRecorder.getRetainedTransactions());
+
+        clock.advance(InMemoryTransactionRecorder.RECORDING_INTERVAL_IN_MILLIS,
+                TimeUnit.MILLISECONDS);
+        Transaction newTransaction = new Transaction(1.0, clock.getAsLong());
+        transactionRecorder.record(newTransaction);
+        assertEquals(Collections.singletonList(newTransaction),
+                transactionRecorder.getRetainedTransactions());
+    }
+
+    @Test
+    public void testRecordAllOutOfOrderBatch() {
+        long timestampInMillis = System.currentTimeMillis();
+        transactionRecorder = newRecorder(() -> timestampInMillis);
+
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 100; i > 0; i--) {
+            transactions.add(new Transaction(i,
+                    timestampInMillis - (i % 60) * 1000));
+        }
+        transactions.add(null);
+        transactions.add(new Transaction(1.0, timestampInMillis
+                - InMemoryTransactionRecorder.RECORDING_INTERVAL_IN_MILLIS * 2));
+
+        List<ReturnCode> returnCodes = transactionRecorder
+                .recordAll(transactions);
+
+        assertEquals(102, returnCodes.size());
+        assertEquals(Collections.nCopies(100, ReturnCode.SUCCESS),
+                returnCodes.subList(0, 100));
+        assertEquals(ReturnCode.BAD_REQUEST, returnCodes.get(100));
+        assertEquals(ReturnCode.OLD_TRANSACTION, returnCodes.get(101));
+        verifyStats(transactionRecorder.getStatistics(), 100);
+    }
+
+    @Test
+    public void testRecordAllColumns() {
+        long timestampInMillis = System.currentTimeMillis();
+        transactionRecorder = newRecorder(() -> timestampInMillis);
+
+        double[] amounts = { 1.0, 2.0, 3.0, 4.0 };
+        long[] timestamps = { timestampInMillis,
+                timestampInMillis
+                        - InMemoryTransactionRecorder.RECORDING_INTERVAL_IN_MILLIS
+                        - 1,
+                timestampInMillis - 1000, timestampInMillis };
+        BitSet rejections = new BitSet();
+        rejections.set(0);
+
+        assertEquals(3, transactionRecorder.recordAll(amounts, timestamps, 4,
+                rejections));
+        assertEquals(1, rejections.cardinality());
+        assertTrue(rejections.get(1));
+        verifyStats(3, 8.0, 8.0 / 3, 4.0, 1.0);
+    }
+
+    @Test
+    public void testRecordAmountAndTimestamp() {
+        long timestampInMillis = System.currentTimeMillis();
+        transactionRecorder = new InMemoryTransactionRecorder(
+                RecordingWindow.ONE_MINUTE_BY_SECOND,
+                RetentionMode.WINDOWED_RAW, () -> timestampInMillis);
+
+        assertEquals(ReturnCode.SUCCESS,
+                transactionRecorder.record(2.5, timestampInMillis));
+        assertEquals(ReturnCode.OLD_TRANSACTION, transactionRecorder.record(
+                1.0, timestampInMillis
+                        - InMemoryTransactionRecorder.RECORDING_INTERVAL_IN_MILLIS
+                        - 1));
+        assertEquals(ReturnCode.BAD_REQUEST,
+                transactionRecorder.record(1.0, 0));
+        verifyStats(1, 2.5, 2.5, 2.5, 2.5);
+
+        // The raw window still gets a transaction to retain
+        List<Transaction> retained = transactionRecorder
+                .getRetainedTransactions();
+        assertEquals(1, retained.size());
+        assertEquals(2.5, retained.get(0).getAmount(), 0.0);
+        assertEquals(timestampInMillis, retained.get(0).getTimestamp());
+    }
+
+    @Test
+    public void testAmountsThatAreNotFiniteAreRejected() {
+        AtomicLong now = new AtomicLong(System.currentTimeMillis());
+        transactionRecorder = newRecorder(now::get);
+
+        assertEquals(ReturnCode.BAD_REQUEST, transactionRecorder.record(
+                new Transaction(Double.POSITIVE_INFINITY, now.get())));
+        assertEquals(ReturnCode.BAD_REQUEST,
+                transactionRecorder.record(Double.NaN, now.get()));
+        assertEquals(Arrays.asList(ReturnCode.BAD_REQUEST, ReturnCode.SUCCESS),
+                transactionRecorder.recordAll(Arrays.asList(
+                        new Transaction(Double.NEGATIVE_INFINITY, now.get()),
+                        new Transaction(10.0, now.get()))));
+        BitSet rejections = new BitSet();
+        assertEquals(1, transactionRecorder.recordAll(
+                new double[] { Double.NaN, 10.0 },
+                new long[] { now.get(), now.get() }, 2, rejections));
+        assertEquals(1, rejections.cardinality());
+        assertTrue(rejections.get(0));
+
+        // The sums stay finite as the window slides
+        for (int i = 0; i < 120; i++) {
+            now.addAndGet(1000);
+            transactionRecorder.record(10.0, now.get());
+            Map<String, Number> stats = transactionRecorder.getStatistics();
+            assertEquals(
+                    10.0 * stats.get(CountStatTracker.STAT_NAME).longValue(),
+                    stats.get(SumOfAmountsStatTracker.STAT_NAME).doubleValue(),
+                    0.0);
+        }
+    }
+
+    @Test
+    public void testWindowWithSubSecondBuckets() {
+        long timestampInMillis = 1_500_000_000_000L;
+        ManualClock clock = new ManualClock(timestampInMillis);
+        transactionRecorder = new InMemoryTransactionRecorder(
+                RecordingWindow.of(10_000, 100, TimeUnit.MILLISECONDS),
+                RetentionMode.AGGREGATES_ONLY, clock);
+
+        assertEquals(ReturnCode.SUCCESS, transactionRecorder
+                .record(new Transaction(5.0, timestampInMillis - 9_850)));
+        assertEquals(ReturnCode.SUCCESS, transactionRecorder
+                .record(new Transaction(1.0, timestampInMillis)));
+        assertEquals(ReturnCode.OLD_TRANSACTION, transactionRecorder
+                .record(new Transaction(1.0, timestampInMillis - 10_001)));
+        verifyStats(2, 6.0, 3.0, 5.0, 1.0);
+
+        // The older transaction leaves the window with its 100ms bucket
+        clock.advance(99, TimeUnit.MILLISECONDS);
+        verifyStats(2, 6.0, 3.0, 5.0, 1.0);
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        verifyStats(1, 1.0, 1.0, 1.0, 1.0);
+    }
+
+    @Test
+    public void testStatisticsOfEachWindow() {
+        long timestampInMillis = 1_500_000_000_000L;
+        RecordingWindow fiveMinutes = RecordingWindow.of(5, 1,
+                TimeUnit.MINUTES);
+        transactionRecorder = new InMemoryTransactionRecorder(
+                Arrays.asList(RecordingWindow.ONE_MINUTE_BY_SECOND,
+                        fiveMinutes),
+                RetentionMode.AGGREGATES_ONLY, false, () -> timestampInMillis);
+
+        assertEquals(ReturnCode.SUCCESS, transactionRecorder
+                .record(new Transaction(1.0, timestampInMillis)));
+        assertEquals(ReturnCode.SUCCESS, transactionRecorder
+                .record(new Transaction(5.0, timestampInMillis - 120_000)));
+        assertEquals(ReturnCode.OLD_TRANSACTION, transactionRecorder
+                .record(new Transaction(5.0, timestampInMillis - 300_001)));
+
+        verifyStats(transactionRecorder.getStatistics(), 1);
+        verifyStats(transactionRecorder.getStatistics(
+                RecordingWindow.ONE_MINUTE_BY_SECOND), 1);
+        assertEquals(2L, transactionRecorder.getStatistics(fiveMinutes)
+                .get(CountStatTracker.STAT_NAME));
+    }
+
+    @Test
+    public void testQuantilesOfRecordAndRecordAll() {
+        long timestampInMillis = System.currentTimeMillis();
+        transactionRecorder = new InMemoryTransactionRecorder(
+                Collections.singletonList(RecordingWindow.ONE_MINUTE_BY_SECOND),
+                RetentionMode.AGGREGATES_ONLY, true, () -> timestampInMillis);
+
+        double[] amounts = new double[50];
+        long[] timestamps = new long[50];
+        for (int i = 0; i < 50; i++) {
+            transactionRecorder.record(new Transaction(2 * i + 1,
+                    timestampInMillis - i * 100));
+            amounts[i] = 2 * i + 2;
+            timestamps[i] = timestampInMillis - i * 100;
+        }
+        assertEquals(50, transactionRecorder.recordAll(amounts, timestamps,
+                50, new BitSet()));
+
+        Map<String, Number> stats = transactionRecorder.getStatistics();
+        verifyStats(stats, 100);
+        assertEquals(50.0,
+                stats.get(QuantileStatTracker.P50_STAT_NAME).doubleValue(),
+                0.5);
+        assertEquals(99.0,
+                stats.get(QuantileStatTracker.P99_STAT_NAME).doubleValue(),
+                1.0);
+    }
+
+    @Test
+    public void testStatisticsIntoSnapshotDoNotAllocate() {
+        long timestampInMillis = System.currentTimeMillis();
+        transactionRecorder = newRecorder(() -> timestampInMillis);
+        transactionRecorder.record(1.0, timestampInMillis);
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory
+                        .getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        StatisticsSnapshot snapshot = new StatisticsSnapshot();
+
+        long allocatedBytes = 0;
+        for (int round = 0; round < 3; round++) {
+            long start = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 100_000; i++) {
+                transactionRecorder.getStatistics(snapshot);
+            }
+            allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId)
+                    - start;
+        }
+        // Far less than a byte per call, once the first rounds have warmed
+        // up the code
+        assertTrue(allocatedBytes < 100_000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStatisticsOfAWindowThatIsNotRecorded() {
+        transactionRecorder.getStatistics(
+                RecordingWindow.of(5, 1, TimeUnit.MINUTES));
+    }
+
+    @Test
+    public void testMetrics() {
+        long now = VALID_TEST_TRANSACTION.getTimestamp();
+        MetricsRegistry metricsRegistry = new MetricsRegistry("test");
+        transactionRecorder = new InMemoryTransactionRecorder(
+                Collections.singletonList(RecordingWindow.ONE_MINUTE_BY_SECOND),
+                RetentionMode.WINDOWED_RAW, false, ONE_SECOND_SKEW, () -> now,
+                metricsRegistry);
+
+        transactionRecorder.record(new Transaction(1.0, now));
+        transactionRecorder.record(new Transaction(1.0, now - 1_000));
+        transactionRecorder.record(new Transaction(1.0, now - 61_000));
+        transactionRecorder.recordAll(new Transaction[] {
+                new Transaction(1.0, now), null,
+                new Transaction(1.0, now + 5_000) });
+        transactionRecorder.recordAll(new double[] { 1.0, 1.0, 1.0 },
+                new long[] { now, now - 61_000, 0 }, 3, new BitSet());
+
+        Map<String, Object> metrics = metricsRegistry.getAttributes();
+        String prefix = RecorderMetrics.PREFIX;
+        assertEquals(4L, metrics.get(prefix + "recorded_total"));
+        assertEquals(2L,
+                metrics.get(prefix + "rejected_total.old_transaction"));
+        // A null transaction and a timestamp that is not positive
+        assertEquals(2L, metrics.get(prefix + "rejected_total.bad_request"));
+        assertEquals(1L,
+                metrics.get(prefix + "rejected_total.future_transaction"));
+        assertEquals(3L, metrics.get(prefix + "record_latency_seconds.count"));
+        assertEquals(2L, metrics.get(prefix + "batch_latency_seconds.count"));
+        assertEquals(2.0, metrics.get(prefix + "live_buckets"));
+        assertEquals(4.0, metrics.get(prefix + "retained_transactions"));
+
+        metricsRegistry.setEnabled(false);
+        transactionRecorder.record(new Transaction(1.0, now));
+        assertEquals(4L, metricsRegistry.getAttributes()
+                .get(prefix + "recorded_total"));
+    }
+
     @Test
     public void testWhenNoTransactionIsRecorded() throws InterruptedException {
-        transactionRecorder.setCurrentTimeSupplier(System::currentTimeMillis);
+        transactionRecorder = newRecorder(System::currentTimeMillis);
         verifyStats(transactionRecorder.getStatistics(), 0);
     }
 
+    private static InMemoryTransactionRecorder newRecorder(
+            LongSupplier clock) {
+        return new InMemoryTransactionRecorder(
+                RecordingWindow.ONE_MINUTE_BY_SECOND,
+                RetentionMode.AGGREGATES_ONLY, clock);
+    }
+
     private void verifyStats(Map<String, Number> stats,
             long numberOfRecordings) {
 
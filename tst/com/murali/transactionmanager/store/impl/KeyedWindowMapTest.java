@@ -0,0 +1,146 @@
+package com.murali.transactionmanager.store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+import com.murali.transactionmanager.store.BucketStorage;
+
+/**
+ * Unit tests for {@link KeyedWindowMap}
+ */
+public class KeyedWindowMapTest {
+    private static final int SLOTS = 12;
+    private static final long NOW_INTERVAL = 300_000_000L;
+
+    private KeyedWindowMap keyedWindows;
+
+    @Before
+    public void setup() {
+        keyedWindows = new KeyedWindowMap(SLOTS);
+    }
+
+    @Test
+    public void testStatsOfUnknownKey() {
+        verifyStats(42, NOW_INTERVAL, 0, 0.0, Double.NaN, Double.NaN);
+    }
+
+    @Test
+    public void testConcurrentRecordingOfManyKeys()
+            throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(30);
+        for (long key = 1; key <= 10_000; key++) {
+            long recordedKey = key;
+            executorService.submit(() -> {
+                for (int i = 0; i < SLOTS; i++) {
+                    keyedWindows.record(recordedKey, NOW_INTERVAL - i,
+                            NOW_INTERVAL, recordedKey);
+                }
+            });
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(10_000, keyedWindows.getKeyCount());
+        for (long key = 1; key <= 10_000; key++) {
+            verifyStats(key, NOW_INTERVAL, SLOTS, SLOTS * key, key, key);
+        }
+    }
+
+    @Test
+    public void testOffHeapMemoryIsReleased() {
+        BufferPoolMXBean directPool = ManagementFactory
+                .getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct")).findFirst()
+                .get();
+        long memoryUsedBefore = directPool.getMemoryUsed();
+
+        // Grows its one segment through several rehashes
+        keyedWindows = new KeyedWindowMap(SLOTS, BucketStorage.OFF_HEAP, 1);
+        for (long key = 1; key <= 10_000; key++) {
+            keyedWindows.record(key, NOW_INTERVAL, NOW_INTERVAL, 1.0);
+        }
+        assertTrue(directPool.getMemoryUsed() > memoryUsedBefore);
+
+        keyedWindows.close();
+        assertTrue(directPool.getMemoryUsed() <= memoryUsedBefore);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRecordAfterClose() {
+        keyedWindows = new KeyedWindowMap(SLOTS, BucketStorage.OFF_HEAP);
+        keyedWindows.close();
+        keyedWindows.record(7, NOW_INTERVAL, NOW_INTERVAL, 1.0);
+    }
+
+    @Test
+    public void testStatsSlideWithWindow() {
+        keyedWindows.record(7, NOW_INTERVAL - 5, NOW_INTERVAL, 100.0);
+        keyedWindows.record(7, NOW_INTERVAL, NOW_INTERVAL, 1.0);
+        assertFalse(keyedWindows.record(7, NOW_INTERVAL - SLOTS, NOW_INTERVAL,
+                1.0));
+        verifyStats(7, NOW_INTERVAL, 2, 101.0, 1.0, 100.0);
+
+        verifyStats(7, NOW_INTERVAL + SLOTS - 6, 2, 101.0, 1.0, 100.0);
+        verifyStats(7, NOW_INTERVAL + SLOTS - 5, 1, 1.0, 1.0, 1.0);
+        verifyStats(7, NOW_INTERVAL + SLOTS, 0, 0.0, Double.NaN, Double.NaN);
+    }
+
+    @Test
+    public void testExpiredKeysAreEvicted() {
+        verifyEviction();
+    }
+
+    @Test
+    public void testOffHeapStorage() {
+        keyedWindows = new KeyedWindowMap(SLOTS, BucketStorage.OFF_HEAP);
+        keyedWindows.record(7, NOW_INTERVAL - 5, NOW_INTERVAL, 100.0);
+        keyedWindows.record(7, NOW_INTERVAL, NOW_INTERVAL, 1.0);
+        verifyStats(7, NOW_INTERVAL, 2, 101.0, 1.0, 100.0);
+        verifyStats(7, NOW_INTERVAL + SLOTS - 5, 1, 1.0, 1.0, 1.0);
+
+        // Rehashes move the rows between buffers
+        verifyEviction();
+    }
+
+    private void verifyEviction() {
+        for (long key = 1; key <= 10_000; key++) {
+            assertTrue(keyedWindows.record(key, NOW_INTERVAL, NOW_INTERVAL,
+                    1.0));
+        }
+
+        // All earlier keys have expired by the time the new ones arrive
+        long laterInterval = NOW_INTERVAL + SLOTS;
+        for (long key = 10_001; key <= 20_000; key++) {
+            assertTrue(keyedWindows.record(key, laterInterval, laterInterval,
+                    2.0));
+        }
+
+        assertTrue(keyedWindows.getKeyCount() < 20_000);
+        verifyStats(1, laterInterval, 0, 0.0, Double.NaN, Double.NaN);
+        for (long key = 10_001; key <= 20_000; key++) {
+            verifyStats(key, laterInterval, 1, 2.0, 2.0, 2.0);
+        }
+    }
+
+    private void verifyStats(long key, long nowInterval, long count,
+            double sum, double min, double max) {
+        StatisticsSnapshot snapshot = keyedWindows.getStatistics(key,
+                nowInterval, new StatisticsSnapshot());
+
+        assertEquals(count, snapshot.getCount());
+        assertEquals(sum, snapshot.getSum(), 0.0);
+        assertEquals(min, snapshot.getMin(), 0.0);
+        assertEquals(max, snapshot.getMax(), 0.0);
+    }
+}
@@ -0,0 +1,153 @@
+package com.murali.transactionmanager.store.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.murali.transactionmanager.model.ReturnCode;
+import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+import com.murali.transactionmanager.store.IngestWaitStrategy;
+import com.murali.transactionmanager.store.RecordingWindow;
+import com.murali.transactionmanager.store.ShardRouting;
+
+/**
+ * Unit tests for {@link ShardedTransactionRecorder}
+ */
+public class ShardedTransactionRecorderTest {
+    private static final long NOW = 1_500_000_000_000L;
+
+    private ExecutorService executorService;
+
+    @Before
+    public void setup() {
+        executorService = Executors.newFixedThreadPool(30);
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentRecordsAcrossShards() throws Exception {
+        try (ShardedTransactionRecorder recorder = newRecorder(
+                ShardRouting.BY_THREAD)) {
+            for (int i = 1; i <= 10_000; i++) {
+                Transaction transaction = new Transaction(i, NOW - i % 60_000);
+                executorService.submit(() -> recorder.record(transaction));
+            }
+            executorService.shutdown();
+            executorService.awaitTermination(10, TimeUnit.SECONDS);
+            recorder.flush();
+
+            StatisticsSnapshot snapshot = recorder
+                    .getStatistics(new StatisticsSnapshot());
+            assertEquals(10_000, snapshot.getCount());
+            assertEquals(50_005_000.0, snapshot.getSum(), 0.0);
+            assertEquals(1.0, snapshot.getMin(), 0.0);
+            assertEquals(10_000.0, snapshot.getMax(), 0.0);
+            assertEquals(0, recorder.getDroppedTransactions());
+        }
+    }
+
+    @Test
+    public void testRecordsRoutedByMerchant() {
+        try (ShardedTransactionRecorder recorder = newRecorder(
+                ShardRouting.BY_MERCHANT)) {
+            for (int merchantId = 0; merchantId < 100; merchantId++) {
+                assertEquals(ReturnCode.SUCCESS, recorder.record(
+                        new Transaction(0.1, NOW, merchantId, 1)));
+            }
+            recorder.flush();
+
+            StatisticsSnapshot snapshot = recorder
+                    .getStatistics(new StatisticsSnapshot());
+            assertEquals(100, snapshot.getCount());
+            assertEquals(10.0, snapshot.getSum(), 1e-12);
+        }
+    }
+
+    @Test
+    public void testSumsAreCompensatedWithinShards() {
+        try (ShardedTransactionRecorder recorder = newRecorder(
+                ShardRouting.BY_MERCHANT)) {
+            // All in the bucket of one shard; without compensation, every
+            // 1.0 would be lost to rounding next to 1e16
+            recorder.record(new Transaction(1e16, NOW, 1, 1));
+            for (int i = 0; i < 1000; i++) {
+                recorder.record(new Transaction(1.0, NOW, 1, 1));
+                if (i % 100 == 0) {
+                    recorder.flush();
+                }
+            }
+            recorder.record(new Transaction(-1e16, NOW, 1, 1));
+            recorder.flush();
+
+            StatisticsSnapshot snapshot = recorder
+                    .getStatistics(new StatisticsSnapshot());
+            assertEquals(1002, snapshot.getCount());
+            assertEquals(1000.0, snapshot.getSum(), 0.0);
+        }
+    }
+
+    @Test
+    public void testOldTransactionIsRejected() {
+        try (ShardedTransactionRecorder recorder = newRecorder(
+                ShardRouting.BY_ACCOUNT)) {
+            assertEquals(ReturnCode.OLD_TRANSACTION,
+                    recorder.record(new Transaction(1.0, NOW - 100_000)));
+            recorder.flush();
+            assertEquals(0, recorder.getStatistics(new StatisticsSnapshot())
+                    .getCount());
+        }
+    }
+
+    @Test
+    public void testInvalidTransactionIsBadRequest() {
+        try (ShardedTransactionRecorder recorder = newRecorder(
+                ShardRouting.BY_THREAD)) {
+            assertEquals(ReturnCode.BAD_REQUEST, recorder.record(1.0, 0));
+            assertEquals(ReturnCode.BAD_REQUEST,
+                    recorder.record(Double.NaN, NOW));
+            assertEquals(ReturnCode.BAD_REQUEST, recorder.record(
+                    new Transaction(Double.POSITIVE_INFINITY, NOW)));
+            assertEquals(ReturnCode.SUCCESS, recorder.record(1.0, NOW));
+            recorder.flush();
+            assertEquals(1, recorder.getStatistics(new StatisticsSnapshot())
+                    .getCount());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOtherWindowIsRejected() {
+        try (ShardedTransactionRecorder recorder = newRecorder(
+                ShardRouting.BY_THREAD)) {
+            recorder.getStatistics(RecordingWindow.of(5, 1, TimeUnit.MINUTES),
+                    new StatisticsSnapshot());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRecordAfterClose() {
+        ShardedTransactionRecorder recorder = newRecorder(
+                ShardRouting.BY_THREAD);
+        recorder.close();
+        recorder.record(new Transaction(1.0, NOW));
+    }
+
+    private static ShardedTransactionRecorder newRecorder(
+            ShardRouting shardRouting) {
+        ShardedTransactionRecorder recorder = new ShardedTransactionRecorder(
+                RecordingWindow.ONE_MINUTE_BY_SECOND, 4, shardRouting,
+                IngestWaitStrategy.SLEEPING, () -> NOW);
+        recorder.start();
+        return recorder;
+    }
+}
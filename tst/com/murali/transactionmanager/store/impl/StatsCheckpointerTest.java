@@ -0,0 +1,210 @@
+package com.murali.transactionmanager.store.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+import com.murali.transactionmanager.store.RecordingWindow;
+import com.murali.transactionmanager.store.RetentionMode;
+
+/**
+ * Unit tests for {@link StatsCheckpointer}
+ */
+public class StatsCheckpointerTest {
+    private static final long NOW = 1_500_000_000_000L;
+    private static final RecordingWindow FIVE_MINUTES_BY_MINUTE = RecordingWindow
+            .of(5, 1, TimeUnit.MINUTES);
+    private static final List<RecordingWindow> WINDOWS = Arrays.asList(
+            RecordingWindow.ONE_MINUTE_BY_SECOND, FIVE_MINUTES_BY_MINUTE);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ManualClock clock = new ManualClock(NOW);
+    private Path file;
+
+    @Before
+    public void setup() throws IOException {
+        file = temporaryFolder.newFile("stats.checkpoint").toPath();
+    }
+
+    @Test
+    public void testRestoreAfterRestart() throws IOException {
+        InMemoryTransactionRecorder recorder = newRecorder(WINDOWS);
+        recorder.record(new Transaction(10.0, NOW - 50_000));
+        recorder.record(new Transaction(20.0, NOW - 10_000));
+        recorder.record(new Transaction(30.0, NOW - 200_000));
+        recorder.startCheckpoints(file, 1, TimeUnit.HOURS).close();
+
+        // Restarted 20 seconds later: the oldest second of the minute has
+        // rolled up into the five minutes
+        clock.set(NOW + 20_000);
+        InMemoryTransactionRecorder restarted = newRecorder(WINDOWS);
+        assertEquals(3, restarted.restoreCheckpoint(file));
+
+        verifyStats(restarted, RecordingWindow.ONE_MINUTE_BY_SECOND, 1, 20.0);
+        verifyStats(restarted, FIVE_MINUTES_BY_MINUTE, 3, 60.0);
+    }
+
+    @Test
+    public void testBucketsOlderThanWindowsAreDropped() throws IOException {
+        InMemoryTransactionRecorder recorder = newRecorder(WINDOWS);
+        recorder.record(new Transaction(10.0, NOW - 10_000));
+        recorder.startCheckpoints(file, 1, TimeUnit.HOURS).close();
+
+        clock.set(NOW + TimeUnit.MINUTES.toMillis(10));
+        InMemoryTransactionRecorder restarted = newRecorder(WINDOWS);
+        assertEquals(0, restarted.restoreCheckpoint(file));
+        verifyStats(restarted, FIVE_MINUTES_BY_MINUTE, 0, 0.0);
+    }
+
+    @Test
+    public void testCheckpointOfOtherWindowsIsIgnored() throws IOException {
+        InMemoryTransactionRecorder recorder = newRecorder(WINDOWS);
+        recorder.record(new Transaction(10.0, NOW - 10_000));
+        recorder.startCheckpoints(file, 1, TimeUnit.HOURS).close();
+
+        InMemoryTransactionRecorder restarted = newRecorder(
+                Arrays.asList(RecordingWindow.ONE_MINUTE_BY_SECOND));
+        assertEquals(0, restarted.restoreCheckpoint(file));
+    }
+
+    @Test
+    public void testTornCheckpointFallsBackToPreviousOne()
+            throws IOException {
+        InMemoryTransactionRecorder recorder = newRecorder(WINDOWS);
+        recorder.record(new Transaction(10.0, NOW - 10_000));
+        StatsCheckpointer checkpointer = recorder.startCheckpoints(file, 1,
+                TimeUnit.HOURS);
+        recorder.record(new Transaction(20.0, NOW - 20_000));
+        checkpointer.close();
+
+        // The first checkpoint is in the second slot, the one written by
+        // close() in the first
+        tearSlot(0);
+        InMemoryTransactionRecorder restarted = newRecorder(WINDOWS);
+        assertEquals(1, restarted.restoreCheckpoint(file));
+        verifyStats(restarted, FIVE_MINUTES_BY_MINUTE, 1, 10.0);
+    }
+
+    @Test
+    public void testReopenedFileContinuesSequence() throws IOException {
+        InMemoryTransactionRecorder recorder = newRecorder(WINDOWS);
+        recorder.record(new Transaction(10.0, NOW - 10_000));
+        recorder.startCheckpoints(file, 1, TimeUnit.HOURS).close();
+
+        // The first checkpoint after reopening must be newer than the one
+        // written by close() before, which is still in the other slot
+        InMemoryTransactionRecorder reopened = newRecorder(WINDOWS);
+        reopened.record(new Transaction(10.0, NOW - 10_000));
+        reopened.record(new Transaction(20.0, NOW - 20_000));
+        StatsCheckpointer checkpointer = reopened.startCheckpoints(file, 1,
+                TimeUnit.HOURS);
+        try {
+            InMemoryTransactionRecorder restarted = newRecorder(WINDOWS);
+            assertEquals(2, restarted.restoreCheckpoint(file));
+            verifyStats(restarted, FIVE_MINUTES_BY_MINUTE, 2, 30.0);
+        } finally {
+            checkpointer.close();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void testFailedCheckpointDoesNotStopLaterOnes() throws Exception {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        StatsCheckpointer checkpointer = new StatsCheckpointer(
+                new TransactionStatsHierarchy(WINDOWS, false), WINDOWS, file) {
+            @Override
+            public synchronized void checkpoint() {
+                if (failing.get()) {
+                    throw new IllegalStateException("storage failed");
+                }
+                super.checkpoint();
+            }
+        };
+        try {
+            checkpointer.start(10, TimeUnit.MILLISECONDS);
+            while (checkpointer.getLastFailure() == null) {
+                Thread.sleep(10);
+            }
+            assertEquals("storage failed",
+                    checkpointer.getLastFailure().getMessage());
+
+            failing.set(false);
+            while (checkpointer.getLastFailure() != null) {
+                Thread.sleep(10);
+            }
+        } finally {
+            checkpointer.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCheckpointAfterClose() throws IOException {
+        StatsCheckpointer checkpointer = newRecorder(WINDOWS)
+                .startCheckpoints(file, 1, TimeUnit.HOURS);
+        checkpointer.close();
+        checkpointer.checkpoint();
+    }
+
+    @Test
+    public void testTornCheckpointsAreIgnored() throws IOException {
+        InMemoryTransactionRecorder recorder = newRecorder(WINDOWS);
+        recorder.record(new Transaction(10.0, NOW - 10_000));
+        recorder.startCheckpoints(file, 1, TimeUnit.HOURS).close();
+
+        tearSlot(0);
+        tearSlot(1);
+        assertEquals(0, newRecorder(WINDOWS).restoreCheckpoint(file));
+    }
+
+    @Test
+    public void testMissingCheckpoint() throws IOException {
+        assertEquals(0, newRecorder(WINDOWS)
+                .restoreCheckpoint(file.resolveSibling("missing")));
+    }
+
+    private InMemoryTransactionRecorder newRecorder(
+            List<RecordingWindow> windows) {
+        return new InMemoryTransactionRecorder(windows,
+                RetentionMode.AGGREGATES_ONLY, false, clock);
+    }
+
+    /**
+     * Overwrites the first bucket record of the slot, as a crash in the middle
+     * of its checkpoint would
+     */
+    private void tearSlot(int slot) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.WRITE)) {
+            // Both slots have the same size; the header of a slot with two
+            // windows takes 60 bytes
+            long slotBytes = channel.size() / 2;
+            channel.write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }),
+                    slot * slotBytes + 64);
+        }
+    }
+
+    private void verifyStats(InMemoryTransactionRecorder recorder,
+            RecordingWindow window, long count, double sum) {
+        StatisticsSnapshot snapshot = recorder.getStatistics(window,
+                new StatisticsSnapshot());
+        assertEquals(count, snapshot.getCount());
+        assertEquals(sum, snapshot.getSum(), 0.0);
+    }
+}
@@ -0,0 +1,136 @@
+package com.murali.transactionmanager.store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+
+/**
+ * Unit tests for {@link StripedStatsCells}
+ */
+public class StripedStatsCellsTest {
+    private static final int CELLS = 8;
+
+    private StripedStatsCells cells;
+    private ExecutorService executorService;
+
+    @Before
+    public void setup() {
+        cells = new StripedStatsCells(CELLS);
+        executorService = Executors.newFixedThreadPool(30);
+    }
+
+    @Test
+    public void testEmptyCells() {
+        assertEquals(0, cells.getCount());
+        assertEquals(0.0, cells.getSum(), 0.0);
+        assertEquals(Double.POSITIVE_INFINITY, cells.getMin(), 0.0);
+        assertEquals(Double.NEGATIVE_INFINITY, cells.getMax(), 0.0);
+        assertTrue(cells.isQuiescent());
+    }
+
+    @Test
+    public void testConcurrentAccumulation() throws InterruptedException {
+        for (int i = 0; i < 1000; i++) {
+            double amount = i + 1;
+            executorService.submit(() -> {
+                int cell = cells.beginWrite();
+                try {
+                    cells.accumulate(cell, amount);
+                } finally {
+                    cells.endWrite(cell);
+                }
+            });
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(5, TimeUnit.SECONDS);
+
+        assertEquals(1000, cells.getCount());
+        assertEquals(500500.0, cells.getSum(), 0.0);
+        assertEquals(1.0, cells.getMin(), 0.0);
+        assertEquals(1000.0, cells.getMax(), 0.0);
+        assertTrue(cells.isQuiescent());
+    }
+
+    @Test
+    public void testReadsAreConsistentDuringWrites() throws Exception {
+        CountDownLatch writersDone = new CountDownLatch(4);
+        for (int writer = 0; writer < 4; writer++) {
+            executorService.submit(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    int cell = cells.beginWrite();
+                    try {
+                        // Every write keeps the sum equal to the count
+                        cells.accumulate(cell, 2, 2.0, 1.0, 1.0);
+                    } finally {
+                        cells.endWrite(cell);
+                    }
+                }
+                writersDone.countDown();
+            });
+        }
+
+        StatisticsSnapshot snapshot = new StatisticsSnapshot();
+        do {
+            cells.read(snapshot);
+            assertEquals(snapshot.getCount(), snapshot.getSum(), 0.0);
+        } while (writersDone.getCount() > 0);
+        executorService.shutdown();
+
+        cells.read(snapshot);
+        assertEquals(800_000, snapshot.getCount());
+        assertEquals(800_000.0, snapshot.getSum(), 0.0);
+        assertEquals(1.0, snapshot.getMin(), 0.0);
+        assertEquals(1.0, snapshot.getMax(), 0.0);
+    }
+
+    @Test(timeout = 30_000)
+    public void testReadsAreNotStarvedByWriters() throws Exception {
+        // A single cell, which writers cannot leave for another one, written
+        // to without pause
+        StripedStatsCells cell = new StripedStatsCells(1);
+        AtomicBoolean reading = new AtomicBoolean(true);
+        for (int writer = 0; writer < 4; writer++) {
+            executorService.submit(() -> {
+                while (reading.get()) {
+                    cell.add(0, 1, 1.0);
+                }
+            });
+        }
+
+        StatisticsSnapshot snapshot = new StatisticsSnapshot();
+        try {
+            for (int i = 0; i < 10_000; i++) {
+                cell.read(snapshot);
+                assertEquals(snapshot.getCount(), snapshot.getSum(), 0.0);
+            }
+        } finally {
+            reading.set(false);
+            executorService.shutdown();
+        }
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+        cell.read(snapshot);
+        assertEquals(snapshot.getCount(), snapshot.getSum(), 0.0);
+    }
+
+    @Test
+    public void testAddAndReset() {
+        cells.add(0, 10, 25.5);
+        cells.add(0, -4, -5.5);
+        assertEquals(6, cells.getCount());
+        assertEquals(20.0, cells.getSum(), 0.0);
+
+        cells.reset();
+        assertEquals(0, cells.getCount());
+        assertEquals(0.0, cells.getSum(), 0.0);
+    }
+}
@@ -0,0 +1,134 @@
+package com.murali.transactionmanager.store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+import com.murali.transactionmanager.store.RecordingWindow;
+
+/**
+ * Unit tests for {@link TransactionStatsHierarchy}
+ */
+public class TransactionStatsHierarchyTest {
+    private static final long NOW_SECOND = 1_500_000_000L;
+    private static final RecordingWindow FIVE_MINUTES_BY_MINUTE = RecordingWindow
+            .of(5, 1, TimeUnit.MINUTES);
+
+    private TransactionStatsHierarchy hierarchy;
+    private ExecutorService executorService;
+
+    @Before
+    public void setup() {
+        hierarchy = new TransactionStatsHierarchy(Arrays.asList(
+                RecordingWindow.ONE_MINUTE_BY_SECOND, FIVE_MINUTES_BY_MINUTE));
+        executorService = Executors.newFixedThreadPool(30);
+    }
+
+    @Test
+    public void testRecordOlderThanFinestWindow() {
+        assertEquals(0, hierarchy.record(NOW_SECOND, 1, 1.0, 1.0, 1.0));
+        // Levels move their windows when they are read
+        verifyStats(1, NOW_SECOND, 1, 1.0, 1.0, 1.0);
+
+        assertEquals(1, hierarchy.record(NOW_SECOND - 100, 1, 5.0, 5.0, 5.0));
+        assertEquals(TransactionStatsHierarchy.NOT_RECORDED,
+                hierarchy.record(NOW_SECOND - 600, 1, 5.0, 5.0, 5.0));
+
+        verifyStats(0, NOW_SECOND, 1, 1.0, 1.0, 1.0);
+        verifyStats(1, NOW_SECOND, 2, 6.0, 1.0, 5.0);
+    }
+
+    @Test
+    public void testRollupWhenBucketLeavesFinestWindow() {
+        hierarchy.record(NOW_SECOND - 30, 2, 3.0, 1.0, 2.0);
+        verifyStats(0, NOW_SECOND, 2, 3.0, 1.0, 2.0);
+
+        verifyStats(0, NOW_SECOND + 40, 0, 0.0, Double.NaN, Double.NaN);
+        verifyStats(1, NOW_SECOND + 40, 2, 3.0, 1.0, 2.0);
+
+        // The minute of the transaction leaves the five minutes window
+        verifyStats(1, NOW_SECOND + 239, 2, 3.0, 1.0, 2.0);
+        verifyStats(1, NOW_SECOND + 240, 0, 0.0, Double.NaN, Double.NaN);
+    }
+
+    @Test
+    public void testConcurrentRollupsAreNeverCountedTwice()
+            throws Exception {
+        int seconds = 150;
+        for (int i = 0; i < seconds; i++) {
+            long interval = NOW_SECOND + i;
+            for (int j = 0; j < 10; j++) {
+                executorService.submit(
+                        () -> hierarchy.record(interval, 1, 1.0, 1.0, 1.0));
+            }
+        }
+
+        ExecutorService readerService = Executors.newSingleThreadExecutor();
+        Future<?> reader = readerService.submit(() -> {
+            StatisticsSnapshot snapshot = new StatisticsSnapshot();
+            long previousCount = 0;
+            for (int i = 0; i < seconds; i++) {
+                long count = hierarchy
+                        .getStatistics(1, NOW_SECOND + i, snapshot)
+                        .getCount();
+                assertTrue(count >= previousCount);
+                assertTrue(count <= 10L * seconds);
+                previousCount = count;
+            }
+        });
+        reader.get();
+        readerService.shutdown();
+        executorService.shutdown();
+        executorService.awaitTermination(5, TimeUnit.SECONDS);
+
+        verifyStats(1, NOW_SECOND + seconds, 10L * seconds, 10.0 * seconds,
+                1.0, 1.0);
+    }
+
+    @Test
+    public void testQuantilesAfterRollup() {
+        hierarchy = new TransactionStatsHierarchy(Arrays.asList(
+                RecordingWindow.ONE_MINUTE_BY_SECOND, FIVE_MINUTES_BY_MINUTE),
+                true);
+        for (int i = 1; i <= 100; i++) {
+            hierarchy.record(NOW_SECOND - i % 2 * 30, 1, i, i, i);
+        }
+
+        StatisticsSnapshot snapshot = hierarchy.getStatistics(1,
+                NOW_SECOND + 40, new StatisticsSnapshot());
+        assertEquals(100, snapshot.getCount());
+        assertEquals(50.0, snapshot.getP50(), 0.5);
+        assertEquals(100.0, snapshot.getP999(), 1.0);
+
+        // Only the odd amounts have been rolled up out of the minute
+        snapshot = hierarchy.getStatistics(0, NOW_SECOND + 40, snapshot);
+        assertEquals(50, snapshot.getCount());
+        assertEquals(50.0, snapshot.getP50(), 0.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWhenWindowsAreNotOrdered() {
+        new TransactionStatsHierarchy(Arrays.asList(FIVE_MINUTES_BY_MINUTE,
+                RecordingWindow.ONE_MINUTE_BY_SECOND));
+    }
+
+    private void verifyStats(int level, long nowInterval, long count,
+            double sum, double min, double max) {
+        StatisticsSnapshot snapshot = hierarchy.getStatistics(level,
+                nowInterval, new StatisticsSnapshot());
+
+        assertEquals(count, snapshot.getCount());
+        assertEquals(sum, snapshot.getSum(), 0.0);
+        assertEquals(min, snapshot.getMin(), 0.0);
+        assertEquals(max, snapshot.getMax(), 0.0);
+    }
+}
@@ -0,0 +1,131 @@
+package com.murali.transactionmanager.store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+
+/**
+ * Unit tests for {@link TransactionStatsRing}
+ */
+public class TransactionStatsRingTest {
+    private static final int SLOTS = 60;
+    private static final long NOW_SECOND = 1_500_000_000L;
+
+    private TransactionStatsRing ring;
+    private ExecutorService executorService;
+
+    @Before
+    public void setup() {
+        ring = new TransactionStatsRing(SLOTS);
+        executorService = Executors.newFixedThreadPool(30);
+    }
+
+    @Test
+    public void testStatsWhenNothingWasRecorded() {
+        verifyStats(NOW_SECOND, 0, 0.0, Double.NaN, Double.NaN);
+    }
+
+    @Test
+    public void testConcurrentRecordingAcrossSlotReuse()
+            throws InterruptedException {
+        // Every interval from two full turns of the ring; the older turn must
+        // be evicted by (or rejected in favour of) the newer one
+        for (int i = 0; i < 2 * SLOTS; i++) {
+            long interval = NOW_SECOND - i;
+            double amount = i + 1;
+            for (int j = 0; j < 10; j++) {
+                executorService.submit(() -> ring.record(interval, amount));
+            }
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(5, TimeUnit.SECONDS);
+
+        verifyStats(NOW_SECOND, 10L * SLOTS, 10.0 * SLOTS * (SLOTS + 1) / 2,
+                1, SLOTS);
+    }
+
+    @Test
+    public void testRecordIntoSlotClaimedByNewerInterval() {
+        assertTrue(ring.record(NOW_SECOND, 1.0));
+        assertFalse(ring.record(NOW_SECOND - SLOTS, 1.0));
+    }
+
+    @Test
+    public void testStatsSlideWithWindow() {
+        ring.record(NOW_SECOND - 10, 100.0);
+        ring.record(NOW_SECOND, 1.0);
+        verifyStats(NOW_SECOND, 2, 101.0, 1.0, 100.0);
+
+        verifyStats(NOW_SECOND + SLOTS - 11, 2, 101.0, 1.0, 100.0);
+        verifyStats(NOW_SECOND + SLOTS - 10, 1, 1.0, 1.0, 1.0);
+        verifyStats(NOW_SECOND + SLOTS, 0, 0.0, Double.NaN, Double.NaN);
+    }
+
+    @Test
+    public void testLateTransactionIntoSealedInterval() {
+        ring.record(NOW_SECOND, 1.0);
+        ring.getStatistics(NOW_SECOND, new StatisticsSnapshot());
+
+        ring.record(NOW_SECOND - 5, 500.0);
+        ring.record(NOW_SECOND - 6, -500.0);
+        verifyStats(NOW_SECOND, 3, 1.0, -500.0, 500.0);
+    }
+
+    @Test
+    public void testSumDoesNotDriftOnceWindowIsEmpty() {
+        // An hour of cent amounts, 100 per second
+        Random random = new Random(42);
+        long interval = NOW_SECOND;
+        for (int second = 0; second < 3600; second++, interval++) {
+            for (int i = 0; i < 100; i++) {
+                ring.record(interval, random.nextInt(100_000) / 100.0);
+            }
+            ring.getStatistics(interval, new StatisticsSnapshot());
+        }
+
+        interval += SLOTS + 1;
+        ring.record(interval, 1.0);
+        verifyStats(interval, 1, 1.0, 1.0, 1.0);
+    }
+
+    @Test
+    public void testSumDoesNotDriftWhileWindowHoldsTransactions() {
+        // Amounts many orders of magnitude apart, and a window that never
+        // empties
+        Random random = new Random(42);
+        double[] amounts = { 1e16, -1e16, 0.01, 123.45, -7.3e12, 0.3 };
+        long interval = NOW_SECOND;
+        for (int second = 0; second < 1000; second++, interval++) {
+            for (int i = 0; i < 100; i++) {
+                ring.record(interval,
+                        amounts[random.nextInt(amounts.length)]);
+            }
+            ring.getStatistics(interval, new StatisticsSnapshot());
+        }
+
+        ring.record(interval, 1.0);
+        interval += SLOTS - 1;
+        verifyStats(interval, 1, 1.0, 1.0, 1.0);
+    }
+
+    private void verifyStats(long nowInterval, long count, double sum,
+            double min, double max) {
+        StatisticsSnapshot snapshot = ring.getStatistics(nowInterval,
+                new StatisticsSnapshot());
+
+        assertEquals(count, snapshot.getCount());
+        assertEquals(sum, snapshot.getSum(), 0.0);
+        assertEquals(min, snapshot.getMin(), 0.0);
+        assertEquals(max, snapshot.getMax(), 0.0);
+    }
+}
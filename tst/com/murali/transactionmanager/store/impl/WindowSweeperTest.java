@@ -0,0 +1,74 @@
+package com.murali.transactionmanager.store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.murali.transactionmanager.store.RecordingWindow;
+
+/**
+ * Unit tests for {@link WindowSweeper}
+ */
+public class WindowSweeperTest {
+    private static final long NOW = 1_500_000_000_000L;
+    private static final long NOW_SECOND = NOW / 1000;
+
+    private final ManualClock clock = new ManualClock(NOW);
+    private TransactionStatsHierarchy hierarchy;
+    private WindowSweeper sweeper;
+
+    @Before
+    public void setup() {
+        hierarchy = new TransactionStatsHierarchy(Arrays.asList(
+                RecordingWindow.ONE_MINUTE_BY_SECOND,
+                RecordingWindow.of(5, 1, TimeUnit.MINUTES)));
+        sweeper = new WindowSweeper(clock, 1000, hierarchy::advanceTo);
+    }
+
+    @Test
+    public void testSweepRetiresExpiredBuckets() {
+        hierarchy.record(NOW_SECOND, 2, 3.0, 1.0, 2.0);
+        sweeper.sweep();
+        assertEquals(Arrays.asList(0), levelsOfBuckets());
+
+        // Nothing records or reads meanwhile; the sweep alone rolls the
+        // second up into the five minutes
+        clock.advance(60, TimeUnit.SECONDS);
+        sweeper.sweep();
+        assertEquals(NOW_SECOND + 60, sweeper.getSweptInterval());
+        assertEquals(Arrays.asList(1), levelsOfBuckets());
+
+        clock.advance(5, TimeUnit.MINUTES);
+        sweeper.sweep();
+        assertTrue(levelsOfBuckets().isEmpty());
+    }
+
+    @Test
+    public void testScheduledSweeps() throws InterruptedException {
+        sweeper.start(1, TimeUnit.MILLISECONDS);
+        try {
+            clock.advance(1, TimeUnit.SECONDS);
+            for (int i = 0; i < 1000
+                    && sweeper.getSweptInterval() != NOW_SECOND + 1; i++) {
+                Thread.sleep(1);
+            }
+            assertEquals(NOW_SECOND + 1, sweeper.getSweptInterval());
+        } finally {
+            sweeper.close();
+        }
+    }
+
+    private List<Integer> levelsOfBuckets() {
+        List<Integer> levels = new ArrayList<>();
+        hierarchy.forEachBucket((level, epochInterval, count, sum, min,
+                max) -> levels.add(level));
+        return levels;
+    }
+}
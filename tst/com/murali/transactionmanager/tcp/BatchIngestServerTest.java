@@ -0,0 +1,252 @@
+package com.murali.transactionmanager.tcp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.BitSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.murali.transactionmanager.model.KeyDimension;
+import com.murali.transactionmanager.model.Transaction;
+import com.murali.transactionmanager.statistics.model.StatisticsSnapshot;
+import com.murali.transactionmanager.store.BucketStorage;
+import com.murali.transactionmanager.store.RecordingWindow;
+import com.murali.transactionmanager.store.RetentionMode;
+import com.murali.transactionmanager.store.impl.InMemoryKeyedTransactionRecorder;
+import com.murali.transactionmanager.store.impl.InMemoryTransactionRecorder;
+
+/**
+ * Unit tests for {@link BatchIngestServer}
+ */
+public class BatchIngestServerTest {
+    private static final long NOW = 1_478_192_204_000L;
+
+    private InMemoryTransactionRecorder recorder;
+    private InMemoryKeyedTransactionRecorder keyedRecorder;
+    private BatchIngestServer server;
+    private SocketChannel client;
+
+    @Before
+    public void setup() throws IOException {
+        recorder = new InMemoryTransactionRecorder(
+                RecordingWindow.ONE_MINUTE_BY_SECOND,
+                RetentionMode.AGGREGATES_ONLY, () -> NOW);
+        keyedRecorder = new InMemoryKeyedTransactionRecorder(
+                KeyDimension.MERCHANT, RecordingWindow.ONE_MINUTE_BY_SECOND,
+                BucketStorage.HEAP, () -> NOW);
+        server = new BatchIngestServer(recorder, keyedRecorder,
+                new InetSocketAddress("localhost", 0));
+        server.start();
+        client = SocketChannel.open(server.getAddress());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testFrameIsRecordedAndAcknowledged() throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(1024);
+        BatchProtocol.writeFrame(frame, new double[] { 10.3, 5.0, 9.7 },
+                new long[] { NOW, NOW - 61_000, NOW - 1_000 }, null, 3);
+        send(frame);
+
+        ByteBuffer ack = receiveAck();
+        assertEquals(BatchProtocol.STATUS_OK, ack.get());
+        assertEquals(2, ack.getInt());
+        assertEquals(0b010, ack.get());
+        assertEquals(0, ack.remaining());
+
+        StatisticsSnapshot snapshot = recorder
+                .getStatistics(new StatisticsSnapshot());
+        assertEquals(2, snapshot.getCount());
+        assertEquals(20.0, snapshot.getSum(), 0.0);
+    }
+
+    @Test
+    public void testKeyedFrameIsRecordedPerKey() throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(1024);
+        BatchProtocol.writeFrame(frame, new double[] { 1.0, 2.0, 4.0 },
+                new long[] { NOW, NOW, NOW }, new long[] { 7, 8, 7 }, 3);
+        send(frame);
+
+        ByteBuffer ack = receiveAck();
+        assertEquals(BatchProtocol.STATUS_OK, ack.get());
+        assertEquals(3, ack.getInt());
+
+        assertEquals(3, recorder.getStatistics(new StatisticsSnapshot())
+                .getCount());
+        assertEquals(5.0, keyedRecorder
+                .getStatistics(7, new StatisticsSnapshot()).getSum(), 0.0);
+        assertEquals(2.0, keyedRecorder
+                .getStatistics(8, new StatisticsSnapshot()).getSum(), 0.0);
+    }
+
+    @Test
+    public void testKeyedRejectionsAreAcknowledged() throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(1024);
+        BatchProtocol.writeFrame(frame, new double[] { 1.0, 2.0, 4.0 },
+                new long[] { NOW, NOW, NOW - 61_000 },
+                new long[] { 7, Transaction.NO_ID, 7 }, 3);
+        send(frame);
+
+        ByteBuffer ack = receiveAck();
+        assertEquals(BatchProtocol.STATUS_OK, ack.get());
+        assertEquals(1, ack.getInt());
+        assertEquals(0b110, ack.get());
+        assertEquals(1.0, keyedRecorder
+                .getStatistics(7, new StatisticsSnapshot()).getSum(), 0.0);
+    }
+
+    @Test
+    public void testRecorderFailureClosesOnlyItsConnection()
+            throws IOException {
+        InMemoryTransactionRecorder failingRecorder =
+                new InMemoryTransactionRecorder(
+                        RecordingWindow.ONE_MINUTE_BY_SECOND,
+                        RetentionMode.AGGREGATES_ONLY, () -> NOW) {
+                    @Override
+                    public int recordAll(double[] amounts, long[] timestamps,
+                            int length, BitSet rejections) {
+                        if (amounts[0] < 0) {
+                            throw new IllegalArgumentException("negative");
+                        }
+                        return super.recordAll(amounts, timestamps, length,
+                                rejections);
+                    }
+                };
+        try (BatchIngestServer failingServer = new BatchIngestServer(
+                failingRecorder, new InetSocketAddress("localhost", 0))) {
+            failingServer.start();
+            client.close();
+            client = SocketChannel.open(failingServer.getAddress());
+            ByteBuffer frame = ByteBuffer.allocate(1024);
+            BatchProtocol.writeFrame(frame, new double[] { -1.0 },
+                    new long[] { NOW }, null, 1);
+            send(frame);
+
+            ByteBuffer ack = receiveAck();
+            assertEquals(BatchProtocol.STATUS_FAILED, ack.get());
+            assertEquals(0, ack.getInt());
+            assertEquals(-1, client.read(ByteBuffer.allocate(1)));
+
+            client.close();
+            client = SocketChannel.open(failingServer.getAddress());
+            frame.clear();
+            BatchProtocol.writeFrame(frame, new double[] { 1.0 },
+                    new long[] { NOW }, null, 1);
+            send(frame);
+
+            ack = receiveAck();
+            assertEquals(BatchProtocol.STATUS_OK, ack.get());
+            assertEquals(1, ack.getInt());
+        }
+    }
+
+    @Test
+    public void testPipelinedFrames() throws IOException {
+        int frames = 50;
+        int records = BatchProtocol.MAX_RECORDS;
+        double[] amounts = new double[records];
+        long[] timestamps = new long[records];
+        for (int i = 0; i < records; i++) {
+            amounts[i] = 1.0;
+            timestamps[i] = NOW - i % 60_000;
+        }
+
+        ByteBuffer frame = ByteBuffer
+                .allocate(BatchProtocol.MAX_FRAME_BYTES + Integer.BYTES);
+        for (int i = 0; i < frames; i++) {
+            frame.clear();
+            BatchProtocol.writeFrame(frame, amounts, timestamps, null,
+                    records);
+            send(frame);
+        }
+        for (int i = 0; i < frames; i++) {
+            ByteBuffer ack = receiveAck();
+            assertEquals(BatchProtocol.STATUS_OK, ack.get());
+            assertEquals(records, ack.getInt());
+        }
+
+        assertEquals((long) frames * records,
+                recorder.getStatistics(new StatisticsSnapshot()).getCount());
+    }
+
+    @Test(timeout = 10_000)
+    public void testPipelinedFramesBeyondOutputAreAcknowledged()
+            throws Exception {
+        // Many more acknowledgements than the output buffer of the server
+        // holds, for frames that are all sent before any acknowledgement is
+        // read: the server stops reading while its output is full, so the
+        // frames pile up and are read in large chunks after the last byte
+        int frames = 100_000;
+        ByteBuffer allFrames = ByteBuffer.allocate(frames * 32);
+        for (int i = 0; i < frames; i++) {
+            BatchProtocol.writeFrame(allFrames, new double[] { 1.0 },
+                    new long[] { NOW }, null, 1);
+        }
+        Thread sender = new Thread(() -> {
+            try {
+                send(allFrames);
+            } catch (IOException e) {
+                // Fails the test by the missing acknowledgements
+            }
+        });
+        sender.start();
+        sender.join(1_000);
+
+        for (int i = 0; i < frames; i++) {
+            ByteBuffer ack = receiveAck();
+            assertEquals(BatchProtocol.STATUS_OK, ack.get());
+            assertEquals(1, ack.getInt());
+        }
+        sender.join();
+        assertEquals(frames,
+                recorder.getStatistics(new StatisticsSnapshot()).getCount());
+    }
+
+    @Test
+    public void testBadFrameClosesConnection() throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(16);
+        frame.putInt(5).put((byte) 7).putInt(0);
+        send(frame);
+
+        ByteBuffer ack = receiveAck();
+        assertEquals(BatchProtocol.STATUS_BAD_FRAME, ack.get());
+        assertEquals(0, ack.getInt());
+        assertEquals(-1, client.read(ByteBuffer.allocate(1)));
+    }
+
+    private void send(ByteBuffer frame) throws IOException {
+        frame.flip();
+        while (frame.hasRemaining()) {
+            client.write(frame);
+        }
+    }
+
+    /**
+     * Reads an acknowledgement, and returns it past its length
+     */
+    private ByteBuffer receiveAck() throws IOException {
+        ByteBuffer length = readFully(ByteBuffer.allocate(Integer.BYTES));
+        return readFully(ByteBuffer.allocate(length.getInt()));
+    }
+
+    private ByteBuffer readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (client.read(buffer) < 0) {
+                throw new IOException("connection closed");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}